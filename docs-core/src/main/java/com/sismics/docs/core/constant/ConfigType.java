@@ -53,6 +53,12 @@ public enum ConfigType {
     INBOX_AUTOMATIC_TAGS,
     INBOX_DELETE_IMPORTED,
 
+    /**
+     * Inbox synchronization checkpoint: UIDVALIDITY of the folder and UID of the last message processed.
+     */
+    INBOX_UID_VALIDITY,
+    INBOX_LAST_UID,
+
     /**
      * LDAP connection.
      */
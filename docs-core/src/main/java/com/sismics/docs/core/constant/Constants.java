@@ -83,6 +83,153 @@ public class Constants {
      */
     public static final String BCRYPT_WORK_ENV = "DOCS_BCRYPT_WORK";
 
+    /**
+     * Lucene commit policy environment variables.
+     */
+    public static final String LUCENE_COMMIT_INTERVAL_ENV = "DOCS_LUCENE_COMMIT_INTERVAL";
+    public static final String LUCENE_COMMIT_DOCUMENT_COUNT_ENV = "DOCS_LUCENE_COMMIT_DOCUMENT_COUNT";
+    public static final String LUCENE_DURABLE_WRITES_ENV = "DOCS_LUCENE_DURABLE_WRITES";
+
+    /**
+     * Index ACLs and search criteria in Lucene environment variable.
+     */
+    public static final String LUCENE_INDEX_CRITERIA_ENV = "DOCS_LUCENE_INDEX_CRITERIA";
+
+    /**
+     * Number of threads rebuilding the Lucene index environment variable.
+     */
+    public static final String LUCENE_REBUILD_THREADS_ENV = "DOCS_LUCENE_REBUILD_THREADS";
+
+    /**
+     * Number of threads decrypting files for ZIP exports environment variable.
+     */
+    public static final String ZIP_EXPORT_THREADS_ENV = "DOCS_ZIP_EXPORT_THREADS";
+
+    /**
+     * Maximum size of the PDF export cache in megabytes environment variable.
+     */
+    public static final String PDF_CACHE_SIZE_ENV = "DOCS_PDF_CACHE_SIZE";
+
+    /**
+     * Expiration time of the reference data cache entries in seconds environment variable.
+     */
+    public static final String REFERENCE_CACHE_TTL_ENV = "DOCS_REFERENCE_CACHE_TTL";
+
+    /**
+     * Expiration time of the JWT issuer keys in seconds environment variable.
+     */
+    public static final String JWKS_CACHE_TTL_ENV = "DOCS_JWKS_CACHE_TTL";
+
+    /**
+     * Time in seconds before fetching again the keys of a JWT issuer after an unknown key or an error environment variable.
+     */
+    public static final String JWKS_NEGATIVE_CACHE_TTL_ENV = "DOCS_JWKS_NEGATIVE_CACHE_TTL";
+
+    /**
+     * File processing pipeline environment variables.
+     */
+    public static final String FILE_PROCESSING_QUEUE_SIZE_ENV = "DOCS_FILE_PROCESSING_QUEUE_SIZE";
+    public static final String FILE_PROCESSING_DECRYPT_THREADS_ENV = "DOCS_FILE_PROCESSING_DECRYPT_THREADS";
+    public static final String FILE_PROCESSING_THUMBNAIL_THREADS_ENV = "DOCS_FILE_PROCESSING_THUMBNAIL_THREADS";
+    public static final String FILE_PROCESSING_EXTRACTION_THREADS_ENV = "DOCS_FILE_PROCESSING_EXTRACTION_THREADS";
+    public static final String FILE_PROCESSING_INDEX_THREADS_ENV = "DOCS_FILE_PROCESSING_INDEX_THREADS";
+    public static final String FILE_PROCESSING_OVERFLOW_SIZE_ENV = "DOCS_FILE_PROCESSING_OVERFLOW_SIZE";
+    public static final String FILE_PROCESSING_OVERFLOW_TIMEOUT_ENV = "DOCS_FILE_PROCESSING_OVERFLOW_TIMEOUT";
+
+    /**
+     * Default number of files waiting in each file processing stage, per priority.
+     */
+    public static final int DEFAULT_FILE_PROCESSING_QUEUE_SIZE = 100;
+
+    /**
+     * Default number of files waiting for some room in the first file processing stage, per priority.
+     */
+    public static final int DEFAULT_FILE_PROCESSING_OVERFLOW_SIZE = 10000;
+
+    /**
+     * Default time in seconds a submission waits for some room in a full overflow queue.
+     */
+    public static final int DEFAULT_FILE_PROCESSING_OVERFLOW_TIMEOUT = 10;
+
+    /**
+     * Time in milliseconds during which the updates of a document are merged environment variable.
+     */
+    public static final String DOCUMENT_UPDATE_COALESCING_WINDOW_ENV = "DOCS_DOCUMENT_UPDATE_COALESCING_WINDOW";
+
+    /**
+     * Webhook delivery environment variables.
+     */
+    public static final String WEBHOOK_THREADS_ENV = "DOCS_WEBHOOK_THREADS";
+    public static final String WEBHOOK_ENDPOINT_CONCURRENCY_ENV = "DOCS_WEBHOOK_ENDPOINT_CONCURRENCY";
+    public static final String WEBHOOK_QUEUE_SIZE_ENV = "DOCS_WEBHOOK_QUEUE_SIZE";
+    public static final String WEBHOOK_COALESCING_WINDOW_ENV = "DOCS_WEBHOOK_COALESCING_WINDOW";
+    public static final String WEBHOOK_MAX_ATTEMPTS_ENV = "DOCS_WEBHOOK_MAX_ATTEMPTS";
+
+    /**
+     * Number of threads parsing the inbox messages environment variable.
+     */
+    public static final String INBOX_THREADS_ENV = "DOCS_INBOX_THREADS";
+
+    /**
+     * Maximum number of concurrent OCR processes environment variable.
+     */
+    public static final String OCR_CONCURRENCY_ENV = "DOCS_OCR_CONCURRENCY";
+
+    /**
+     * Default Lucene commit interval in seconds.
+     */
+    public static final int DEFAULT_LUCENE_COMMIT_INTERVAL = 10;
+
+    /**
+     * Default number of Lucene changes triggering a commit.
+     */
+    public static final int DEFAULT_LUCENE_COMMIT_DOCUMENT_COUNT = 1000;
+
+    /**
+     * Default number of threads decrypting files for ZIP exports.
+     */
+    public static final int DEFAULT_ZIP_EXPORT_THREADS = 2;
+
+    /**
+     * Default maximum size of the PDF export cache in megabytes.
+     */
+    public static final int DEFAULT_PDF_CACHE_SIZE = 1024;
+
+    /**
+     * Default expiration time of the reference data cache entries in seconds.
+     */
+    public static final int DEFAULT_REFERENCE_CACHE_TTL = 300;
+
+    /**
+     * Default expiration time of the JWT issuer keys in seconds.
+     */
+    public static final int DEFAULT_JWKS_CACHE_TTL = 3600;
+
+    /**
+     * Default time in seconds before fetching again the keys of a JWT issuer after an unknown key or an error.
+     */
+    public static final int DEFAULT_JWKS_NEGATIVE_CACHE_TTL = 30;
+
+    /**
+     * Default time in milliseconds during which the updates of a document are merged.
+     */
+    public static final int DEFAULT_DOCUMENT_UPDATE_COALESCING_WINDOW = 1000;
+
+    /**
+     * Default webhook delivery settings: threads, concurrent deliveries per endpoint,
+     * deliveries waiting per endpoint, coalescing window in milliseconds and attempts per delivery.
+     */
+    public static final int DEFAULT_WEBHOOK_THREADS = 4;
+    public static final int DEFAULT_WEBHOOK_ENDPOINT_CONCURRENCY = 2;
+    public static final int DEFAULT_WEBHOOK_QUEUE_SIZE = 1000;
+    public static final int DEFAULT_WEBHOOK_COALESCING_WINDOW = 1000;
+    public static final int DEFAULT_WEBHOOK_MAX_ATTEMPTS = 5;
+
+    /**
+     * Default number of threads parsing the inbox messages, which is also the number of messages parsed ahead.
+     */
+    public static final int DEFAULT_INBOX_THREADS = 2;
+
     /**
      * Expiration time of the password recovery in hours.
      */
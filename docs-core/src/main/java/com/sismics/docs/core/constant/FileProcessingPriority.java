@@ -0,0 +1,21 @@
+package com.sismics.docs.core.constant;
+
+/**
+ * File processing priority, from the most to the least urgent.
+ */
+public enum FileProcessingPriority {
+    /**
+     * File uploaded by a user waiting for the result.
+     */
+    INTERACTIVE,
+
+    /**
+     * File imported in bulk (inbox scanning).
+     */
+    BULK,
+
+    /**
+     * Existing file processed again.
+     */
+    REPROCESS
+}
@@ -6,15 +6,22 @@ import com.sismics.docs.core.constant.AuditLogType;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.dto.AclDto;
 import com.sismics.docs.core.model.jpa.Acl;
+import com.sismics.docs.core.model.jpa.Tag;
 import com.sismics.docs.core.util.AuditLogUtil;
 import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.cache.CacheRegion;
+import com.sismics.docs.core.util.cache.ReferenceCacheUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -37,6 +44,7 @@ public class AclDao {
         // Create the ACL
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(acl);
+        invalidateTags(em, acl.getSourceId());
 
         // Create audit log
         AuditLogUtil.create(acl, AuditLogType.CREATE, userId);
@@ -65,32 +73,49 @@ public class AclDao {
      * @param sourceId Source ID
      * @return ACL DTO list
      */
-    @SuppressWarnings("unchecked")
     public List<AclDto> getBySourceId(String sourceId, AclType type) {
+        return getBySourceIds(Collections.singletonList(sourceId), type)
+                .getOrDefault(sourceId, new ArrayList<>());
+    }
+
+    /**
+     * Search ACLs by source IDs in a single query.
+     *
+     * @param sourceIdList Source IDs
+     * @param type ACL type, may be null
+     * @return ACL DTO list per source ID
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, List<AclDto>> getBySourceIds(Collection<String> sourceIdList, AclType type) {
+        Map<String, List<AclDto>> aclDtoMap = new HashMap<>();
+        if (sourceIdList.isEmpty()) {
+            return aclDtoMap;
+        }
+
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        StringBuilder sb = new StringBuilder("select a.ACL_ID_C, a.ACL_PERM_C, a.ACL_TARGETID_C, ")
+        StringBuilder sb = new StringBuilder("select a.ACL_SOURCEID_C, a.ACL_ID_C, a.ACL_PERM_C, a.ACL_TARGETID_C, ")
                 .append(" u.USE_USERNAME_C, s.SHA_ID_C, s.SHA_NAME_C, g.GRP_NAME_C ")
                 .append(" from T_ACL a ")
                 .append(" left join T_USER u on u.USE_ID_C = a.ACL_TARGETID_C ")
                 .append(" left join T_SHARE s on s.SHA_ID_C = a.ACL_TARGETID_C ")
                 .append(" left join T_GROUP g on g.GRP_ID_C = a.ACL_TARGETID_C ")
-                .append(" where a.ACL_DELETEDATE_D is null and a.ACL_SOURCEID_C = :sourceId ");
+                .append(" where a.ACL_DELETEDATE_D is null and a.ACL_SOURCEID_C in (:sourceIdList) ");
         if (type != null) {
             sb.append(" and a.ACL_TYPE_C = :type");
         }
 
         // Perform the query
         Query q = em.createNativeQuery(sb.toString());
-        q.setParameter("sourceId", sourceId);
+        q.setParameter("sourceIdList", sourceIdList);
         if (type != null) {
             q.setParameter("type", type.name());
         }
         List<Object[]> l = q.getResultList();
 
         // Assemble results
-        List<AclDto> aclDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
+            String sourceId = (String) o[i++];
             AclDto aclDto = new AclDto();
             aclDto.setId((String) o[i++]);
             aclDto.setPerm(PermType.valueOf((String) o[i++]));
@@ -111,9 +136,9 @@ public class AclDao {
                 aclDto.setTargetName(groupName);
                 aclDto.setTargetType(AclTargetType.GROUP.name());
             }
-            aclDtoList.add(aclDto);
+            aclDtoMap.computeIfAbsent(sourceId, k -> new ArrayList<>()).add(aclDto);
         }
-        return aclDtoList;
+        return aclDtoMap;
     }
 
     /**
@@ -181,5 +206,18 @@ public class AclDao {
         q.setParameter("type", type);
         q.setParameter("dateNow", new Date());
         q.executeUpdate();
+        invalidateTags(em, sourceId);
+    }
+
+    /**
+     * Invalidate the cached tags if the ACL source is a tag, the tags are cached by ACL targets.
+     *
+     * @param em Entity manager
+     * @param sourceId ACL source ID
+     */
+    private void invalidateTags(EntityManager em, String sourceId) {
+        if (em.find(Tag.class, sourceId) != null) {
+            ReferenceCacheUtil.invalidate(CacheRegion.TAG);
+        }
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.model.jpa.AuthenticationToken;
+import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.util.context.ThreadLocalContext;
 import org.joda.time.DateTime;
 
@@ -54,6 +55,7 @@ public class AuthenticationTokenDao {
         AuthenticationToken authenticationToken = em.find(AuthenticationToken.class, authenticationTokenId);
         if (authenticationToken != null) {
             em.remove(authenticationToken);
+            SecurityUtil.invalidatePrincipal(authenticationToken.getUserId());
         } else {
             throw new Exception("Token not found: " + authenticationTokenId);
         }
@@ -121,5 +123,6 @@ public class AuthenticationTokenDao {
         q.setParameter("userId", userId);
         q.setParameter("id", id);
         q.executeUpdate();
+        SecurityUtil.invalidatePrincipal(userId);
     }
 }
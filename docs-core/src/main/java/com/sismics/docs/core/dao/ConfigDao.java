@@ -2,10 +2,12 @@ package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.docs.core.util.cache.CacheRegion;
+import com.sismics.docs.core.util.cache.ReferenceCacheUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.NoResultException;
+import java.util.Optional;
 
 /**
  * Configuration parameter DAO.
@@ -17,7 +19,7 @@ public class ConfigDao {
      * Gets a configuration parameter by its ID.
      * 
      * @param id Configuration parameter ID
-     * @return Configuration parameter
+     * @return Configuration parameter, detached
      */
     public Config getById(ConfigType id) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
@@ -26,12 +28,23 @@ public class ConfigDao {
         if (em == null) {
             return null;
         }
-        
-        try {
-            return em.find(Config.class, id);
-        } catch (NoResultException e) {
-            return null;
-        }
+
+        Optional<Config> config = ReferenceCacheUtil.get(CacheRegion.CONFIG, id,
+                () -> Optional.ofNullable(em.find(Config.class, id)).map(ConfigDao::copy));
+        return config.map(ConfigDao::copy).orElse(null);
+    }
+
+    /**
+     * Copy a configuration parameter, the cached ones are shared.
+     *
+     * @param config Configuration parameter
+     * @return Detached copy
+     */
+    private static Config copy(Config config) {
+        Config copy = new Config();
+        copy.setId(config.getId());
+        copy.setValue(config.getValue());
+        return copy;
     }
 
     /**
@@ -42,7 +55,7 @@ public class ConfigDao {
      */
     public void update(ConfigType id, String value) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        Config config = getById(id);
+        Config config = em.find(Config.class, id);
         if (config == null) {
             config = new Config();
             config.setId(id);
@@ -51,5 +64,6 @@ public class ConfigDao {
         } else {
             config.setValue(value);
         }
+        ReferenceCacheUtil.invalidate(CacheRegion.CONFIG);
     }
 }
@@ -12,6 +12,7 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -45,16 +46,19 @@ public class DocumentDao {
     }
     
     /**
-     * Returns the list of all active documents.
+     * Returns a page of all active documents, ordered by ID.
      *
-     * @param offset Offset
+     * @param lastId ID of the last document of the previous page, null for the first page
      * @param limit Limit
      * @return List of documents
      */
-    public List<Document> findAll(int offset, int limit) {
+    public List<Document> findAllAfter(String lastId, int limit) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        TypedQuery<Document> q = em.createQuery("select d from Document d where d.deleteDate is null", Document.class);
-        q.setFirstResult(offset);
+        TypedQuery<Document> q = em.createQuery("select d from Document d where d.deleteDate is null"
+                + (lastId == null ? "" : " and d.id > :lastId") + " order by d.id", Document.class);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
         q.setMaxResults(limit);
         return q.getResultList();
     }
@@ -188,6 +192,22 @@ public class DocumentDao {
         }
     }
     
+    /**
+     * Gets active documents by their ID.
+     *
+     * @param idList Document IDs
+     * @return Documents
+     */
+    public List<Document> getActiveByIds(List<String> idList) {
+        if (idList.isEmpty()) {
+            return new ArrayList<>();
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Document> q = em.createQuery("select d from Document d where d.id in :idList and d.deleteDate is null", Document.class);
+        q.setParameter("idList", idList);
+        return q.getResultList();
+    }
+
     /**
      * Update a document and log the action.
      * 
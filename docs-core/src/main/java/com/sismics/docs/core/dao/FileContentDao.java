@@ -0,0 +1,119 @@
+package com.sismics.docs.core.dao;
+
+import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.model.jpa.FileContent;
+import com.sismics.util.context.ThreadLocalContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * File content DAO.
+ */
+public class FileContentDao {
+    /**
+     * Returns the text content of a file.
+     * 
+     * @param fileId File ID
+     * @return Content or null if none has been extracted
+     */
+    public String getByFileId(String fileId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        FileContent fileContent = em.find(FileContent.class, fileId);
+        return fileContent == null ? null : decode(fileContent);
+    }
+
+    /**
+     * Returns the text content of several files.
+     * 
+     * @param fileIdList Files IDs
+     * @return Content per file ID, files without content are absent
+     */
+    public Map<String, String> getByFileIds(Collection<String> fileIdList) {
+        Map<String, String> contentMap = new HashMap<>();
+        if (fileIdList.isEmpty()) {
+            return contentMap;
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<FileContent> q = em.createQuery("select fc from FileContent fc where fc.fileId in :fileIdList", FileContent.class);
+        q.setParameter("fileIdList", fileIdList);
+        for (FileContent fileContent : q.getResultList()) {
+            contentMap.put(fileContent.getFileId(), decode(fileContent));
+        }
+        return contentMap;
+    }
+
+    /**
+     * Replaces the text content of a file.
+     * 
+     * @param fileId File ID
+     * @param content Content, null to remove it
+     */
+    public void update(String fileId, String content) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        FileContent fileContent = em.find(FileContent.class, fileId);
+        if (content == null) {
+            if (fileContent != null) {
+                em.remove(fileContent);
+            }
+            return;
+        }
+
+        if (fileContent == null) {
+            fileContent = new FileContent().setFileId(fileId);
+            em.persist(fileContent);
+        }
+        fileContent.setContent(compress(content))
+                .setCompressed(true);
+    }
+
+    /**
+     * Deflates a text.
+     * 
+     * @param content Text
+     * @return Compressed UTF-8 bytes
+     */
+    private static byte[] compress(String content) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (OutputStream outputStream = new DeflaterOutputStream(byteArrayOutputStream, deflater)) {
+            outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Reads a stored content.
+     * 
+     * @param fileContent File content
+     * @return Text
+     */
+    private static String decode(FileContent fileContent) {
+        if (!fileContent.isCompressed()) {
+            return new String(fileContent.getContent(), StandardCharsets.UTF_8);
+        }
+        try (InputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(fileContent.getContent()))) {
+            return new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
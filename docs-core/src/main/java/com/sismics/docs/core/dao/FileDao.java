@@ -4,11 +4,13 @@ import com.sismics.docs.core.constant.AuditLogType;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.AuditLogUtil;
 import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.EMF;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -58,6 +60,35 @@ public class FileDao {
         q.setMaxResults(limit);
         return q.getResultList();
     }
+
+    /**
+     * Returns a page of all files, ordered by ID.
+     *
+     * @param lastId ID of the last file of the previous page, null for the first page
+     * @param limit Limit
+     * @return List of files
+     */
+    public List<File> findAllAfter(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q = em.createQuery("select f from File f where f.deleteDate is null"
+                + (lastId == null ? "" : " and f.id > :lastId") + " order by f.id", File.class);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the number of active files.
+     *
+     * @return Number of files
+     */
+    public long getFileCount() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query query = em.createNativeQuery("select count(f.FIL_ID_C) from T_FILE f where f.FIL_DELETEDATE_D is null");
+        return ((Number) query.getSingleResult()).longValue();
+    }
     
     /**
      * Returns the list of all files from a user.
@@ -158,7 +189,6 @@ public class FileDao {
         // Update the file
         fileDb.setDocumentId(file.getDocumentId());
         fileDb.setName(file.getName());
-        fileDb.setContent(file.getContent());
         fileDb.setOrder(file.getOrder());
         fileDb.setMimeType(file.getMimeType());
         fileDb.setVersionId(file.getVersionId());
@@ -184,6 +214,22 @@ public class FileDao {
             return null;
         }
     }
+
+    /**
+     * Gets active files by their IDs.
+     *
+     * @param idList File IDs
+     * @return Files
+     */
+    public List<File> getActiveByIds(List<String> idList) {
+        if (idList.isEmpty()) {
+            return new ArrayList<>();
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q = em.createQuery("select f from File f where f.id in :idList and f.deleteDate is null", File.class);
+        q.setParameter("idList", idList);
+        return q.getResultList();
+    }
     
     /**
      * Get files by document ID or all orphan files of a user.
@@ -234,6 +280,76 @@ public class FileDao {
         return result;
     }
 
+    /**
+     * Returns the active files of a user with this content hash, oldest first.
+     *
+     * @param userId User ID
+     * @param hash Content hash
+     * @return List of files
+     */
+    public List<File> getActiveByHash(String userId, String hash) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q = em.createQuery("select f from File f where f.userId = :userId and f.hash = :hash and f.deleteDate is null order by f.createDate asc", File.class);
+        q.setParameter("userId", userId);
+        q.setParameter("hash", hash);
+        return q.getResultList();
+    }
+
+    /**
+     * Adds a reference to a stored content.
+     * The reference is added by an atomic upsert, concurrent uploads of the same content wait for each other.
+     *
+     * @param userId User ID
+     * @param hash Content hash
+     * @return True if it's the first reference to this content
+     */
+    public boolean addBlobReference(String userId, String hash) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q;
+        if (EMF.isDriverPostgresql()) {
+            q = em.createNativeQuery("insert into T_FILE_BLOB (FBL_IDUSER_C, FBL_HASH_C, FBL_COUNT_N) values (:userId, :hash, 1)" +
+                    " on conflict (FBL_IDUSER_C, FBL_HASH_C) do update set FBL_COUNT_N = T_FILE_BLOB.FBL_COUNT_N + 1");
+        } else {
+            q = em.createNativeQuery("merge into T_FILE_BLOB b using (select cast(:userId as varchar(36)) SRC_IDUSER, cast(:hash as varchar(64)) SRC_HASH) s" +
+                    " on (b.FBL_IDUSER_C = s.SRC_IDUSER and b.FBL_HASH_C = s.SRC_HASH)" +
+                    " when matched then update set FBL_COUNT_N = b.FBL_COUNT_N + 1" +
+                    " when not matched then insert (FBL_IDUSER_C, FBL_HASH_C, FBL_COUNT_N) values (s.SRC_IDUSER, s.SRC_HASH, 1)");
+        }
+        q.setParameter("userId", userId);
+        q.setParameter("hash", hash);
+        q.executeUpdate();
+
+        // The row is locked by the upsert until the end of the transaction
+        q = em.createNativeQuery("select FBL_COUNT_N from T_FILE_BLOB where FBL_IDUSER_C = :userId and FBL_HASH_C = :hash");
+        q.setParameter("userId", userId);
+        q.setParameter("hash", hash);
+        return ((Number) q.getSingleResult()).intValue() == 1;
+    }
+
+    /**
+     * Removes a reference to a stored content.
+     * The row is locked by the update until the end of the transaction, so only one caller sees the last reference go.
+     *
+     * @param userId User ID
+     * @param hash Content hash
+     * @return True if it was the last reference to this content
+     */
+    public boolean removeBlobReference(String userId, String hash) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("update T_FILE_BLOB set FBL_COUNT_N = FBL_COUNT_N - 1 where FBL_IDUSER_C = :userId and FBL_HASH_C = :hash");
+        q.setParameter("userId", userId);
+        q.setParameter("hash", hash);
+        if (q.executeUpdate() == 0) {
+            // Not referenced anymore
+            return false;
+        }
+
+        q = em.createNativeQuery("delete from T_FILE_BLOB where FBL_IDUSER_C = :userId and FBL_HASH_C = :hash and FBL_COUNT_N <= 0");
+        q.setParameter("userId", userId);
+        q.setParameter("hash", hash);
+        return q.executeUpdate() > 0;
+    }
+
     /**
      * Get all files from a version.
      *
@@ -7,6 +7,7 @@ import com.sismics.docs.core.dao.dto.GroupDto;
 import com.sismics.docs.core.model.jpa.Group;
 import com.sismics.docs.core.model.jpa.UserGroup;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -72,6 +73,10 @@ public class GroupDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(group);
         
+        // Link the group to itself and to its ancestors
+        insertClosure(group.getId(), group.getId(), 0);
+        insertClosure(Collections.singletonList(new Object[] { group.getId(), 0 }), group.getParentId());
+        
         // Create audit log
         AuditLogUtil.create(group, AuditLogType.CREATE, userId);
         
@@ -92,6 +97,11 @@ public class GroupDao {
         q.setParameter("id", groupId);
         Group groupDb = (Group) q.getSingleResult();
         
+        // Unlink the group and its subtree from the hierarchy, children become root groups
+        List<String> ancestorIdList = getIdList("select GCL_IDANCESTOR_C from T_GROUP_CLOSURE where GCL_IDDESCENDANT_C = :groupId", groupId);
+        List<String> descendantIdList = getIdList("select GCL_IDDESCENDANT_C from T_GROUP_CLOSURE where GCL_IDANCESTOR_C = :groupId", groupId);
+        deleteClosure(ancestorIdList, descendantIdList);
+        
         // Delete the group
         Date dateNow = new Date();
         groupDb.setDeleteDate(dateNow);
@@ -110,6 +120,7 @@ public class GroupDao {
         q = em.createQuery("update Group g set g.parentId = null where g.parentId = :groupId and g.deleteDate is null");
         q.setParameter("groupId", groupDb.getId());
         q.executeUpdate();
+        SecurityUtil.invalidatePrincipals();
 
         // Create audit log
         AuditLogUtil.create(groupDb, AuditLogType.DELETE, userId);
@@ -128,6 +139,7 @@ public class GroupDao {
         // Create the user group
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(userGroup);
+        SecurityUtil.invalidatePrincipal(userGroup.getUserId());
         
         return userGroup.getId();
     }
@@ -150,6 +162,7 @@ public class GroupDao {
         // Delete the user group
         Date dateNow = new Date();
         userGroupDb.setDeleteDate(dateNow);
+        SecurityUtil.invalidatePrincipal(userId);
     }
     
     /**
@@ -164,9 +177,6 @@ public class GroupDao {
         List<String> criteriaList = new ArrayList<>();
         
         StringBuilder sb = new StringBuilder("select g.GRP_ID_C as c0, g.GRP_NAME_C as c1, g.GRP_IDPARENT_C as c2, gp.GRP_NAME_C as c3, g.GRP_IDROLE_C ");
-        if (criteria.getUserId() != null) {
-            sb.append(" , ug.UGP_ID_C ");
-        }
         sb.append(" from T_GROUP g ");
         sb.append(" left join T_GROUP gp on g.GRP_IDPARENT_C = gp.GRP_ID_C ");
         
@@ -176,9 +186,14 @@ public class GroupDao {
             parameterMap.put("search", "%" + criteria.getSearch() + "%");
         }
         if (criteria.getUserId() != null) {
-            // Left join and post-filtering for recursive groups
-            sb.append(criteria.isRecursive() ? " left " : "");
-            sb.append(" join T_USER_GROUP ug on ug.UGP_IDGROUP_C = g.GRP_ID_C and ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null ");
+            if (criteria.isRecursive()) {
+                // Direct groups and all their ancestors from the materialized hierarchy
+                criteriaList.add("g.GRP_ID_C in (select gc.GCL_IDANCESTOR_C from T_GROUP_CLOSURE gc" +
+                        " join T_USER_GROUP ug on ug.UGP_IDGROUP_C = gc.GCL_IDDESCENDANT_C" +
+                        " where ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null)");
+            } else {
+                sb.append(" join T_USER_GROUP ug on ug.UGP_IDGROUP_C = g.GRP_ID_C and ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null ");
+            }
             parameterMap.put("userId", criteria.getUserId());
         }
         
@@ -194,7 +209,6 @@ public class GroupDao {
         
         // Assemble results
         List<GroupDto> groupDtoList = new ArrayList<>();
-        List<GroupDto> userGroupDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
             GroupDto groupDto = new GroupDto()
@@ -202,45 +216,26 @@ public class GroupDao {
                 .setName((String) o[i++])
                 .setParentId((String) o[i++])
                 .setParentName((String) o[i++])
-                .setRoleId((String) o[i++]);
+                .setRoleId((String) o[i]);
             groupDtoList.add(groupDto);
-            if (criteria.getUserId() != null && o[i] != null) {
-                userGroupDtoList.add(groupDto);
-            }
-        }
-        
-        // Post-query filtering for recursive groups
-        if (criteria.getUserId() != null && criteria.isRecursive()) {
-            Set<GroupDto> filteredGroupDtoSet = new HashSet<>();
-            for (GroupDto userGroupDto : userGroupDtoList) {
-                filteredGroupDtoSet.add(userGroupDto); // Direct group
-                findGroupParentHierarchy(filteredGroupDtoSet, groupDtoList, userGroupDto, 0); // Indirect groups
-            }
-            groupDtoList = new ArrayList<>(filteredGroupDtoSet);
         }
         
         return groupDtoList;
     }
     
     /**
-     * Recursively search group's parents.
+     * Returns true if a group is the same as, or an ancestor of, another group.
      * 
-     * @param parentGroupDtoSet Resulting parents
-     * @param groupDtoList All groups
-     * @param userGroupDto Reference group to search from
-     * @param depth Depth
+     * @param ancestorId Ancestor group ID
+     * @param descendantId Descendant group ID
+     * @return True if the first group contains the second one
      */
-    private void findGroupParentHierarchy(Set<GroupDto> parentGroupDtoSet, List<GroupDto> groupDtoList, GroupDto userGroupDto, int depth) {
-        if (userGroupDto.getParentId() == null || depth == 10) { // Max depth 10 to avoid infinite loop
-            return;
-        }
-        
-        for (GroupDto groupDto : groupDtoList) {
-            if (groupDto.getId().equals(userGroupDto.getParentId())) {
-                parentGroupDtoSet.add(groupDto); // Add parent
-                findGroupParentHierarchy(parentGroupDtoSet, groupDtoList, groupDto, depth + 1); // Find parent's parents
-            }
-        }
+    public boolean isAncestor(String ancestorId, String descendantId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select count(*) from T_GROUP_CLOSURE where GCL_IDANCESTOR_C = :ancestorId and GCL_IDDESCENDANT_C = :descendantId");
+        q.setParameter("ancestorId", ancestorId);
+        q.setParameter("descendantId", descendantId);
+        return ((Number) q.getSingleResult()).longValue() > 0;
     }
     
     /**
@@ -262,10 +257,97 @@ public class GroupDao {
         groupDb.setName(group.getName());
         groupDb.setParentId(group.getParentId());
         
+        // Move the subtree under its new parent
+        List<String> ancestorIdList = getIdList("select GCL_IDANCESTOR_C from T_GROUP_CLOSURE where GCL_IDDESCENDANT_C = :groupId and GCL_DEPTH_N > 0", groupDb.getId());
+        q = em.createNativeQuery("select GCL_IDDESCENDANT_C, GCL_DEPTH_N from T_GROUP_CLOSURE where GCL_IDANCESTOR_C = :groupId");
+        q.setParameter("groupId", groupDb.getId());
+        @SuppressWarnings("unchecked")
+        List<Object[]> descendantList = q.getResultList();
+        List<String> descendantIdList = new ArrayList<>();
+        for (Object[] o : descendantList) {
+            descendantIdList.add((String) o[0]);
+        }
+        deleteClosure(ancestorIdList, descendantIdList);
+        insertClosure(descendantList, groupDb.getParentId());
+        SecurityUtil.invalidatePrincipals();
+        
         // Create audit log
         AuditLogUtil.create(groupDb, AuditLogType.UPDATE, userId);
         
         return groupDb;
     }
+    
+    /**
+     * Returns a list of group IDs from a native query on the closure table.
+     * 
+     * @param sql Native query with a groupId parameter
+     * @param groupId Group ID
+     * @return List of group IDs
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> getIdList(String sql, String groupId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery(sql);
+        q.setParameter("groupId", groupId);
+        return q.getResultList();
+    }
+    
+    /**
+     * Deletes the closure links between a set of ancestors and a set of descendants.
+     * 
+     * @param ancestorIdList Ancestor group IDs
+     * @param descendantIdList Descendant group IDs
+     */
+    private void deleteClosure(List<String> ancestorIdList, List<String> descendantIdList) {
+        if (ancestorIdList.isEmpty() || descendantIdList.isEmpty()) {
+            return;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("delete from T_GROUP_CLOSURE where GCL_IDANCESTOR_C in (:ancestorIdList) and GCL_IDDESCENDANT_C in (:descendantIdList)");
+        q.setParameter("ancestorIdList", ancestorIdList);
+        q.setParameter("descendantIdList", descendantIdList);
+        q.executeUpdate();
+    }
+    
+    /**
+     * Links a subtree to a parent group and all its ancestors.
+     * 
+     * @param descendantList Subtree as (group ID, depth from the subtree root)
+     * @param parentId Parent group ID of the subtree root, may be null
+     */
+    private void insertClosure(List<Object[]> descendantList, String parentId) {
+        if (parentId == null) {
+            return;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        
+        // Ancestors of the subtree root, with their distance to it
+        Query q = em.createNativeQuery("select GCL_IDANCESTOR_C, GCL_DEPTH_N from T_GROUP_CLOSURE where GCL_IDDESCENDANT_C = :parentId");
+        q.setParameter("parentId", parentId);
+        @SuppressWarnings("unchecked")
+        List<Object[]> ancestorList = q.getResultList();
+        
+        for (Object[] ancestor : ancestorList) {
+            for (Object[] descendant : descendantList) {
+                insertClosure((String) ancestor[0], (String) descendant[0],
+                        ((Number) ancestor[1]).intValue() + ((Number) descendant[1]).intValue() + 1);
+            }
+        }
+    }
+    
+    /**
+     * Inserts a closure link.
+     * 
+     * @param ancestorId Ancestor group ID
+     * @param descendantId Descendant group ID
+     * @param depth Distance between the two groups
+     */
+    private void insertClosure(String ancestorId, String descendantId, int depth) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) values (:ancestorId, :descendantId, :depth)");
+        q.setParameter("ancestorId", ancestorId);
+        q.setParameter("descendantId", descendantId);
+        q.setParameter("depth", depth);
+        q.executeUpdate();
+    }
 }
-
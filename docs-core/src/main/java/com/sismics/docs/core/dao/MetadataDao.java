@@ -7,6 +7,8 @@ import com.sismics.docs.core.dao.criteria.MetadataCriteria;
 import com.sismics.docs.core.dao.dto.MetadataDto;
 import com.sismics.docs.core.model.jpa.Metadata;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.cache.CacheRegion;
+import com.sismics.docs.core.util.cache.ReferenceCacheUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -37,6 +39,7 @@ public class MetadataDao {
         // Create the metadata
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(metadata);
+        ReferenceCacheUtil.invalidate(CacheRegion.METADATA);
 
         // Create audit log
         AuditLogUtil.create(metadata, AuditLogType.CREATE, userId);
@@ -61,6 +64,7 @@ public class MetadataDao {
 
         // Update the metadata
         metadataDb.setName(metadata.getName());
+        ReferenceCacheUtil.invalidate(CacheRegion.METADATA);
 
         // Create audit log
         AuditLogUtil.create(metadataDb, AuditLogType.UPDATE, userId);
@@ -102,6 +106,7 @@ public class MetadataDao {
         // Delete the metadata
         Date dateNow = new Date();
         metadataDb.setDeleteDate(dateNow);
+        ReferenceCacheUtil.invalidate(CacheRegion.METADATA);
 
         // Create audit log
         AuditLogUtil.create(metadataDb, AuditLogType.DELETE, userId);
@@ -109,12 +114,37 @@ public class MetadataDao {
 
     /**
      * Returns the list of all metadata.
+     * The metadata are cached by sort criteria.
      *
      * @param criteria Search criteria
      * @param sortCriteria Sort criteria
      * @return List of metadata
      */
     public List<MetadataDto> findByCriteria(MetadataCriteria criteria, SortCriteria sortCriteria) {
+        String cacheKey = sortCriteria == null ? "" : sortCriteria.getColumn() + ":" + sortCriteria.isAsc();
+        List<Object[]> l = ReferenceCacheUtil.get(CacheRegion.METADATA, cacheKey, () -> findRowsByCriteria(criteria, sortCriteria));
+
+        // Assemble results
+        List<MetadataDto> dtoList = new ArrayList<>();
+        for (Object[] o : l) {
+            int i = 0;
+            MetadataDto dto = new MetadataDto();
+            dto.setId((String) o[i++]);
+            dto.setName((String) o[i++]);
+            dto.setType(MetadataType.valueOf((String) o[i]));
+            dtoList.add(dto);
+        }
+        return dtoList;
+    }
+
+    /**
+     * Searches the metadata in the database.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return Result rows
+     */
+    private List<Object[]> findRowsByCriteria(MetadataCriteria criteria, SortCriteria sortCriteria) {
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
 
@@ -130,17 +160,6 @@ public class MetadataDao {
         QueryParam queryParam = QueryUtil.getSortedQueryParam(new QueryParam(sb.toString(), parameterMap), sortCriteria);
         @SuppressWarnings("unchecked")
         List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
-
-        // Assemble results
-        List<MetadataDto> dtoList = new ArrayList<>();
-        for (Object[] o : l) {
-            int i = 0;
-            MetadataDto dto = new MetadataDto();
-            dto.setId((String) o[i++]);
-            dto.setName((String) o[i++]);
-            dto.setType(MetadataType.valueOf((String) o[i]));
-            dtoList.add(dto);
-        }
-        return dtoList;
+        return l;
     }
 }
@@ -1,11 +1,15 @@
 package com.sismics.docs.core.dao;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.sismics.docs.core.util.cache.CacheRegion;
+import com.sismics.docs.core.util.cache.ReferenceCacheUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Role base functions DAO.
@@ -15,18 +19,22 @@ import java.util.Set;
 public class RoleBaseFunctionDao {
     /**
      * Find the set of base functions of a role.
+     * The roles are only changed by the database updates, the cached base functions simply expire.
      * 
      * @param roleIdSet Set of role ID
      * @return Set of base functions
      */
     @SuppressWarnings("unchecked")
     public Set<String> findByRoleId(Set<String> roleIdSet) {
-        EntityManager em = ThreadLocalContext.get().getEntityManager();
-        StringBuilder sb = new StringBuilder("select rbf.RBF_IDBASEFUNCTION_C from T_ROLE_BASE_FUNCTION rbf, T_ROLE r");
-        sb.append(" where rbf.RBF_IDROLE_C in (:roleIdSet) and rbf.RBF_DELETEDATE_D is null");
-        sb.append(" and r.ROL_ID_C = rbf.RBF_IDROLE_C and r.ROL_DELETEDATE_D is null");
-        Query q = em.createNativeQuery(sb.toString());
-        q.setParameter("roleIdSet", roleIdSet);
-        return Sets.newHashSet(q.getResultList());
+        Set<String> baseFunctionSet = ReferenceCacheUtil.get(CacheRegion.ROLE_BASE_FUNCTION, new TreeSet<>(roleIdSet).toString(), () -> {
+            EntityManager em = ThreadLocalContext.get().getEntityManager();
+            StringBuilder sb = new StringBuilder("select rbf.RBF_IDBASEFUNCTION_C from T_ROLE_BASE_FUNCTION rbf, T_ROLE r");
+            sb.append(" where rbf.RBF_IDROLE_C in (:roleIdSet) and rbf.RBF_DELETEDATE_D is null");
+            sb.append(" and r.ROL_ID_C = rbf.RBF_IDROLE_C and r.ROL_DELETEDATE_D is null");
+            Query q = em.createNativeQuery(sb.toString());
+            q.setParameter("roleIdSet", roleIdSet);
+            return ImmutableSet.copyOf((Iterable<String>) q.getResultList());
+        });
+        return Sets.newHashSet(baseFunctionSet);
     }
 }
@@ -8,6 +8,8 @@ import com.sismics.docs.core.model.jpa.DocumentTag;
 import com.sismics.docs.core.model.jpa.Tag;
 import com.sismics.docs.core.util.AuditLogUtil;
 import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.cache.CacheRegion;
+import com.sismics.docs.core.util.cache.ReferenceCacheUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -96,6 +98,7 @@ public class TagDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         tag.setCreateDate(new Date());
         em.persist(tag);
+        ReferenceCacheUtil.invalidate(CacheRegion.TAG);
         
         // Create audit log
         AuditLogUtil.create(tag, AuditLogType.CREATE, userId);
@@ -135,6 +138,7 @@ public class TagDao {
         q = em.createQuery("update Tag t set t.parentId = null where t.parentId = :tagId and t.deleteDate is null");
         q.setParameter("tagId", tagId);
         q.executeUpdate();
+        ReferenceCacheUtil.invalidate(CacheRegion.TAG);
         
         // Create audit log
         AuditLogUtil.create(tagDb, AuditLogType.DELETE, userId);
@@ -159,6 +163,7 @@ public class TagDao {
         tagDb.setName(tag.getName());
         tagDb.setColor(tag.getColor());
         tagDb.setParentId(tag.getParentId());
+        ReferenceCacheUtil.invalidate(CacheRegion.TAG);
         
         // Create audit log
         AuditLogUtil.create(tagDb, AuditLogType.UPDATE, userId);
@@ -168,12 +173,46 @@ public class TagDao {
 
     /**
      * Returns the list of all tags.
+     * The lists not filtered by tag or document are cached by ACL targets and sort criteria.
      *
      * @param criteria Search criteria
      * @param sortCriteria Sort criteria
      * @return List of groups
      */
     public List<TagDto> findByCriteria(TagCriteria criteria, SortCriteria sortCriteria) {
+        List<Object[]> l;
+        if (criteria.getId() == null && criteria.getDocumentId() == null) {
+            Set<String> targetIdSet = criteria.getTargetIdList() == null ? null : new TreeSet<>(criteria.getTargetIdList());
+            String cacheKey = targetIdSet + "|" + (sortCriteria == null ? "" : sortCriteria.getColumn() + ":" + sortCriteria.isAsc());
+            l = ReferenceCacheUtil.get(CacheRegion.TAG, cacheKey, () -> findRowsByCriteria(criteria, sortCriteria));
+        } else {
+            l = findRowsByCriteria(criteria, sortCriteria);
+        }
+
+        // Assemble results
+        List<TagDto> tagDtoList = new ArrayList<>();
+        for (Object[] o : l) {
+            int i = 0;
+            TagDto tagDto = new TagDto()
+                    .setId((String) o[i++])
+                    .setName((String) o[i++])
+                    .setColor((String) o[i++])
+                    .setParentId((String) o[i++])
+                    .setCreator((String) o[i]);
+            tagDtoList.add(tagDto);
+        }
+
+        return tagDtoList;
+    }
+
+    /**
+     * Searches the tags in the database.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return Result rows
+     */
+    private List<Object[]> findRowsByCriteria(TagCriteria criteria, SortCriteria sortCriteria) {
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
 
@@ -206,21 +245,52 @@ public class TagDao {
         QueryParam queryParam = QueryUtil.getSortedQueryParam(new QueryParam(sb.toString(), parameterMap), sortCriteria);
         @SuppressWarnings("unchecked")
         List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
+        return l;
+    }
+
+    /**
+     * Returns the tags of several documents in a single query.
+     *
+     * @param documentIdList Documents IDs
+     * @param targetIdList ACL targets allowed to read the tags
+     * @return Tags sorted by name per document ID
+     */
+    public Map<String, List<TagDto>> findByDocumentsIds(Collection<String> documentIdList, List<String> targetIdList) {
+        Map<String, List<TagDto>> tagDtoMap = new HashMap<>();
+        if (documentIdList.isEmpty()) {
+            return tagDtoMap;
+        }
+
+        Map<String, Object> parameterMap = new HashMap<>();
+        StringBuilder sb = new StringBuilder("select distinct dt.DOT_IDDOCUMENT_C as c0, t.TAG_ID_C as c1, t.TAG_NAME_C as c2, t.TAG_COLOR_C as c3, t.TAG_IDPARENT_C as c4, u.USE_USERNAME_C as c5 ");
+        sb.append(" from T_TAG t ");
+        sb.append(" join T_USER u on t.TAG_IDUSER_C = u.USE_ID_C ");
+        sb.append(" join T_DOCUMENT_TAG dt on dt.DOT_IDTAG_C = t.TAG_ID_C and dt.DOT_DELETEDATE_D is null ");
+        if (!SecurityUtil.skipAclCheck(targetIdList)) {
+            sb.append(" join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = t.TAG_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
+            parameterMap.put("targetIdList", targetIdList);
+        }
+        sb.append(" where dt.DOT_IDDOCUMENT_C in (:documentIdList) and t.TAG_DELETEDATE_D is null ");
+        parameterMap.put("documentIdList", documentIdList);
+
+        // Perform the search
+        QueryParam queryParam = QueryUtil.getSortedQueryParam(new QueryParam(sb.toString(), parameterMap), new SortCriteria(1, true));
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
 
         // Assemble results
-        List<TagDto> tagDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
+            String documentId = (String) o[i++];
             TagDto tagDto = new TagDto()
                     .setId((String) o[i++])
                     .setName((String) o[i++])
                     .setColor((String) o[i++])
                     .setParentId((String) o[i++])
                     .setCreator((String) o[i]);
-            tagDtoList.add(tagDto);
+            tagDtoMap.computeIfAbsent(documentId, k -> new ArrayList<>()).add(tagDto);
         }
 
-        return tagDtoList;
+        return tagDtoMap;
     }
 }
-
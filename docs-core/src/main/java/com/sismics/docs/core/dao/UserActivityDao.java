@@ -108,8 +108,8 @@ public class UserActivityDao {
     public void findByCriteria(PaginatedList<UserActivityDto> paginatedList, UserActivityCriteria criteria, SortCriteria sortCriteria) {
         Map<String, Object> parameterMap = new HashMap<>();
         
-        StringBuilder sb = new StringBuilder("select ua.UTA_ID_C, ua.UTA_IDUSER_C, u.USE_USERNAME_C, ua.UTA_ACTIVITY_TYPE_C, ua.UTA_ENTITY_ID_C, ");
-        sb.append("d.DOC_TITLE_C, ua.UTA_PROGRESS_N, ua.UTA_PLANNED_DATE_D, ua.UTA_COMPLETED_DATE_D, ua.UTA_CREATEDATE_D ");
+        StringBuilder sb = new StringBuilder("select ua.UTA_ID_C c0, ua.UTA_IDUSER_C c1, u.USE_USERNAME_C c2, ua.UTA_ACTIVITY_TYPE_C c3, ua.UTA_ENTITY_ID_C c4, ");
+        sb.append("d.DOC_TITLE_C c5, ua.UTA_PROGRESS_N c6, ua.UTA_PLANNED_DATE_D c7, ua.UTA_COMPLETED_DATE_D c8, ua.UTA_CREATEDATE_D c9 ");
         sb.append("from T_USER_ACTIVITY ua ");
         sb.append("join T_USER u on ua.UTA_IDUSER_C = u.USE_ID_C ");
         sb.append("left join T_DOCUMENT d on ua.UTA_ENTITY_ID_C = d.DOC_ID_C ");
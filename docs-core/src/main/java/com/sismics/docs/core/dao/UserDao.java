@@ -14,6 +14,7 @@ import com.sismics.docs.core.dao.dto.UserDto;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.AuditLogUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
+import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -114,6 +115,7 @@ public class UserDao {
         userDb.setStorageCurrent(user.getStorageCurrent());
         userDb.setTotpKey(user.getTotpKey());
         userDb.setDisableDate(user.getDisableDate());
+        SecurityUtil.invalidatePrincipal(userDb.getId());
 
         // Create audit log
         AuditLogUtil.create(userDb, AuditLogType.UPDATE, userId);
@@ -251,6 +253,8 @@ public class UserDao {
         // Delete the user
         Date dateNow = new Date();
         userDb.setDeleteDate(dateNow);
+        EncryptionUtil.invalidateSecretKey(userDb.getPrivateKey());
+        SecurityUtil.invalidatePrincipal(userDb.getId());
 
         // Delete linked data
         q = em.createQuery("delete from AuthenticationToken at where at.userId = :userId");
@@ -1,6 +1,8 @@
 package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.model.jpa.Vocabulary;
+import com.sismics.docs.core.util.cache.CacheRegion;
+import com.sismics.docs.core.util.cache.ReferenceCacheUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
@@ -8,6 +10,7 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * Vocabulary DAO.
@@ -28,6 +31,7 @@ public class VocabularyDao {
         // Create the comment
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(vocabulary);
+        ReferenceCacheUtil.invalidate(CacheRegion.VOCABULARY);
         
         return vocabulary.getId();
     }
@@ -36,16 +40,35 @@ public class VocabularyDao {
      * Get all vocabulary entries sharing a single name.
      * 
      * @param name Name
-     * @return Vocabulary entries
+     * @return Vocabulary entries, detached
      */
-    @SuppressWarnings("unchecked")
     public List<Vocabulary> getByName(String name) {
-        EntityManager em = ThreadLocalContext.get().getEntityManager();
-        
-        // Get the entries
-        Query q = em.createQuery("select v from Vocabulary v where v.name = :name order by v.order");
-        q.setParameter("name", name);
-        return q.getResultList();
+        List<Vocabulary> vocabularyList = ReferenceCacheUtil.get(CacheRegion.VOCABULARY, name, () -> {
+            EntityManager em = ThreadLocalContext.get().getEntityManager();
+
+            // Get the entries
+            Query q = em.createQuery("select v from Vocabulary v where v.name = :name order by v.order");
+            q.setParameter("name", name);
+            @SuppressWarnings("unchecked")
+            List<Vocabulary> resultList = q.getResultList();
+            return resultList.stream().map(VocabularyDao::copy).collect(Collectors.toList());
+        });
+        return vocabularyList.stream().map(VocabularyDao::copy).collect(Collectors.toList());
+    }
+
+    /**
+     * Copy a vocabulary entry, the cached ones are shared.
+     *
+     * @param vocabulary Vocabulary
+     * @return Detached copy
+     */
+    private static Vocabulary copy(Vocabulary vocabulary) {
+        Vocabulary copy = new Vocabulary();
+        copy.setId(vocabulary.getId());
+        copy.setName(vocabulary.getName());
+        copy.setValue(vocabulary.getValue());
+        copy.setOrder(vocabulary.getOrder());
+        return copy;
     }
 
     /**
@@ -80,6 +103,7 @@ public class VocabularyDao {
         vocabularyDb.setName(vocabulary.getName());
         vocabularyDb.setValue(vocabulary.getValue());
         vocabularyDb.setOrder(vocabulary.getOrder());
+        ReferenceCacheUtil.invalidate(CacheRegion.VOCABULARY);
         
         return vocabularyDb;
     }
@@ -98,5 +122,6 @@ public class VocabularyDao {
         Vocabulary vocabularyDb = (Vocabulary) q.getSingleResult();
         
         em.remove(vocabularyDb);
+        ReferenceCacheUtil.invalidate(CacheRegion.VOCABULARY);
     }
 }
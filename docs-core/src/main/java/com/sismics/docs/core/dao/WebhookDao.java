@@ -4,6 +4,8 @@ import com.google.common.base.Joiner;
 import com.sismics.docs.core.dao.criteria.WebhookCriteria;
 import com.sismics.docs.core.dao.dto.WebhookDto;
 import com.sismics.docs.core.model.jpa.Webhook;
+import com.sismics.docs.core.util.cache.CacheRegion;
+import com.sismics.docs.core.util.cache.ReferenceCacheUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -96,6 +98,7 @@ public class WebhookDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         webhook.setCreateDate(new Date());
         em.persist(webhook);
+        ReferenceCacheUtil.invalidate(CacheRegion.WEBHOOK);
 
         return webhook.getId();
     }
@@ -116,6 +119,7 @@ public class WebhookDao {
         // Delete the group
         Date dateNow = new Date();
         webhookDb.setDeleteDate(dateNow);
+        ReferenceCacheUtil.invalidate(CacheRegion.WEBHOOK);
     }
 }
 
@@ -2,6 +2,9 @@ package com.sismics.docs.core.event;
 
 import com.google.common.base.MoreObjects;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 /**
  * Document updated event.
  *
@@ -12,6 +15,11 @@ public class DocumentUpdatedAsyncEvent extends UserEvent {
      * Document ID.
      */
     private String documentId;
+
+    /**
+     * IDs of the users who fired the events merged into this one.
+     */
+    private final Set<String> mergedUserIdSet = new LinkedHashSet<>();
     
     public String getDocumentId() {
         return documentId;
@@ -21,10 +29,34 @@ public class DocumentUpdatedAsyncEvent extends UserEvent {
         this.documentId = documentId;
     }
 
+    /**
+     * Merge another update of the same document into this event.
+     *
+     * @param event Document updated event
+     */
+    public void merge(DocumentUpdatedAsyncEvent event) {
+        mergedUserIdSet.add(event.getUserId());
+        mergedUserIdSet.addAll(event.mergedUserIdSet);
+    }
+
+    /**
+     * Returns the IDs of the users who fired this event and the events merged into it.
+     *
+     * @return User IDs
+     */
+    public Set<String> getUserIdSet() {
+        Set<String> userIdSet = new LinkedHashSet<>();
+        userIdSet.add(getUserId());
+        userIdSet.addAll(mergedUserIdSet);
+        return userIdSet;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
             .add("documentId", documentId)
+            .add("mergedUserIdSet", mergedUserIdSet.isEmpty() ? null : mergedUserIdSet)
+            .omitNullValues()
             .toString();
     }
-}
\ No newline at end of file
+}
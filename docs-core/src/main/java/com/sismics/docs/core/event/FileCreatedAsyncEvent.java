@@ -6,4 +6,17 @@ package com.sismics.docs.core.event;
  * @author bgamard
  */
 public class FileCreatedAsyncEvent extends FileEvent {
-}
\ No newline at end of file
+    /**
+     * ID of an identical file whose thumbnails and text content are reused, null to process the file.
+     */
+    private String sourceFileId;
+
+    public String getSourceFileId() {
+        return sourceFileId;
+    }
+
+    public FileCreatedAsyncEvent setSourceFileId(String sourceFileId) {
+        this.sourceFileId = sourceFileId;
+        return this;
+    }
+}
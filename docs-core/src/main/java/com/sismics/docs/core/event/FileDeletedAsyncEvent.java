@@ -15,6 +15,16 @@ public class FileDeletedAsyncEvent extends UserEvent {
 
     private Long fileSize;
 
+    /**
+     * ID of the user who created the file, and was charged for it.
+     */
+    private String fileUserId;
+
+    /**
+     * Content hash, null for files uploaded before it was stored.
+     */
+    private String fileHash;
+
     public String getFileId() {
         return fileId;
     }
@@ -31,11 +41,28 @@ public class FileDeletedAsyncEvent extends UserEvent {
         this.fileSize = fileSize;
     }
 
+    public String getFileUserId() {
+        return fileUserId;
+    }
+
+    public void setFileUserId(String fileUserId) {
+        this.fileUserId = fileUserId;
+    }
+
+    public String getFileHash() {
+        return fileHash;
+    }
+
+    public void setFileHash(String fileHash) {
+        this.fileHash = fileHash;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
             .add("fileId", fileId)
             .add("fileSize", fileSize)
+            .add("fileHash", fileHash)
             .toString();
     }
 }
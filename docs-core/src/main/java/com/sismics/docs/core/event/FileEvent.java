@@ -1,6 +1,7 @@
 package com.sismics.docs.core.event;
 
 import com.google.common.base.MoreObjects;
+import com.sismics.docs.core.constant.FileProcessingPriority;
 
 import java.nio.file.Path;
 
@@ -21,10 +22,15 @@ public abstract class FileEvent extends UserEvent {
     private String language;
     
     /**
-     * Unencrypted original file.
+     * Unencrypted original file, decrypted during the processing if null.
      */
     private Path unencryptedFile;
 
+    /**
+     * Processing priority.
+     */
+    private FileProcessingPriority priority = FileProcessingPriority.INTERACTIVE;
+
     public String getFileId() {
         return fileId;
     }
@@ -50,11 +56,20 @@ public abstract class FileEvent extends UserEvent {
         return this;
     }
 
+    public FileProcessingPriority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(FileProcessingPriority priority) {
+        this.priority = priority;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
             .add("fileId", fileId)
             .add("language", language)
+            .add("priority", priority)
             .toString();
     }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * Listener on document updated.
@@ -65,19 +66,19 @@ public class DocumentUpdatedAsyncListener {
             ContributorDao contributorDao = new ContributorDao();
             List<Contributor> contributorList = contributorDao.findByDocumentId(event.getDocumentId());
 
-            // Check if the user firing this event is not already a contributor
+            // Check if the users firing this event are not already contributors
+            Set<String> userIdSet = event.getUserIdSet();
             for (Contributor contributor : contributorList) {
-                if (contributor.getUserId().equals(event.getUserId())) {
-                    // The current user is already a contributor on this document, don't do anything
-                    return;
-                }
+                userIdSet.remove(contributor.getUserId());
             }
 
-            // Add a new contributor
-            Contributor contributor = new Contributor();
-            contributor.setDocumentId(event.getDocumentId());
-            contributor.setUserId(event.getUserId());
-            contributorDao.create(contributor);
+            // Add the new contributors
+            for (String userId : userIdSet) {
+                Contributor contributor = new Contributor();
+                contributor.setDocumentId(event.getDocumentId());
+                contributor.setUserId(userId);
+                contributorDao.create(contributor);
+            }
         });
     }
 }
@@ -2,12 +2,15 @@ package com.sismics.docs.core.listener.async;
 
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.dao.FileContentDao;
+import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.FileDeletedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.PdfCacheUtil;
 import com.sismics.docs.core.util.TransactionUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,9 +39,18 @@ public class FileDeletedAsyncListener {
             log.info("File deleted event: " + event.toString());
         }
         TransactionUtil.handle(() -> {
+            // The extracted text belongs to this file only
+            new FileContentDao().update(event.getFileId(), null);
+
+            // The content is shared by all the files of its creator with the same hash, refund it with the last one
+            String fileUserId = event.getFileUserId() == null ? event.getUserId() : event.getFileUserId();
+            if (event.getFileHash() != null && !new FileDao().removeBlobReference(fileUserId, event.getFileHash())) {
+                return;
+            }
+
             // Update the user quota
             UserDao userDao = new UserDao();
-            User user = userDao.getById(event.getUserId());
+            User user = userDao.getById(fileUserId);
             if (user != null) {
                 Long fileSize = event.getFileSize();
 
@@ -54,12 +66,13 @@ public class FileDeletedAsyncListener {
             }
         });
 
-        // Delete the file from storage
+        // Delete the file from storage, identical files have their own link to the content
         FileUtil.delete(event.getFileId());
+        PdfCacheUtil.invalidate(event.getFileId());
 
         TransactionUtil.handle(() -> {
             // Update index
-            AppContext.getInstance().getIndexingHandler().deleteDocument(event.getFileId());
+            AppContext.getInstance().getIndexingHandler().deleteFile(event.getFileId());
         });
     }
 }
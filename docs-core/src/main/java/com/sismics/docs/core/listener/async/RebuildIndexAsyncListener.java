@@ -2,6 +2,8 @@ package com.sismics.docs.core.listener.async;
 
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
@@ -9,14 +11,27 @@ import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.indexing.IndexRebuildProgress;
+import com.sismics.docs.core.util.indexing.IndexingHandler;
+import com.sismics.util.EnvironmentUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * Listener on rebuild index.
- * 
+ * The index is rebuilt in a new index by several threads, and replaces the current one when done.
+ *
  * @author bgamard
  */
 public class RebuildIndexAsyncListener {
@@ -25,9 +40,19 @@ public class RebuildIndexAsyncListener {
      */
     private static final Logger log = LoggerFactory.getLogger(RebuildIndexAsyncListener.class);
 
+    /**
+     * Number of documents or files read and indexed at once.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Minimum time between two checkpoints of the rebuild progress.
+     */
+    private static final long CHECKPOINT_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
     /**
      * Rebuild Lucene index.
-     * 
+     *
      * @param event Index rebuild event
      */
     @Subscribe
@@ -37,35 +62,210 @@ public class RebuildIndexAsyncListener {
             log.info("Rebuild index event: " + event.toString());
         }
 
-        // Clear the index
-        AppContext.getInstance().getIndexingHandler().clearIndex();
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+        IndexRebuildProgress progress;
+        try {
+            progress = indexingHandler.startRebuild();
+        } catch (Exception e) {
+            log.error("Unable to start rebuilding the index", e);
+            return;
+        }
+        if (progress == null) {
+            log.info("The index is already being rebuilt");
+            return;
+        }
+        log.info("Rebuilding index from: " + progress);
 
-        // Index all documents
-        TransactionUtil.handle(() -> {
-            int offset = 0;
-            DocumentDao documentDao = new DocumentDao();
-            List<Document> documentList;
-            do {
-                documentList = documentDao.findAll(offset, 100);
-                AppContext.getInstance().getIndexingHandler().createDocuments(documentList);
-                offset += 100;
-            } while (documentList.size() > 0);
-        });
+        try {
+            // Index all documents
+            if (progress.getPhase() == IndexRebuildProgress.Phase.DOCUMENTS) {
+                DocumentDao documentDao = new DocumentDao();
+                progress.setTotalCount(inTransaction(documentDao::getDocumentCount));
+                rebuildPhase(indexingHandler, progress,
+                        lastId -> documentDao.findAllAfter(lastId, BATCH_SIZE), Document::getId,
+                        indexingHandler::rebuildDocuments);
+                progress.startPhase(IndexRebuildProgress.Phase.FILES);
+                indexingHandler.checkpointRebuild(progress);
+            }
 
-        // Index all files
-        TransactionUtil.handle(() -> {
-            int offset = 0;
+            // Index all files
             FileDao fileDao = new FileDao();
-            List<File> fileList;
-            do {
-                fileList = fileDao.findAll(offset, 100);
-                AppContext.getInstance().getIndexingHandler().createFiles(fileList);
-                offset += 100;
-            } while (fileList.size() > 0);
-        });
+            progress.setTotalCount(inTransaction(fileDao::getFileCount));
+            rebuildPhase(indexingHandler, progress,
+                    lastId -> fileDao.findAllAfter(lastId, BATCH_SIZE), File::getId,
+                    indexingHandler::rebuildFiles);
+
+            // Replace the current index
+            inTransaction(() -> {
+                indexingHandler.finishRebuild();
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Error rebuilding the index, it will resume from its last checkpoint", e);
+            indexingHandler.stopRebuild();
+            return;
+        }
 
         if (log.isInfoEnabled()) {
             log.info("Rebuilding index done");
         }
     }
+
+    /**
+     * Index all the entities of a phase, by batches read in ascending ID order and indexed in parallel.
+     * The progress only advances past a batch once it and all the previous ones are indexed.
+     *
+     * @param indexingHandler Indexing handler
+     * @param progress Progress
+     * @param pageLoader Loads the batch following an ID
+     * @param idGetter Returns the ID of an entity
+     * @param batchIndexer Indexes a batch
+     * @param <T> Entity type
+     * @throws Exception e
+     */
+    private <T> void rebuildPhase(IndexingHandler indexingHandler, IndexRebuildProgress progress,
+                                  Function<String, List<T>> pageLoader, Function<T, String> idGetter,
+                                  BatchIndexer<T> batchIndexer) throws Exception {
+        int threadCount = EnvironmentUtil.getIntEnv(Constants.LUCENE_REBUILD_THREADS_ENV, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = null;
+        if (!EnvironmentUtil.isUnitTest()) {
+            executor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                    .setNameFormat("lucene-rebuild-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+
+        Deque<Batch> pendingBatchDeque = new ArrayDeque<>();
+        long lastCheckpoint = System.currentTimeMillis();
+        try {
+            String lastId = progress.getLastId();
+            while (true) {
+                String pageLastId = lastId;
+                List<T> page = inTransaction(() -> pageLoader.apply(pageLastId));
+                if (page.isEmpty()) {
+                    break;
+                }
+                lastId = idGetter.apply(page.get(page.size() - 1));
+
+                Callable<Void> task = () -> inTransaction(() -> {
+                    batchIndexer.index(page);
+                    return null;
+                });
+                Batch batch = new Batch(lastId, page.size());
+                if (executor == null) {
+                    task.call();
+                } else {
+                    batch.future = executor.submit(task);
+                }
+                pendingBatchDeque.add(batch);
+
+                // Keep a bounded number of batches in memory
+                while (pendingBatchDeque.size() > threadCount * 2) {
+                    completeBatch(pendingBatchDeque.poll(), progress);
+                }
+                if (System.currentTimeMillis() - lastCheckpoint > CHECKPOINT_INTERVAL) {
+                    completeBatches(pendingBatchDeque, progress);
+                    indexingHandler.checkpointRebuild(progress);
+                    lastCheckpoint = System.currentTimeMillis();
+                    log.info("Rebuilding index: " + progress);
+                }
+            }
+            completeBatches(pendingBatchDeque, progress);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Wait for all the pending batches.
+     *
+     * @param pendingBatchDeque Pending batches, in reading order
+     * @param progress Progress
+     * @throws Exception e
+     */
+    private void completeBatches(Deque<Batch> pendingBatchDeque, IndexRebuildProgress progress) throws Exception {
+        while (!pendingBatchDeque.isEmpty()) {
+            completeBatch(pendingBatchDeque.poll(), progress);
+        }
+    }
+
+    /**
+     * Wait for a batch to be indexed and advance the progress past it.
+     *
+     * @param batch Batch
+     * @param progress Progress
+     * @throws Exception e
+     */
+    private void completeBatch(Batch batch, IndexRebuildProgress progress) throws Exception {
+        if (batch.future != null) {
+            batch.future.get();
+        }
+        progress.advance(batch.lastId, batch.size);
+    }
+
+    /**
+     * Run a callable in its own transaction, and rethrow its error.
+     *
+     * @param callable Callable
+     * @param <T> Result type
+     * @return Result
+     * @throws Exception e
+     */
+    private static <T> T inTransaction(Callable<T> callable) throws Exception {
+        AtomicReference<T> result = new AtomicReference<>();
+        AtomicReference<Exception> error = new AtomicReference<>();
+        TransactionUtil.handle(() -> {
+            try {
+                result.set(callable.call());
+            } catch (Exception e) {
+                error.set(e);
+            }
+        });
+        if (error.get() != null) {
+            throw error.get();
+        }
+        return result.get();
+    }
+
+    /**
+     * Indexes a batch of entities.
+     *
+     * @param <T> Entity type
+     */
+    private interface BatchIndexer<T> {
+        /**
+         * Index a batch.
+         *
+         * @param batch Entities
+         * @throws Exception e
+         */
+        void index(List<T> batch) throws Exception;
+    }
+
+    /**
+     * A batch being indexed.
+     */
+    private static class Batch {
+        /**
+         * ID of the last entity of the batch.
+         */
+        private final String lastId;
+
+        /**
+         * Number of entities.
+         */
+        private final int size;
+
+        /**
+         * Indexing result, null if indexed synchronously.
+         */
+        private Future<?> future;
+
+        Batch(String lastId, int size) {
+            this.lastId = lastId;
+            this.size = size;
+        }
+    }
 }
@@ -8,9 +8,12 @@ import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.listener.async.*;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.service.DocumentUpdateCoalescingService;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.service.FileService;
 import com.sismics.docs.core.service.FileSizeService;
 import com.sismics.docs.core.service.InboxService;
+import com.sismics.docs.core.service.WebhookService;
 import com.sismics.docs.core.util.PdfUtil;
 import com.sismics.docs.core.util.indexing.IndexingHandler;
 import com.sismics.util.ClasspathScanner;
@@ -71,6 +74,21 @@ public class AppContext {
      */
     private FileSizeService fileSizeService;
 
+    /**
+     * File processing service.
+     */
+    private FileProcessingService fileProcessingService;
+
+    /**
+     * Webhook service.
+     */
+    private WebhookService webhookService;
+
+    /**
+     * Document update coalescing service.
+     */
+    private DocumentUpdateCoalescingService documentUpdateCoalescingService;
+
     /**
      * Asynchronous executors.
      */
@@ -103,6 +121,21 @@ public class AppContext {
         fileService.startAsync();
         fileService.awaitRunning();
 
+        // Start file processing service
+        fileProcessingService = new FileProcessingService();
+        fileProcessingService.startAsync();
+        fileProcessingService.awaitRunning();
+
+        // Start document update coalescing service
+        documentUpdateCoalescingService = new DocumentUpdateCoalescingService();
+        documentUpdateCoalescingService.startAsync();
+        documentUpdateCoalescingService.awaitRunning();
+
+        // Start webhook service
+        webhookService = new WebhookService();
+        webhookService.startAsync();
+        webhookService.awaitRunning();
+
         // Start inbox service
         inboxService = new InboxService();
         inboxService.startAsync();
@@ -146,7 +179,6 @@ public class AppContext {
         asyncExecutorList = new ArrayList<>();
 
         asyncEventBus = newAsyncEventBus();
-        asyncEventBus.register(new FileProcessingAsyncListener());
         asyncEventBus.register(new FileDeletedAsyncListener());
         asyncEventBus.register(new DocumentCreatedAsyncListener());
         asyncEventBus.register(new DocumentUpdatedAsyncListener());
@@ -193,7 +225,8 @@ public class AppContext {
     }
 
     /**
-     * Return the current number of queued tasks waiting to be processed.
+     * Return the current number of queued tasks waiting to be processed,
+     * including the files in the processing pipeline, the document updates and the webhook deliveries.
      *
      * @return Number of queued tasks
      */
@@ -202,6 +235,15 @@ public class AppContext {
         for (ThreadPoolExecutor executor : asyncExecutorList) {
             queueSize += executor.getTaskCount() - executor.getCompletedTaskCount();
         }
+        if (fileProcessingService != null) {
+            queueSize += fileProcessingService.getPendingCount();
+        }
+        if (documentUpdateCoalescingService != null) {
+            queueSize += documentUpdateCoalescingService.getPendingCount();
+        }
+        if (webhookService != null) {
+            queueSize += webhookService.getPendingCount();
+        }
         return queueSize;
     }
 
@@ -225,7 +267,25 @@ public class AppContext {
         return fileService;
     }
 
+    public FileProcessingService getFileProcessingService() {
+        return fileProcessingService;
+    }
+
+    public WebhookService getWebhookService() {
+        return webhookService;
+    }
+
+    public DocumentUpdateCoalescingService getDocumentUpdateCoalescingService() {
+        return documentUpdateCoalescingService;
+    }
+
     public void shutDown() {
+        if (documentUpdateCoalescingService != null) {
+            // Post the waiting events before stopping the event bus
+            documentUpdateCoalescingService.stopAsync();
+            documentUpdateCoalescingService.awaitTerminated();
+        }
+
         for (ExecutorService executor : asyncExecutorList) {
             // Shutdown executor, don't accept any more tasks (can cause error with nested events)
             try {
@@ -236,6 +296,16 @@ public class AppContext {
             }
         }
 
+        if (fileProcessingService != null) {
+            fileProcessingService.stopAsync();
+            fileProcessingService.awaitTerminated();
+        }
+
+        if (webhookService != null) {
+            webhookService.stopAsync();
+            webhookService.awaitTerminated();
+        }
+
         if (indexingHandler != null) {
             indexingHandler.shutDown();
         }
@@ -46,12 +46,6 @@ public class File implements Loggable {
     @Column(name = "FIL_MIMETYPE_C", length = 100)
     private String mimeType;
 
-    /**
-     * OCR-ized content.
-     */
-    @Column(name = "FIL_CONTENT_C")
-    private String content;
-    
     /**
      * Creation date.
      */
@@ -96,6 +90,12 @@ public class File implements Loggable {
     @Column(name = "FIL_SIZE_N", nullable = false)
     private Long size;
 
+    /**
+     * SHA-256 hash of the unencrypted content, null for files uploaded before it was stored.
+     */
+    @Column(name = "FIL_HASH_C", length = 64)
+    private String hash;
+
     /**
      * Private key to decrypt the file.
      * Not saved to database, of course.
@@ -153,14 +153,6 @@ public class File implements Loggable {
         this.deleteDate = deleteDate;
     }
     
-    public String getContent() {
-        return content;
-    }
-
-    public void setContent(String content) {
-        this.content = content;
-    }
-
     public Integer getOrder() {
         return order;
     }
@@ -224,6 +216,15 @@ public class File implements Loggable {
         return this;
     }
 
+    public String getHash() {
+        return hash;
+    }
+
+    public File setHash(String hash) {
+        this.hash = hash;
+        return this;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -0,0 +1,69 @@
+package com.sismics.docs.core.model.jpa;
+
+import com.google.common.base.MoreObjects;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Text content extracted from a file, stored apart from the file itself
+ * so it is only loaded when needed.
+ */
+@Entity
+@Table(name = "T_FILE_CONTENT")
+public class FileContent {
+    /**
+     * File ID.
+     */
+    @Id
+    @Column(name = "FCO_IDFILE_C", length = 36)
+    private String fileId;
+    
+    /**
+     * UTF-8 content, deflated if compressed.
+     */
+    @Column(name = "FCO_CONTENT_B", nullable = false)
+    private byte[] content;
+    
+    /**
+     * True if the content is deflated.
+     */
+    @Column(name = "FCO_COMPRESSED_B", nullable = false)
+    private boolean compressed;
+    
+    public String getFileId() {
+        return fileId;
+    }
+
+    public FileContent setFileId(String fileId) {
+        this.fileId = fileId;
+        return this;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public FileContent setContent(byte[] content) {
+        this.content = content;
+        return this;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public FileContent setCompressed(boolean compressed) {
+        this.compressed = compressed;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("fileId", fileId)
+                .add("compressed", compressed)
+                .toString();
+    }
+}
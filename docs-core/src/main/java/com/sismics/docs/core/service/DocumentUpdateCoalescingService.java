@@ -0,0 +1,152 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.util.EnvironmentUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Document update coalescing service.
+ * The document updated events wait for a short window before being posted to the async event bus,
+ * and the other updates of the same document during this window are merged into them,
+ * so that a document receiving many files is processed and indexed once.
+ * In unit tests, the events are posted immediately.
+ */
+public class DocumentUpdateCoalescingService extends AbstractIdleService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(DocumentUpdateCoalescingService.class);
+
+    /**
+     * Time between the first update of a document and its event, in milliseconds.
+     */
+    private final long window;
+
+    /**
+     * True to post the events immediately.
+     */
+    private final boolean inline;
+
+    /**
+     * Executor of the delayed events.
+     */
+    private ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Events waiting, by document ID.
+     */
+    private final Map<String, DocumentUpdatedAsyncEvent> pendingEventMap = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor, with the settings from the environment.
+     */
+    public DocumentUpdateCoalescingService() {
+        this(EnvironmentUtil.getIntEnv(Constants.DOCUMENT_UPDATE_COALESCING_WINDOW_ENV, Constants.DEFAULT_DOCUMENT_UPDATE_COALESCING_WINDOW),
+                EnvironmentUtil.isUnitTest());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param window Time between the first update of a document and its event, in milliseconds
+     * @param inline True to post the events immediately
+     */
+    DocumentUpdateCoalescingService(long window, boolean inline) {
+        this.window = window;
+        this.inline = inline;
+    }
+
+    @Override
+    protected void startUp() {
+        if (inline) {
+            return;
+        }
+        scheduler = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("document-update-coalescing-%d").setDaemon(true).build());
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        log.info("Document update coalescing service started with a window of {}ms", window);
+    }
+
+    @Override
+    protected void shutDown() {
+        if (inline) {
+            return;
+        }
+        scheduler.shutdown();
+
+        // Post the events still waiting
+        for (String documentId : pendingEventMap.keySet()) {
+            flush(documentId);
+        }
+        log.info("Document update coalescing service shut down");
+    }
+
+    /**
+     * Submit a document updated event, merged with the event waiting for the same document if any.
+     *
+     * @param event Document updated event
+     */
+    public void submit(DocumentUpdatedAsyncEvent event) {
+        if (inline) {
+            post(event);
+            return;
+        }
+
+        String documentId = event.getDocumentId();
+        DocumentUpdatedAsyncEvent pendingEvent = pendingEventMap.merge(documentId, event, (waitingEvent, newEvent) -> {
+            waitingEvent.merge(newEvent);
+            return waitingEvent;
+        });
+        if (pendingEvent != event) {
+            // Merged into the waiting event
+            return;
+        }
+
+        try {
+            scheduler.schedule(() -> flush(documentId), window, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            flush(documentId);
+        }
+    }
+
+    /**
+     * Post the event waiting for a document.
+     *
+     * @param documentId Document ID
+     */
+    private void flush(String documentId) {
+        DocumentUpdatedAsyncEvent event = pendingEventMap.remove(documentId);
+        if (event != null) {
+            post(event);
+        }
+    }
+
+    /**
+     * Post an event to the async event bus.
+     *
+     * @param event Document updated event
+     */
+    void post(DocumentUpdatedAsyncEvent event) {
+        AppContext.getInstance().getAsyncEventBus().post(event);
+    }
+
+    /**
+     * Return the number of documents with an event waiting.
+     *
+     * @return Number of events
+     */
+    public int getPendingCount() {
+        return pendingEventMap.size();
+    }
+}
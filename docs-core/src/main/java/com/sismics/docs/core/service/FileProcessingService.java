@@ -0,0 +1,606 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.docs.core.dao.FileContentDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.UserDao;
+import com.sismics.docs.core.event.FileCreatedAsyncEvent;
+import com.sismics.docs.core.event.FileEvent;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.EncryptionUtil;
+import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.PdfCacheUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.format.FormatHandler;
+import com.sismics.docs.core.util.format.FormatHandlerUtil;
+import com.sismics.docs.core.util.format.PdfFormatHandler;
+import com.sismics.util.EnvironmentUtil;
+import com.sismics.util.ImageUtil;
+import com.sismics.util.Scalr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * File processing service.
+ * Files go through a pipeline of stages (decrypt, thumbnail, text extraction, index),
+ * each stage having its own threads and a bounded queue per priority.
+ * Files are submitted after a commit, often on a request thread: if the first stage is full,
+ * the file is kept in a bounded overflow queue instead of blocking the caller, except for bulk imports
+ * which run on a background thread and are slowed down to the pipeline speed.
+ * If the overflow queue is full too, the caller waits a little, then the file is dropped
+ * and must be processed again manually.
+ * Between stages, a full queue blocks the previous stage until some room is available.
+ */
+public class FileProcessingService extends AbstractIdleService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FileProcessingService.class);
+
+    /**
+     * Pipeline stages, in processing order.
+     */
+    private List<Stage> stageList;
+
+    /**
+     * Submission sequence, to process files of the same priority in order.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    protected void startUp() {
+        int queueSize = EnvironmentUtil.getIntEnv(Constants.FILE_PROCESSING_QUEUE_SIZE_ENV, Constants.DEFAULT_FILE_PROCESSING_QUEUE_SIZE);
+        int overflowSize = EnvironmentUtil.getIntEnv(Constants.FILE_PROCESSING_OVERFLOW_SIZE_ENV, Constants.DEFAULT_FILE_PROCESSING_OVERFLOW_SIZE);
+        long overflowTimeout = TimeUnit.SECONDS.toMillis(EnvironmentUtil.getIntEnv(Constants.FILE_PROCESSING_OVERFLOW_TIMEOUT_ENV,
+                Constants.DEFAULT_FILE_PROCESSING_OVERFLOW_TIMEOUT));
+        int defaultThreadCount = Math.max(Runtime.getRuntime().availableProcessors() / 2, 2);
+        boolean inline = EnvironmentUtil.isUnitTest();
+        Stage indexStage = new Stage("index", EnvironmentUtil.getIntEnv(Constants.FILE_PROCESSING_INDEX_THREADS_ENV, 2),
+                queueSize, overflowSize, overflowTimeout, this::index, null, inline);
+        Stage extractionStage = new Stage("extraction", EnvironmentUtil.getIntEnv(Constants.FILE_PROCESSING_EXTRACTION_THREADS_ENV, defaultThreadCount),
+                queueSize, overflowSize, overflowTimeout, this::extractContent, indexStage, inline);
+        Stage thumbnailStage = new Stage("thumbnail", EnvironmentUtil.getIntEnv(Constants.FILE_PROCESSING_THUMBNAIL_THREADS_ENV, defaultThreadCount),
+                queueSize, overflowSize, overflowTimeout, this::generateThumbnails, extractionStage, inline);
+        Stage decryptStage = new Stage("decrypt", EnvironmentUtil.getIntEnv(Constants.FILE_PROCESSING_DECRYPT_THREADS_ENV, 2),
+                queueSize, overflowSize, overflowTimeout, this::decrypt, thumbnailStage, inline);
+        stageList = Lists.newArrayList(decryptStage, thumbnailStage, extractionStage, indexStage);
+        PdfFormatHandler.deleteStaleOcrProgress();
+        log.info("File processing service started with a queue size of {} and an overflow size of {}", queueSize, overflowSize);
+    }
+
+    @Override
+    protected void shutDown() {
+        // Stop the stages in order, so that the files in progress can flow to the next ones
+        for (Stage stage : stageList) {
+            stage.shutDown();
+        }
+        log.info("File processing service shut down");
+    }
+
+    /**
+     * Submit a file for processing.
+     * Only bulk imports wait if the first stage is full for their priority,
+     * other files are kept in an overflow queue without blocking the caller, as long as it is not full.
+     *
+     * @param event File event
+     */
+    public void submit(FileEvent event) {
+        log.info("File processing submitted: " + event);
+        if (!(event instanceof FileCreatedAsyncEvent)) {
+            // The file is processed again, its conversions to PDF too
+            PdfCacheUtil.invalidate(event.getFileId());
+        }
+        Job job = new Job(event, event instanceof FileCreatedAsyncEvent, sequence.incrementAndGet());
+        stageList.get(0).submit(job, job.getPriority() == FileProcessingPriority.BULK);
+    }
+
+    /**
+     * Return the current number of files waiting or being processed.
+     *
+     * @return Number of files
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (Stage stage : stageList) {
+            count += stage.getQueuedCount() + stage.getActiveCount();
+        }
+        return count;
+    }
+
+    /**
+     * Getter of stageList.
+     *
+     * @return stageList
+     */
+    public List<Stage> getStageList() {
+        return stageList;
+    }
+
+    /**
+     * Load the file and its creator, decrypt the file if needed.
+     *
+     * @param job Job
+     * @return True to continue the processing
+     */
+    private boolean decrypt(Job job) throws Exception {
+        String sourceFileId = job.fileCreated ? ((FileCreatedAsyncEvent) job.event).getSourceFileId() : null;
+        TransactionUtil.handle(() -> {
+            job.file = new FileDao().getActiveById(job.event.getFileId());
+            if (job.file != null) {
+                // Get the creating user from the database for its private key
+                job.user = new UserDao().getById(job.file.getUserId());
+            }
+            if (sourceFileId != null) {
+                job.content = new FileContentDao().getByFileId(sourceFileId);
+            }
+        });
+        if (job.user == null || job.file == null) {
+            // The user or file has been deleted since
+            return false;
+        }
+
+        if (sourceFileId != null) {
+            // The thumbnails are shared with an identical file, only its text content needs to be indexed
+            return true;
+        }
+
+        job.formatHandler = FormatHandlerUtil.find(job.file.getMimeType());
+        if (job.formatHandler == null) {
+            log.info("Format unhandled: " + job.file.getMimeType());
+            return true;
+        }
+
+        job.unencryptedFile = job.event.getUnencryptedFile();
+        if (job.unencryptedFile == null) {
+            Path storedFile = DirectoryUtil.getStorageDirectory().resolve(job.file.getId());
+            job.unencryptedFile = EncryptionUtil.decryptFile(storedFile, job.user.getPrivateKey());
+        }
+        return true;
+    }
+
+    /**
+     * Generate the encrypted thumbnails of a file.
+     *
+     * @param job Job
+     * @return True to continue the processing
+     */
+    private boolean generateThumbnails(Job job) {
+        if (job.formatHandler == null) {
+            return true;
+        }
+
+        try {
+            Cipher cipher = EncryptionUtil.getEncryptionCipher(job.user.getPrivateKey());
+            BufferedImage image = job.formatHandler.generateThumbnail(job.unencryptedFile);
+            if (image != null) {
+                // Generate thumbnails from image
+                BufferedImage web = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 1280);
+                BufferedImage thumbnail = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 256);
+                image.flush();
+
+                // Write "web" encrypted image
+                Path outputFile = DirectoryUtil.getStorageDirectory().resolve(job.file.getId() + "_web");
+                Files.deleteIfExists(outputFile); // May be shared with an identical file
+                try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
+                    ImageUtil.writeJpeg(web, outputStream);
+                }
+
+                // Write "thumb" encrypted image
+                outputFile = DirectoryUtil.getStorageDirectory().resolve(job.file.getId() + "_thumb");
+                Files.deleteIfExists(outputFile);
+                try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
+                    ImageUtil.writeJpeg(thumbnail, outputStream);
+                }
+            }
+        } catch (Throwable e) {
+            log.error("Unable to generate thumbnails for: " + job.file, e);
+        }
+        return true;
+    }
+
+    /**
+     * Extract text content from a file.
+     *
+     * @param job Job
+     * @return True to continue the processing
+     */
+    private boolean extractContent(Job job) {
+        if (job.formatHandler == null) {
+            return true;
+        }
+
+        long startTime = System.currentTimeMillis();
+        log.info("Start extracting content from: " + job.file);
+        try {
+            job.content = job.formatHandler.extractContent(job.event.getLanguage(), job.unencryptedFile);
+        } catch (Throwable e) {
+            log.error("Error extracting content from: " + job.file, e);
+        }
+        log.info(MessageFormat.format("File content extracted in {0}ms: " + job.file.getId(), System.currentTimeMillis() - startTime));
+        return true;
+    }
+
+    /**
+     * Save the text content and index the file.
+     *
+     * @param job Job
+     * @return True to continue the processing
+     */
+    private boolean index(Job job) {
+        TransactionUtil.handle(() -> {
+            // Save the file to database
+            FileDao fileDao = new FileDao();
+            File freshFile = fileDao.getActiveById(job.event.getFileId());
+            if (freshFile == null) {
+                // The file has been deleted since the text extraction started, ignore the result
+                return;
+            }
+
+            FileContentDao fileContentDao = new FileContentDao();
+            fileContentDao.update(freshFile.getId(), job.content);
+
+            // Update index with the updated file
+            if (job.fileCreated) {
+                AppContext.getInstance().getIndexingHandler().createFile(freshFile);
+            } else {
+                AppContext.getInstance().getIndexingHandler().updateFile(freshFile);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * A processing step of a pipeline.
+     */
+    interface Step {
+        /**
+         * Process a file.
+         *
+         * @param job Job
+         * @return True to continue the processing, false to end it
+         * @throws Exception e
+         */
+        boolean process(Job job) throws Exception;
+    }
+
+    /**
+     * File going through the pipeline.
+     */
+    static class Job {
+        private final FileEvent event;
+        private final boolean fileCreated;
+        private final long sequence;
+        private File file;
+        private User user;
+        private FormatHandler formatHandler;
+        private Path unencryptedFile;
+        private String content;
+
+        Job(FileEvent event, boolean fileCreated, long sequence) {
+            this.event = event;
+            this.fileCreated = fileCreated;
+            this.sequence = sequence;
+        }
+
+        FileEvent getEvent() {
+            return event;
+        }
+
+        private FileProcessingPriority getPriority() {
+            return event.getPriority() == null ? FileProcessingPriority.INTERACTIVE : event.getPriority();
+        }
+    }
+
+    /**
+     * Pipeline stage, with its own threads and a bounded queue per priority.
+     */
+    public static class Stage {
+        /**
+         * Stage name.
+         */
+        private final String name;
+
+        /**
+         * Number of threads.
+         */
+        private final int threadCount;
+
+        /**
+         * Processing step.
+         */
+        private final Step step;
+
+        /**
+         * Next stage, null for the last one.
+         */
+        private final Stage nextStage;
+
+        /**
+         * Executor, null in unit tests to process inline.
+         */
+        private final ThreadPoolExecutor executor;
+
+        /**
+         * Queue capacities, indexed by priority.
+         */
+        private final Semaphore[] capacities;
+
+        /**
+         * Jobs waiting for some room in the queue without blocking their caller, indexed by priority.
+         */
+        private final List<BlockingQueue<Job>> overflowQueueList = new ArrayList<>();
+
+        /**
+         * Time in milliseconds a submission waits for some room in a full overflow queue.
+         */
+        private final long overflowTimeout;
+
+        /**
+         * Queue size per priority.
+         */
+        private final int queueSize;
+
+        /**
+         * Number of files processed by this stage.
+         */
+        private final AtomicLong completedCount = new AtomicLong();
+
+        /**
+         * Number of files dropped because the overflow queue was full.
+         */
+        private final AtomicLong droppedCount = new AtomicLong();
+
+        Stage(String name, int threadCount, int queueSize, int overflowSize, long overflowTimeout, Step step, Stage nextStage, boolean inline) {
+            this.name = name;
+            this.threadCount = threadCount;
+            this.queueSize = queueSize;
+            this.overflowTimeout = overflowTimeout;
+            this.step = step;
+            this.nextStage = nextStage;
+            capacities = new Semaphore[FileProcessingPriority.values().length];
+            for (int i = 0; i < capacities.length; i++) {
+                capacities[i] = new Semaphore(queueSize);
+                overflowQueueList.add(new LinkedBlockingQueue<>(overflowSize));
+            }
+            if (inline) {
+                executor = null;
+            } else {
+                executor = new ThreadPoolExecutor(threadCount, threadCount,
+                        1L, TimeUnit.MINUTES,
+                        new PriorityBlockingQueue<>(),
+                        new ThreadFactoryBuilder().setNameFormat("file-processing-" + name + "-%d").build());
+            }
+        }
+
+        /**
+         * Submit a job to this stage.
+         *
+         * @param job Job
+         * @param wait If true, wait for some room in the queue, otherwise keep the job in the overflow queue,
+         *             or drop it if the overflow queue stays full
+         */
+        void submit(Job job, boolean wait) {
+            if (executor == null) {
+                run(job);
+                return;
+            }
+
+            int priority = job.getPriority().ordinal();
+            Semaphore capacity = capacities[priority];
+            if (!wait) {
+                BlockingQueue<Job> overflowQueue = overflowQueueList.get(priority);
+                if (!overflowQueue.isEmpty() || !capacity.tryAcquire()) {
+                    // Queued after the jobs already waiting, the room may have been freed in the meantime
+                    try {
+                        if (!overflowQueue.offer(job, overflowTimeout, TimeUnit.MILLISECONDS)) {
+                            droppedCount.incrementAndGet();
+                            log.error("File processing stage " + name + " is full, dropping (process the file again later): " + job.event);
+                            FileUtil.endProcessingFile(job.event.getFileId());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        droppedCount.incrementAndGet();
+                        log.warn("Interrupted while waiting for the file processing stage " + name + ": " + job.event);
+                        FileUtil.endProcessingFile(job.event.getFileId());
+                    }
+                    drainOverflow(priority);
+                    return;
+                }
+            } else {
+                try {
+                    capacity.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Interrupted while waiting for the file processing stage " + name + ": " + job.event);
+                    FileUtil.endProcessingFile(job.event.getFileId());
+                    return;
+                }
+            }
+            execute(job, capacity);
+        }
+
+        /**
+         * Move the jobs of the overflow queue to the queue while there is some room.
+         *
+         * @param priority Priority index
+         */
+        private void drainOverflow(int priority) {
+            BlockingQueue<Job> overflowQueue = overflowQueueList.get(priority);
+            Semaphore capacity = capacities[priority];
+            while (!overflowQueue.isEmpty() && capacity.tryAcquire()) {
+                Job job = overflowQueue.poll();
+                if (job == null) {
+                    // Drained by another thread
+                    capacity.release();
+                    return;
+                }
+                execute(job, capacity);
+            }
+        }
+
+        /**
+         * Queue a job, a place being acquired for it.
+         *
+         * @param job Job
+         * @param capacity Queue capacity of the job priority
+         */
+        private void execute(Job job, Semaphore capacity) {
+            try {
+                executor.execute(new Task(job, capacity));
+            } catch (RejectedExecutionException e) {
+                capacity.release();
+                log.warn("File processing stage " + name + " is shut down, dropping: " + job.event);
+                FileUtil.endProcessingFile(job.event.getFileId());
+            }
+        }
+
+        /**
+         * Run the step on a job and hand it over to the next stage.
+         *
+         * @param job Job
+         */
+        private void run(Job job) {
+            boolean proceed;
+            try {
+                proceed = step.process(job);
+            } catch (Throwable e) {
+                log.error("Error processing file in stage " + name + ": " + job.event, e);
+                proceed = false;
+            }
+            completedCount.incrementAndGet();
+
+            if (proceed && nextStage != null) {
+                nextStage.submit(job, true);
+            } else {
+                FileUtil.endProcessingFile(job.event.getFileId());
+            }
+        }
+
+        /**
+         * Stop accepting jobs and wait for the queued ones.
+         */
+        void shutDown() {
+            if (executor == null) {
+                return;
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                // NOP
+            }
+
+            // The jobs still in the overflow queues cannot be processed anymore
+            for (BlockingQueue<Job> overflowQueue : overflowQueueList) {
+                for (Job job = overflowQueue.poll(); job != null; job = overflowQueue.poll()) {
+                    log.warn("File processing stage " + name + " is shut down, dropping: " + job.event);
+                    FileUtil.endProcessingFile(job.event.getFileId());
+                }
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getThreadCount() {
+            return threadCount;
+        }
+
+        /**
+         * Return the number of files waiting in this stage.
+         *
+         * @return Number of files
+         */
+        public int getQueuedCount() {
+            if (executor == null) {
+                return 0;
+            }
+            int count = executor.getQueue().size();
+            for (BlockingQueue<Job> overflowQueue : overflowQueueList) {
+                count += overflowQueue.size();
+            }
+            return count;
+        }
+
+        /**
+         * Return the number of files of a given priority waiting in this stage.
+         *
+         * @param priority Priority
+         * @return Number of files
+         */
+        public int getQueuedCount(FileProcessingPriority priority) {
+            return queueSize - capacities[priority.ordinal()].availablePermits()
+                    + overflowQueueList.get(priority.ordinal()).size();
+        }
+
+        /**
+         * Return the number of files being processed by this stage.
+         *
+         * @return Number of files
+         */
+        public int getActiveCount() {
+            return executor == null ? 0 : executor.getActiveCount();
+        }
+
+        public long getCompletedCount() {
+            return completedCount.get();
+        }
+
+        public long getDroppedCount() {
+            return droppedCount.get();
+        }
+
+        /**
+         * Queued job, ordered by priority then by submission.
+         */
+        private class Task implements Runnable, Comparable<Task> {
+            private final Job job;
+            private final Semaphore capacity;
+
+            private Task(Job job, Semaphore capacity) {
+                this.job = job;
+                this.capacity = capacity;
+            }
+
+            @Override
+            public void run() {
+                // The job leaves the queue, making room for a job of the overflow queue
+                capacity.release();
+                drainOverflow(job.getPriority().ordinal());
+                Stage.this.run(job);
+            }
+
+            @Override
+            public int compareTo(Task other) {
+                int result = job.getPriority().compareTo(other.job.getPriority());
+                return result != 0 ? result : Long.compare(job.sequence, other.job.sequence);
+            }
+        }
+    }
+}
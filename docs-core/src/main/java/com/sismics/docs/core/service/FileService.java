@@ -1,6 +1,7 @@
 package com.sismics.docs.core.service;
 
 import com.google.common.util.concurrent.AbstractScheduledService;
+import com.sismics.docs.core.util.FileUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,8 +11,8 @@ import java.lang.ref.ReferenceQueue;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -29,7 +30,7 @@ public class FileService extends AbstractScheduledService {
      * Phantom references queue.
      */
     private final ReferenceQueue<Path> referenceQueue = new ReferenceQueue<>();
-    private final Set<TemporaryPathReference> referenceSet = new HashSet<>();
+    private final Set<TemporaryPathReference> referenceSet = ConcurrentHashMap.newKeySet();
 
     public FileService() {
     }
@@ -37,6 +38,7 @@ public class FileService extends AbstractScheduledService {
     @Override
     protected void startUp() {
         log.info("File service starting up");
+        FileUtil.deleteUploadFiles();
     }
 
     @Override
@@ -1,7 +1,11 @@
 package com.sismics.docs.core.service;
 
 import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.criteria.TagCriteria;
 import com.sismics.docs.core.dao.dto.TagDto;
@@ -14,7 +18,10 @@ import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.TransactionUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.EmailUtil;
+import com.sismics.util.EnvironmentUtil;
 import com.sismics.util.context.ThreadLocalContext;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,12 +29,23 @@ import org.slf4j.LoggerFactory;
 import javax.mail.*;
 import javax.mail.search.FlagTerm;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Inbox scanning service.
+ * The messages are synchronized incrementally from a checkpoint (UIDVALIDITY of the folder and last UID processed),
+ * each message is imported in its own transaction with the checkpoint, and the next messages are parsed ahead
+ * by a bounded pool of threads. The inbox is polled every minute, and synchronized as soon as a message arrives
+ * if the server supports IMAP IDLE.
  *
  * @author bgamard
  */
@@ -37,23 +55,96 @@ public class InboxService extends AbstractScheduledService {
      */
     private static final Logger log = LoggerFactory.getLogger(InboxService.class);
 
+    /**
+     * Number of synchronizations failing on a message before skipping it.
+     */
+    private static final int MAX_MESSAGE_ATTEMPTS = 3;
+
+    /**
+     * Read timeout of the IMAP IDLE connection in milliseconds, the IDLE command must be renewed before 30 minutes.
+     */
+    private static final int IDLE_TIMEOUT = 25 * 60 * 1000;
+
+    /**
+     * Number of threads parsing the messages.
+     */
+    private final int threads;
+
+    /**
+     * True to wait for the new messages with IMAP IDLE.
+     */
+    private final boolean idleEnabled;
+
+    /**
+     * Executor parsing the messages.
+     */
+    private ExecutorService parsingExecutor;
+
+    /**
+     * Thread waiting for the new messages with IMAP IDLE.
+     */
+    private Thread idleThread;
+    private volatile boolean idleRunning;
+    private volatile Folder idleFolder;
+
+    /**
+     * Lock preventing concurrent synchronizations.
+     */
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    /**
+     * Message failing to import, and number of synchronizations it failed.
+     */
+    private long failedUid;
+    private int failedAttemptCount;
+
     /**
      * Last synchronization data.
      */
-    private Date lastSyncDate;
-    private int lastSyncMessageCount = 0;
-    private String lastSyncError;
+    private volatile Date lastSyncDate;
+    private volatile int lastSyncMessageCount = 0;
+    private volatile String lastSyncError;
 
+    /**
+     * Constructor, with the settings from the environment.
+     */
     public InboxService() {
+        this(EnvironmentUtil.getIntEnv(Constants.INBOX_THREADS_ENV, Constants.DEFAULT_INBOX_THREADS),
+                !EnvironmentUtil.isUnitTest());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threads Number of threads parsing the messages
+     * @param idleEnabled True to wait for the new messages with IMAP IDLE
+     */
+    public InboxService(int threads, boolean idleEnabled) {
+        this.threads = threads;
+        this.idleEnabled = idleEnabled;
     }
 
     @Override
     protected void startUp() {
+        parsingExecutor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("inbox-parsing-%d").setDaemon(true).build());
+        if (idleEnabled) {
+            idleRunning = true;
+            idleThread = new ThreadFactoryBuilder().setNameFormat("inbox-idle-%d").setDaemon(true).build()
+                    .newThread(this::idle);
+            idleThread.start();
+        }
         log.info("Inbox service starting up");
     }
 
     @Override
     protected void shutDown() {
+        if (idleThread != null) {
+            idleRunning = false;
+            idleThread.interrupt();
+            closeInbox(idleFolder, false);
+        }
+        parsingExecutor.shutdownNow();
         log.info("Inbox service shutting down");
     }
     
@@ -70,44 +161,299 @@ public class InboxService extends AbstractScheduledService {
      * Synchronize the inbox.
      */
     public void syncInbox() {
+        syncLock.lock();
+        try {
+            doSyncInbox();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Synchronize the inbox from the checkpoint.
+     */
+    private void doSyncInbox() {
+        // Read the configuration and the checkpoint
+        SyncContext context = new SyncContext();
         TransactionUtil.handle(() -> {
-            Boolean enabled = ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_ENABLED);
-            if (!enabled) {
+            if (!ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_ENABLED)) {
                 return;
             }
-
-            log.info("Synchronizing IMAP inbox...");
-            Folder inbox = null;
-            lastSyncError = null;
-            lastSyncDate = new Date();
-            lastSyncMessageCount = 0;
+            context.tagsNameToId = getAllTags();
+            context.deleteImported = ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_DELETE_IMPORTED);
+            context.savedUidValidity = ConfigUtil.getConfigLongValue(ConfigType.INBOX_UID_VALIDITY);
+            context.savedLastUid = ConfigUtil.getConfigLongValue(ConfigType.INBOX_LAST_UID);
             try {
-                Map<String, String> tagsNameToId = getAllTags();
+                context.inbox = openInbox(30000);
+            } catch (Exception e) {
+                context.error = e;
+            }
+            context.enabled = true;
+        });
+        if (!context.enabled) {
+            return;
+        }
 
-                inbox = openInbox();
-                Message[] messages = inbox.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false));
-                log.info(messages.length + " messages found");
-                for (Message message : messages) {
-                    importMessage(message, tagsNameToId);
-                    lastSyncMessageCount++;
+        log.info("Synchronizing IMAP inbox...");
+        IMAPFolder inbox = context.inbox;
+        lastSyncError = null;
+        lastSyncDate = new Date();
+        lastSyncMessageCount = 0;
+        try {
+            if (context.error != null) {
+                throw context.error;
+            }
+
+            // A new UIDVALIDITY invalidates the UIDs, start again from the unread messages
+            context.uidValidity = inbox.getUIDValidity();
+            long uidNext = inbox.getUIDNext();
+            if (context.uidValidity == context.savedUidValidity) {
+                context.lastUid = context.savedLastUid;
+            } else {
+                log.info("New inbox UIDVALIDITY " + context.uidValidity + ", synchronizing the unread messages");
+            }
+
+            List<Message> messageList = getNewMessages(inbox, context.lastUid, uidNext);
+            log.info(messageList.size() + " messages found");
+            if (importMessages(inbox, messageList, context)) {
+                // Everything before UIDNEXT is processed, the next synchronization only fetches the new messages
+                long lastUid = Math.max(context.lastUid, uidNext - 1);
+                if (context.uidValidity != context.savedUidValidity || lastUid != context.savedLastUid) {
+                    TransactionUtil.handle(() -> saveCheckpoint(context.uidValidity, lastUid));
                 }
-            } catch (FolderClosedException e) {
-                // Ignore this, we will just continue importing on the next cycle
-            } catch (Exception e) {
-                log.error("Error syncing the inbox", e);
-                lastSyncError = e.getMessage();
-            } finally {
+            }
+        } catch (FolderClosedException e) {
+            // Ignore this, we will just continue importing on the next cycle
+        } catch (Exception e) {
+            log.error("Error syncing the inbox", e);
+            lastSyncError = e.getMessage();
+        } finally {
+            // The parameter controls if the messages flagged to be deleted, should actually get deleted.
+            closeInbox(inbox, context.deleteImported);
+        }
+    }
+
+    /**
+     * Returns the unread messages after the last UID processed, ordered by UID.
+     *
+     * @param inbox Opened inbox
+     * @param lastUid Last UID processed, 0 for all the unread messages
+     * @param uidNext Next UID of the folder, -1 if unknown
+     * @return Unread messages
+     * @throws MessagingException e
+     */
+    private List<Message> getNewMessages(IMAPFolder inbox, long lastUid, long uidNext) throws MessagingException {
+        Message[] messages;
+        if (lastUid == 0) {
+            messages = inbox.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false));
+        } else if (uidNext != -1 && uidNext <= lastUid + 1) {
+            // No new message
+            return new ArrayList<>();
+        } else {
+            messages = inbox.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
+        }
+
+        // Fetch the UIDs and flags at once
+        FetchProfile fetchProfile = new FetchProfile();
+        fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+        fetchProfile.add(FetchProfile.Item.FLAGS);
+        inbox.fetch(messages, fetchProfile);
+
+        // The range n:* contains the last message even if its UID is before n
+        List<Message> messageList = new ArrayList<>();
+        for (Message message : messages) {
+            if (message != null && inbox.getUID(message) > lastUid && !message.isSet(Flags.Flag.SEEN)) {
+                messageList.add(message);
+            }
+        }
+        messageList.sort(Comparator.comparingLong(message -> getUid(inbox, message)));
+        return messageList;
+    }
+
+    /**
+     * Import the messages in order, each one in its own transaction with the checkpoint.
+     * The next messages are parsed ahead, at most one per parsing thread.
+     *
+     * @param inbox Opened inbox
+     * @param messageList Messages ordered by UID
+     * @param context Synchronization context
+     * @return True if all the messages are processed
+     * @throws MessagingException e
+     */
+    private boolean importMessages(IMAPFolder inbox, List<Message> messageList, SyncContext context) throws MessagingException {
+        Deque<Future<EmailUtil.MailContent>> parsingQueue = new ArrayDeque<>();
+        int parsedCount = 0;
+        try {
+            for (int i = 0; i < messageList.size(); i++) {
+                while (parsedCount < messageList.size() && parsedCount <= i + threads) {
+                    Message message = messageList.get(parsedCount++);
+                    parsingQueue.add(parsingExecutor.submit(() -> parseMessage(message)));
+                }
+
+                Message message = messageList.get(i);
+                long uid = inbox.getUID(message);
+                Exception error = null;
                 try {
-                    if (inbox != null) {
-                        // The parameter controls if the messages flagged to be deleted, should actually get deleted.
-                        inbox.close(ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_DELETE_IMPORTED));
-                        inbox.getStore().close();
-                    }
+                    EmailUtil.MailContent mailContent = parsingQueue.poll().get();
+                    AtomicReference<Exception> importError = new AtomicReference<>(
+                            new MessagingException("Transaction rolled back"));
+                    TransactionUtil.handle(() -> {
+                        try {
+                            importMessage(mailContent, context.tagsNameToId);
+                        } catch (Exception e) {
+                            importError.set(e);
+                            throw new RuntimeException(e);
+                        }
+                        saveCheckpoint(context.uidValidity, uid);
+                        importError.set(null);
+                    });
+                    error = importError.get();
+                } catch (ExecutionException e) {
+                    error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
                 } catch (Exception e) {
-                    // NOP
+                    error = e;
                 }
+
+                if (error == null) {
+                    // The messages are parsed without being marked as read, only the imported ones are
+                    context.lastUid = uid;
+                    lastSyncMessageCount++;
+                    message.setFlag(Flags.Flag.SEEN, true);
+                    if (context.deleteImported) {
+                        message.setFlag(Flags.Flag.DELETED, true);
+                    }
+                } else if (!skipMessage(message, uid, error, context)) {
+                    // Try again from this message on the next synchronization
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            for (Future<EmailUtil.MailContent> future : parsingQueue) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Handle a message failing to import.
+     * The message is skipped when it failed several synchronizations in a row.
+     *
+     * @param message Message
+     * @param uid UID of the message
+     * @param error Import error
+     * @param context Synchronization context
+     * @return True if the message is skipped
+     */
+    private boolean skipMessage(Message message, long uid, Exception error, SyncContext context) {
+        if (error instanceof FolderClosedException) {
+            return false;
+        }
+        lastSyncError = error.getMessage();
+        if (uid != failedUid) {
+            failedUid = uid;
+            failedAttemptCount = 0;
+        }
+        if (++failedAttemptCount < MAX_MESSAGE_ATTEMPTS) {
+            log.error("Error importing the message with UID " + uid + ", it will be retried", error);
+            return false;
+        }
+
+        String subject = null;
+        try {
+            subject = message.getSubject();
+        } catch (MessagingException e) {
+            // NOP
+        }
+        log.error("Error importing the message with UID " + uid + " and subject \"" + subject + "\", skipping it", error);
+        AtomicBoolean saved = new AtomicBoolean();
+        try {
+            TransactionUtil.handle(() -> {
+                saveCheckpoint(context.uidValidity, uid);
+                saved.set(true);
+            });
+        } catch (Exception e) {
+            log.error("Error saving the inbox checkpoint", e);
+            return false;
+        }
+        if (saved.get()) {
+            context.lastUid = uid;
+        }
+        return saved.get();
+    }
+
+    /**
+     * Save the synchronization checkpoint.
+     *
+     * @param uidValidity UIDVALIDITY of the folder
+     * @param lastUid UID of the last message processed
+     */
+    private void saveCheckpoint(long uidValidity, long lastUid) {
+        ConfigDao configDao = new ConfigDao();
+        configDao.update(ConfigType.INBOX_UID_VALIDITY, Long.toString(uidValidity));
+        configDao.update(ConfigType.INBOX_LAST_UID, Long.toString(lastUid));
+    }
+
+    /**
+     * Wait for the new messages with IMAP IDLE, and synchronize the inbox when the server notifies a change.
+     * The connection is opened again on errors, and the scheduled synchronization is the fallback
+     * if the inbox is disabled or the server doesn't support IDLE.
+     */
+    private void idle() {
+        while (idleRunning) {
+            IMAPFolder inbox = openIdleInbox();
+            try {
+                if (inbox != null && ((IMAPStore) inbox.getStore()).hasCapability("IDLE")) {
+                    idleFolder = inbox;
+
+                    // Catch up on the messages received while not connected
+                    syncInbox();
+                    while (idleRunning && inbox.isOpen()) {
+                        // Returns when the server sends a notification
+                        inbox.idle(true);
+                        if (idleRunning) {
+                            syncInbox();
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                if (idleRunning) {
+                    log.info("Inbox IDLE connection closed: " + e.getMessage());
+                }
+            } finally {
+                idleFolder = null;
+                closeInbox(inbox, false);
+            }
+
+            try {
+                TimeUnit.MINUTES.sleep(1);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Open the remote inbox for IMAP IDLE.
+     *
+     * @return Opened inbox, null if disabled or unavailable
+     */
+    private IMAPFolder openIdleInbox() {
+        AtomicReference<IMAPFolder> inbox = new AtomicReference<>();
+        TransactionUtil.handle(() -> {
+            if (!ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_ENABLED)) {
+                return;
+            }
+            try {
+                inbox.set(openInbox(IDLE_TIMEOUT));
+            } catch (Exception e) {
+                log.debug("Cannot open the inbox for IDLE", e);
             }
         });
+        return inbox.get();
     }
 
     /**
@@ -123,20 +469,13 @@ public class InboxService extends AbstractScheduledService {
 
         Folder inbox = null;
         try {
-            inbox = openInbox();
+            inbox = openInbox(30000);
             return inbox.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false)).length;
         } catch (Exception e) {
             log.error("Error testing inbox", e);
             return -1;
         } finally {
-            try {
-                if (inbox != null) {
-                    inbox.close(false);
-                    inbox.getStore().close();
-                }
-            } catch (Exception e) {
-                // NOP
-            }
+            closeInbox(inbox, false);
         }
     }
 
@@ -148,14 +487,16 @@ public class InboxService extends AbstractScheduledService {
     /**
      * Open the remote inbox.
      *
+     * @param timeout Read timeout in milliseconds
      * @return Opened inbox folder
      * @throws Exception e
      */
-    private Folder openInbox() throws Exception {
+    private IMAPFolder openInbox(int timeout) throws Exception {
         Properties properties = new Properties();
         String port = ConfigUtil.getConfigStringValue(ConfigType.INBOX_PORT);
         properties.put("mail.imap.host", ConfigUtil.getConfigStringValue(ConfigType.INBOX_HOSTNAME));
         properties.put("mail.imap.port", port);
+        properties.put("mail.imap.peek", "true");
         properties.setProperty("mail.imap.starttls.enable", ConfigUtil.getConfigStringValue(ConfigType.INBOX_STARTTLS).toString());
         boolean isSsl = "993".equals(port);
         properties.put("mail.imap.ssl.enable", String.valueOf(isSsl));
@@ -165,11 +506,11 @@ public class InboxService extends AbstractScheduledService {
         properties.setProperty("mail.imap.socketFactory.port", port);
         if (isSsl) {
             properties.put("mail.imaps.connectiontimeout", 30000);
-            properties.put("mail.imaps.timeout", 30000);
+            properties.put("mail.imaps.timeout", timeout);
             properties.put("mail.imaps.writetimeout", 30000);
         } else {
             properties.put("mail.imap.connectiontimeout", 30000);
-            properties.put("mail.imap.timeout", 30000);
+            properties.put("mail.imap.timeout", timeout);
             properties.put("mail.imap.writetimeout", 30000);
         }
 
@@ -179,25 +520,69 @@ public class InboxService extends AbstractScheduledService {
         store.connect(ConfigUtil.getConfigStringValue(ConfigType.INBOX_USERNAME),
                 ConfigUtil.getConfigStringValue(ConfigType.INBOX_PASSWORD));
 
-        Folder inbox = store.getFolder(ConfigUtil.getConfigStringValue(ConfigType.INBOX_FOLDER));
+        IMAPFolder inbox = (IMAPFolder) store.getFolder(ConfigUtil.getConfigStringValue(ConfigType.INBOX_FOLDER));
         inbox.open(Folder.READ_WRITE);
         return inbox;
     }
 
     /**
-     * Import an email.
+     * Close the remote inbox and its store.
      *
+     * @param inbox Inbox folder
+     * @param expunge True to delete the messages flagged to be deleted
+     */
+    private void closeInbox(Folder inbox, boolean expunge) {
+        try {
+            if (inbox != null) {
+                if (inbox.isOpen()) {
+                    inbox.close(expunge);
+                }
+                inbox.getStore().close();
+            }
+        } catch (Exception e) {
+            // NOP
+        }
+    }
+
+    /**
+     * Returns the UID of a message.
+     *
+     * @param inbox Opened inbox
      * @param message Message
-     * @throws Exception e
+     * @return UID
      */
-    private void importMessage(Message message, Map<String, String> tags) throws Exception {
-        log.info("Importing message: " + message.getSubject());
+    private static long getUid(IMAPFolder inbox, Message message) {
+        try {
+            return inbox.getUID(message);
+        } catch (MessagingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-        // Parse the mail
+    /**
+     * Parse an email, the attachments are copied to temporary files.
+     *
+     * @param message Message
+     * @return Mail content
+     * @throws Exception e
+     */
+    private EmailUtil.MailContent parseMessage(Message message) throws Exception {
         EmailUtil.MailContent mailContent = new EmailUtil.MailContent();
         mailContent.setSubject(message.getSubject());
         mailContent.setDate(message.getSentDate());
         EmailUtil.parseMailContent(message, mailContent);
+        return mailContent;
+    }
+
+    /**
+     * Import a parsed email.
+     *
+     * @param mailContent Mail content
+     * @param tags Tag IDs by name, null if the automatic tags are disabled
+     * @throws Exception e
+     */
+    private void importMessage(EmailUtil.MailContent mailContent, Map<String, String> tags) throws Exception {
+        log.info("Importing message: " + mailContent.getSubject());
 
         // Create the document
         Document document = new Document();
@@ -260,11 +645,7 @@ public class InboxService extends AbstractScheduledService {
         // Add files to the document
         for (EmailUtil.FileContent fileContent : mailContent.getFileContentList()) {
             FileUtil.createFile(fileContent.getName(), null, fileContent.getFile(), fileContent.getSize(),
-                    document.getLanguage(), "admin", document.getId());
-        }
-
-        if (ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_DELETE_IMPORTED)) {
-            message.setFlag(Flags.Flag.DELETED, true);
+                    document.getLanguage(), "admin", document.getId(), FileProcessingPriority.BULK);
         }
     }
 
@@ -287,6 +668,30 @@ public class InboxService extends AbstractScheduledService {
         return tagsNameToId;
     }
 
+    /**
+     * State of a synchronization.
+     */
+    private static class SyncContext {
+        private boolean enabled;
+        private Exception error;
+        private IMAPFolder inbox;
+        private Map<String, String> tagsNameToId;
+        private boolean deleteImported;
+        private long savedUidValidity;
+        private long savedLastUid;
+        private long uidValidity;
+        private long lastUid;
+    }
+
+    /**
+     * Returns true if the new messages are waited for with IMAP IDLE.
+     *
+     * @return True if connected
+     */
+    public boolean isIdleConnected() {
+        return idleFolder != null;
+    }
+
     public Date getLastSyncDate() {
         return lastSyncDate;
     }
@@ -0,0 +1,489 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.WebhookEvent;
+import com.sismics.docs.core.dao.WebhookDao;
+import com.sismics.docs.core.dao.criteria.WebhookCriteria;
+import com.sismics.docs.core.dao.dto.WebhookDto;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.cache.CacheRegion;
+import com.sismics.docs.core.util.cache.ReferenceCacheUtil;
+import com.sismics.util.EnvironmentUtil;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Webhook service.
+ * Deliveries are queued per endpoint and sent by a pool of threads, a few at a time to each endpoint.
+ * An event on an object triggered again before the delivery of the first one starts is sent once,
+ * and failed deliveries are retried with an exponential backoff.
+ * In unit tests, the deliveries are sent inline and only once.
+ */
+public class WebhookService extends AbstractIdleService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(WebhookService.class);
+
+    /**
+     * JSON media type.
+     */
+    public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    /**
+     * OkHttp client.
+     */
+    private static final OkHttpClient client = new OkHttpClient.Builder()
+            .connectTimeout(5, TimeUnit.SECONDS)
+            .readTimeout(10, TimeUnit.SECONDS)
+            .writeTimeout(10, TimeUnit.SECONDS)
+            .callTimeout(30, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * Number of delivery threads.
+     */
+    private final int threadCount;
+
+    /**
+     * Maximum number of concurrent deliveries to an endpoint.
+     */
+    private final int endpointConcurrency;
+
+    /**
+     * Maximum number of deliveries waiting for an endpoint.
+     */
+    private final int queueSize;
+
+    /**
+     * Time to wait for the same event before a delivery, in milliseconds.
+     */
+    private final long coalescingWindow;
+
+    /**
+     * Maximum number of attempts per delivery.
+     */
+    private final int maxAttempts;
+
+    /**
+     * Delay before the first retry, doubled for each next one, in milliseconds.
+     */
+    private final long retryDelay;
+
+    /**
+     * True to send the deliveries inline.
+     */
+    private final boolean inline;
+
+    /**
+     * Delivery executor.
+     */
+    private ThreadPoolExecutor deliveryExecutor;
+
+    /**
+     * Executor of the coalesced deliveries and the retries.
+     */
+    private ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Endpoints by URL.
+     */
+    private final Map<String, Endpoint> endpointMap = new ConcurrentHashMap<>();
+
+    /**
+     * Keys of the deliveries not started yet.
+     */
+    private final Set<String> waitingKeySet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Number of deliveries not completed yet.
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * Delivery metrics since startup.
+     */
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder retriedCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder totalLatency = new LongAdder();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    /**
+     * Constructor, with the settings from the environment.
+     */
+    public WebhookService() {
+        this(EnvironmentUtil.getIntEnv(Constants.WEBHOOK_THREADS_ENV, Constants.DEFAULT_WEBHOOK_THREADS),
+                EnvironmentUtil.getIntEnv(Constants.WEBHOOK_ENDPOINT_CONCURRENCY_ENV, Constants.DEFAULT_WEBHOOK_ENDPOINT_CONCURRENCY),
+                EnvironmentUtil.getIntEnv(Constants.WEBHOOK_QUEUE_SIZE_ENV, Constants.DEFAULT_WEBHOOK_QUEUE_SIZE),
+                EnvironmentUtil.getIntEnv(Constants.WEBHOOK_COALESCING_WINDOW_ENV, Constants.DEFAULT_WEBHOOK_COALESCING_WINDOW),
+                EnvironmentUtil.getIntEnv(Constants.WEBHOOK_MAX_ATTEMPTS_ENV, Constants.DEFAULT_WEBHOOK_MAX_ATTEMPTS),
+                1000, EnvironmentUtil.isUnitTest());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threadCount Number of delivery threads
+     * @param endpointConcurrency Maximum number of concurrent deliveries to an endpoint
+     * @param queueSize Maximum number of deliveries waiting for an endpoint
+     * @param coalescingWindow Time to wait for the same event before a delivery, in milliseconds
+     * @param maxAttempts Maximum number of attempts per delivery
+     * @param retryDelay Delay before the first retry, in milliseconds
+     * @param inline True to send the deliveries inline
+     */
+    WebhookService(int threadCount, int endpointConcurrency, int queueSize, long coalescingWindow,
+                   int maxAttempts, long retryDelay, boolean inline) {
+        this.threadCount = threadCount;
+        this.endpointConcurrency = endpointConcurrency;
+        this.queueSize = queueSize;
+        this.coalescingWindow = coalescingWindow;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.inline = inline;
+    }
+
+    @Override
+    protected void startUp() {
+        if (inline) {
+            return;
+        }
+        deliveryExecutor = new ThreadPoolExecutor(threadCount, threadCount,
+                1L, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("webhook-delivery-%d").setDaemon(true).build());
+        scheduler = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("webhook-scheduler-%d").setDaemon(true).build());
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        log.info("Webhook service started with {} threads", threadCount);
+    }
+
+    @Override
+    protected void shutDown() throws InterruptedException {
+        if (inline) {
+            return;
+        }
+        scheduler.shutdown();
+        deliveryExecutor.shutdown();
+        deliveryExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        log.info("Webhook service shut down, {} deliveries not sent", pendingCount.get());
+    }
+
+    /**
+     * Trigger the webhooks for the specified event.
+     *
+     * @param event Event
+     * @param id ID
+     */
+    public void trigger(WebhookEvent event, String id) {
+        List<String> urlList;
+        try {
+            urlList = ReferenceCacheUtil.get(CacheRegion.WEBHOOK, event, () -> findUrlList(event));
+        } catch (IllegalStateException e) {
+            log.error("Error finding the webhooks for the event: " + event, e);
+            return;
+        }
+        for (String url : urlList) {
+            submit(url, event, id);
+        }
+    }
+
+    /**
+     * Returns the URLs of the webhooks of an event.
+     *
+     * @param event Event
+     * @return URLs
+     */
+    private List<String> findUrlList(WebhookEvent event) {
+        List<String> urlList = new ArrayList<>();
+        AtomicInteger webhookCount = new AtomicInteger(-1);
+        TransactionUtil.handle(() -> {
+            WebhookDao webhookDao = new WebhookDao();
+            List<WebhookDto> webhookDtoList = webhookDao.findByCriteria(new WebhookCriteria().setEvent(event), null);
+            for (WebhookDto webhookDto : webhookDtoList) {
+                urlList.add(webhookDto.getUrl());
+            }
+            webhookCount.set(webhookDtoList.size());
+        });
+        if (webhookCount.get() < 0) {
+            // Not cached, the transaction has been rolled back
+            throw new IllegalStateException("Cannot read the webhooks");
+        }
+        return ImmutableList.copyOf(urlList);
+    }
+
+    /**
+     * Submit a delivery, sent after the coalescing window.
+     *
+     * @param url Endpoint URL
+     * @param event Event
+     * @param id ID
+     */
+    void submit(String url, WebhookEvent event, String id) {
+        Delivery delivery = new Delivery(url, event, id);
+        if (inline) {
+            pendingCount.incrementAndGet();
+            send(delivery);
+            return;
+        }
+        if (!waitingKeySet.add(delivery.key)) {
+            coalescedCount.increment();
+            return;
+        }
+        pendingCount.incrementAndGet();
+        schedule(delivery, coalescingWindow);
+    }
+
+    /**
+     * Queue a delivery to its endpoint after a delay.
+     *
+     * @param delivery Delivery
+     * @param delay Delay in milliseconds
+     */
+    private void schedule(Delivery delivery, long delay) {
+        try {
+            scheduler.schedule(() -> enqueue(delivery), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.warn("Webhook service stopped, delivery dropped: " + delivery);
+            drop(delivery);
+        }
+    }
+
+    /**
+     * Queue a delivery to its endpoint.
+     *
+     * @param delivery Delivery
+     */
+    private void enqueue(Delivery delivery) {
+        Endpoint endpoint = endpointMap.computeIfAbsent(delivery.url, url -> new Endpoint());
+        if (endpoint.queuedCount.incrementAndGet() > queueSize) {
+            endpoint.queuedCount.decrementAndGet();
+            log.warn("Webhook queue full, delivery dropped: " + delivery);
+            drop(delivery);
+            return;
+        }
+        endpoint.queue.add(delivery);
+        drain(endpoint);
+    }
+
+    /**
+     * Start the deliveries waiting for an endpoint, up to the endpoint concurrency.
+     *
+     * @param endpoint Endpoint
+     */
+    private void drain(Endpoint endpoint) {
+        while (true) {
+            int activeCount = endpoint.activeCount.get();
+            if (activeCount >= endpointConcurrency || endpoint.queue.isEmpty()) {
+                return;
+            }
+            if (!endpoint.activeCount.compareAndSet(activeCount, activeCount + 1)) {
+                continue;
+            }
+            Delivery delivery = endpoint.queue.poll();
+            if (delivery == null) {
+                endpoint.activeCount.decrementAndGet();
+                continue;
+            }
+            endpoint.queuedCount.decrementAndGet();
+            try {
+                deliveryExecutor.execute(() -> {
+                    try {
+                        send(delivery);
+                    } finally {
+                        endpoint.activeCount.decrementAndGet();
+                        drain(endpoint);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                endpoint.activeCount.decrementAndGet();
+                log.warn("Webhook service stopped, delivery dropped: " + delivery);
+                drop(delivery);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Send a delivery, and schedule a retry if it failed.
+     *
+     * @param delivery Delivery
+     */
+    private void send(Delivery delivery) {
+        if (delivery.attempt++ == 0) {
+            // The same event triggered from now on is delivered again
+            waitingKeySet.remove(delivery.key);
+        }
+
+        RequestBody body = RequestBody.create("{\"event\": \"" + delivery.event.name() + "\", \"id\": \"" + delivery.id + "\"}", JSON);
+        Request request = new Request.Builder()
+                .url(delivery.url)
+                .post(body)
+                .build();
+        boolean retry;
+        try (Response response = client.newCall(request).execute()) {
+            if (response.isSuccessful()) {
+                log.info("Successfully called the webhook at: " + delivery.url + " - " + response.code());
+                long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - delivery.createTime);
+                totalLatency.add(latency);
+                maxLatency.accumulateAndGet(latency, Math::max);
+                deliveredCount.increment();
+                pendingCount.decrementAndGet();
+                return;
+            }
+            log.warn("Error calling the webhook at: " + delivery.url + " - " + response.code());
+            retry = response.code() >= 500 || response.code() == 429;
+        } catch (IOException e) {
+            log.warn("Error calling the webhook at: " + delivery.url, e);
+            retry = true;
+        }
+
+        if (retry && !inline && delivery.attempt < maxAttempts) {
+            retriedCount.increment();
+            schedule(delivery, retryDelay << Math.min(delivery.attempt - 1, 10));
+        } else {
+            log.error("Webhook delivery failed after " + delivery.attempt + " attempt(s): " + delivery);
+            failedCount.increment();
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Drop a delivery not sent.
+     *
+     * @param delivery Delivery
+     */
+    private void drop(Delivery delivery) {
+        if (delivery.attempt == 0) {
+            waitingKeySet.remove(delivery.key);
+        }
+        droppedCount.increment();
+        pendingCount.decrementAndGet();
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    public long getRetriedCount() {
+        return retriedCount.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Returns the average time from the trigger to the end of the successful deliveries.
+     *
+     * @return Latency in milliseconds
+     */
+    public long getAverageLatency() {
+        long count = deliveredCount.sum();
+        return count == 0 ? 0 : totalLatency.sum() / count;
+    }
+
+    /**
+     * Returns the maximum time from the trigger to the end of a successful delivery.
+     *
+     * @return Latency in milliseconds
+     */
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    /**
+     * Deliveries of an endpoint.
+     */
+    private static class Endpoint {
+        /**
+         * Deliveries waiting.
+         */
+        private final Queue<Delivery> queue = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Number of deliveries waiting.
+         */
+        private final AtomicInteger queuedCount = new AtomicInteger();
+
+        /**
+         * Number of deliveries being sent.
+         */
+        private final AtomicInteger activeCount = new AtomicInteger();
+    }
+
+    /**
+     * Delivery of an event to an endpoint.
+     */
+    private static class Delivery {
+        private final String url;
+        private final WebhookEvent event;
+        private final String id;
+
+        /**
+         * Coalescing key.
+         */
+        private final String key;
+
+        /**
+         * Trigger time in nanoseconds.
+         */
+        private final long createTime = System.nanoTime();
+
+        /**
+         * Number of attempts, only updated by the thread sending the delivery.
+         */
+        private volatile int attempt;
+
+        private Delivery(String url, WebhookEvent event, String id) {
+            this.url = url;
+            this.event = event;
+            this.id = id;
+            this.key = event.name() + " " + id + " " + url;
+        }
+
+        @Override
+        public String toString() {
+            return event + " " + id + " to " + url;
+        }
+    }
+}
@@ -95,6 +95,24 @@ public class DirectoryUtil {
         return getDataSubDirectory("theme");
     }
 
+    /**
+     * Returns the OCR progress directory.
+     *
+     * @return OCR progress directory.
+     */
+    public static Path getOcrDirectory() {
+        return getDataSubDirectory("ocr");
+    }
+
+    /**
+     * Returns the PDF export cache directory.
+     *
+     * @return PDF export cache directory.
+     */
+    public static Path getPdfCacheDirectory() {
+        return getDataSubDirectory("pdf-cache");
+    }
+
     /**
      * Returns a subdirectory of the base data directory
      * 
@@ -1,22 +1,34 @@
 package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
 import com.sismics.docs.core.model.context.AppContext;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.bouncycastle.jcajce.provider.symmetric.util.BCPBEKey;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Encryption utilities.
@@ -28,6 +40,15 @@ public class EncryptionUtil {
      * Salt.
      */
     private static final String SALT = "LEpxZmm2SMu2PeKzPNrar2rhVAS6LrrgvXKeL9uyXC4vgKHg";
+
+    /**
+     * Derived secret keys, by private key.
+     * A user private key never changes, so a new key is a new entry.
+     */
+    private static final Cache<String, SecretKey> secretKeyCache = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
     
     static {
         // Initialize Bouncy Castle provider
@@ -61,6 +82,51 @@ public class EncryptionUtil {
         return new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE));
     }
 
+    /**
+     * Decrypt a stored file from an offset using the specified private key.
+     * The CTR counter is moved to the block containing the offset, the data before is not decrypted.
+     *
+     * @param file Encrypted file
+     * @param privateKey Private key
+     * @param offset Offset in bytes
+     * @return Decrypted stream starting at the offset
+     * @throws Exception e
+     */
+    public static InputStream decryptInputStream(Path file, String privateKey, long offset) throws Exception {
+        Cipher cipher = getCipher(privateKey, Cipher.DECRYPT_MODE);
+        int blockSize = cipher.getBlockSize();
+        long blockIndex = offset / blockSize;
+        if (blockIndex > 0) {
+            // Compute the counter of the block containing the offset
+            byte[] counter = new BigInteger(1, cipher.getIV())
+                    .add(BigInteger.valueOf(blockIndex))
+                    .toByteArray();
+            byte[] iv = new byte[blockSize];
+            int length = Math.min(counter.length, blockSize);
+            System.arraycopy(counter, counter.length - length, iv, blockSize - length, length);
+
+            // Use the raw AES key derived from the private key
+            ParametersWithIV parameters = (ParametersWithIV) ((BCPBEKey) getSecretKey(privateKey)).getParam();
+            SecretKeySpec key = new SecretKeySpec(((KeyParameter) parameters.getParameters()).getKey(), "AES");
+            cipher = Cipher.getInstance("AES/CTR/NOPADDING");
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+        }
+
+        SeekableByteChannel channel = Files.newByteChannel(file);
+        InputStream is;
+        try {
+            channel.position(blockIndex * blockSize);
+            is = new CipherInputStream(Channels.newInputStream(channel), cipher);
+
+            // Skip the beginning of the block
+            ByteStreams.skipFully(is, offset % blockSize);
+        } catch (Exception e) {
+            channel.close();
+            throw e;
+        }
+        return is;
+    }
+
     /**
      * Decrypt a file to a temporary file using the specified private key.
      *
@@ -105,11 +171,47 @@ public class EncryptionUtil {
      * @throws Exception e
      */
     private static Cipher getCipher(String privateKey, int mode) throws Exception {
-        PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
-        SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
-        SecretKey desKey = skf.generateSecret(keySpec);
         Cipher cipher = Cipher.getInstance("AES/CTR/NOPADDING");
-        cipher.init(mode, desKey);
+        cipher.init(mode, getSecretKey(privateKey));
         return cipher;
     }
+
+    /**
+     * Return the secret key derived from a private key.
+     *
+     * @param privateKey Private key
+     * @return Secret key
+     * @throws Exception e
+     */
+    private static SecretKey getSecretKey(String privateKey) throws Exception {
+        try {
+            return secretKeyCache.get(privateKey, () -> deriveSecretKey(privateKey));
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * Derive a secret key from a private key.
+     *
+     * @param privateKey Private key
+     * @return Secret key
+     * @throws Exception e
+     */
+    private static SecretKey deriveSecretKey(String privateKey) throws Exception {
+        PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
+        SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
+        return skf.generateSecret(keySpec);
+    }
+
+    /**
+     * Forget the secret key derived from a private key.
+     *
+     * @param privateKey Private key
+     */
+    public static void invalidateSecretKey(String privateKey) {
+        if (privateKey != null) {
+            secretKeyCache.invalidate(privateKey);
+        }
+    }
 }
@@ -2,8 +2,12 @@ package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import com.google.common.io.CharStreams;
+import com.google.common.io.MoreFiles;
 import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingPriority;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
@@ -11,6 +15,8 @@ import com.sismics.docs.core.event.FileCreatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.format.FormatHandlerUtil;
+import com.sismics.util.EnvironmentUtil;
 import com.sismics.util.ImageDeskew;
 import com.sismics.util.Scalr;
 import com.sismics.util.context.ThreadLocalContext;
@@ -18,6 +24,8 @@ import com.sismics.util.io.InputStreamReaderThread;
 import com.sismics.util.mime.MimeTypeUtil;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.input.TaggedInputStream;
+import org.apache.commons.io.input.TeeInputStream;
 import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -27,13 +35,19 @@ import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.Semaphore;
 
 /**
  * File entity utilities.
@@ -50,9 +64,39 @@ public class FileUtil {
      * File ID of files currently being processed.
      */
     private static final Set<String> processingFileSet = Collections.synchronizedSet(new HashSet<>());
-    
+
+    /**
+     * Maximum number of concurrent OCR processes.
+     */
+    private static final int OCR_CONCURRENCY = EnvironmentUtil.getIntEnv(Constants.OCR_CONCURRENCY_ENV, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Permits to run an OCR process, shared by all the files being processed.
+     */
+    private static final Semaphore ocrSemaphore = new Semaphore(OCR_CONCURRENCY, true);
+
+    /**
+     * Prefix of the uploads being received in the storage directory.
+     */
+    private static final String UPLOAD_PREFIX = "upload";
+
+    /**
+     * Suffix of the uploads being received in the storage directory.
+     */
+    private static final String UPLOAD_SUFFIX = ".tmp";
+
+    /**
+     * Return the maximum number of concurrent OCR processes.
+     *
+     * @return Maximum number of concurrent OCR processes
+     */
+    public static int getOcrConcurrency() {
+        return OCR_CONCURRENCY;
+    }
+
     /**
      * Optical character recognition on an image.
+     * Blocks while the maximum number of concurrent OCR processes is reached.
      *
      * @param language Language to OCR
      * @param image Buffered image
@@ -60,6 +104,23 @@ public class FileUtil {
      * @throws Exception e
      */
     public static String ocrFile(String language, BufferedImage image) throws Exception {
+        ocrSemaphore.acquire();
+        try {
+            return doOcrFile(language, image);
+        } finally {
+            ocrSemaphore.release();
+        }
+    }
+
+    /**
+     * Optical character recognition on an image, without concurrency limit.
+     *
+     * @param language Language to OCR
+     * @param image Buffered image
+     * @return Content extracted
+     * @throws Exception e
+     */
+    private static String doOcrFile(String language, BufferedImage image) throws Exception {
         // Upscale, grayscale and deskew the image
         BufferedImage resizedImage = Scalr.resize(image, Scalr.Method.AUTOMATIC, Scalr.Mode.AUTOMATIC, 3500, Scalr.OP_ANTIALIAS, Scalr.OP_GRAYSCALE);
         image.flush();
@@ -118,6 +179,25 @@ public class FileUtil {
      * @throws Exception e
      */
     public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId) throws Exception {
+        return createFile(name, previousFileId, unencryptedFile, fileSize, language, userId, documentId, FileProcessingPriority.INTERACTIVE);
+    }
+
+    /**
+     * Create a new file.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param unencryptedFile Path to the unencrypted file
+     * @param fileSize File size
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @param priority Processing priority
+     * @return File ID
+     * @throws Exception e
+     */
+    public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId,
+                                    FileProcessingPriority priority) throws Exception {
         // Validate mime type
         String mimeType;
         try {
@@ -126,21 +206,126 @@ public class FileUtil {
             throw new IOException("ErrorGuessMime", e);
         }
 
-        // Validate user quota
+        String hash = MoreFiles.asByteSource(unencryptedFile).hash(Hashing.sha256()).toString();
+        return createFile(name, previousFileId, mimeType, hash, fileSize, null, unencryptedFile,
+                language, userId, documentId, priority);
+    }
+
+    /**
+     * Create a new file from a stream, read only once.
+     * The content is encrypted to the storage and hashed as it is received,
+     * and copied unencrypted for the processing only if its format is handled.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param inputStream Unencrypted content, will be closed
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @return File ID
+     * @throws Exception e
+     */
+    public static String createFile(String name, String previousFileId, InputStream inputStream, String language, String userId, String documentId) throws Exception {
         UserDao userDao = new UserDao();
         User user = userDao.getById(userId);
-        if (user.getStorageCurrent() + fileSize > user.getStorageQuota()) {
-            throw new IOException("QuotaReached");
+        Path encryptedFile = Files.createTempFile(DirectoryUtil.getStorageDirectory(), UPLOAD_PREFIX, UPLOAD_SUFFIX);
+        try {
+            // Guess the MIME type from the first bytes, the errors reading the request are tagged to be told apart
+            TaggedInputStream taggedInputStream = new TaggedInputStream(inputStream);
+            BufferedInputStream bufferedInputStream = new BufferedInputStream(taggedInputStream);
+            bufferedInputStream.mark(MimeTypeUtil.HEADER_SIZE);
+            String mimeType;
+            try {
+                mimeType = MimeTypeUtil.guessMimeType(bufferedInputStream.readNBytes(MimeTypeUtil.HEADER_SIZE), name);
+                bufferedInputStream.reset();
+            } catch (IOException e) {
+                throw new IOException("ErrorGuessMime", e);
+            }
+
+            // Encrypt and hash the content, and keep it unencrypted only if it will be processed
+            Path unencryptedFile = null;
+            HashingInputStream hashingInputStream = new HashingInputStream(Hashing.sha256(), bufferedInputStream);
+            CountingInputStream countingInputStream = new CountingInputStream(hashingInputStream);
+            InputStream contentInputStream = countingInputStream;
+            if (FormatHandlerUtil.find(mimeType) != null) {
+                unencryptedFile = AppContext.getInstance().getFileService().createTemporaryFile(name);
+                contentInputStream = new TeeInputStream(countingInputStream, Files.newOutputStream(unencryptedFile), true);
+            }
+            Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
+            try (InputStream cipherInputStream = new CipherInputStream(contentInputStream, cipher)) {
+                Files.copy(cipherInputStream, encryptedFile, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                if (taggedInputStream.isCauseOf(e)) {
+                    throw new IOException("StreamError", e);
+                }
+                // Writing the files failed, not the client
+                throw new UncheckedIOException("Error writing the uploaded file", e);
+            }
+
+            return createFile(name, previousFileId, mimeType, hashingInputStream.hash().toString(), countingInputStream.getByteCount(),
+                    encryptedFile, unencryptedFile, language, userId, documentId, FileProcessingPriority.INTERACTIVE);
+        } finally {
+            // Moved to the storage if the file has been created
+            Files.deleteIfExists(encryptedFile);
+        }
+    }
+
+    /**
+     * Delete the uploads left in the storage directory by an interrupted server.
+     * No upload can be in progress when the server starts.
+     */
+    public static void deleteUploadFiles() {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DirectoryUtil.getStorageDirectory(), UPLOAD_PREFIX + "*" + UPLOAD_SUFFIX)) {
+            for (Path path : stream) {
+                log.info("Deleting an interrupted upload: " + path);
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            log.error("Error deleting the interrupted uploads", e);
         }
+    }
 
-        // Validate global quota
-        String globalStorageQuotaStr = System.getenv(Constants.GLOBAL_QUOTA_ENV);
-        if (!Strings.isNullOrEmpty(globalStorageQuotaStr)) {
-            long globalStorageQuota = Long.parseLong(globalStorageQuotaStr);
-            long globalStorageCurrent = userDao.getGlobalStorageCurrent();
-            if (globalStorageCurrent + fileSize > globalStorageQuota) {
+    /**
+     * Create a new file from its analyzed content.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param mimeType MIME type
+     * @param hash Content hash
+     * @param fileSize File size
+     * @param encryptedFile Content encrypted with the user key to move to the storage, null to encrypt the unencrypted file
+     * @param unencryptedFile Unencrypted content, can be null if an encrypted file is provided
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @param priority Processing priority
+     * @return File ID
+     * @throws Exception e
+     */
+    private static String createFile(String name, String previousFileId, String mimeType, String hash, long fileSize,
+                                     Path encryptedFile, Path unencryptedFile, String language, String userId, String documentId,
+                                     FileProcessingPriority priority) throws Exception {
+        // The user is charged once for all its files with the same content
+        FileDao fileDao = new FileDao();
+        boolean newContent = fileDao.addBlobReference(userId, hash);
+
+        UserDao userDao = new UserDao();
+        User user = userDao.getById(userId);
+        if (newContent) {
+            // Validate user quota
+            if (user.getStorageCurrent() + fileSize > user.getStorageQuota()) {
                 throw new IOException("QuotaReached");
             }
+
+            // Validate global quota
+            String globalStorageQuotaStr = System.getenv(Constants.GLOBAL_QUOTA_ENV);
+            if (!Strings.isNullOrEmpty(globalStorageQuotaStr)) {
+                long globalStorageQuota = Long.parseLong(globalStorageQuotaStr);
+                long globalStorageCurrent = userDao.getGlobalStorageCurrent();
+                if (globalStorageCurrent + fileSize > globalStorageQuota) {
+                    throw new IOException("QuotaReached");
+                }
+            }
         }
 
         // Prepare the file
@@ -153,9 +338,9 @@ public class FileUtil {
         file.setMimeType(mimeType);
         file.setUserId(userId);
         file.setSize(fileSize);
+        file.setHash(hash);
 
         // Get files of this document
-        FileDao fileDao = new FileDao();
         if (documentId != null) {
             if (previousFileId == null) {
                 // It's not a new version, so put it in last order
@@ -182,27 +367,51 @@ public class FileUtil {
             }
         }
 
+        // Look for an identical file of this user before creating this one, its stored files are encrypted with the same key
+        File sourceFile = newContent ? null : findStoredCopy(fileDao.getActiveByHash(userId, hash));
+
         // Create the file
         String fileId = fileDao.create(file, userId);
 
-        // Save the file
-        Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
-        Path path = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-        try (InputStream inputStream = Files.newInputStream(unencryptedFile)) {
-            Files.copy(new CipherInputStream(inputStream, cipher), path);
+        // Save the file, sharing the stored content of the identical file if possible
+        String sourceFileId = null;
+        try {
+            if (sourceFile != null && linkStoredFile(sourceFile.getId(), fileId, "")) {
+                if (!isProcessingFile(sourceFile.getId())) {
+                    // Its thumbnails and text content are ready, no need to process this file again
+                    linkStoredFile(sourceFile.getId(), fileId, "_web");
+                    linkStoredFile(sourceFile.getId(), fileId, "_thumb");
+                    sourceFileId = sourceFile.getId();
+                }
+            } else if (encryptedFile != null) {
+                Files.move(encryptedFile, DirectoryUtil.getStorageDirectory().resolve(fileId));
+            } else {
+                Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
+                Path path = DirectoryUtil.getStorageDirectory().resolve(fileId);
+                try (InputStream inputStream = Files.newInputStream(unencryptedFile)) {
+                    Files.copy(new CipherInputStream(inputStream, cipher), path);
+                }
+            }
+        } catch (IOException e) {
+            // Unlike the validation errors above, this is not the client's fault
+            throw new UncheckedIOException("Error writing the file to the storage", e);
         }
 
         // Update the user quota
-        user.setStorageCurrent(user.getStorageCurrent() + fileSize);
-        userDao.updateQuota(user);
+        if (newContent) {
+            user.setStorageCurrent(user.getStorageCurrent() + fileSize);
+            userDao.updateQuota(user);
+        }
 
         // Raise a new file created event and document updated event if we have a document
         startProcessingFile(fileId);
         FileCreatedAsyncEvent fileCreatedAsyncEvent = new FileCreatedAsyncEvent();
+        fileCreatedAsyncEvent.setSourceFileId(sourceFileId);
         fileCreatedAsyncEvent.setUserId(userId);
         fileCreatedAsyncEvent.setLanguage(language);
         fileCreatedAsyncEvent.setFileId(file.getId());
         fileCreatedAsyncEvent.setUnencryptedFile(unencryptedFile);
+        fileCreatedAsyncEvent.setPriority(priority);
         ThreadLocalContext.get().addAsyncEvent(fileCreatedAsyncEvent);
 
         if (documentId != null) {
@@ -215,6 +424,48 @@ public class FileUtil {
         return fileId;
     }
 
+    /**
+     * Returns the first file whose content is still in the storage directory.
+     *
+     * @param fileList Files with the same content
+     * @return File or null
+     */
+    private static File findStoredCopy(List<File> fileList) {
+        for (File file : fileList) {
+            if (Files.exists(DirectoryUtil.getStorageDirectory().resolve(file.getId()))) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Share a stored file with another file, with a hard link if the file system supports it.
+     * Each file has its own link, so deleting a file never removes the content of the others.
+     *
+     * @param sourceFileId Source file ID
+     * @param fileId Target file ID
+     * @param suffix Stored file suffix
+     * @return True if the stored file has been shared, false if the source doesn't exist
+     * @throws IOException e
+     */
+    private static boolean linkStoredFile(String sourceFileId, String fileId, String suffix) throws IOException {
+        Path source = DirectoryUtil.getStorageDirectory().resolve(sourceFileId + suffix);
+        Path target = DirectoryUtil.getStorageDirectory().resolve(fileId + suffix);
+        try {
+            Files.createLink(target, source);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (UnsupportedOperationException | IOException e) {
+            try {
+                Files.copy(source, target);
+            } catch (NoSuchFileException e2) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Start processing a file.
      *
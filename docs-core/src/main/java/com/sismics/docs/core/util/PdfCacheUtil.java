@@ -0,0 +1,239 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.io.Closer;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.util.EnvironmentUtil;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.CipherOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the files converted to PDF for the document exports.
+ * Each entry holds the pages of a file for a set of export options, encrypted with the key of the file creator.
+ * The cache is bounded in size, the least recently used entries are evicted first.
+ */
+public class PdfCacheUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(PdfCacheUtil.class);
+
+    /**
+     * Maximum size of the cache in bytes.
+     */
+    private static long maxSize = EnvironmentUtil.getIntEnv(Constants.PDF_CACHE_SIZE_ENV, Constants.DEFAULT_PDF_CACHE_SIZE) * 1024L * 1024L;
+
+    /**
+     * Size of the cache entries by name, in access order.
+     * Null until read from the cache directory.
+     */
+    private static LinkedHashMap<String, Long> entryMap;
+
+    /**
+     * Current size of the cache in bytes.
+     */
+    private static long currentSize;
+
+    /**
+     * Returns a file converted to PDF, from the cache or converted now and cached.
+     *
+     * @param file File, with its private key
+     * @param fitImageToPage Fit images to the page
+     * @param margin Margins in millimeters
+     * @param memUsageSettings Memory usage settings of the returned document
+     * @param converter Converts the file to PDF pages, if not cached
+     * @return PDF document of the file, to be closed after use
+     * @throws Exception e
+     */
+    public static PDDocument get(File file, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings,
+                                 Converter converter) throws Exception {
+        String name = file.getId() + "_" + (fitImageToPage ? "fit" : "nofit") + "_" + margin + ".pdf";
+        InputStream inputStream = open(name);
+        if (inputStream == null) {
+            // Convert the file in a temporary file, so a partial entry is never visible
+            Path tempFile = Files.createTempFile(DirectoryUtil.getPdfCacheDirectory(), file.getId(), ".tmp");
+            try {
+                try (PDDocument fileDoc = new PDDocument(memUsageSettings);
+                     Closer closer = Closer.create()) {
+                    converter.convert(fileDoc, closer);
+                    try (OutputStream outputStream = encrypt(Files.newOutputStream(tempFile), file.getPrivateKey())) {
+                        fileDoc.save(outputStream);
+                    }
+                }
+                inputStream = add(name, tempFile);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+
+        try (InputStream decryptedInputStream = file.getPrivateKey() == null ?
+                inputStream : EncryptionUtil.decryptInputStream(inputStream, file.getPrivateKey())) {
+            return PDDocument.load(decryptedInputStream, memUsageSettings);
+        }
+    }
+
+    /**
+     * Change the maximum size of the cache, applied on the next entry added.
+     *
+     * @param maxSize Maximum size of the cache in bytes
+     */
+    static synchronized void setMaxSize(long maxSize) {
+        PdfCacheUtil.maxSize = maxSize;
+    }
+
+    /**
+     * Encrypt a cache entry with the key of the file creator.
+     *
+     * @param outputStream Output stream
+     * @param privateKey Private key, null to store the entry unencrypted for unit testing
+     * @return Encrypting output stream
+     * @throws Exception e
+     */
+    private static OutputStream encrypt(OutputStream outputStream, String privateKey) throws Exception {
+        if (privateKey == null) {
+            return outputStream;
+        }
+        return new CipherOutputStream(outputStream, EncryptionUtil.getEncryptionCipher(privateKey));
+    }
+
+    /**
+     * Remove all the cached conversions of a file.
+     *
+     * @param fileId File ID
+     */
+    public static synchronized void invalidate(String fileId) {
+        Iterator<Map.Entry<String, Long>> iterator = getEntryMap().entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getKey().startsWith(fileId + "_")) {
+                iterator.remove();
+                delete(entry);
+            }
+        }
+    }
+
+    /**
+     * Open a cache entry and mark it as recently used.
+     *
+     * @param name Entry name
+     * @return Entry content, null if not cached
+     * @throws IOException e
+     */
+    private static synchronized InputStream open(String name) throws IOException {
+        if (getEntryMap().get(name) == null) {
+            return null;
+        }
+        Path path = DirectoryUtil.getPdfCacheDirectory().resolve(name);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        return Files.newInputStream(path);
+    }
+
+    /**
+     * Add an entry to the cache and evict the least recently used entries if the cache is full.
+     *
+     * @param name Entry name
+     * @param file Entry content
+     * @return Entry content
+     * @throws IOException e
+     */
+    private static synchronized InputStream add(String name, Path file) throws IOException {
+        Map<String, Long> entries = getEntryMap();
+        Path path = DirectoryUtil.getPdfCacheDirectory().resolve(name);
+        Files.move(file, path, StandardCopyOption.REPLACE_EXISTING);
+        long size = Files.size(path);
+        Long previousSize = entries.put(name, size);
+        currentSize += size - (previousSize == null ? 0 : previousSize);
+
+        // The new entry is kept even if it doesn't fit alone
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (currentSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (!entry.getKey().equals(name)) {
+                iterator.remove();
+                delete(entry);
+            }
+        }
+        return Files.newInputStream(path);
+    }
+
+    /**
+     * Delete a cache entry.
+     *
+     * @param entry Entry removed from the entry map
+     */
+    private static void delete(Map.Entry<String, Long> entry) {
+        currentSize -= entry.getValue();
+        try {
+            Files.deleteIfExists(DirectoryUtil.getPdfCacheDirectory().resolve(entry.getKey()));
+        } catch (IOException e) {
+            log.error("Error deleting a PDF cache entry: " + entry.getKey(), e);
+        }
+    }
+
+    /**
+     * Returns the cache entries, read from the cache directory on first use.
+     *
+     * @return Size of the entries by name, in access order
+     */
+    private static Map<String, Long> getEntryMap() {
+        if (entryMap != null) {
+            return entryMap;
+        }
+
+        entryMap = new LinkedHashMap<>(16, 0.75f, true);
+        currentSize = 0;
+        List<Path> pathList = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DirectoryUtil.getPdfCacheDirectory())) {
+            for (Path path : stream) {
+                if (path.getFileName().toString().endsWith(".tmp")) {
+                    // Left by an interrupted conversion
+                    Files.deleteIfExists(path);
+                } else {
+                    pathList.add(path);
+                }
+            }
+            pathList.sort(Comparator.comparing(path -> path.toFile().lastModified()));
+            for (Path path : pathList) {
+                long size = Files.size(path);
+                entryMap.put(path.getFileName().toString(), size);
+                currentSize += size;
+            }
+        } catch (IOException e) {
+            log.error("Error reading the PDF cache", e);
+        }
+        log.info("PDF cache loaded with {} entries ({} bytes)", entryMap.size(), currentSize);
+        return entryMap;
+    }
+
+    /**
+     * Converts a file to PDF pages.
+     */
+    public interface Converter {
+        /**
+         * Add the pages of the file.
+         *
+         * @param doc PDF document of the file alone
+         * @param closer Closer, closed after the document is saved
+         * @throws Exception e
+         */
+        void convert(PDDocument doc, Closer closer) throws Exception;
+    }
+}
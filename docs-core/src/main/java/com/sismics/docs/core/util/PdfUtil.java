@@ -12,6 +12,7 @@ import com.sismics.docs.core.util.format.FormatHandler;
 import com.sismics.docs.core.util.format.FormatHandlerUtil;
 import com.sismics.docs.core.util.pdf.PdfPage;
 import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.font.DocsPDType1Font;
@@ -101,16 +102,22 @@ public class PdfUtil {
                 }
             }
             
-            // Add files
+            // Add files, converted once and cached for the next exports
+            PDFMergerUtility pdfMergerUtility = new PDFMergerUtility();
             for (File file : fileList) {
-                Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-
-                // Decrypt the file to a temporary file
-                Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, file.getPrivateKey());
                 FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType());
-                if (formatHandler != null) {
-                    formatHandler.appendToPdf(unencryptedFile, doc, fitImageToPage, margin, memUsageSettings, closer);
+                if (formatHandler == null) {
+                    continue;
                 }
+
+                PDDocument fileDoc = PdfCacheUtil.get(file, fitImageToPage, margin, memUsageSettings, (convertedDoc, convertCloser) -> {
+                    // Decrypt the file to a temporary file
+                    Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
+                    Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, file.getPrivateKey());
+                    formatHandler.appendToPdf(unencryptedFile, convertedDoc, fitImageToPage, margin, memUsageSettings, convertCloser);
+                });
+                closer.register(fileDoc);
+                pdfMergerUtility.appendDocument(doc, fileDoc);
             }
             
             doc.save(outputStream); // Write to the output stream
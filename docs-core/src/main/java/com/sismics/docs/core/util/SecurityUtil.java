@@ -5,8 +5,12 @@ import com.sismics.docs.core.dao.GroupDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.model.jpa.Group;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.util.context.ThreadLocalContext;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Security utilities.
@@ -14,6 +18,21 @@ import java.util.List;
  * @author bgamard
  */
 public class SecurityUtil {
+    /**
+     * Sequence of the changes to the data used to build the authenticated principals.
+     */
+    private static final AtomicLong principalSequence = new AtomicLong();
+
+    /**
+     * Last change to the data used to build all the authenticated principals.
+     */
+    private static volatile long allPrincipalVersion;
+
+    /**
+     * Last change to the data used to build the authenticated principals, by user ID.
+     */
+    private static final Map<String, Long> userPrincipalVersionMap = new ConcurrentHashMap<>();
+
     /**
      * Get an ACL target ID from an object name and type.
      *
@@ -49,4 +68,59 @@ public class SecurityUtil {
     public static boolean skipAclCheck(List<String> targetIdList) {
         return targetIdList.contains("admin") || targetIdList.contains("administrators");
     }
+
+    /**
+     * Invalidate all the cached authenticated principals.
+     * To be called when the groups hierarchy changes.
+     * The principals are invalidated again after the commit, so that no request caches the data read before it.
+     */
+    public static void invalidatePrincipals() {
+        invalidatePrincipal(null);
+    }
+
+    /**
+     * Invalidate the cached authenticated principals of a user.
+     * To be called when the tokens, the user or its memberships change.
+     * The principals are invalidated again after the commit, so that no request caches the data read before it.
+     *
+     * @param userId User ID, null for all the users
+     */
+    public static void invalidatePrincipal(String userId) {
+        ThreadLocalContext.get().addInvalidatedPrincipal(userId);
+        incrementPrincipalVersion(userId);
+    }
+
+    /**
+     * Record a change to the data used to build the authenticated principals.
+     *
+     * @param userId User ID, null for all the users
+     */
+    public static void incrementPrincipalVersion(String userId) {
+        long version = principalSequence.incrementAndGet();
+        if (userId == null) {
+            allPrincipalVersion = version;
+        } else {
+            userPrincipalVersionMap.merge(userId, version, Math::max);
+        }
+    }
+
+    /**
+     * Return the current sequence of the changes to the data used to build the authenticated principals.
+     * A principal built after reading this sequence is up to date while its version is not greater.
+     *
+     * @return Principal sequence
+     */
+    public static long getPrincipalSequence() {
+        return principalSequence.get();
+    }
+
+    /**
+     * Return the last change to the data used to build the authenticated principals of a user.
+     *
+     * @param userId User ID
+     * @return Principal version
+     */
+    public static long getPrincipalVersion(String userId) {
+        return Math.max(allPrincipalVersion, userPrincipalVersionMap.getOrDefault(userId, 0L));
+    }
 }
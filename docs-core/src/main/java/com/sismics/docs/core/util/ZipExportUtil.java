@@ -0,0 +1,360 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.util.EnvironmentUtil;
+import com.sismics.util.mime.MimeType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZIP export utilities.
+ * The next files are decrypted by worker threads while the current one is written,
+ * files already compressed are stored as is, and large archives use ZIP64 extensions.
+ */
+public class ZipExportUtil {
+    /**
+     * Files up to this size are decrypted in memory, larger ones in a temporary file.
+     */
+    private static final long MEMORY_ENTRY_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * MIME types already compressed, deflating them again is a waste of CPU.
+     */
+    private static final Set<String> COMPRESSED_MIME_TYPES = Sets.newHashSet(
+            MimeType.IMAGE_JPEG, MimeType.IMAGE_PNG, MimeType.IMAGE_GIF,
+            MimeType.APPLICATION_ZIP, MimeType.APPLICATION_PDF,
+            MimeType.OPEN_DOCUMENT_TEXT, MimeType.OFFICE_DOCUMENT, MimeType.OFFICE_PRESENTATION, MimeType.OFFICE_SHEET,
+            MimeType.VIDEO_WEBM, MimeType.VIDEO_MP4);
+
+    /**
+     * Progress of the recent exports, by user ID and export ID.
+     * Export IDs are chosen by the clients, each user only sees its own exports.
+     */
+    private static final Cache<String, Progress> progressCache = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
+    /**
+     * Number of decryption threads.
+     */
+    private static final int threadCount = EnvironmentUtil.getIntEnv(Constants.ZIP_EXPORT_THREADS_ENV, Constants.DEFAULT_ZIP_EXPORT_THREADS);
+
+    /**
+     * Executor decrypting the files, shared by all exports.
+     */
+    private static final ExecutorService executor = Executors.newFixedThreadPool(threadCount,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("zip-export-%d")
+                    .setDaemon(true)
+                    .build());
+
+    /**
+     * Returns true if files of this MIME type are stored without compression.
+     *
+     * @param mimeType MIME type
+     * @return True if already compressed
+     */
+    public static boolean isCompressed(String mimeType) {
+        return mimeType != null && (COMPRESSED_MIME_TYPES.contains(mimeType)
+                || mimeType.startsWith("video/") || mimeType.startsWith("audio/"));
+    }
+
+    /**
+     * Start tracking the progress of an export.
+     *
+     * @param userId ID of the user exporting the files
+     * @param exportId Export ID
+     * @param fileList Files to export
+     * @return Progress
+     */
+    public static Progress createProgress(String userId, String exportId, List<File> fileList) {
+        long totalSize = 0;
+        for (File file : fileList) {
+            if (file.getSize() != null && !file.getSize().equals(File.UNKNOWN_SIZE)) {
+                totalSize += file.getSize();
+            }
+        }
+        Progress progress = new Progress(fileList.size(), totalSize);
+        progressCache.put(getProgressKey(userId, exportId), progress);
+        return progress;
+    }
+
+    /**
+     * Returns the progress of an export.
+     *
+     * @param userId ID of the user who started the export
+     * @param exportId Export ID
+     * @return Progress, null if unknown, expired or started by another user
+     */
+    public static Progress getProgress(String userId, String exportId) {
+        return progressCache.getIfPresent(getProgressKey(userId, exportId));
+    }
+
+    /**
+     * Returns the key of an export progress.
+     *
+     * @param userId User ID
+     * @param exportId Export ID
+     * @return Key
+     */
+    private static String getProgressKey(String userId, String exportId) {
+        return userId + "/" + exportId;
+    }
+
+    /**
+     * Write files in a ZIP archive.
+     *
+     * @param fileList Files, the entries are named after their position
+     * @param privateKeyMap Private keys of the files creators, by user ID
+     * @param outputStream Output stream, not closed
+     * @param progress Progress to update, may be null
+     * @throws IOException e
+     */
+    public static void writeZip(List<File> fileList, Map<String, String> privateKeyMap,
+                                OutputStream outputStream, Progress progress) throws IOException {
+        Deque<Future<PreparedEntry>> pendingEntryDeque = new ArrayDeque<>();
+        Iterator<File> fileIterator = fileList.iterator();
+        int index = 0;
+        try {
+            ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+            while (fileIterator.hasNext() || !pendingEntryDeque.isEmpty()) {
+                // Keep the worker threads busy with the next files
+                while (fileIterator.hasNext() && pendingEntryDeque.size() <= threadCount) {
+                    File file = fileIterator.next();
+                    String name = index + "-" + file.getFullName(Integer.toString(index));
+                    index++;
+                    String privateKey = privateKeyMap.get(file.getUserId());
+                    pendingEntryDeque.add(executor.submit(() -> prepareEntry(file, name, privateKey)));
+                }
+
+                PreparedEntry entry = getEntry(pendingEntryDeque.poll());
+                try {
+                    writeEntry(zipOutputStream, entry, progress);
+                } finally {
+                    entry.delete();
+                }
+            }
+            zipOutputStream.finish();
+            if (progress != null) {
+                progress.done = true;
+            }
+        } finally {
+            // The client went away, discard what has been prepared
+            for (Future<PreparedEntry> future : pendingEntryDeque) {
+                future.cancel(true);
+                if (future.isDone() && !future.isCancelled()) {
+                    try {
+                        future.get().delete();
+                    } catch (Exception e) {
+                        // Nothing to clean up
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for a file to be decrypted.
+     *
+     * @param future Pending entry
+     * @return Prepared entry
+     * @throws IOException e
+     */
+    private static PreparedEntry getEntry(Future<PreparedEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error decrypting a file", e.getCause());
+        }
+    }
+
+    /**
+     * Decrypt a file and compute its checksum, which must be known beforehand to store an entry.
+     *
+     * @param file File
+     * @param name Entry name
+     * @param privateKey Private key of the file creator
+     * @return Prepared entry
+     * @throws Exception e
+     */
+    private static PreparedEntry prepareEntry(File file, String name, String privateKey) throws Exception {
+        PreparedEntry entry = new PreparedEntry();
+        entry.name = name;
+        entry.stored = isCompressed(file.getMimeType());
+
+        boolean inMemory = file.getSize() != null && !file.getSize().equals(File.UNKNOWN_SIZE)
+                && file.getSize() <= MEMORY_ENTRY_SIZE;
+        ByteArrayOutputStream byteArrayOutputStream = null;
+        OutputStream outputStream;
+        if (inMemory) {
+            byteArrayOutputStream = new ByteArrayOutputStream(file.getSize().intValue());
+            outputStream = byteArrayOutputStream;
+        } else {
+            entry.tempFile = AppContext.getInstance().getFileService().createTemporaryFile();
+            outputStream = Files.newOutputStream(entry.tempFile);
+        }
+
+        CRC32 crc = new CRC32();
+        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
+        try (OutputStream entryOutputStream = outputStream;
+             InputStream storedStream = Files.newInputStream(storedFile);
+             InputStream decryptedStream = EncryptionUtil.decryptInputStream(storedStream, privateKey);
+             CheckedOutputStream checkedOutputStream = new CheckedOutputStream(entryOutputStream, crc)) {
+            entry.size = ByteStreams.copy(decryptedStream, checkedOutputStream);
+        } catch (Exception e) {
+            entry.delete();
+            throw e;
+        }
+        entry.crc = crc.getValue();
+        if (byteArrayOutputStream != null) {
+            entry.data = byteArrayOutputStream.toByteArray();
+        }
+        return entry;
+    }
+
+    /**
+     * Write a prepared entry to the archive.
+     *
+     * @param zipOutputStream ZIP output stream
+     * @param entry Prepared entry
+     * @param progress Progress, may be null
+     * @throws IOException e
+     */
+    private static void writeEntry(ZipOutputStream zipOutputStream, PreparedEntry entry, Progress progress) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(entry.name);
+        if (entry.stored) {
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(entry.size);
+            zipEntry.setCompressedSize(entry.size);
+            zipEntry.setCrc(entry.crc);
+        }
+        zipOutputStream.putNextEntry(zipEntry);
+        try (InputStream inputStream = entry.data == null ? Files.newInputStream(entry.tempFile) : new ByteArrayInputStream(entry.data)) {
+            ByteStreams.copy(inputStream, zipOutputStream);
+        }
+        zipOutputStream.closeEntry();
+
+        if (progress != null) {
+            progress.writtenEntryCount.incrementAndGet();
+            progress.writtenSize.addAndGet(entry.size);
+        }
+    }
+
+    /**
+     * A file decrypted and ready to be written in the archive.
+     */
+    private static class PreparedEntry {
+        private String name;
+        private boolean stored;
+        private long size;
+        private long crc;
+
+        /**
+         * Decrypted content of a small file.
+         */
+        private byte[] data;
+
+        /**
+         * Temporary file holding the decrypted content of a large file.
+         */
+        private Path tempFile;
+
+        /**
+         * Delete the temporary file.
+         */
+        void delete() {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    // The file service will delete it later
+                }
+            }
+        }
+    }
+
+    /**
+     * Progress of an export.
+     */
+    public static class Progress {
+        private final int entryCount;
+        private final long totalSize;
+        private final AtomicInteger writtenEntryCount = new AtomicInteger();
+        private final AtomicLong writtenSize = new AtomicLong();
+        private volatile boolean done;
+
+        Progress(int entryCount, long totalSize) {
+            this.entryCount = entryCount;
+            this.totalSize = totalSize;
+        }
+
+        /**
+         * @return Number of files to export
+         */
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        /**
+         * @return Uncompressed size of the files to export, without the files of unknown size
+         */
+        public long getTotalSize() {
+            return totalSize;
+        }
+
+        /**
+         * @return Number of files written
+         */
+        public int getWrittenEntryCount() {
+            return writtenEntryCount.get();
+        }
+
+        /**
+         * @return Uncompressed size of the files written
+         */
+        public long getWrittenSize() {
+            return writtenSize.get();
+        }
+
+        /**
+         * @return True if the archive is complete
+         */
+        public boolean isDone() {
+            return done;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.sismics.docs.core.util.cache;
+
+/**
+ * Regions of the reference data cache, one per cached table.
+ */
+public enum CacheRegion {
+    /**
+     * Configuration parameters.
+     */
+    CONFIG,
+
+    /**
+     * Metadata definitions.
+     */
+    METADATA,
+
+    /**
+     * Tags.
+     */
+    TAG,
+
+    /**
+     * Vocabulary entries.
+     */
+    VOCABULARY,
+
+    /**
+     * Base functions of the roles.
+     */
+    ROLE_BASE_FUNCTION,
+
+    /**
+     * Webhook URLs by event.
+     */
+    WEBHOOK
+}
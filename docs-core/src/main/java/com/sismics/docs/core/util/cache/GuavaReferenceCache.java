@@ -0,0 +1,79 @@
+package com.sismics.docs.core.util.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Reference data cache in the memory of this instance.
+ */
+public class GuavaReferenceCache implements ReferenceCache {
+    /**
+     * Maximum number of values per region.
+     */
+    private static final long MAX_SIZE = 1000;
+
+    /**
+     * Values by region.
+     */
+    private final Map<CacheRegion, Cache<Object, Object>> cacheMap = new EnumMap<>(CacheRegion.class);
+
+    /**
+     * Number of invalidations by region, a value loaded during an invalidation is not cached.
+     */
+    private final Map<CacheRegion, AtomicLong> generationMap = new EnumMap<>(CacheRegion.class);
+
+    /**
+     * Constructor.
+     *
+     * @param ttl Expiration time of the values in seconds
+     */
+    public GuavaReferenceCache(int ttl) {
+        for (CacheRegion region : CacheRegion.values()) {
+            cacheMap.put(region, CacheBuilder.newBuilder()
+                    .maximumSize(MAX_SIZE)
+                    .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                    .recordStats()
+                    .build());
+            generationMap.put(region, new AtomicLong());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(CacheRegion region, Object key, Supplier<T> loader) {
+        Cache<Object, Object> cache = cacheMap.get(region);
+        AtomicLong generation = generationMap.get(region);
+        long loadGeneration = generation.get();
+        T value = (T) cache.getIfPresent(key);
+        if (value == null) {
+            value = loader.get();
+            if (generation.get() == loadGeneration) {
+                cache.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void invalidate(CacheRegion region) {
+        generationMap.get(region).incrementAndGet();
+        cacheMap.get(region).invalidateAll();
+    }
+
+    @Override
+    public long getSize(CacheRegion region) {
+        return cacheMap.get(region).size();
+    }
+
+    @Override
+    public CacheStats getStats(CacheRegion region) {
+        return cacheMap.get(region).stats();
+    }
+}
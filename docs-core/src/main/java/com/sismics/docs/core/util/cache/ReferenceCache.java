@@ -0,0 +1,45 @@
+package com.sismics.docs.core.util.cache;
+
+import com.google.common.cache.CacheStats;
+
+import java.util.function.Supplier;
+
+/**
+ * Cache of slowly changing reference data.
+ */
+public interface ReferenceCache {
+    /**
+     * Returns a cached value, loaded now if not cached.
+     * Cached values are shared between threads and must not be modified.
+     *
+     * @param region Cache region
+     * @param key Key in the region
+     * @param loader Loads the value if not cached, must not return null
+     * @param <T> Value type
+     * @return Value
+     */
+    <T> T get(CacheRegion region, Object key, Supplier<T> loader);
+
+    /**
+     * Removes all the values of a region.
+     *
+     * @param region Cache region
+     */
+    void invalidate(CacheRegion region);
+
+    /**
+     * Returns the number of values cached in a region.
+     *
+     * @param region Cache region
+     * @return Number of values
+     */
+    long getSize(CacheRegion region);
+
+    /**
+     * Returns the hit and miss statistics of a region.
+     *
+     * @param region Cache region
+     * @return Statistics since startup
+     */
+    CacheStats getStats(CacheRegion region);
+}
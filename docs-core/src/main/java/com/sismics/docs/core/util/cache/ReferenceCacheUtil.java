@@ -0,0 +1,65 @@
+package com.sismics.docs.core.util.cache;
+
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.util.EnvironmentUtil;
+import com.sismics.util.context.ThreadLocalContext;
+
+import java.util.function.Supplier;
+
+/**
+ * Reference data cache utilities.
+ * A region invalidated by the current transaction is read from the database until the commit,
+ * then invalidated again so no other thread keeps the data read before the commit.
+ */
+public class ReferenceCacheUtil {
+    /**
+     * Current cache.
+     */
+    private static volatile ReferenceCache cache = new GuavaReferenceCache(
+            EnvironmentUtil.getIntEnv(Constants.REFERENCE_CACHE_TTL_ENV, Constants.DEFAULT_REFERENCE_CACHE_TTL));
+
+    /**
+     * Returns the current cache.
+     *
+     * @return Cache
+     */
+    public static ReferenceCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Replaces the cache, for example with a cache shared between several instances.
+     *
+     * @param cache Cache
+     */
+    public static void setCache(ReferenceCache cache) {
+        ReferenceCacheUtil.cache = cache;
+    }
+
+    /**
+     * Returns a cached value, loaded now if not cached.
+     *
+     * @param region Cache region
+     * @param key Key in the region
+     * @param loader Loads the value if not cached, must not return null
+     * @param <T> Value type
+     * @return Value, must not be modified
+     */
+    public static <T> T get(CacheRegion region, Object key, Supplier<T> loader) {
+        if (ThreadLocalContext.get().isCacheRegionInvalidated(region)) {
+            // Uncommitted changes are not visible to the other transactions
+            return loader.get();
+        }
+        return cache.get(region, key, loader);
+    }
+
+    /**
+     * Invalidate a region, now and after the commit of the current transaction.
+     *
+     * @param region Cache region
+     */
+    public static void invalidate(CacheRegion region) {
+        ThreadLocalContext.get().addInvalidatedCacheRegion(region);
+        cache.invalidate(region);
+    }
+}
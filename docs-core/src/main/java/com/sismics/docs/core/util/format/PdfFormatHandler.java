@@ -1,6 +1,12 @@
 package com.sismics.docs.core.util.format;
 
+import com.google.common.hash.Hashing;
 import com.google.common.io.Closer;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.constant.ConfigType;
@@ -15,9 +21,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * PDF format handler.
@@ -30,6 +48,22 @@ public class PdfFormatHandler implements FormatHandler {
      */
     private static final Logger log = LoggerFactory.getLogger(PdfFormatHandler.class);
 
+    /**
+     * Number of days the OCR progress of a file is kept.
+     */
+    private static final int OCR_PROGRESS_RETENTION_DAYS = 7;
+
+    /**
+     * Executor OCR-izing the pages, shared by all PDF files.
+     */
+    private static final ExecutorService ocrExecutor = Executors.newFixedThreadPool(FileUtil.getOcrConcurrency(),
+            new ThreadFactoryBuilder().setNameFormat("pdf-ocr-%d").setDaemon(true).build());
+
+    /**
+     * Permits to hold a rendered page waiting for OCR, shared by all PDF files.
+     */
+    private static final Semaphore renderedPageSemaphore = new Semaphore(FileUtil.getOcrConcurrency() * 2, true);
+
     @Override
     public boolean accept(String mimeType) {
         return mimeType.equals(MimeType.APPLICATION_PDF);
@@ -56,16 +90,8 @@ public class PdfFormatHandler implements FormatHandler {
 
         // No text content, try to OCR it
         if (language != null && content != null && content.trim().isEmpty() && ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true)) {
-            StringBuilder sb = new StringBuilder();
-            try (InputStream inputStream = Files.newInputStream(file);
-                 PDDocument pdfDocument = PDDocument.load(inputStream)) {
-                PDFRenderer renderer = new PDFRenderer(pdfDocument);
-                for (int pageIndex = 0; pageIndex < pdfDocument.getNumberOfPages(); pageIndex++) {
-                    log.info("OCR page " + (pageIndex + 1) + "/" + pdfDocument.getNumberOfPages() + " of PDF file containing only images");
-                    sb.append(" ");
-                    sb.append(FileUtil.ocrFile(language, renderer.renderImageWithDPI(pageIndex, 300, ImageType.GRAY)));
-                }
-                return sb.toString();
+            try {
+                return ocrPdf(language, file);
             } catch (Exception e) {
                 log.error("Error while OCR-izing the PDF", e);
             }
@@ -74,6 +100,94 @@ public class PdfFormatHandler implements FormatHandler {
         return content;
     }
 
+    /**
+     * OCR all pages of a PDF file containing only images.
+     * Pages are rendered one by one and OCR-ized in parallel, each page result is saved
+     * so that an interrupted OCR resumes where it stopped.
+     *
+     * @param language Language to OCR
+     * @param file PDF file
+     * @return Content extracted
+     * @throws Exception e
+     */
+    private String ocrPdf(String language, Path file) throws Exception {
+        Path progressDirectory = DirectoryUtil.getOcrDirectory().resolve(
+                com.google.common.io.Files.asByteSource(file.toFile()).hash(Hashing.sha256()) + "_" + language);
+        Files.createDirectories(progressDirectory);
+
+        List<Future<String>> pageList = new ArrayList<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        try (InputStream inputStream = Files.newInputStream(file);
+             PDDocument pdfDocument = PDDocument.load(inputStream)) {
+            PDFRenderer renderer = new PDFRenderer(pdfDocument);
+            int pageCount = pdfDocument.getNumberOfPages();
+            for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+                Path pageFile = progressDirectory.resolve(pageIndex + ".txt");
+                if (Files.exists(pageFile)) {
+                    // Already OCR-ized before an interruption
+                    pageList.add(Futures.immediateFuture(Files.readString(pageFile, StandardCharsets.UTF_8)));
+                    continue;
+                }
+
+                // Wait for some room before rendering, rendered pages are heavy
+                renderedPageSemaphore.acquire();
+                BufferedImage image;
+                try {
+                    image = renderer.renderImageWithDPI(pageIndex, 300, ImageType.GRAY);
+                } catch (Exception e) {
+                    renderedPageSemaphore.release();
+                    throw e;
+                }
+
+                int pageNumber = pageIndex + 1;
+                pageList.add(ocrExecutor.submit(() -> {
+                    try {
+                        if (aborted.get()) {
+                            return null;
+                        }
+                        log.info("OCR page " + pageNumber + "/" + pageCount + " of PDF file containing only images");
+                        String pageContent = FileUtil.ocrFile(language, image);
+                        Path tmpFile = Files.createTempFile(progressDirectory, "page", ".tmp");
+                        Files.writeString(tmpFile, pageContent, StandardCharsets.UTF_8);
+                        Files.move(tmpFile, pageFile, StandardCopyOption.ATOMIC_MOVE);
+                        return pageContent;
+                    } finally {
+                        renderedPageSemaphore.release();
+                    }
+                }));
+            }
+
+            // Reassemble the pages in order
+            StringBuilder sb = new StringBuilder();
+            for (Future<String> page : pageList) {
+                sb.append(" ");
+                sb.append(page.get());
+            }
+            MoreFiles.deleteRecursively(progressDirectory, RecursiveDeleteOption.ALLOW_INSECURE);
+            return sb.toString();
+        } catch (Exception e) {
+            // Skip the remaining pages, the ones already OCR-ized are kept for the next time
+            aborted.set(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Delete the OCR progress left by files which were never processed again.
+     */
+    public static void deleteStaleOcrProgress() {
+        long limit = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(OCR_PROGRESS_RETENTION_DAYS);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DirectoryUtil.getOcrDirectory())) {
+            for (Path progressDirectory : stream) {
+                if (Files.getLastModifiedTime(progressDirectory).toMillis() < limit) {
+                    MoreFiles.deleteRecursively(progressDirectory, RecursiveDeleteOption.ALLOW_INSECURE);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error deleting stale OCR progress", e);
+        }
+    }
+
     @Override
     public void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception {
         PDDocument mergeDoc = PDDocument.load(file.toFile(), memUsageSettings);
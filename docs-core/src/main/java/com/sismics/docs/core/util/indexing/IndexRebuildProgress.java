@@ -0,0 +1,125 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Progress of an index rebuild, saved with the rebuilt index so an interrupted rebuild can resume.
+ */
+public class IndexRebuildProgress {
+    /**
+     * Rebuild phases, in order.
+     */
+    public enum Phase {
+        DOCUMENTS,
+        FILES
+    }
+
+    /**
+     * Current phase.
+     */
+    private volatile Phase phase = Phase.DOCUMENTS;
+
+    /**
+     * ID of the last entity indexed in the current phase, entities are indexed by ascending IDs.
+     */
+    private volatile String lastId;
+
+    /**
+     * Number of entities indexed in the current phase.
+     */
+    private volatile long indexedCount;
+
+    /**
+     * Number of entities to index in the current phase.
+     */
+    private volatile long totalCount;
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public String getLastId() {
+        return lastId;
+    }
+
+    public long getIndexedCount() {
+        return indexedCount;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public IndexRebuildProgress setTotalCount(long totalCount) {
+        this.totalCount = totalCount;
+        return this;
+    }
+
+    /**
+     * Records that entities up to this ID are indexed.
+     *
+     * @param lastId ID of the last indexed entity
+     * @param count Number of entities indexed since the previous advance
+     */
+    public void advance(String lastId, long count) {
+        this.lastId = lastId;
+        this.indexedCount += count;
+    }
+
+    /**
+     * Starts a new phase from the beginning.
+     *
+     * @param phase Phase
+     */
+    public void startPhase(Phase phase) {
+        this.phase = phase;
+        this.lastId = null;
+        this.indexedCount = 0;
+        this.totalCount = 0;
+    }
+
+    /**
+     * Returns the progress as commit user data.
+     *
+     * @return Commit user data
+     */
+    Map<String, String> toCommitData() {
+        Map<String, String> commitData = new HashMap<>();
+        commitData.put("rebuild_phase", phase.name());
+        if (lastId != null) {
+            commitData.put("rebuild_last_id", lastId);
+        }
+        commitData.put("rebuild_indexed_count", String.valueOf(indexedCount));
+        return commitData;
+    }
+
+    /**
+     * Reads the progress from commit user data.
+     *
+     * @param commitData Commit user data
+     * @return Progress, from the beginning if nothing was saved
+     */
+    static IndexRebuildProgress fromCommitData(Map<String, String> commitData) {
+        IndexRebuildProgress progress = new IndexRebuildProgress();
+        String phase = commitData.get("rebuild_phase");
+        if (phase != null) {
+            progress.phase = Phase.valueOf(phase);
+            progress.lastId = commitData.get("rebuild_last_id");
+            progress.indexedCount = Long.parseLong(commitData.getOrDefault("rebuild_indexed_count", "0"));
+        }
+        return progress;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("phase", phase)
+                .add("lastId", lastId)
+                .add("indexedCount", indexedCount)
+                .add("totalCount", totalCount)
+                .toString();
+    }
+}
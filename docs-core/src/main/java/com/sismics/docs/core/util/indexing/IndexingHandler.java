@@ -36,23 +36,64 @@ public interface IndexingHandler {
     void shutDown();
 
     /**
-     * Clear the index.
+     * Wait until all the changes indexed so far are visible to searches.
+     * Nothing is committed to durable storage.
      */
-    void clearIndex();
+    void waitForPendingChanges();
 
     /**
-     * Index a list of documents.
+     * Start rebuilding the index in a new index, or resume an interrupted rebuild.
+     * Searches are answered by the current index until the rebuild is finished.
      *
-     * @param documentList All documents
+     * @return Progress to start from, null if a rebuild is already running
+     * @throws Exception e
+     */
+    IndexRebuildProgress startRebuild() throws Exception;
+
+    /**
+     * Index documents in the index being rebuilt.
+     * May be called from several threads at once.
+     *
+     * @param documentList Documents
+     * @throws Exception e
+     */
+    void rebuildDocuments(List<Document> documentList) throws Exception;
+
+    /**
+     * Index files in the index being rebuilt.
+     * May be called from several threads at once.
+     *
+     * @param fileList Files
+     * @throws Exception e
+     */
+    void rebuildFiles(List<File> fileList) throws Exception;
+
+    /**
+     * Durably save the index being rebuilt with its progress.
+     *
+     * @param progress Progress
+     * @throws Exception e
+     */
+    void checkpointRebuild(IndexRebuildProgress progress) throws Exception;
+
+    /**
+     * Apply the changes made during the rebuild and replace the current index with the rebuilt one.
+     *
+     * @throws Exception e
      */
-    void createDocuments(List<Document> documentList);
+    void finishRebuild() throws Exception;
 
     /**
-     * Index a list of files.
+     * Stop a failed rebuild, it will resume from its last checkpoint.
+     */
+    void stopRebuild();
+
+    /**
+     * Returns the progress of the running rebuild.
      *
-     * @param fileList All files
+     * @return Progress, null if no rebuild is running
      */
-    void createFiles(List<File> fileList);
+    IndexRebuildProgress getRebuildProgress();
 
     /**
      * Index a new document.
@@ -89,6 +130,13 @@ public interface IndexingHandler {
      */
     void deleteDocument(String id);
 
+    /**
+     * Delete an indexed file, the document it belonged to is updated.
+     *
+     * @param id File ID
+     */
+    void deleteFile(String id);
+
     /**
      * Create an ACL.
      *
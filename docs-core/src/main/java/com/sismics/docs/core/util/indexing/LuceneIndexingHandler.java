@@ -2,11 +2,18 @@ package com.sismics.docs.core.util.indexing;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.FileContentDao;
 import com.sismics.docs.core.dao.criteria.DocumentCriteria;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
@@ -16,28 +23,52 @@ import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.jpa.PageCursor;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.QueryParam;
+import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.ClasspathScanner;
+import com.sismics.util.EnvironmentUtil;
+import com.sismics.util.context.ThreadLocalContext;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.CheckIndex;
 import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.simple.SimpleQueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorable;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
 import org.apache.lucene.search.highlight.Highlighter;
 import org.apache.lucene.search.highlight.QueryScorer;
 import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
@@ -45,28 +76,52 @@ import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
 import org.apache.lucene.search.spell.LuceneDictionary;
 import org.apache.lucene.search.suggest.Lookup;
 import org.apache.lucene.search.suggest.analyzing.FuzzySuggester;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.store.NoLockFactory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jakarta.persistence.EntityManager;
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Lucene indexing handler.
  * Documents and files are indexed in Lucene, but only used for fulltext search.
- * Other search criteria are still using the database.
+ * Other search criteria are still using the database, unless they are indexed too
+ * (DOCS_LUCENE_INDEX_CRITERIA environment variable).
  *
  * @author bgamard
  */
@@ -77,20 +132,191 @@ public class LuceneIndexingHandler implements IndexingHandler {
      */
     private static final Logger log = LoggerFactory.getLogger(LuceneIndexingHandler.class);
 
+    /**
+     * Version of the index structure, the index is rebuilt when it changes.
+     */
+    private static final String INDEX_VERSION = "3";
+
+    /**
+     * Commit user data key holding the index version.
+     */
+    private static final String VERSION_KEY = "version";
+
+    /**
+     * Commit user data key holding true if the search criteria are indexed.
+     */
+    private static final String CRITERIA_KEY = "criteria";
+
+    /**
+     * Minimum number of document IDs checked at once in the database.
+     */
+    private static final int MIN_CHUNK_SIZE = 100;
+
+    /**
+     * Number of document IDs counted at once in the database.
+     */
+    private static final int COUNT_CHUNK_SIZE = 1000;
+
+    /**
+     * File in the Lucene directory naming the directory of the current index.
+     * Without it, the index is stored in the Lucene directory itself.
+     */
+    private static final String CURRENT_INDEX_FILE = "index.current";
+
+    /**
+     * File in the Lucene directory naming the directory of the index being rebuilt.
+     */
+    private static final String REBUILD_INDEX_FILE = "index.rebuild";
+
+    /**
+     * File in the Lucene directory listing the documents and files changed since the rebuild started.
+     */
+    private static final String REBUILD_CHANGES_FILE = "index.rebuild.changes";
+
     /**
      * Lucene directory.
      */
-    private Directory directory;
+    private volatile Directory directory;
 
     /**
-     * Directory reader.
+     * Directory holding the index files, null with RAM storage.
      */
-    private DirectoryReader directoryReader;
+    private Path indexPath;
 
     /**
      * Index writer.
      */
-    private IndexWriter indexWriter;
+    private volatile IndexWriter indexWriter;
+
+    /**
+     * Near-real-time searcher manager, fed from the index writer.
+     */
+    private volatile SearcherManager searcherManager;
+
+    /**
+     * Thread reopening the searchers in the background.
+     */
+    private volatile ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+    /**
+     * Lock held while writing to the index, and exclusively while replacing it with a rebuilt one.
+     */
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+    /**
+     * Progress of the running rebuild, null if none.
+     */
+    private volatile IndexRebuildProgress rebuildProgress;
+
+    /**
+     * Lucene directory of the index being rebuilt.
+     */
+    private Directory rebuildDirectory;
+
+    /**
+     * Directory holding the files of the index being rebuilt, null with RAM storage.
+     */
+    private Path rebuildPath;
+
+    /**
+     * Index writer of the index being rebuilt.
+     */
+    private volatile IndexWriter rebuildWriter;
+
+    /**
+     * IDs of the documents and files changed since the rebuild started.
+     */
+    private final Set<String> rebuildChangedIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * True if an interrupted rebuild is kept on disk, its changes are then recorded even while it is not running.
+     */
+    private volatile boolean rebuildResumable;
+
+    /**
+     * Service committing the index writer periodically.
+     */
+    private CommitService commitService;
+
+    /**
+     * Search terms suggester, replaced as a whole when rebuilt.
+     */
+    private volatile Lookup suggester;
+
+    /**
+     * Executor rebuilding the search terms suggester.
+     */
+    private ExecutorService suggesterExecutor;
+
+    /**
+     * True if a rebuild of the search terms suggester is pending.
+     */
+    private final AtomicBoolean suggesterRebuildPending = new AtomicBoolean();
+
+    /**
+     * Sequence number of the latest change made to the index.
+     */
+    private final AtomicLong latestGeneration = new AtomicLong(-1);
+
+    /**
+     * Number of changes since the last commit.
+     */
+    private final AtomicInteger uncommittedCount = new AtomicInteger();
+
+    /**
+     * Commit interval in seconds.
+     */
+    private final int commitInterval;
+
+    /**
+     * Commit after this many changes, even if the commit interval is not elapsed.
+     */
+    private final int commitDocumentCount;
+
+    /**
+     * If true, every change is committed immediately.
+     */
+    private final boolean durableWrites;
+
+    /**
+     * If true, ACLs, tags and other search criteria are indexed,
+     * and searches are answered by Lucene without the database.
+     */
+    private final boolean criteriaIndexed;
+
+    /**
+     * Lucene indexing handler, indexing the search criteria if asked by the environment.
+     */
+    public LuceneIndexingHandler() {
+        this(Boolean.parseBoolean(System.getenv(Constants.LUCENE_INDEX_CRITERIA_ENV)));
+    }
+
+    /**
+     * Lucene indexing handler.
+     *
+     * @param criteriaIndexed If true, ACLs, tags and other search criteria are indexed
+     */
+    LuceneIndexingHandler(boolean criteriaIndexed) {
+        this(criteriaIndexed,
+                Boolean.parseBoolean(System.getenv(Constants.LUCENE_DURABLE_WRITES_ENV)),
+                EnvironmentUtil.getIntEnv(Constants.LUCENE_COMMIT_INTERVAL_ENV, Constants.DEFAULT_LUCENE_COMMIT_INTERVAL),
+                EnvironmentUtil.getIntEnv(Constants.LUCENE_COMMIT_DOCUMENT_COUNT_ENV, Constants.DEFAULT_LUCENE_COMMIT_DOCUMENT_COUNT));
+    }
+
+    /**
+     * Lucene indexing handler.
+     *
+     * @param criteriaIndexed If true, ACLs, tags and other search criteria are indexed
+     * @param durableWrites If true, every change is committed immediately
+     * @param commitInterval Commit interval in seconds
+     * @param commitDocumentCount Number of changes triggering a commit
+     */
+    LuceneIndexingHandler(boolean criteriaIndexed, boolean durableWrites, int commitInterval, int commitDocumentCount) {
+        this.criteriaIndexed = criteriaIndexed;
+        this.durableWrites = durableWrites;
+        this.commitInterval = commitInterval;
+        this.commitDocumentCount = commitDocumentCount;
+    }
 
     @Override
     public boolean accept() {
@@ -128,16 +354,21 @@ public class LuceneIndexingHandler implements IndexingHandler {
             directory = new RAMDirectory();
             log.info("Using RAM Lucene storage");
         } else if (luceneStorage.equals("FILE")) {
-            Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
-            log.info("Using file Lucene storage: {}", luceneDirectory);
-            directory = new NIOFSDirectory(luceneDirectory, NoLockFactory.INSTANCE);
+            indexPath = readIndexPointer(CURRENT_INDEX_FILE);
+            if (indexPath == null) {
+                indexPath = DirectoryUtil.getLuceneDirectory();
+            }
+            log.info("Using file Lucene storage: {}", indexPath);
+            directory = new NIOFSDirectory(indexPath, NoLockFactory.INSTANCE);
+        }
+
+        // Index the search criteria if asked to
+        if (criteriaIndexed) {
+            log.info("Indexing ACLs and search criteria");
         }
 
         // Create an index writer
-        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
-        config.setCommitOnClose(true);
-        config.setMergeScheduler(new ConcurrentMergeScheduler());
-        indexWriter = new IndexWriter(directory, config);
+        indexWriter = createIndexWriter(directory, IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
 
         // Check index version and rebuild it if necessary
         if (DirectoryReader.indexExists(directory)) {
@@ -145,19 +376,153 @@ public class LuceneIndexingHandler implements IndexingHandler {
             try (CheckIndex checkIndex = new CheckIndex(directory)) {
                 CheckIndex.Status status = checkIndex.checkIndex();
                 if (!status.clean) {
+                    indexWriter.rollback();
                     throw new Exception("Index is dirty");
                 }
             }
+            if (!INDEX_VERSION.equals(getCommitData(VERSION_KEY))
+                    || !String.valueOf(criteriaIndexed).equals(getCommitData(CRITERIA_KEY))) {
+                indexWriter.rollback();
+                throw new Exception("Index version is outdated");
+            }
+        }
+        indexWriter.setLiveCommitData(getIndexCommitData().entrySet());
+
+        // Searchers are reopened from the index writer, changes are visible without committing
+        openSearchers();
+
+        // Search terms suggester, built from the existing index
+        suggesterExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("lucene-suggester")
+                .setDaemon(true)
+                .build());
+        scheduleSuggesterRebuild();
+
+        // Commit policy
+        if (!durableWrites) {
+            log.info("Committing the index every {} seconds or {} changes", commitInterval, commitDocumentCount);
+            commitService = new CommitService();
+            commitService.startAsync();
+            commitService.awaitRunning();
+        }
+
+        // Resume an interrupted rebuild
+        if (indexPath != null && readIndexPointer(REBUILD_INDEX_FILE) != null) {
+            rebuildResumable = true;
+            if (!EnvironmentUtil.isUnitTest()) {
+                log.info("Resuming the interrupted index rebuild");
+                AppContext.getInstance().getAsyncEventBus().post(new RebuildIndexAsyncEvent());
+            }
+        }
+    }
+
+    /**
+     * Create an index writer.
+     *
+     * @param directory Lucene directory
+     * @param openMode Open mode
+     * @return Index writer
+     * @throws IOException e
+     */
+    private IndexWriter createIndexWriter(Directory directory, IndexWriterConfig.OpenMode openMode) throws IOException {
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+        config.setOpenMode(openMode);
+        config.setCommitOnClose(true);
+        config.setMergeScheduler(new ConcurrentMergeScheduler());
+        return new IndexWriter(directory, config);
+    }
+
+    /**
+     * Returns the user data committed with the index.
+     *
+     * @return Commit user data
+     */
+    private Map<String, String> getIndexCommitData() {
+        Map<String, String> commitData = new HashMap<>();
+        commitData.put(VERSION_KEY, INDEX_VERSION);
+        commitData.put(CRITERIA_KEY, String.valueOf(criteriaIndexed));
+        return commitData;
+    }
+
+    /**
+     * Open the near-real-time searchers on the current index writer.
+     *
+     * @throws IOException e
+     */
+    private void openSearchers() throws IOException {
+        searcherManager = new SearcherManager(indexWriter, null);
+        reopenThread = new ControlledRealTimeReopenThread<>(indexWriter, searcherManager, 1.0, 0.025);
+        reopenThread.setName("lucene-nrt-reopen");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+    }
+
+    /**
+     * Read a file of the Lucene directory naming an index directory.
+     *
+     * @param name File name
+     * @return Index directory, null if the file doesn't exist
+     * @throws IOException e
+     */
+    private Path readIndexPointer(String name) throws IOException {
+        Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+        Path pointer = luceneDirectory.resolve(name);
+        if (!Files.exists(pointer)) {
+            return null;
+        }
+        return luceneDirectory.resolve(new String(Files.readAllBytes(pointer), StandardCharsets.UTF_8).trim());
+    }
+
+    /**
+     * Atomically write a file of the Lucene directory naming an index directory.
+     *
+     * @param name File name
+     * @param path Index directory
+     * @throws IOException e
+     */
+    private void writeIndexPointer(String name, Path path) throws IOException {
+        Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+        Path tempPointer = luceneDirectory.resolve(name + ".tmp");
+        Files.write(tempPointer, path.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tempPointer, luceneDirectory.resolve(name), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns a value from the user data of the last commit.
+     *
+     * @param key Key
+     * @return Value
+     */
+    private String getCommitData(String key) {
+        Iterable<Map.Entry<String, String>> commitData = indexWriter.getLiveCommitData();
+        if (commitData != null) {
+            for (Map.Entry<String, String> entry : commitData) {
+                if (entry.getKey().equals(key)) {
+                    return entry.getValue();
+                }
+            }
         }
+        return null;
     }
 
     @Override
     public void shutDown() {
-        if (directoryReader != null) {
+        closeRebuild();
+        if (commitService != null) {
+            commitService.stopAsync();
+            commitService.awaitTerminated();
+        }
+        if (suggesterExecutor != null) {
+            suggesterExecutor.shutdownNow();
+        }
+        if (reopenThread != null) {
+            reopenThread.close();
+        }
+        if (searcherManager != null) {
             try {
-                directoryReader.close();
+                searcherManager.close();
             } catch (IOException e) {
-                log.error("Error closing the index reader", e);
+                log.error("Error closing the searcher manager", e);
             }
         }
         if (indexWriter != null) {
@@ -177,82 +542,376 @@ public class LuceneIndexingHandler implements IndexingHandler {
     }
 
     @Override
-    public void clearIndex() {
-        handle(IndexWriter::deleteAll);
+    public void waitForPendingChanges() {
+        try {
+            reopenThread.waitForGeneration(latestGeneration.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
-    public void createDocuments(List<Document> documentList) {
-        handle(indexWriter -> {
-            for (Document document : documentList) {
-                org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-                indexWriter.addDocument(luceneDocument);
+    public synchronized IndexRebuildProgress startRebuild() throws Exception {
+        if (rebuildProgress != null) {
+            return null;
+        }
+
+        // Open the index being rebuilt, on disk it is kept across restarts
+        if (indexPath == null) {
+            rebuildDirectory = new ByteBuffersDirectory();
+        } else {
+            rebuildPath = readIndexPointer(REBUILD_INDEX_FILE);
+            if (rebuildPath == null) {
+                rebuildPath = DirectoryUtil.getLuceneDirectory().resolve("index-" + System.currentTimeMillis());
+                Files.createDirectories(rebuildPath);
+                writeIndexPointer(REBUILD_INDEX_FILE, rebuildPath);
             }
-        });
+            rebuildDirectory = new NIOFSDirectory(rebuildPath, NoLockFactory.INSTANCE);
+            rebuildResumable = true;
+        }
+
+        // Resume from the last checkpoint if it is compatible with the current index structure
+        IndexRebuildProgress progress = new IndexRebuildProgress();
+        IndexWriterConfig.OpenMode openMode = IndexWriterConfig.OpenMode.CREATE;
+        if (DirectoryReader.indexExists(rebuildDirectory)) {
+            Map<String, String> commitData = SegmentInfos.readLatestCommit(rebuildDirectory).getUserData();
+            if (INDEX_VERSION.equals(commitData.get(VERSION_KEY))
+                    && String.valueOf(criteriaIndexed).equals(commitData.get(CRITERIA_KEY))) {
+                progress = IndexRebuildProgress.fromCommitData(commitData);
+                openMode = IndexWriterConfig.OpenMode.APPEND;
+            }
+        }
+        rebuildWriter = createIndexWriter(rebuildDirectory, openMode);
+        rebuildWriter.setLiveCommitData(getIndexCommitData().entrySet());
+        if (openMode == IndexWriterConfig.OpenMode.APPEND) {
+            // Documents and files changed since the rebuild started may be indexed before the checkpoint
+            rebuildChangedIdSet.addAll(readRebuildChanges());
+        } else {
+            rebuildChangedIdSet.clear();
+            Files.deleteIfExists(DirectoryUtil.getLuceneDirectory().resolve(REBUILD_CHANGES_FILE));
+        }
+        rebuildProgress = progress;
+        return progress;
     }
 
     @Override
-    public void createFiles(List<File> fileList) {
-        handle(indexWriter -> {
-            for (File file : fileList) {
-                org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-                indexWriter.addDocument(luceneDocument);
+    public void rebuildDocuments(List<Document> documentList) throws Exception {
+        CriteriaData criteriaData = loadCriteriaData(documentList);
+        for (Document document : documentList) {
+            // Documents may already be indexed by an interrupted rebuild
+            rebuildWriter.updateDocument(new Term("id", document.getId()), getDocumentFromDocument(document, criteriaData));
+        }
+    }
+
+    @Override
+    public void rebuildFiles(List<File> fileList) throws Exception {
+        FileContentDao fileContentDao = new FileContentDao();
+        Map<String, String> contentMap = fileContentDao.getByFileIds(fileList.stream().map(File::getId).collect(Collectors.toList()));
+        for (File file : fileList) {
+            rebuildWriter.updateDocument(new Term("id", file.getId()), getDocumentFromFile(file, contentMap.get(file.getId())));
+        }
+    }
+
+    @Override
+    public void checkpointRebuild(IndexRebuildProgress progress) throws Exception {
+        Map<String, String> commitData = getIndexCommitData();
+        commitData.putAll(progress.toCommitData());
+        rebuildWriter.setLiveCommitData(commitData.entrySet());
+        rebuildWriter.commit();
+    }
+
+    @Override
+    public synchronized void finishRebuild() throws Exception {
+        // Most changes made during the rebuild are applied while searches and writes continue on the current index
+        reindexRebuildChanges();
+
+        Directory oldDirectory;
+        IndexWriter oldIndexWriter;
+        SearcherManager oldSearcherManager;
+        ControlledRealTimeReopenThread<IndexSearcher> oldReopenThread;
+        Path oldIndexPath;
+        indexLock.writeLock().lock();
+        try {
+            // No more writes until the swap is done, apply the latest changes
+            reindexRebuildChanges();
+            rebuildWriter.setLiveCommitData(getIndexCommitData().entrySet());
+            rebuildWriter.commit();
+
+            oldDirectory = directory;
+            oldIndexWriter = indexWriter;
+            oldSearcherManager = searcherManager;
+            oldReopenThread = reopenThread;
+            oldIndexPath = indexPath;
+
+            directory = rebuildDirectory;
+            indexWriter = rebuildWriter;
+            indexPath = rebuildPath;
+            if (indexPath != null) {
+                writeIndexPointer(CURRENT_INDEX_FILE, indexPath);
+                Files.delete(DirectoryUtil.getLuceneDirectory().resolve(REBUILD_INDEX_FILE));
+                Files.deleteIfExists(DirectoryUtil.getLuceneDirectory().resolve(REBUILD_CHANGES_FILE));
+                rebuildResumable = false;
             }
-        });
+            openSearchers();
+            latestGeneration.set(indexWriter.getMaxCompletedSequenceNumber());
+            uncommittedCount.set(0);
+
+            rebuildDirectory = null;
+            rebuildWriter = null;
+            rebuildPath = null;
+            rebuildProgress = null;
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+
+        // Searchers still using the old index keep their own reference on it
+        oldReopenThread.close();
+        oldSearcherManager.close();
+        oldIndexWriter.rollback();
+        oldDirectory.close();
+        if (oldIndexPath != null) {
+            deleteIndexFiles(oldIndexPath);
+        }
+        scheduleSuggesterRebuild();
+        log.info("Rebuilt index is now used for searches");
+    }
+
+    @Override
+    public synchronized void stopRebuild() {
+        closeRebuild();
+    }
+
+    @Override
+    public IndexRebuildProgress getRebuildProgress() {
+        return rebuildProgress;
+    }
+
+    /**
+     * Close the index being rebuilt, keeping its last checkpoint.
+     */
+    private void closeRebuild() {
+        if (rebuildWriter != null) {
+            try {
+                rebuildWriter.rollback();
+                rebuildDirectory.close();
+            } catch (IOException e) {
+                log.error("Error closing the index being rebuilt", e);
+            }
+        }
+        rebuildDirectory = null;
+        rebuildWriter = null;
+        rebuildPath = null;
+        rebuildProgress = null;
+    }
+
+    /**
+     * Record a change made to a document or a file while the index is rebuilt.
+     *
+     * @param id Document or file ID
+     */
+    private void rebuildChanged(String id) {
+        if ((rebuildProgress != null || rebuildResumable) && rebuildChangedIdSet.add(id) && rebuildResumable) {
+            // Kept on disk with the rebuild, the change may have been indexed before the next checkpoint
+            synchronized (rebuildChangedIdSet) {
+                try {
+                    Files.write(DirectoryUtil.getLuceneDirectory().resolve(REBUILD_CHANGES_FILE),
+                            (id + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    log.error("Error recording a change for the index rebuild", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the documents and files changed since the rebuild on disk started.
+     *
+     * @return Document and file IDs
+     * @throws IOException e
+     */
+    private Set<String> readRebuildChanges() throws IOException {
+        Path changes = DirectoryUtil.getLuceneDirectory().resolve(REBUILD_CHANGES_FILE);
+        Set<String> idSet = new HashSet<>();
+        if (indexPath != null && Files.exists(changes)) {
+            for (String id : Files.readAllLines(changes, StandardCharsets.UTF_8)) {
+                if (!id.isEmpty()) {
+                    idSet.add(id);
+                }
+            }
+        }
+        return idSet;
+    }
+
+    /**
+     * Reindex in the index being rebuilt the documents and files changed since the rebuild started.
+     * Their indexed version may have been read from the database before the change.
+     *
+     * @throws Exception e
+     */
+    private void reindexRebuildChanges() throws Exception {
+        List<String> idList = new ArrayList<>(rebuildChangedIdSet);
+        rebuildChangedIdSet.removeAll(idList);
+
+        DocumentDao documentDao = new DocumentDao();
+        FileDao fileDao = new FileDao();
+        for (List<String> idChunk : Lists.partition(idList, MIN_CHUNK_SIZE)) {
+            List<Document> documentList = documentDao.getActiveByIds(idChunk);
+            List<File> fileList = fileDao.getActiveByIds(idChunk);
+            rebuildDocuments(documentList);
+            rebuildFiles(fileList);
+
+            // Deleted since the rebuild started
+            Set<String> deletedIdSet = new HashSet<>(idChunk);
+            documentList.forEach(document -> deletedIdSet.remove(document.getId()));
+            fileList.forEach(file -> deletedIdSet.remove(file.getId()));
+            for (String id : deletedIdSet) {
+                rebuildWriter.deleteDocuments(new Term("id", id));
+            }
+        }
+    }
+
+    /**
+     * Delete the files of a replaced index.
+     *
+     * @param path Index directory
+     */
+    private void deleteIndexFiles(Path path) {
+        Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+        try {
+            if (path.equals(luceneDirectory)) {
+                // Legacy index stored in the Lucene directory itself, keep the other indexes
+                try (Stream<Path> stream = Files.list(path)) {
+                    for (Path file : (Iterable<Path>) stream::iterator) {
+                        String name = file.getFileName().toString();
+                        if (Files.isRegularFile(file) && !name.startsWith(CURRENT_INDEX_FILE) && !name.startsWith(REBUILD_INDEX_FILE)) {
+                            Files.delete(file);
+                        }
+                    }
+                }
+            } else {
+                try (Stream<Path> stream = Files.walk(path)) {
+                    stream.sorted(Comparator.reverseOrder())
+                            .map(Path::toFile)
+                            .forEach(java.io.File::delete);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error deleting the replaced index: " + path, e);
+        }
     }
 
     @Override
     public void createDocument(final Document document) {
+        rebuildChanged(document.getId());
         handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
+            CriteriaData criteriaData = loadCriteriaData(Collections.singletonList(document));
+            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, criteriaData);
             indexWriter.addDocument(luceneDocument);
         });
     }
 
     @Override
     public void createFile(final File file) {
+        rebuildChanged(file.getId());
         handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
+            org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file, new FileContentDao().getByFileId(file.getId()));
             indexWriter.addDocument(luceneDocument);
         });
     }
 
     @Override
     public void updateFile(final File file) {
+        rebuildChanged(file.getId());
         handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
+            org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file, new FileContentDao().getByFileId(file.getId()));
             indexWriter.updateDocument(new Term("id", file.getId()), luceneDocument);
         });
     }
 
     @Override
     public void updateDocument(final Document document) {
+        updateDocuments(Collections.singletonList(document));
+    }
+
+    /**
+     * Update indexed documents.
+     *
+     * @param documentList Documents
+     */
+    private void updateDocuments(List<Document> documentList) {
+        for (Document document : documentList) {
+            rebuildChanged(document.getId());
+        }
         handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-            indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
+            CriteriaData criteriaData = loadCriteriaData(documentList);
+            for (Document document : documentList) {
+                org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, criteriaData);
+                indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
+            }
         });
     }
 
     @Override
     public void deleteDocument(final String id) {
+        rebuildChanged(id);
         handle(indexWriter -> indexWriter.deleteDocuments(new Term("id", id)));
     }
 
+    @Override
+    public void deleteFile(final String id) {
+        deleteDocument(id);
+        if (criteriaIndexed) {
+            // The MIME types of the document have changed
+            EntityManager em = ThreadLocalContext.get().getEntityManager();
+            jakarta.persistence.Query q = em.createNativeQuery("select f.FIL_IDDOC_C from T_FILE f where f.FIL_ID_C = :fileId and f.FIL_IDDOC_C is not null");
+            q.setParameter("fileId", id);
+            @SuppressWarnings("unchecked")
+            List<String> documentIdList = q.getResultList();
+            List<Document> documentList = documentIdList.isEmpty() ? Collections.emptyList() : new DocumentDao().getActiveByIds(documentIdList);
+            if (!documentList.isEmpty()) {
+                updateDocuments(documentList);
+            }
+        }
+    }
+
     @Override
     public void createAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        if (criteriaIndexed && perm == PermType.READ) {
+            reindexAclSource(sourceId);
+        }
     }
 
     @Override
     public void deleteAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        if (criteriaIndexed && perm == PermType.READ) {
+            reindexAclSource(sourceId);
+        }
+    }
+
+    /**
+     * Reindex the documents readable through an ACL source,
+     * the document itself or the documents tagged by this tag.
+     *
+     * @param sourceId ACL source ID
+     */
+    @SuppressWarnings("unchecked")
+    private void reindexAclSource(String sourceId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        jakarta.persistence.Query q = em.createNativeQuery("select d.DOC_ID_C from T_DOCUMENT d where d.DOC_ID_C = :sourceId and d.DOC_DELETEDATE_D is null " +
+                " union select dt.DOT_IDDOCUMENT_C from T_DOCUMENT_TAG dt where dt.DOT_IDTAG_C = :sourceId and dt.DOT_DELETEDATE_D is null");
+        q.setParameter("sourceId", sourceId);
+        List<String> documentIdList = q.getResultList();
+
+        DocumentDao documentDao = new DocumentDao();
+        for (List<String> documentIdChunk : Lists.partition(documentIdList, MIN_CHUNK_SIZE)) {
+            updateDocuments(documentDao.getActiveByIds(documentIdChunk));
+        }
     }
 
     @Override
     public void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
-        Map<String, String> documentSearchMap = Maps.newHashMap();
 
         StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
         sb.append(" s.count c5, ");
@@ -276,93 +935,428 @@ public class LuceneIndexingHandler implements IndexingHandler {
             criteriaList.add("(a.ACL_ID_C is not null or a2.ACL_ID_C is not null)");
         }
         parameterMap.put("targetIdList", criteria.getTargetIdList());
-        if (!Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch())) {
-            documentSearchMap = search(criteria.getSimpleSearch(), criteria.getFullSearch());
-            if (documentSearchMap.isEmpty()) {
-                // If the search doesn't find any document, the request should return nothing
-                documentSearchMap.put(UUID.randomUUID().toString(), null);
-            }
+        boolean fullTextSearch = !Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch());
+        Query criteriaQuery = criteriaIndexed ? buildCriteriaQuery(criteria) : null;
+        if (criteriaQuery != null && !fullTextSearch && getIndexSort(sortCriteria) == null) {
+            // This sort is not available in Lucene
+            criteriaQuery = null;
+        }
+        if (fullTextSearch || criteriaQuery != null) {
+            // The document IDs are given by Lucene
             criteriaList.add("d.DOC_ID_C in :documentIdList");
-            parameterMap.put("documentIdList", documentSearchMap.keySet());
-
-            suggestSearchTerms(criteria.getFullSearch(), suggestionList);
         }
         if (criteria.getCreateDateMin() != null) {
             criteriaList.add("d.DOC_CREATEDATE_D >= :createDateMin");
             parameterMap.put("createDateMin", criteria.getCreateDateMin());
         }
-        if (criteria.getCreateDateMax() != null) {
-            criteriaList.add("d.DOC_CREATEDATE_D <= :createDateMax");
-            parameterMap.put("createDateMax", criteria.getCreateDateMax());
+        if (criteria.getCreateDateMax() != null) {
+            criteriaList.add("d.DOC_CREATEDATE_D <= :createDateMax");
+            parameterMap.put("createDateMax", criteria.getCreateDateMax());
+        }
+        if (criteria.getUpdateDateMin() != null) {
+            criteriaList.add("d.DOC_UPDATEDATE_D >= :updateDateMin");
+            parameterMap.put("updateDateMin", criteria.getUpdateDateMin());
+        }
+        if (criteria.getUpdateDateMax() != null) {
+            criteriaList.add("d.DOC_UPDATEDATE_D <= :updateDateMax");
+            parameterMap.put("updateDateMax", criteria.getUpdateDateMax());
+        }
+        if (!criteria.getTitleList().isEmpty()) {
+            criteriaList.add("d.DOC_TITLE_C in :title");
+            parameterMap.put("title", criteria.getTitleList());
+        }
+        if (!criteria.getTagIdList().isEmpty()) {
+            int index = 0;
+            for (List<String> tagIdList : criteria.getTagIdList()) {
+                List<String> tagCriteriaList = Lists.newArrayList();
+                for (String tagId : tagIdList) {
+                    sb.append(String.format("left join T_DOCUMENT_TAG dt%d on dt%d.DOT_IDDOCUMENT_C = d.DOC_ID_C and dt%d.DOT_IDTAG_C = :tagId%d and dt%d.DOT_DELETEDATE_D is null ", index, index, index, index, index));
+                    parameterMap.put("tagId" + index, tagId);
+                    tagCriteriaList.add(String.format("dt%d.DOT_ID_C is not null", index));
+                    index++;
+                }
+                criteriaList.add("(" + Joiner.on(" OR ").join(tagCriteriaList) + ")");
+            }
+        }
+        if (!criteria.getExcludedTagIdList().isEmpty()) {
+            int index = 0;
+            for (List<String> tagIdList : criteria.getExcludedTagIdList()) {
+                List<String> tagCriteriaList = Lists.newArrayList();
+                for (String tagId : tagIdList) {
+                    sb.append(String.format("left join T_DOCUMENT_TAG dtex%d on dtex%d.DOT_IDDOCUMENT_C = d.DOC_ID_C and dtex%d.DOT_IDTAG_C = :tagIdEx%d and dtex%d.DOT_DELETEDATE_D is null ", index, index, index, index, index));
+                    parameterMap.put("tagIdEx" + index, tagId);
+                    tagCriteriaList.add(String.format("dtex%d.DOT_ID_C is null", index));
+                    index++;
+                }
+                criteriaList.add("(" + Joiner.on(" AND ").join(tagCriteriaList) + ")");
+            }
+        }
+        if (criteria.getShared() != null && criteria.getShared()) {
+            criteriaList.add("s.count > 0");
+        }
+        if (criteria.getMimeType() != null) {
+            sb.append("left join T_FILE f0 on f0.FIL_IDDOC_C = d.DOC_ID_C and f0.FIL_MIMETYPE_C = :mimeType and f0.FIL_DELETEDATE_D is null");
+            parameterMap.put("mimeType", criteria.getMimeType());
+            criteriaList.add("f0.FIL_ID_C is not null");
+        }
+        if (criteria.getLanguage() != null) {
+            criteriaList.add("d.DOC_LANGUAGE_C = :language");
+            parameterMap.put("language", criteria.getLanguage());
+        }
+        if (criteria.getCreatorId() != null) {
+            criteriaList.add("d.DOC_IDUSER_C = :creatorId");
+            parameterMap.put("creatorId", criteria.getCreatorId());
+        }
+        if (criteria.getActiveRoute() != null && criteria.getActiveRoute()) {
+            criteriaList.add("rs2.RTP_ID_C is not null");
+        }
+
+        criteriaList.add("d.DOC_DELETEDATE_D is null");
+
+        sb.append(" where ");
+        sb.append(Joiner.on(" and ").join(criteriaList));
+
+        QueryParam queryParam = new QueryParam(sb.toString(), parameterMap);
+        if (!fullTextSearch && criteriaQuery == null) {
+            // Perform the search in the database only
+            List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
+            paginatedList.setResultList(assembleResultList(l));
+            return;
+        }
+
+        Analyzer analyzer = new StandardAnalyzer();
+        Query query = fullTextSearch ? buildSearchQuery(analyzer, criteria.getSimpleSearch(), criteria.getFullSearch()) : null;
+        try (AcquiredSearcher acquiredSearcher = acquireSearcher(false)) {
+            IndexSearcher searcher = acquiredSearcher.searcher;
+            List<DocumentDto> documentDtoList = null;
+            if (criteriaQuery != null) {
+                // Every criteria is checked in Lucene, the database only loads the page
+                documentDtoList = searchCriteriaInIndex(searcher, paginatedList, queryParam, query, criteriaQuery, sortCriteria);
+            }
+            if (documentDtoList == null) {
+                // Perform the fulltext search in Lucene, then check the other criteria in the database
+                documentDtoList = searchFullText(searcher, paginatedList, queryParam, query, sortCriteria);
+            }
+
+            // Highlight only the returned page
+            if (query != null) {
+                highlight(searcher, analyzer, query, documentDtoList);
+            }
+            paginatedList.setResultList(documentDtoList);
+            if (paginatedList.getNextCursor() == null) {
+                // Lucene pages by offset
+                PaginatedLists.setOffsetNextCursor(paginatedList, sortCriteria);
+            }
+        }
+
+        if (fullTextSearch) {
+            suggestSearchTerms(criteria.getFullSearch(), suggestionList);
+        }
+    }
+
+    /**
+     * Fulltext search in Lucene, the other criteria are checked in the database.
+     *
+     * @param searcher Index searcher
+     * @param paginatedList Paginated list (the result count is updated by side effects)
+     * @param queryParam Query parameters, with a documentIdList parameter to fill
+     * @param query Fulltext query
+     * @param sortCriteria Sort criteria
+     * @return Documents of the page
+     * @throws IOException e
+     */
+    private List<DocumentDto> searchFullText(IndexSearcher searcher, PaginatedList<DocumentDto> paginatedList, QueryParam queryParam,
+                                             Query query, SortCriteria sortCriteria) throws IOException {
+        Map<String, Float> scoreMap = searchDocumentScores(searcher, query);
+        List<String> rankedDocumentIdList = rankDocumentIds(searcher, scoreMap, sortCriteria);
+        if (rankedDocumentIdList == null) {
+            // This sort is not available in Lucene, sort all the matching documents in the database
+            queryParam.getParameterMap().put("documentIdList", scoreMap.isEmpty() ?
+                    Collections.singleton(UUID.randomUUID().toString()) : scoreMap.keySet());
+            List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
+            return assembleResultList(l);
+        }
+        return findRankedPage(paginatedList, queryParam, rankedDocumentIdList, sortCriteria);
+    }
+
+    /**
+     * Search with every criteria checked in Lucene.
+     *
+     * @param searcher Index searcher
+     * @param paginatedList Paginated list (the result count is updated by side effects)
+     * @param queryParam Query parameters, with a documentIdList parameter to fill
+     * @param query Fulltext query, null if none
+     * @param criteriaQuery Criteria query
+     * @param sortCriteria Sort criteria
+     * @return Documents of the page, or null if this sort is not available in Lucene
+     * @throws IOException e
+     */
+    private List<DocumentDto> searchCriteriaInIndex(IndexSearcher searcher, PaginatedList<DocumentDto> paginatedList, QueryParam queryParam,
+                                                    Query query, Query criteriaQuery, SortCriteria sortCriteria) throws IOException {
+        List<String> pageDocumentIdList = new ArrayList<>();
+        if (query != null) {
+            // Restrict the criteria to the documents matching the fulltext search
+            Map<String, Float> scoreMap = searchDocumentScores(searcher, query);
+            if (scoreMap.isEmpty()) {
+                paginatedList.setResultCount(0);
+                return new ArrayList<>();
+            }
+            List<BytesRef> termList = new ArrayList<>();
+            for (String documentId : scoreMap.keySet()) {
+                termList.add(new BytesRef(documentId));
+            }
+            criteriaQuery = new BooleanQuery.Builder()
+                    .add(criteriaQuery, BooleanClause.Occur.FILTER)
+                    .add(new TermInSetQuery("id", termList), BooleanClause.Occur.FILTER)
+                    .build();
+
+            if (sortCriteria.getColumn() == SortCriteria.RELEVANCE) {
+                Set<String> matchingIdSet = searchDocumentIds(searcher, criteriaQuery);
+                scoreMap.keySet().retainAll(matchingIdSet);
+                List<String> rankedDocumentIdList = rankDocumentIds(searcher, scoreMap, sortCriteria);
+                paginatedList.setResultCount(rankedDocumentIdList.size());
+                pageDocumentIdList = rankedDocumentIdList.subList(Math.min(paginatedList.getOffset(), rankedDocumentIdList.size()),
+                        Math.min(paginatedList.getOffset() + paginatedList.getLimit(), rankedDocumentIdList.size()));
+                return hydratePage(queryParam, pageDocumentIdList);
+            }
+        }
+
+        Sort sort = getIndexSort(sortCriteria);
+        if (sort == null) {
+            return null;
+        }
+        TopFieldCollector collector = TopFieldCollector.create(sort, paginatedList.getOffset() + paginatedList.getLimit(), Integer.MAX_VALUE);
+        searcher.search(criteriaQuery, collector);
+        TopDocs topDocs = collector.topDocs(paginatedList.getOffset(), paginatedList.getLimit());
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            pageDocumentIdList.add(searcher.doc(scoreDoc.doc, Collections.singleton("id")).get("id"));
+        }
+        paginatedList.setResultCount((int) topDocs.totalHits.value);
+        return hydratePage(queryParam, pageDocumentIdList);
+    }
+
+    /**
+     * Returns the Lucene sort equivalent to the sort criteria.
+     *
+     * @param sortCriteria Sort criteria
+     * @return Sort, or null if this sort is not available in Lucene
+     */
+    private Sort getIndexSort(SortCriteria sortCriteria) {
+        SortField sortField;
+        switch (sortCriteria.getColumn()) {
+            case 0:
+                sortField = new SortField("parent_id", SortField.Type.STRING, !sortCriteria.isAsc());
+                break;
+            case 1:
+                sortField = new SortField("title_sort", SortField.Type.STRING, !sortCriteria.isAsc());
+                break;
+            case 3:
+            case SortCriteria.RELEVANCE:
+                sortField = new SortField("create_date", SortField.Type.LONG, !sortCriteria.isAsc());
+                break;
+            case 4:
+                sortField = new SortField("update_date", SortField.Type.LONG, !sortCriteria.isAsc());
+                break;
+            default:
+                return null;
+        }
+        return new Sort(sortField, new SortField("parent_id", SortField.Type.STRING));
+    }
+
+    /**
+     * Build a Lucene query on indexed documents from the search criteria.
+     *
+     * @param criteria Search criteria
+     * @return Query, or null if some criteria are not indexed
+     */
+    private Query buildCriteriaQuery(DocumentCriteria criteria) {
+        if (Boolean.TRUE.equals(criteria.getShared()) || Boolean.TRUE.equals(criteria.getActiveRoute())) {
+            // Shares and routes are not indexed
+            return null;
         }
-        if (criteria.getUpdateDateMin() != null) {
-            criteriaList.add("d.DOC_UPDATEDATE_D >= :updateDateMin");
-            parameterMap.put("updateDateMin", criteria.getUpdateDateMin());
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term("doctype", "document")), BooleanClause.Occur.FILTER);
+        if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
+            builder.add(buildTermInSetQuery("readable", criteria.getTargetIdList()), BooleanClause.Occur.FILTER);
         }
-        if (criteria.getUpdateDateMax() != null) {
-            criteriaList.add("d.DOC_UPDATEDATE_D <= :updateDateMax");
-            parameterMap.put("updateDateMax", criteria.getUpdateDateMax());
+        if (criteria.getCreateDateMin() != null || criteria.getCreateDateMax() != null) {
+            builder.add(LongPoint.newRangeQuery("create_date",
+                    criteria.getCreateDateMin() == null ? Long.MIN_VALUE : criteria.getCreateDateMin().getTime(),
+                    criteria.getCreateDateMax() == null ? Long.MAX_VALUE : criteria.getCreateDateMax().getTime()), BooleanClause.Occur.FILTER);
         }
-        if (!criteria.getTitleList().isEmpty()) {
-            criteriaList.add("d.DOC_TITLE_C in :title");
-            parameterMap.put("title", criteria.getTitleList());
+        if (criteria.getUpdateDateMin() != null || criteria.getUpdateDateMax() != null) {
+            builder.add(LongPoint.newRangeQuery("update_date",
+                    criteria.getUpdateDateMin() == null ? Long.MIN_VALUE : criteria.getUpdateDateMin().getTime(),
+                    criteria.getUpdateDateMax() == null ? Long.MAX_VALUE : criteria.getUpdateDateMax().getTime()), BooleanClause.Occur.FILTER);
         }
-        if (!criteria.getTagIdList().isEmpty()) {
-            int index = 0;
-            for (List<String> tagIdList : criteria.getTagIdList()) {
-                List<String> tagCriteriaList = Lists.newArrayList();
-                for (String tagId : tagIdList) {
-                    sb.append(String.format("left join T_DOCUMENT_TAG dt%d on dt%d.DOT_IDDOCUMENT_C = d.DOC_ID_C and dt%d.DOT_IDTAG_C = :tagId%d and dt%d.DOT_DELETEDATE_D is null ", index, index, index, index, index));
-                    parameterMap.put("tagId" + index, tagId);
-                    tagCriteriaList.add(String.format("dt%d.DOT_ID_C is not null", index));
-                    index++;
-                }
-                criteriaList.add("(" + Joiner.on(" OR ").join(tagCriteriaList) + ")");
-            }
+        if (!criteria.getTitleList().isEmpty()) {
+            builder.add(buildTermInSetQuery("title_exact", criteria.getTitleList()), BooleanClause.Occur.FILTER);
         }
-        if (!criteria.getExcludedTagIdList().isEmpty()) {
-            int index = 0;
-            for (List<String> tagIdList : criteria.getExcludedTagIdList()) {
-                List<String> tagCriteriaList = Lists.newArrayList();
-                for (String tagId : tagIdList) {
-                    sb.append(String.format("left join T_DOCUMENT_TAG dtex%d on dtex%d.DOT_IDDOCUMENT_C = d.DOC_ID_C and dtex%d.DOT_IDTAG_C = :tagIdEx%d and dtex%d.DOT_DELETEDATE_D is null ", index, index, index, index, index));
-                    parameterMap.put("tagIdEx" + index, tagId);
-                    tagCriteriaList.add(String.format("dtex%d.DOT_ID_C is null", index));
-                    index++;
-                }
-                criteriaList.add("(" + Joiner.on(" AND ").join(tagCriteriaList) + ")");
-            }
+        for (List<String> tagIdList : criteria.getTagIdList()) {
+            // At least one of the tags
+            builder.add(buildTermInSetQuery("tag", tagIdList), BooleanClause.Occur.FILTER);
         }
-        if (criteria.getShared() != null && criteria.getShared()) {
-            criteriaList.add("s.count > 0");
+        for (List<String> tagIdList : criteria.getExcludedTagIdList()) {
+            // None of the tags
+            builder.add(buildTermInSetQuery("tag", tagIdList), BooleanClause.Occur.MUST_NOT);
         }
         if (criteria.getMimeType() != null) {
-            sb.append("left join T_FILE f0 on f0.FIL_IDDOC_C = d.DOC_ID_C and f0.FIL_MIMETYPE_C = :mimeType and f0.FIL_DELETEDATE_D is null");
-            parameterMap.put("mimeType", criteria.getMimeType());
-            criteriaList.add("f0.FIL_ID_C is not null");
+            builder.add(new TermQuery(new Term("mimetype", criteria.getMimeType())), BooleanClause.Occur.FILTER);
         }
         if (criteria.getLanguage() != null) {
-            criteriaList.add("d.DOC_LANGUAGE_C = :language");
-            parameterMap.put("language", criteria.getLanguage());
+            builder.add(new TermQuery(new Term("language", criteria.getLanguage())), BooleanClause.Occur.FILTER);
         }
         if (criteria.getCreatorId() != null) {
-            criteriaList.add("d.DOC_IDUSER_C = :creatorId");
-            parameterMap.put("creatorId", criteria.getCreatorId());
+            builder.add(new TermQuery(new Term("creator_id", criteria.getCreatorId())), BooleanClause.Occur.FILTER);
         }
-        if (criteria.getActiveRoute() != null && criteria.getActiveRoute()) {
-            criteriaList.add("rs2.RTP_ID_C is not null");
+        return builder.build();
+    }
+
+    /**
+     * Build a query matching any of the values.
+     *
+     * @param field Field
+     * @param valueList Values
+     * @return Query
+     */
+    private Query buildTermInSetQuery(String field, Collection<String> valueList) {
+        List<BytesRef> termList = new ArrayList<>();
+        for (String value : valueList) {
+            termList.add(new BytesRef(value));
         }
+        return new TermInSetQuery(field, termList);
+    }
 
-        criteriaList.add("d.DOC_DELETEDATE_D is null");
+    /**
+     * Returns the IDs of the documents matching a query.
+     *
+     * @param searcher Index searcher
+     * @param query Query
+     * @return Document IDs
+     * @throws IOException e
+     */
+    private Set<String> searchDocumentIds(IndexSearcher searcher, Query query) throws IOException {
+        Set<String> documentIdSet = new HashSet<>();
+        searcher.search(query, new SimpleCollector() {
+            private SortedDocValues parentIdValues;
 
-        sb.append(" where ");
-        sb.append(Joiner.on(" and ").join(criteriaList));
+            @Override
+            protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                parentIdValues = DocValues.getSorted(context.reader(), "parent_id");
+            }
 
-        // Perform the search
-        QueryParam queryParam = new QueryParam(sb.toString(), parameterMap);
-        List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
+            @Override
+            public void collect(int doc) throws IOException {
+                if (parentIdValues.advanceExact(doc)) {
+                    documentIdSet.add(parentIdValues.binaryValue().utf8ToString());
+                }
+            }
+
+            @Override
+            public ScoreMode scoreMode() {
+                return ScoreMode.COMPLETE_NO_SCORES;
+            }
+        });
+        return documentIdSet;
+    }
+
+    /**
+     * Load a page of documents from the database.
+     * The query criteria are checked again, which discards documents indexed with outdated data.
+     *
+     * @param queryParam Query parameters, with a documentIdList parameter to fill
+     * @param documentIdList Document IDs of the page, ordered
+     * @return Documents of the page, in the same order
+     */
+    @SuppressWarnings("unchecked")
+    private List<DocumentDto> hydratePage(QueryParam queryParam, List<String> documentIdList) {
+        List<DocumentDto> documentDtoList = new ArrayList<>();
+        if (documentIdList.isEmpty()) {
+            return documentDtoList;
+        }
+
+        queryParam.getParameterMap().put("documentIdList", documentIdList);
+        List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
+        Map<String, DocumentDto> documentDtoMap = new HashMap<>();
+        for (DocumentDto documentDto : assembleResultList(l)) {
+            documentDtoMap.put(documentDto.getId(), documentDto);
+        }
+        for (String documentId : documentIdList) {
+            DocumentDto documentDto = documentDtoMap.get(documentId);
+            if (documentDto != null) {
+                documentDtoList.add(documentDto);
+            }
+        }
+        return documentDtoList;
+    }
+
+    /**
+     * Returns a page of documents in the order given by Lucene.
+     * The other criteria are checked in the database by chunks of document IDs,
+     * until the page is full.
+     *
+     * @param paginatedList Paginated list (the result count is updated by side effects)
+     * @param queryParam Query parameters, with a documentIdList parameter to fill
+     * @param rankedDocumentIdList Document IDs matching the fulltext search, ordered
+     * @param sortCriteria Sort criteria
+     * @return Documents of the page
+     */
+    private List<DocumentDto> findRankedPage(PaginatedList<DocumentDto> paginatedList, QueryParam queryParam,
+                                             List<String> rankedDocumentIdList, SortCriteria sortCriteria) {
+        int wantedCount = paginatedList.getOffset() + paginatedList.getLimit();
+        int chunkSize = Math.max(paginatedList.getLimit() * 2, MIN_CHUNK_SIZE);
+        List<DocumentDto> documentDtoList = new ArrayList<>();
+        int checkedCount = 0;
+        while (checkedCount < rankedDocumentIdList.size() && documentDtoList.size() < wantedCount) {
+            List<String> chunk = rankedDocumentIdList.subList(checkedCount, Math.min(checkedCount + chunkSize, rankedDocumentIdList.size()));
+            documentDtoList.addAll(hydratePage(queryParam, chunk));
+            checkedCount += chunk.size();
+
+            // Grow the chunks if many documents are filtered out by the database
+            chunkSize *= 2;
+        }
+
+        List<String> uncheckedIdList = rankedDocumentIdList.subList(checkedCount, rankedDocumentIdList.size());
+        if (paginatedList.isCountRequested()) {
+            // The documents after the page are only counted in the database, for an exact total
+            paginatedList.setResultCount(documentDtoList.size() + countMatchingDocuments(queryParam, uncheckedIdList));
+        } else {
+            paginatedList.setResultCount(-1);
+            if (documentDtoList.size() > wantedCount || !uncheckedIdList.isEmpty()) {
+                // Some documents may be on the next page
+                paginatedList.setNextCursor(new PageCursor(wantedCount, sortCriteria, null, null).encode());
+            }
+        }
+        return documentDtoList.subList(Math.min(paginatedList.getOffset(), documentDtoList.size()),
+                Math.min(wantedCount, documentDtoList.size()));
+    }
+
+    /**
+     * Count the documents matching the query criteria in the database, without loading them.
+     *
+     * @param queryParam Query parameters, with a documentIdList parameter to fill
+     * @param documentIdList Document IDs to check
+     * @return Number of matching documents
+     */
+    private int countMatchingDocuments(QueryParam queryParam, List<String> documentIdList) {
+        QueryParam countQueryParam = new QueryParam("select count(*) from (" + queryParam.getQueryString() + ") t1",
+                new HashMap<>(queryParam.getParameterMap()));
+        int count = 0;
+        for (List<String> documentIdChunk : Lists.partition(documentIdList, COUNT_CHUNK_SIZE)) {
+            countQueryParam.getParameterMap().put("documentIdList", documentIdChunk);
+            count += ((Number) QueryUtil.getNativeQuery(countQueryParam).getSingleResult()).intValue();
+        }
+        return count;
+    }
 
-        // Assemble results
+    /**
+     * Assemble the documents from the database results.
+     *
+     * @param l Results of the document query
+     * @return List of documents
+     */
+    private List<DocumentDto> assembleResultList(List<Object[]> l) {
         List<DocumentDto> documentDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
@@ -378,11 +1372,9 @@ public class LuceneIndexingHandler implements IndexingHandler {
             documentDto.setActiveRoute(o[i++] != null);
             documentDto.setCurrentStepName((String) o[i++]);
             documentDto.setUpdateTimestamp(((Timestamp) o[i]).getTime());
-            documentDto.setHighlight(documentSearchMap.get(documentDto.getId()));
             documentDtoList.add(documentDto);
         }
-
-        paginatedList.setResultList(documentDtoList);
+        return documentDtoList;
     }
 
     /**
@@ -393,39 +1385,110 @@ public class LuceneIndexingHandler implements IndexingHandler {
      * @throws Exception e
      */
     private void suggestSearchTerms(String search, List<String> suggestionList) throws Exception {
-        DirectoryReader directoryReader = getDirectoryReader();
-        if (directoryReader == null) {
+        Lookup currentSuggester = suggester;
+        if (currentSuggester == null) {
+            // Nothing indexed yet
             return;
         }
 
-        FuzzySuggester suggester = new FuzzySuggester(directory, "", new StandardAnalyzer());
-        LuceneDictionary dictionary = new LuceneDictionary(directoryReader, "title");
-        suggester.build(dictionary);
         int lastIndex = search.lastIndexOf(' ');
         String suggestQuery = search.substring(Math.max(lastIndex, 0));
-        List<Lookup.LookupResult> lookupResultList = suggester.lookup(suggestQuery, false, 10);
+        List<Lookup.LookupResult> lookupResultList = currentSuggester.lookup(suggestQuery, false, 10);
         for (Lookup.LookupResult lookupResult : lookupResultList) {
             suggestionList.add(lookupResult.key.toString());
         }
     }
 
     /**
-     * Fulltext search in files and documents.
+     * Rebuild the search terms suggester in the background.
+     * Several requests made while a rebuild is pending lead to a single rebuild.
+     */
+    private void scheduleSuggesterRebuild() {
+        if (suggesterRebuildPending.compareAndSet(false, true)) {
+            suggesterExecutor.execute(() -> {
+                suggesterRebuildPending.set(false);
+                rebuildSuggester();
+            });
+        }
+    }
+
+    /**
+     * Rebuild the search terms suggester from the indexed titles,
+     * and replace the current one when done.
+     */
+    private void rebuildSuggester() {
+        try (AcquiredSearcher acquiredSearcher = acquireSearcher(true);
+             Directory tempDirectory = new ByteBuffersDirectory()) {
+            IndexReader reader = acquiredSearcher.searcher.getIndexReader();
+            if (reader.numDocs() == 0) {
+                suggester = null;
+                return;
+            }
+
+            FuzzySuggester newSuggester = new FuzzySuggester(tempDirectory, "suggester", new StandardAnalyzer());
+            newSuggester.build(new LuceneDictionary(reader, "title"));
+            suggester = newSuggester;
+        } catch (Exception e) {
+            log.error("Error building the search terms suggester", e);
+        }
+    }
+
+    /**
+     * Acquire a searcher on the current index.
+     * The searcher manager read may be closed by an index swap before acquiring from it, the new one is then used.
+     *
+     * @param refresh True to refresh the searcher first
+     * @return Acquired searcher, to be closed after use
+     * @throws IOException e
+     */
+    private AcquiredSearcher acquireSearcher(boolean refresh) throws IOException {
+        while (true) {
+            SearcherManager currentSearcherManager = searcherManager;
+            try {
+                if (refresh) {
+                    currentSearcherManager.maybeRefreshBlocking();
+                }
+                return new AcquiredSearcher(currentSearcherManager, currentSearcherManager.acquire());
+            } catch (AlreadyClosedException e) {
+                if (currentSearcherManager == searcherManager) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Searcher acquired from a searcher manager, released on close.
+     */
+    private static class AcquiredSearcher implements Closeable {
+        private final SearcherManager searcherManager;
+        private final IndexSearcher searcher;
+
+        private AcquiredSearcher(SearcherManager searcherManager, IndexSearcher searcher) {
+            this.searcherManager = searcherManager;
+            this.searcher = searcher;
+        }
+
+        @Override
+        public void close() throws IOException {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Build the fulltext query on files and documents.
      *
+     * @param analyzer Analyzer
      * @param simpleSearchQuery Search query on metadatas
      * @param fullSearchQuery Search query on all fields
-     * @return Map of document IDs as key and highlight as value
-     * @throws Exception e
+     * @return Query
      */
-    private Map<String, String> search(String simpleSearchQuery, String fullSearchQuery) throws Exception {
+    private Query buildSearchQuery(Analyzer analyzer, String simpleSearchQuery, String fullSearchQuery) {
         // The fulltext query searches in all fields
         String searchQuery = simpleSearchQuery + " " + fullSearchQuery;
 
-        // Build search query
-        Analyzer analyzer = new StandardAnalyzer();
-
         // Search on documents and files
-        BooleanQuery query = new BooleanQuery.Builder()
+        return new BooleanQuery.Builder()
                 .add(buildQueryParser(analyzer, "title").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "description").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "subject").parse(searchQuery), BooleanClause.Occur.SHOULD)
@@ -439,44 +1502,158 @@ public class LuceneIndexingHandler implements IndexingHandler {
                 .add(buildQueryParser(analyzer, "filename").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "content").parse(fullSearchQuery), BooleanClause.Occur.SHOULD)
                 .build();
+    }
+
+    /**
+     * Fulltext search in files and documents.
+     * Only the doc values are read, stored fields are not loaded.
+     *
+     * @param searcher Index searcher
+     * @param query Fulltext query
+     * @return Map of document IDs as key and best score of the document or its files as value
+     * @throws IOException e
+     */
+    private Map<String, Float> searchDocumentScores(IndexSearcher searcher, Query query) throws IOException {
+        Map<String, Float> scoreMap = new HashMap<>();
+        searcher.search(query, new SimpleCollector() {
+            private Scorable scorer;
+            private SortedDocValues parentIdValues;
+
+            @Override
+            protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                parentIdValues = DocValues.getSorted(context.reader(), "parent_id");
+            }
+
+            @Override
+            public void setScorer(Scorable scorer) {
+                this.scorer = scorer;
+            }
+
+            @Override
+            public void collect(int doc) throws IOException {
+                // Files not linked to a document are not searchable
+                if (parentIdValues.advanceExact(doc)) {
+                    scoreMap.merge(parentIdValues.binaryValue().utf8ToString(), scorer.score(), Math::max);
+                }
+            }
+
+            @Override
+            public ScoreMode scoreMode() {
+                return ScoreMode.COMPLETE;
+            }
+        });
+        return scoreMap;
+    }
+
+    /**
+     * Order the matching documents in Lucene.
+     *
+     * @param searcher Index searcher
+     * @param scoreMap Map of document IDs as key and score as value
+     * @param sortCriteria Sort criteria
+     * @return Ordered document IDs, or null if this sort is not available in Lucene
+     * @throws IOException e
+     */
+    private List<String> rankDocumentIds(IndexSearcher searcher, Map<String, Float> scoreMap, SortCriteria sortCriteria) throws IOException {
+        Map<String, Long> sortValueMap;
+        switch (sortCriteria.getColumn()) {
+            case SortCriteria.RELEVANCE:
+                // Best score first
+                List<String> documentIdList = new ArrayList<>(scoreMap.keySet());
+                documentIdList.sort(Comparator.comparing((String id) -> scoreMap.get(id)).reversed()
+                        .thenComparing(Comparator.naturalOrder()));
+                return documentIdList;
+            case 3:
+                sortValueMap = searchDocumentDates(searcher, scoreMap.keySet(), "create_date");
+                break;
+            case 4:
+                sortValueMap = searchDocumentDates(searcher, scoreMap.keySet(), "update_date");
+                break;
+            default:
+                return null;
+        }
+
+        Comparator<String> comparator = Comparator.comparing((String id) -> sortValueMap.getOrDefault(id, 0L));
+        if (!sortCriteria.isAsc()) {
+            comparator = comparator.reversed();
+        }
+        List<String> documentIdList = new ArrayList<>(scoreMap.keySet());
+        documentIdList.sort(comparator.thenComparing(Comparator.naturalOrder()));
+        return documentIdList;
+    }
+
+    /**
+     * Returns an indexed date of documents.
+     *
+     * @param searcher Index searcher
+     * @param documentIdSet Document IDs
+     * @param field Date field
+     * @return Map of document IDs as key and timestamp as value
+     * @throws IOException e
+     */
+    private Map<String, Long> searchDocumentDates(IndexSearcher searcher, Set<String> documentIdSet, String field) throws IOException {
+        Map<String, Long> dateMap = new HashMap<>();
+        if (documentIdSet.isEmpty()) {
+            return dateMap;
+        }
 
-        // Search
-        DirectoryReader directoryReader = getDirectoryReader();
-        Map<String, String> documentMap = Maps.newHashMap();
-        if (directoryReader == null) {
-            // The directory reader is not yet initialized (probably because there is nothing indexed)
-            return documentMap;
+        List<BytesRef> termList = new ArrayList<>();
+        for (String documentId : documentIdSet) {
+            termList.add(new BytesRef(documentId));
         }
-        IndexSearcher searcher = new IndexSearcher(directoryReader);
-        TopDocs topDocs = searcher.search(query, Integer.MAX_VALUE);
-        ScoreDoc[] docs = topDocs.scoreDocs;
+        searcher.search(new TermInSetQuery("id", termList), new SimpleCollector() {
+            private SortedDocValues parentIdValues;
+            private NumericDocValues dateValues;
 
+            @Override
+            protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                parentIdValues = DocValues.getSorted(context.reader(), "parent_id");
+                dateValues = DocValues.getNumeric(context.reader(), field);
+            }
+
+            @Override
+            public void collect(int doc) throws IOException {
+                if (parentIdValues.advanceExact(doc) && dateValues.advanceExact(doc)) {
+                    dateMap.put(parentIdValues.binaryValue().utf8ToString(), dateValues.longValue());
+                }
+            }
+
+            @Override
+            public ScoreMode scoreMode() {
+                return ScoreMode.COMPLETE_NO_SCORES;
+            }
+        });
+        return dateMap;
+    }
+
+    /**
+     * Highlight the documents with their best matching file content.
+     *
+     * @param searcher Index searcher
+     * @param analyzer Analyzer
+     * @param query Fulltext query
+     * @param documentDtoList Documents to highlight (updated by side effects)
+     * @throws Exception e
+     */
+    private void highlight(IndexSearcher searcher, Analyzer analyzer, Query query, List<DocumentDto> documentDtoList) throws Exception {
         SimpleHTMLFormatter simpleHTMLFormatter = new SimpleHTMLFormatter("<strong>", "</strong>");
         SimpleHTMLEncoder simpleHTMLEncoder = new SimpleHTMLEncoder();
         Highlighter highlighter = new Highlighter(simpleHTMLFormatter, simpleHTMLEncoder, new QueryScorer(query));
 
-        // Extract document IDs and highlights
-        for (ScoreDoc doc : docs) {
-            org.apache.lucene.document.Document document = searcher.doc(doc.doc);
-            String type = document.get("doctype");
-            String documentId = null;
-            String highlight = null;
-            if (type.equals("document")) {
-                documentId = document.get("id");
-            } else if (type.equals("file")) {
-                documentId = document.get("document_id");
-                String content = document.get("content");
-                if (content != null) {
-                    highlight = highlighter.getBestFragment(analyzer, "content", content);
-                }
+        for (DocumentDto documentDto : documentDtoList) {
+            Query fileQuery = new BooleanQuery.Builder()
+                    .add(query, BooleanClause.Occur.MUST)
+                    .add(new TermQuery(new Term("document_id", documentDto.getId())), BooleanClause.Occur.FILTER)
+                    .build();
+            TopDocs topDocs = searcher.search(fileQuery, 1);
+            if (topDocs.scoreDocs.length == 0) {
+                continue;
             }
-
-            if (documentId != null) {
-                documentMap.put(documentId, highlight);
+            String content = searcher.doc(topDocs.scoreDocs[0].doc).get("content");
+            if (content != null) {
+                documentDto.setHighlight(highlighter.getBestFragment(analyzer, "content", content));
             }
         }
-
-        return documentMap;
     }
 
     /**
@@ -498,10 +1675,34 @@ public class LuceneIndexingHandler implements IndexingHandler {
      * @param document Document
      * @return Document
      */
-    private org.apache.lucene.document.Document getDocumentFromDocument(Document document) {
+    private org.apache.lucene.document.Document getDocumentFromDocument(Document document, CriteriaData criteriaData) {
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
         luceneDocument.add(new StringField("id", document.getId(), Field.Store.YES));
         luceneDocument.add(new StringField("doctype", "document", Field.Store.YES));
+        luceneDocument.add(new SortedDocValuesField("parent_id", new BytesRef(document.getId())));
+        luceneDocument.add(new NumericDocValuesField("create_date", document.getCreateDate().getTime()));
+        if (document.getUpdateDate() != null) {
+            luceneDocument.add(new NumericDocValuesField("update_date", document.getUpdateDate().getTime()));
+        }
+        if (criteriaData != null) {
+            luceneDocument.add(new LongPoint("create_date", document.getCreateDate().getTime()));
+            if (document.getUpdateDate() != null) {
+                luceneDocument.add(new LongPoint("update_date", document.getUpdateDate().getTime()));
+            }
+            luceneDocument.add(new StringField("title_exact", document.getTitle(), Field.Store.NO));
+            luceneDocument.add(new SortedDocValuesField("title_sort", new BytesRef(document.getTitle())));
+            luceneDocument.add(new StringField("language", document.getLanguage(), Field.Store.NO));
+            luceneDocument.add(new StringField("creator_id", document.getUserId(), Field.Store.NO));
+            for (String targetId : criteriaData.readableMap.get(document.getId())) {
+                luceneDocument.add(new StringField("readable", targetId, Field.Store.NO));
+            }
+            for (String tagId : criteriaData.tagMap.get(document.getId())) {
+                luceneDocument.add(new StringField("tag", tagId, Field.Store.NO));
+            }
+            for (String mimeType : criteriaData.mimeTypeMap.get(document.getId())) {
+                luceneDocument.add(new StringField("mimetype", mimeType, Field.Store.NO));
+            }
+        }
         luceneDocument.add(new TextField("title", document.getTitle(), Field.Store.NO));
         if (document.getDescription() != null) {
             luceneDocument.add(new TextField("description", document.getDescription(), Field.Store.NO));
@@ -534,13 +1735,63 @@ public class LuceneIndexingHandler implements IndexingHandler {
         return luceneDocument;
     }
 
+    /**
+     * Load the search criteria of documents from the database.
+     *
+     * @param documentList Documents
+     * @return Criteria data, or null if the criteria are not indexed
+     */
+    @SuppressWarnings("unchecked")
+    private CriteriaData loadCriteriaData(List<Document> documentList) {
+        if (!criteriaIndexed || documentList.isEmpty()) {
+            return criteriaIndexed ? new CriteriaData() : null;
+        }
+
+        List<String> documentIdList = new ArrayList<>();
+        for (Document document : documentList) {
+            documentIdList.add(document.getId());
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        CriteriaData criteriaData = new CriteriaData();
+
+        // Readable directly or through a tag
+        jakarta.persistence.Query q = em.createNativeQuery("select a.ACL_SOURCEID_C, a.ACL_TARGETID_C from T_ACL a " +
+                " where a.ACL_SOURCEID_C in (:documentIdList) and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null " +
+                " union select dt.DOT_IDDOCUMENT_C, a.ACL_TARGETID_C from T_DOCUMENT_TAG dt " +
+                " join T_ACL a on a.ACL_SOURCEID_C = dt.DOT_IDTAG_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null " +
+                " where dt.DOT_IDDOCUMENT_C in (:documentIdList) and dt.DOT_DELETEDATE_D is null");
+        q.setParameter("documentIdList", documentIdList);
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            criteriaData.readableMap.put((String) o[0], (String) o[1]);
+        }
+
+        // Tags
+        q = em.createNativeQuery("select dt.DOT_IDDOCUMENT_C, dt.DOT_IDTAG_C from T_DOCUMENT_TAG dt " +
+                " where dt.DOT_IDDOCUMENT_C in (:documentIdList) and dt.DOT_DELETEDATE_D is null");
+        q.setParameter("documentIdList", documentIdList);
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            criteriaData.tagMap.put((String) o[0], (String) o[1]);
+        }
+
+        // MIME types of the files
+        q = em.createNativeQuery("select f.FIL_IDDOC_C, f.FIL_MIMETYPE_C from T_FILE f " +
+                " where f.FIL_IDDOC_C in (:documentIdList) and f.FIL_DELETEDATE_D is null");
+        q.setParameter("documentIdList", documentIdList);
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            criteriaData.mimeTypeMap.put((String) o[0], (String) o[1]);
+        }
+
+        return criteriaData;
+    }
+
     /**
      * Build Lucene document from file.
      *
      * @param file File
+     * @param content Extracted text content, may be null
      * @return Document
      */
-    private org.apache.lucene.document.Document getDocumentFromFile(File file) {
+    private org.apache.lucene.document.Document getDocumentFromFile(File file, String content) {
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
         luceneDocument.add(new StringField("id", file.getId(), Field.Store.YES));
         luceneDocument.add(new StringField("doctype", "file", Field.Store.YES));
@@ -549,64 +1800,99 @@ public class LuceneIndexingHandler implements IndexingHandler {
         }
         if (file.getDocumentId() != null) {
             luceneDocument.add(new StringField("document_id", file.getDocumentId(), Field.Store.YES));
+            luceneDocument.add(new SortedDocValuesField("parent_id", new BytesRef(file.getDocumentId())));
         }
-        if (file.getContent() != null) {
-            luceneDocument.add(new TextField("content", file.getContent(), Field.Store.YES));
+        if (content != null) {
+            luceneDocument.add(new TextField("content", content, Field.Store.YES));
         }
 
         return luceneDocument;
     }
 
     /**
-     * Returns a valid directory reader.
-     * Take care of reopening the reader if the index has changed
-     * and closing the previous one.
+     * Encapsulate a process into a Lucene context.
+     * The changes are visible to searches as soon as the searchers are reopened,
+     * and committed according to the commit policy.
      *
-     * @return the directoryReader
+     * @param runnable Runnable
      */
-    private DirectoryReader getDirectoryReader() {
-        if (directoryReader == null) {
+    private void handle(LuceneRunnable runnable) {
+        indexLock.readLock().lock();
+        try {
             try {
-                if (!DirectoryReader.indexExists(directory)) {
-                    return null;
-                }
-                directoryReader = DirectoryReader.open(directory);
-            } catch (IOException e) {
-                log.error("Error creating the directory reader", e);
+                runnable.run(indexWriter);
+            } catch (Exception e) {
+                log.error("Error in running index writing", e);
             }
-        } else {
-            try {
-                DirectoryReader newReader = DirectoryReader.openIfChanged(directoryReader);
-                if (newReader != null) {
-                    directoryReader.close();
-                    directoryReader = newReader;
-                }
-            } catch (IOException e) {
-                log.error("Error while reopening the directory reader", e);
+            latestGeneration.accumulateAndGet(indexWriter.getMaxCompletedSequenceNumber(), Math::max);
+
+            if (durableWrites || uncommittedCount.incrementAndGet() >= commitDocumentCount) {
+                commit();
             }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        if (EnvironmentUtil.isUnitTest()) {
+            // Events are processed synchronously in unit tests, make the changes visible right away
+            waitForPendingChanges();
+            rebuildSuggester();
         }
-        return directoryReader;
     }
 
     /**
-     * Encapsulate a process into a Lucene context.
-     *
-     * @param runnable Runnable
+     * Commit the pending changes to durable storage.
      */
-    private void handle(LuceneRunnable runnable) {
-        try {
-            runnable.run(indexWriter);
-        } catch (Exception e) {
-            log.error("Error in running index writing", e);
-        }
-
+    private void commit() {
+        indexLock.readLock().lock();
         try {
+            uncommittedCount.set(0);
             indexWriter.commit();
-        } catch (IOException e) {
+        } catch (IOException | IllegalStateException e) {
             log.error("Cannot commit index writer", e);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        scheduleSuggesterRebuild();
+    }
+
+    /**
+     * Service committing the pending changes periodically.
+     */
+    private class CommitService extends AbstractScheduledService {
+        @Override
+        protected void runOneIteration() {
+            if (uncommittedCount.get() > 0) {
+                commit();
+            }
+        }
+
+        @Override
+        protected Scheduler scheduler() {
+            return Scheduler.newFixedDelaySchedule(commitInterval, commitInterval, TimeUnit.SECONDS);
         }
     }
 
+    /**
+     * Search criteria of documents, loaded from the database.
+     */
+    private static class CriteriaData {
+        /**
+         * ACL targets allowed to read, by document ID.
+         */
+        private final SetMultimap<String, String> readableMap = HashMultimap.create();
+
+        /**
+         * Tag IDs, by document ID.
+         */
+        private final SetMultimap<String, String> tagMap = HashMultimap.create();
+
+        /**
+         * MIME types of the files, by document ID.
+         */
+        private final SetMultimap<String, String> mimeTypeMap = HashMultimap.create();
+    }
+
     /**
      * Lucene runnable.
      *
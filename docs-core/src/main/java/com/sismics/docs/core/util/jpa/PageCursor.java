@@ -0,0 +1,178 @@
+package com.sismics.docs.core.util.jpa;
+
+import com.google.common.io.BaseEncoding;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Timestamp;
+
+/**
+ * Position of the next page of a paginated list, given to the clients as an opaque token.
+ * The page starts after the sort key and ID of the last result, or at an offset if the sort key is unknown.
+ */
+public class PageCursor {
+    /**
+     * Token format version.
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * Sort key types.
+     */
+    private static final byte TYPE_NONE = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_TIMESTAMP = 2;
+    private static final byte TYPE_NUMBER = 3;
+
+    /**
+     * Offset of the page, used when the sort key cannot be.
+     */
+    private final int offset;
+
+    /**
+     * Sort column of the list.
+     */
+    private final int sortColumn;
+
+    /**
+     * Sort order of the list.
+     */
+    private final boolean asc;
+
+    /**
+     * Sort key of the last result of the previous page, null if unknown.
+     */
+    private final Object sortKey;
+
+    /**
+     * ID of the last result of the previous page, null if unknown.
+     */
+    private final String id;
+
+    /**
+     * Constructor.
+     *
+     * @param offset Offset of the page
+     * @param sortCriteria Sort criteria of the list, may be null
+     * @param sortKey Sort key of the last result of the previous page, null if unknown
+     * @param id ID of the last result of the previous page, null if unknown
+     */
+    public PageCursor(int offset, SortCriteria sortCriteria, Object sortKey, String id) {
+        this(offset, sortCriteria == null ? 0 : sortCriteria.getColumn(), sortCriteria == null || sortCriteria.isAsc(), sortKey, id);
+    }
+
+    private PageCursor(int offset, int sortColumn, boolean asc, Object sortKey, String id) {
+        this.offset = offset;
+        this.sortColumn = sortColumn;
+        this.asc = asc;
+        this.sortKey = sortKey;
+        this.id = id;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public Object getSortKey() {
+        return sortKey;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns true if the page can start after the sort key of this cursor.
+     *
+     * @param sortCriteria Sort criteria of the list
+     * @return True if the cursor has a sort key for this sort
+     */
+    public boolean isKeyset(SortCriteria sortCriteria) {
+        return sortKey != null && id != null
+                && sortCriteria.getColumn() == sortColumn && sortCriteria.isAsc() == asc;
+    }
+
+    /**
+     * Encode this cursor as a token.
+     *
+     * @return Token
+     */
+    public String encode() {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(byteArrayOutputStream)) {
+            out.writeByte(VERSION);
+            out.writeInt(offset);
+            out.writeInt(sortColumn);
+            out.writeBoolean(asc);
+            if (sortKey instanceof String) {
+                out.writeByte(TYPE_STRING);
+                out.writeUTF((String) sortKey);
+            } else if (sortKey instanceof Timestamp) {
+                out.writeByte(TYPE_TIMESTAMP);
+                out.writeLong(((Timestamp) sortKey).getTime());
+                out.writeInt(((Timestamp) sortKey).getNanos());
+            } else if (sortKey instanceof Number) {
+                out.writeByte(TYPE_NUMBER);
+                out.writeLong(((Number) sortKey).longValue());
+            } else {
+                out.writeByte(TYPE_NONE);
+            }
+            out.writeBoolean(id != null);
+            if (id != null) {
+                out.writeUTF(id);
+            }
+        } catch (IOException e) {
+            // Not thrown by a byte array
+            throw new IllegalStateException(e);
+        }
+        return BaseEncoding.base64Url().omitPadding().encode(byteArrayOutputStream.toByteArray());
+    }
+
+    /**
+     * Decode a token.
+     *
+     * @param token Token
+     * @return Cursor
+     * @throws IllegalArgumentException If the token is invalid
+     */
+    public static PageCursor decode(String token) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(BaseEncoding.base64Url().omitPadding().decode(token)))) {
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unknown cursor version");
+            }
+            int offset = in.readInt();
+            int sortColumn = in.readInt();
+            boolean asc = in.readBoolean();
+            Object sortKey;
+            byte type = in.readByte();
+            switch (type) {
+                case TYPE_NONE:
+                    sortKey = null;
+                    break;
+                case TYPE_STRING:
+                    sortKey = in.readUTF();
+                    break;
+                case TYPE_TIMESTAMP:
+                    Timestamp timestamp = new Timestamp(in.readLong());
+                    timestamp.setNanos(in.readInt());
+                    sortKey = timestamp;
+                    break;
+                case TYPE_NUMBER:
+                    sortKey = in.readLong();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown sort key type");
+            }
+            String id = in.readBoolean() ? in.readUTF() : null;
+            if (offset < 0) {
+                throw new IllegalArgumentException("Negative offset");
+            }
+            return new PageCursor(offset, sortColumn, asc, sortKey, id);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated cursor", e);
+        }
+    }
+}
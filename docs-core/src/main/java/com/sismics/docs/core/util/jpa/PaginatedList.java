@@ -19,9 +19,24 @@ public class PaginatedList<T> {
     private int offset;
 
     /**
-     * Total number of records.
+     * Position of the page after the previous one, null to start at the offset.
+     */
+    private PageCursor cursor;
+
+    /**
+     * Count the total number of records.
+     */
+    private boolean countRequested = true;
+
+    /**
+     * Total number of records, -1 if not counted.
      */
     private int resultCount;
+
+    /**
+     * Token of the next page, null if this is the last page.
+     */
+    private String nextCursor;
     
     /**
      * List of records of the current page.
@@ -57,6 +72,60 @@ public class PaginatedList<T> {
         this.resultCount = resultCount;
     }
 
+    /**
+     * Getter of cursor.
+     *
+     * @return cursor
+     */
+    public PageCursor getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Setter of cursor.
+     *
+     * @param cursor cursor
+     */
+    public void setCursor(PageCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Getter of countRequested.
+     *
+     * @return countRequested
+     */
+    public boolean isCountRequested() {
+        return countRequested;
+    }
+
+    /**
+     * Setter of countRequested.
+     *
+     * @param countRequested countRequested
+     */
+    public void setCountRequested(boolean countRequested) {
+        this.countRequested = countRequested;
+    }
+
+    /**
+     * Getter of nextCursor.
+     *
+     * @return nextCursor
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Setter of nextCursor.
+     *
+     * @param nextCursor nextCursor
+     */
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     /**
      * Getter of resultList.
      *
@@ -1,6 +1,8 @@
 package com.sismics.docs.core.util.jpa;
 
 import jakarta.persistence.Query;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -39,6 +41,28 @@ public class PaginatedLists {
         return new PaginatedList<>(pageSize, offset);
     }
     
+    /**
+     * Constructs a paginated list continuing from a cursor.
+     *
+     * @param pageSize Size of the page
+     * @param offset Offset of the page, ignored if a cursor is given
+     * @param cursor Token of the page returned by the previous page, may be null
+     * @param countRequested Count the total number of results, may be null to count them
+     * @return Paginated list
+     * @throws IllegalArgumentException If the cursor is invalid
+     */
+    public static <E> PaginatedList<E> create(Integer pageSize, Integer offset, String cursor, Boolean countRequested) {
+        PageCursor pageCursor = null;
+        if (cursor != null) {
+            pageCursor = PageCursor.decode(cursor);
+            offset = pageCursor.getOffset();
+        }
+        PaginatedList<E> paginatedList = create(pageSize, offset);
+        paginatedList.setCursor(pageCursor);
+        paginatedList.setCountRequested(countRequested == null || countRequested);
+        return paginatedList;
+    }
+
     /**
      * Constructs a paginated list with default parameters.
      * 
@@ -68,23 +92,26 @@ public class PaginatedLists {
     }
 
     /**
-     * Executes a query and returns the data of the current page.
+     * Executes a query and returns the data of the current page, and one more result to know if there is a next page.
      * 
-     * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
      * @param queryParam Query parameters
+     * @param firstResult Index of the first result
+     * @param maxResults Size of the page
      * @return List of results
      */
     @SuppressWarnings("unchecked")
-    private static <E> List<Object[]> executeResultQuery(PaginatedList<E> paginatedList, QueryParam queryParam) {
+    private static List<Object[]> executeResultQuery(QueryParam queryParam, int firstResult, int maxResults) {
         Query q = QueryUtil.getNativeQuery(queryParam);
         
-        q.setFirstResult(paginatedList.getOffset());
-        q.setMaxResults(paginatedList.getLimit());
+        q.setFirstResult(firstResult);
+        q.setMaxResults(maxResults + 1);
         return q.getResultList();
     }
 
     /**
      * Executes a paginated request with 2 native queries (one to count the number of results, and one to return the page).
+     * The page starts after the sort key of the cursor if possible, which stays fast on deep pages,
+     * or else at the offset. The count is skipped if not requested.
      * 
      * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
      * @param queryParam Query parameters
@@ -92,8 +119,56 @@ public class PaginatedLists {
      * @return List of results
      */
     public static <E> List<Object[]> executePaginatedQuery(PaginatedList<E> paginatedList, QueryParam queryParam, SortCriteria sortCriteria) {
-        QueryParam sortedQueryParam = QueryUtil.getSortedQueryParam(queryParam, sortCriteria);
-        executeCountQuery(paginatedList, sortedQueryParam);
-        return executeResultQuery(paginatedList, sortedQueryParam);
+        if (paginatedList.isCountRequested()) {
+            executeCountQuery(paginatedList, queryParam);
+        } else {
+            paginatedList.setResultCount(-1);
+        }
+
+        PageCursor cursor = paginatedList.getCursor();
+        QueryParam keysetQueryParam = QueryUtil.getSortedQueryParam(queryParam, sortCriteria, cursor);
+        if (keysetQueryParam == null) {
+            // This sort is not available for the keyset pagination
+            QueryParam sortedQueryParam = QueryUtil.getSortedQueryParam(queryParam, sortCriteria);
+            List<Object[]> resultList = executeResultQuery(sortedQueryParam, paginatedList.getOffset(), paginatedList.getLimit());
+            if (resultList.size() > paginatedList.getLimit()) {
+                resultList = resultList.subList(0, paginatedList.getLimit());
+                paginatedList.setNextCursor(new PageCursor(paginatedList.getOffset() + paginatedList.getLimit(),
+                        sortCriteria, null, null).encode());
+            }
+            return resultList;
+        }
+
+        boolean keyset = cursor != null && cursor.isKeyset(sortCriteria);
+        List<Object[]> keyedResultList = executeResultQuery(keysetQueryParam, keyset ? 0 : paginatedList.getOffset(), paginatedList.getLimit());
+        boolean hasNextPage = keyedResultList.size() > paginatedList.getLimit();
+        if (hasNextPage) {
+            keyedResultList = keyedResultList.subList(0, paginatedList.getLimit());
+        }
+
+        // Remove the sort key and ID added at the end of the results
+        List<Object[]> resultList = new ArrayList<>(keyedResultList.size());
+        for (Object[] o : keyedResultList) {
+            resultList.add(Arrays.copyOf(o, o.length - 2));
+        }
+        if (hasNextPage) {
+            Object[] last = keyedResultList.get(keyedResultList.size() - 1);
+            paginatedList.setNextCursor(new PageCursor(paginatedList.getOffset() + paginatedList.getLimit(), sortCriteria,
+                    last[last.length - 2], (String) last[last.length - 1]).encode());
+        }
+        return resultList;
+    }
+
+    /**
+     * Sets the cursor of the next page of a list paginated by offset.
+     *
+     * @param paginatedList Paginated list, with its result count
+     * @param sortCriteria Sort criteria, may be null
+     */
+    public static <E> void setOffsetNextCursor(PaginatedList<E> paginatedList, SortCriteria sortCriteria) {
+        int nextOffset = paginatedList.getOffset() + paginatedList.getLimit();
+        if (nextOffset < paginatedList.getResultCount()) {
+            paginatedList.setNextCursor(new PageCursor(nextOffset, sortCriteria, null, null).encode());
+        }
     }
 }
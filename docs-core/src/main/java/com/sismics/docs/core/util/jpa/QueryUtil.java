@@ -1,5 +1,7 @@
 package com.sismics.docs.core.util.jpa;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import jakarta.persistence.EntityManager;
@@ -39,56 +41,131 @@ public class QueryUtil {
     public static QueryParam getSortedQueryParam(QueryParam queryParam, SortCriteria sortCriteria) {
         StringBuilder sb = new StringBuilder(queryParam.getQueryString());
         if (sortCriteria != null) {
-            String queryString = queryParam.getQueryString().toLowerCase();
-            
-            // Determine which entity the query is for based on the FROM clause
-            String orderColumn;
-            if (queryString.contains("from t_user_activity ua")) {
-                // User Activity queries
-                switch (sortCriteria.getColumn()) {
-                    case 0: orderColumn = "ua.UTA_ID_C"; break;
-                    case 1: orderColumn = "ua.UTA_IDUSER_C"; break;
-                    case 2: orderColumn = "u.USE_USERNAME_C"; break;
-                    case 3: orderColumn = "ua.UTA_ACTIVITY_TYPE_C"; break;
-                    case 4: orderColumn = "ua.UTA_ENTITY_ID_C"; break;
-                    case 5: orderColumn = "d.DOC_TITLE_C"; break;
-                    case 6: orderColumn = "ua.UTA_PROGRESS_N"; break;
-                    case 7: orderColumn = "ua.UTA_PLANNED_DATE_D"; break;
-                    case 8: orderColumn = "ua.UTA_COMPLETED_DATE_D"; break;
-                    case 9: orderColumn = "ua.UTA_CREATEDATE_D"; break;
-                    default: orderColumn = "ua.UTA_CREATEDATE_D";
-                }
-            } else if (queryString.contains("from t_tag t")) {
-                // Tag queries
-                switch (sortCriteria.getColumn()) {
-                    case 0: orderColumn = "t.TAG_ID_C"; break;
-                    case 1: orderColumn = "t.TAG_NAME_C"; break;
-                    case 2: orderColumn = "t.TAG_COLOR_C"; break;
-                    case 3: orderColumn = "t.TAG_IDPARENT_C"; break;
-                    case 4: orderColumn = "u.USE_USERNAME_C"; break;
-                    default: orderColumn = "t.TAG_NAME_C";
-                }
-            } else if (queryString.contains("from t_document d")) {
-                // Document queries
-                switch (sortCriteria.getColumn()) {
-                    case 0: orderColumn = "d.DOC_ID_C"; break;
-                    case 1: orderColumn = "d.DOC_TITLE_C"; break;
-                    case 2: orderColumn = "d.DOC_DESCRIPTION_C"; break;
-                    case 3: orderColumn = "d.DOC_CREATEDATE_D"; break;
-                    case 4: orderColumn = "d.DOC_UPDATEDATE_D"; break;
-                    case 5: orderColumn = "u.USE_USERNAME_C"; break;
-                    default: orderColumn = "d.DOC_CREATEDATE_D";
-                }
-            } else {
-                // Default: use an indexed column name (legacy approach)
-                orderColumn = "c" + sortCriteria.getColumn();
-            }
-            
             sb.append(" order by ");
-            sb.append(orderColumn);
+            sb.append(getOrderColumn(queryParam.getQueryString().toLowerCase(), sortCriteria));
             sb.append(sortCriteria.isAsc() ? " asc" : " desc");
         }
         
         return new QueryParam(sb.toString(), queryParam.getParameterMap());
     }
+
+    /**
+     * Returns query parameters sorted for a keyset pagination, starting after the cursor if it has a sort key.
+     * The results are sorted by the sort column then by ID (the c0 column),
+     * and the sort key and ID are added as the last two columns.
+     *
+     * @param queryParam Query parameters
+     * @param sortCriteria Sort criteria
+     * @param cursor Position of the page, may be null
+     * @return Sorted query parameters, null if the sort column may be null
+     */
+    public static QueryParam getSortedQueryParam(QueryParam queryParam, SortCriteria sortCriteria, PageCursor cursor) {
+        String sortKeyColumn = sortCriteria == null ? null : getSortKeyColumn(queryParam.getQueryString().toLowerCase(), sortCriteria);
+        if (sortKeyColumn == null) {
+            return null;
+        }
+
+        // The query is wrapped so the keyset condition applies to unions and distinct results alike
+        String operator = sortCriteria.isAsc() ? " > " : " < ";
+        String direction = sortCriteria.isAsc() ? " asc" : " desc";
+        Map<String, Object> parameterMap = new HashMap<>(queryParam.getParameterMap());
+        StringBuilder sb = new StringBuilder("select kq.*, kq.").append(sortKeyColumn).append(" as sort_key, kq.c0 as sort_id from (");
+        sb.append(queryParam.getQueryString());
+        sb.append(") kq");
+        if (cursor != null && cursor.isKeyset(sortCriteria)) {
+            sb.append(" where (kq.").append(sortKeyColumn).append(operator).append(":cursorSortKey");
+            sb.append(" or (kq.").append(sortKeyColumn).append(" = :cursorSortKey and kq.c0").append(operator).append(":cursorId))");
+            parameterMap.put("cursorSortKey", cursor.getSortKey());
+            parameterMap.put("cursorId", cursor.getId());
+        }
+        sb.append(" order by kq.").append(sortKeyColumn).append(direction).append(", kq.c0").append(direction);
+
+        return new QueryParam(sb.toString(), parameterMap);
+    }
+
+    /**
+     * Returns the column to order by.
+     *
+     * @param queryString Lower case query string
+     * @param sortCriteria Sort criteria
+     * @return Column
+     */
+    private static String getOrderColumn(String queryString, SortCriteria sortCriteria) {
+        // Determine which entity the query is for based on the FROM clause
+        String orderColumn;
+        if (queryString.contains("from t_user_activity ua")) {
+            // User Activity queries
+            switch (sortCriteria.getColumn()) {
+                case 0: orderColumn = "ua.UTA_ID_C"; break;
+                case 1: orderColumn = "ua.UTA_IDUSER_C"; break;
+                case 2: orderColumn = "u.USE_USERNAME_C"; break;
+                case 3: orderColumn = "ua.UTA_ACTIVITY_TYPE_C"; break;
+                case 4: orderColumn = "ua.UTA_ENTITY_ID_C"; break;
+                case 5: orderColumn = "d.DOC_TITLE_C"; break;
+                case 6: orderColumn = "ua.UTA_PROGRESS_N"; break;
+                case 7: orderColumn = "ua.UTA_PLANNED_DATE_D"; break;
+                case 8: orderColumn = "ua.UTA_COMPLETED_DATE_D"; break;
+                case 9: orderColumn = "ua.UTA_CREATEDATE_D"; break;
+                default: orderColumn = "ua.UTA_CREATEDATE_D";
+            }
+        } else if (queryString.contains("from t_tag t")) {
+            // Tag queries
+            switch (sortCriteria.getColumn()) {
+                case 0: orderColumn = "t.TAG_ID_C"; break;
+                case 1: orderColumn = "t.TAG_NAME_C"; break;
+                case 2: orderColumn = "t.TAG_COLOR_C"; break;
+                case 3: orderColumn = "t.TAG_IDPARENT_C"; break;
+                case 4: orderColumn = "u.USE_USERNAME_C"; break;
+                default: orderColumn = "t.TAG_NAME_C";
+            }
+        } else if (queryString.contains("from t_document d")) {
+            // Document queries
+            switch (sortCriteria.getColumn()) {
+                case 0: orderColumn = "d.DOC_ID_C"; break;
+                case 1: orderColumn = "d.DOC_TITLE_C"; break;
+                case 2: orderColumn = "d.DOC_DESCRIPTION_C"; break;
+                case 3: orderColumn = "d.DOC_CREATEDATE_D"; break;
+                case 4: orderColumn = "d.DOC_UPDATEDATE_D"; break;
+                case 5: orderColumn = "u.USE_USERNAME_C"; break;
+                default: orderColumn = "d.DOC_CREATEDATE_D";
+            }
+        } else {
+            // Default: use an indexed column name (legacy approach)
+            orderColumn = "c" + sortCriteria.getColumn();
+        }
+        return orderColumn;
+    }
+
+    /**
+     * Returns the result column holding the sort key, for the keyset pagination.
+     * Only the paginated queries are handled, and only the columns which cannot be null:
+     * a keyset condition would skip the null values.
+     *
+     * @param queryString Lower case query string
+     * @param sortCriteria Sort criteria
+     * @return Column alias, null if the keyset pagination is not available
+     */
+    private static String getSortKeyColumn(String queryString, SortCriteria sortCriteria) {
+        if (queryString.contains("from t_user_activity ua")) {
+            switch (sortCriteria.getColumn()) {
+                case 0: case 1: case 2: case 3: case 6: case 9: return "c" + sortCriteria.getColumn();
+                case 4: case 5: case 7: case 8: return null;
+                default: return "c9";
+            }
+        } else if (queryString.contains("from t_audit_log l")) {
+            switch (sortCriteria.getColumn()) {
+                case 0: case 1: case 2: case 3: case 4: case 5: return "c" + sortCriteria.getColumn();
+                default: return null;
+            }
+        } else if (queryString.contains("from t_document d")) {
+            switch (sortCriteria.getColumn()) {
+                case 0: return "c0";
+                case 1: return "c1";
+                case 4: return "c8";
+                case 2: case 5: return null;
+                default: return "c3";
+            }
+        }
+        return null;
+    }
 }
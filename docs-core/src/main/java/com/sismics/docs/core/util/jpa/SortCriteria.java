@@ -6,6 +6,11 @@ package com.sismics.docs.core.util.jpa;
  * @author jtremeaux 
  */
 public class SortCriteria {
+    /**
+     * Pseudo-column sorting the fulltext search results by relevance, best match first.
+     */
+    public static final int RELEVANCE = -1;
+
     /**
      * Index of the column to sort (first is 0).
      */
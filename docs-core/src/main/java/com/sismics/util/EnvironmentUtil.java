@@ -1,11 +1,19 @@
 package com.sismics.util;
 
+import com.google.common.base.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Environment properties utilities.
  *
  * @author jtremeaux
  */
 public class EnvironmentUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(EnvironmentUtil.class);
 
     private static String OS = System.getProperty("os.name").toLowerCase();
 
@@ -94,6 +102,30 @@ public class EnvironmentUtil {
         return TEEDY_HOME;
     }
 
+    /**
+     * Read a positive integer from an environment variable.
+     *
+     * @param name Environment variable name
+     * @param defaultValue Default value
+     * @return Value
+     */
+    public static int getIntEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (Strings.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            int intValue = Integer.parseInt(value);
+            if (intValue > 0) {
+                return intValue;
+            }
+        } catch (NumberFormatException e) {
+            // NOP
+        }
+        log.warn(name + " needs to be a positive number. Falling back to " + defaultValue + ".");
+        return defaultValue;
+    }
+
     /**
      * Getter of webappContext.
      *
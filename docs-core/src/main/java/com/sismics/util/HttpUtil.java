@@ -1,7 +1,13 @@
 package com.sismics.util;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
 import java.text.SimpleDateFormat;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -15,6 +21,11 @@ public class HttpUtil {
      */
     private static final SimpleDateFormat EXPIRES_FORMAT = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
 
+    /**
+     * Maximum number of ranges honored in a Range header.
+     */
+    private static final int MAX_RANGE_COUNT = 16;
+
     /**
      * Build an Expires HTTP header.
      *
@@ -24,4 +35,67 @@ public class HttpUtil {
     public static String buildExpiresHeader(long futureTime) {
         return EXPIRES_FORMAT.format(new Date().getTime() + futureTime);
     }
+
+    /**
+     * Format a date as an HTTP date (e.g. Last-Modified header).
+     *
+     * @param date Date
+     * @return Formatted header value
+     */
+    public static String formatHttpDate(Date date) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(date.toInstant().atZone(ZoneOffset.UTC));
+    }
+
+    /**
+     * Parse a bytes Range header.
+     *
+     * @param header Range header value, can be null
+     * @param length Length of the resource
+     * @return Satisfiable ranges as inclusive [first, last] byte positions (empty if none is satisfiable),
+     * or null if the whole resource must be served
+     */
+    public static List<long[]> parseRangeHeader(String header, long length) {
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+
+        List<long[]> rangeList = Lists.newArrayList();
+        List<String> specList = Splitter.on(',').trimResults().omitEmptyStrings().splitToList(header.substring(6));
+        if (specList.isEmpty() || specList.size() > MAX_RANGE_COUNT) {
+            return null;
+        }
+        for (String spec : specList) {
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long first;
+            long last;
+            try {
+                if (dash == 0) {
+                    // Suffix range: the last N bytes
+                    long suffixLength = Long.parseLong(spec.substring(1));
+                    if (suffixLength == 0) {
+                        continue;
+                    }
+                    first = Math.max(0, length - suffixLength);
+                    last = length - 1;
+                } else {
+                    first = Long.parseLong(spec.substring(0, dash));
+                    last = dash == spec.length() - 1 ? length - 1 : Long.parseLong(spec.substring(dash + 1));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (first < 0 || last < first) {
+                return null;
+            }
+            if (first >= length) {
+                // Unsatisfiable range
+                continue;
+            }
+            rangeList.add(new long[] { first, Math.min(last, length - 1) });
+        }
+        return rangeList;
+    }
 }
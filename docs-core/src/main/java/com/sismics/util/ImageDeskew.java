@@ -1,6 +1,7 @@
 package com.sismics.util;
 
 import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
 
 /**
  * <a url=http://www.jdeskew.com/>JDeskew</a>
@@ -36,6 +37,10 @@ public class ImageDeskew {
     private int cDCount;
     // count of points that fit in a line
     private int[] cHMatrix;
+    // maximum number of row bands accumulated in parallel, each one needs its own matrix
+    private static final int MAX_BAND_COUNT = Math.min(4, Runtime.getRuntime().availableProcessors());
+    // minimum number of rows in a band
+    private static final int MIN_BAND_HEIGHT = 256;
 
     // constructor
     public ImageDeskew(BufferedImage image) {
@@ -103,40 +108,57 @@ public class ImageDeskew {
         return hl;
     }
 
-    // Hough Transformation
+    // Hough Transformation, the rows are split in bands accumulated in parallel
     private void calc() {
         int hMin = (int) ((this.cImage.getHeight()) / 4.0);
         int hMax = (int) ((this.cImage.getHeight()) * 3.0 / 4.0);
         init();
+        if (hMax <= hMin) {
+            return;
+        }
+
+        // black pixels of the rows, and of the row below the last one
+        boolean[] blackPixels = ImageUtil.getBlackPixels(this.cImage, hMin, hMax - hMin + 1);
+        int bandCount = Math.max(1, Math.min(MAX_BAND_COUNT, (hMax - hMin) / MIN_BAND_HEIGHT));
+        int bandHeight = (hMax - hMin + bandCount - 1) / bandCount;
+        int[][] bandMatrixes = new int[bandCount][];
+        IntStream.range(0, bandCount).parallel().forEach(band -> {
+            // the first band accumulates directly in the result
+            int[] hMatrix = band == 0 ? this.cHMatrix : new int[this.cHMatrix.length];
+            int yStart = hMin + band * bandHeight;
+            calc(blackPixels, hMin, yStart, Math.min(hMax, yStart + bandHeight), hMatrix);
+            bandMatrixes[band] = hMatrix;
+        });
+
+        for (int band = 1; band < bandCount; band++) {
+            int[] hMatrix = bandMatrixes[band];
+            for (int i = 0; i < hMatrix.length; i++) {
+                this.cHMatrix[i] += hMatrix[i];
+            }
+        }
+    }
 
-        for (int y = hMin; y < hMax; y++) {
-            for (int x = 1; x < (this.cImage.getWidth() - 2); x++) {
+    // accumulate the lines through the lower edges of a band of rows
+    private void calc(boolean[] blackPixels, int hMin, int yStart, int yEnd, int[] hMatrix) {
+        int width = this.cImage.getWidth();
+        for (int y = yStart; y < yEnd; y++) {
+            int rowOffset = (y - hMin) * width;
+            for (int x = 1; x < (width - 2); x++) {
                 // only lower edges are considered
-                if (ImageUtil.isBlack(this.cImage, x, y)) {
-                    if (!ImageUtil.isBlack(this.cImage, x, y + 1)) {
-                        calc(x, y);
-                    }
+                if (blackPixels[rowOffset + x] && !blackPixels[rowOffset + width + x]) {
+                    calc(x, y, hMatrix);
                 }
             }
         }
-
     }
 
     // calculate all lines through the point (x,y)
-    private void calc(int x, int y) {
-        double d;
-        int dIndex;
-        int index;
-
+    private void calc(int x, int y, int[] hMatrix) {
+        // d is always in [cDMin, cDMin + cDCount[ for the angles searched
         for (int alpha = 0; alpha < (this.cSteps - 1); alpha++) {
-            d = y * this.cCosA[alpha] - x * this.cSinA[alpha];
-            dIndex = (int) (d - this.cDMin);
-            index = dIndex * this.cSteps + alpha;
-            try {
-                this.cHMatrix[index] += 1;
-            } catch (Exception ex) {
-                System.out.println(ex.toString());
-            }
+            double d = y * this.cCosA[alpha] - x * this.cSinA[alpha];
+            int dIndex = (int) (d - this.cDMin);
+            hMatrix[dIndex * this.cSteps + alpha]++;
         }
     }
 
@@ -9,6 +9,10 @@ import javax.imageio.ImageWriter;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -84,6 +88,11 @@ public class ImageUtil {
                 .toString();
     }
 
+    /**
+     * Luminance under which a pixel is black, multiplied by 1000.
+     */
+    private static final int BLACK_LUMINANCE_CUTOFF = 140 * 1000;
+
     /**
      * Return true if a pixel is black.
      *
@@ -93,47 +102,80 @@ public class ImageUtil {
      * @return True if black
      */
     public static boolean isBlack(BufferedImage image, int x, int y) {
-        if (image.getType() == BufferedImage.TYPE_BYTE_BINARY) {
-            WritableRaster raster = image.getRaster();
-            int pixelRGBValue = raster.getSample(x, y, 0);
-            return pixelRGBValue == 0;
+        // Return white on areas outside of image boundaries
+        if (x < 0 || y < 0 || x >= image.getWidth() || y >= image.getHeight()) {
+            return false;
         }
 
-        int luminanceValue = 140;
-        return isBlack(image, x, y, luminanceValue);
+        if (image.getType() == BufferedImage.TYPE_BYTE_BINARY) {
+            return image.getRaster().getSample(x, y, 0) == 0;
+        }
+        return isBlack(image.getRGB(x, y));
     }
 
     /**
-     * Return true if a pixel is black.
+     * Return the black pixels of a band of rows, reading the image data directly when possible.
      *
      * @param image Image
-     * @param x X
-     * @param y Y
-     * @param luminanceCutOff Luminance cutoff
-     * @return True if black
+     * @param y First row
+     * @param height Number of rows
+     * @return True for each black pixel, row after row
      */
-    private static boolean isBlack(BufferedImage image, int x, int y, int luminanceCutOff) {
-        int pixelRGBValue;
-        int r;
-        int g;
-        int b;
-        double luminance = 0.0;
-
-        // return white on areas outside of image boundaries
-        if (x < 0 || y < 0 || x > image.getWidth() || y > image.getHeight()) {
-            return false;
-        }
+    public static boolean[] getBlackPixels(BufferedImage image, int y, int height) {
+        int width = image.getWidth();
+        boolean[] blackPixels = new boolean[width * height];
+        WritableRaster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        SampleModel sampleModel = raster.getSampleModel();
+        int type = image.getType();
 
-        try {
-            pixelRGBValue = image.getRGB(x, y);
-            r = (pixelRGBValue >> 16) & 0xff;
-            g = (pixelRGBValue >> 8) & 0xff;
-            b = (pixelRGBValue) & 0xff;
-            luminance = (r * 0.299) + (g * 0.587) + (b * 0.114);
-        } catch (Exception e) {
-            // NOP
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && sampleModel instanceof SinglePixelPackedSampleModel && dataBuffer.getNumBanks() == 1
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0) {
+            // One packed pixel per int, in the same order as getRGB()
+            int[] data = ((DataBufferInt) dataBuffer).getData();
+            int scanlineStride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+            int offset = dataBuffer.getOffset();
+            for (int row = 0; row < height; row++) {
+                int rowOffset = offset + (y + row) * scanlineStride;
+                int maskOffset = row * width;
+                for (int x = 0; x < width; x++) {
+                    blackPixels[maskOffset + x] = isBlack(data[rowOffset + x]);
+                }
+            }
+        } else if (type == BufferedImage.TYPE_BYTE_BINARY) {
+            int[] samples = new int[width];
+            for (int row = 0; row < height; row++) {
+                raster.getSamples(0, y + row, width, 1, 0, samples);
+                int maskOffset = row * width;
+                for (int x = 0; x < width; x++) {
+                    blackPixels[maskOffset + x] = samples[x] == 0;
+                }
+            }
+        } else {
+            // Let the color model convert other formats, one row at a time
+            int[] rgb = new int[width];
+            for (int row = 0; row < height; row++) {
+                image.getRGB(0, y + row, width, 1, rgb, 0, width);
+                int maskOffset = row * width;
+                for (int x = 0; x < width; x++) {
+                    blackPixels[maskOffset + x] = isBlack(rgb[x]);
+                }
+            }
         }
+        return blackPixels;
+    }
 
-        return luminance < luminanceCutOff;
+    /**
+     * Return true if a RGB color is black.
+     *
+     * @param rgb RGB color
+     * @return True if black
+     */
+    private static boolean isBlack(int rgb) {
+        int r = (rgb >> 16) & 0xff;
+        int g = (rgb >> 8) & 0xff;
+        int b = rgb & 0xff;
+        return r * 299 + g * 587 + b * 114 < BLACK_LUMINANCE_CUTOFF;
     }
 }
@@ -1,11 +1,19 @@
 package com.sismics.util.context;
 
 import com.google.common.collect.Lists;
+import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
+import com.sismics.docs.core.event.FileEvent;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.cache.CacheRegion;
+import com.sismics.docs.core.util.cache.ReferenceCacheUtil;
 
 import jakarta.persistence.EntityManager;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Context associated to a user request, and stored in a ThreadLocal.
@@ -28,6 +36,16 @@ public class ThreadLocalContext {
      */
     private List<Object> asyncEventList = Lists.newArrayList();
 
+    /**
+     * Reference data cache regions invalidated during this request.
+     */
+    private Set<CacheRegion> invalidatedCacheRegionSet = EnumSet.noneOf(CacheRegion.class);
+
+    /**
+     * Users whose authenticated principals have been invalidated during this request, null for all the users.
+     */
+    private Set<String> invalidatedPrincipalSet = new HashSet<>();
+
     /**
      * Private constructor.
      */
@@ -88,15 +106,61 @@ public class ThreadLocalContext {
         asyncEventList.add(asyncEvent);
     }
 
+    /**
+     * Record that a reference data cache region has been invalidated during this request.
+     *
+     * @param region Cache region
+     */
+    public void addInvalidatedCacheRegion(CacheRegion region) {
+        invalidatedCacheRegionSet.add(region);
+    }
+
+    /**
+     * Returns true if a reference data cache region has been invalidated during this request.
+     *
+     * @param region Cache region
+     * @return True if invalidated
+     */
+    public boolean isCacheRegionInvalidated(CacheRegion region) {
+        return invalidatedCacheRegionSet.contains(region);
+    }
+
+    /**
+     * Record that the authenticated principals of a user have been invalidated during this request.
+     *
+     * @param userId User ID, null for all the users
+     */
+    public void addInvalidatedPrincipal(String userId) {
+        invalidatedPrincipalSet.add(userId);
+    }
+
     /**
      * Fire all pending async events.
+     * The reference data cache regions and the authenticated principals invalidated during this request
+     * are invalidated again, now that the changes are committed.
+     * File events go to the file processing pipeline, which may block if it is full.
      */
     public void fireAllAsyncEvents() {
+        for (CacheRegion region : invalidatedCacheRegionSet) {
+            ReferenceCacheUtil.getCache().invalidate(region);
+        }
+        invalidatedCacheRegionSet.clear();
+        for (String userId : invalidatedPrincipalSet) {
+            SecurityUtil.incrementPrincipalVersion(userId);
+        }
+        invalidatedPrincipalSet.clear();
+
         Iterator<Object> iterator = asyncEventList.iterator();
         while (iterator.hasNext()) {
             Object asyncEvent = iterator.next();
             iterator.remove();
-            AppContext.getInstance().getAsyncEventBus().post(asyncEvent);
+            if (asyncEvent instanceof FileEvent) {
+                AppContext.getInstance().getFileProcessingService().submit((FileEvent) asyncEvent);
+            } else if (asyncEvent instanceof DocumentUpdatedAsyncEvent) {
+                AppContext.getInstance().getDocumentUpdateCoalescingService().submit((DocumentUpdatedAsyncEvent) asyncEvent);
+            } else {
+                AppContext.getInstance().getAsyncEventBus().post(asyncEvent);
+            }
         }
     }
 }
@@ -1,14 +1,15 @@
 package com.sismics.util.log4j;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.AppenderSkeleton;
 import org.apache.log4j.Level;
 import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.LoggingEvent;
 
 import com.google.common.collect.Lists;
@@ -16,20 +17,25 @@ import com.sismics.docs.core.util.jpa.PaginatedList;
 
 /**
  * Memory appender for Log4J.
+ * The last log entries are kept in a ring buffer, written without lock by the logging threads.
  *
  * @author jtremeaux
  */
 public class MemoryAppender extends AppenderSkeleton {
+    /**
+     * Default maximum number of log entries.
+     */
+    private static final int DEFAULT_SIZE = 1000;
 
     /**
-     * Maximum size of the queue.
+     * Ring buffer of log entries, the entry of sequence n is in the slot n modulo the size.
      */
-    private int size;
-    
+    private volatile AtomicReferenceArray<Slot> buffer = new AtomicReferenceArray<>(DEFAULT_SIZE);
+
     /**
-     * Queue of log entries.
+     * Sequence of the next log entry.
      */
-    private final Queue<LogEntry> logQueue = new ConcurrentLinkedQueue<LogEntry>();
+    private final AtomicLong sequence = new AtomicLong();
 
     @Override
     public boolean requiresLayout() {
@@ -44,25 +50,53 @@ public class MemoryAppender extends AppenderSkeleton {
         closed = true;
     }
 
+    /**
+     * Same as the parent method, without the lock held while appending.
+     *
+     * @param event Event
+     */
     @Override
-    public synchronized void append(LoggingEvent event) {
-        while (logQueue.size() > size) {
-            logQueue.remove();
+    public void doAppend(LoggingEvent event) {
+        if (closed) {
+            LogLog.warn("This appender is already closed, cannot append event.");
+            return;
         }
+        if (!isAsSevereAsThreshold(event.getLevel())) {
+            return;
+        }
+        Filter filter = getFirstFilter();
+        while (filter != null) {
+            switch (filter.decide(event)) {
+                case Filter.DENY:
+                    return;
+                case Filter.ACCEPT:
+                    filter = null;
+                    break;
+                default:
+                    filter = filter.getNext();
+            }
+        }
+        append(event);
+    }
+
+    @Override
+    public void append(LoggingEvent event) {
         if (closed) {
             LogLog.warn("This appender is already closed, cannot append event.");
             return;
         }
-        
+
         String loggerName = getLoggerName(event);
 
-        LogEntry logEntry = new LogEntry(System.currentTimeMillis(), event.getLevel(), loggerName, event.getMessage().toString());
-        logQueue.add(logEntry);
+        LogEntry logEntry = new LogEntry(event.getTimeStamp(), event.getLevel(), loggerName, String.valueOf(event.getMessage()));
+        AtomicReferenceArray<Slot> buffer = this.buffer;
+        long seq = sequence.getAndIncrement();
+        buffer.set((int) (seq % buffer.length()), new Slot(seq, logEntry));
     }
 
     /**
      * Extracts the class name of the logger, without the package name.
-     * 
+     *
      * @param event Event
      * @return Class name
      */
@@ -75,12 +109,17 @@ public class MemoryAppender extends AppenderSkeleton {
     }
 
     /**
-     * Getter of logList.
+     * Returns the log entries, from the oldest to the newest.
      *
-     * @return logList
+     * @return Copy of the log entries
      */
-    public Queue<LogEntry> getLogList() {
-        return logQueue;
+    public List<LogEntry> getLogList() {
+        List<LogEntry> logEntryList = new ArrayList<>();
+        forEachNewestFirst(logEntry -> {
+            logEntryList.add(logEntry);
+            return true;
+        });
+        return Lists.reverse(logEntryList);
     }
 
     /**
@@ -89,41 +128,97 @@ public class MemoryAppender extends AppenderSkeleton {
      * @param size size
      */
     public void setSize(int size) {
-        this.size = size;
+        this.buffer = new AtomicReferenceArray<>(Math.max(size, 1));
     }
 
     /**
-     * Find some logs.
-     * 
+     * Find some logs, from the newest to the oldest.
+     *
      * @param criteria Search criteria
      * @param list Paginated list (modified by side effect)
      */
     public void find(LogCriteria criteria, PaginatedList<LogEntry> list) {
-        List<LogEntry> logEntryList = new LinkedList<LogEntry>();
         final Level minLevel = criteria.getMinLevel();
+        final int minLevelInt = minLevel == null ? Integer.MIN_VALUE : minLevel.toInt();
         final String tag = criteria.getTag();
         final String message = criteria.getMessage();
-        int resultCount = 0;
-        for (Iterator<LogEntry> it = logQueue.iterator(); it.hasNext();) {
-            LogEntry logEntry = it.next();
-            if ((minLevel == null ||  Integer.compare(logEntry.getLevel().toInt(), minLevel.toInt()) >= 0) &&
-                    (tag == null || logEntry.getTag().toLowerCase().equals(tag)) &&
-                    (message == null || logEntry.getMessage().toLowerCase().contains(message))) {
-                logEntryList.add(logEntry);
-                resultCount++;
+        final int offset = list.getOffset();
+        final int limit = list.getLimit();
+        final List<LogEntry> logEntryList = new ArrayList<>(Math.min(limit, buffer.length()));
+        final int[] resultCount = { 0 };
+        forEachNewestFirst(logEntry -> {
+            if (logEntry.getLevel().toInt() >= minLevelInt &&
+                    (tag == null || logEntry.getTag().equalsIgnoreCase(tag)) &&
+                    (message == null || StringUtils.containsIgnoreCase(logEntry.getMessage(), message))) {
+                if (resultCount[0] >= offset && logEntryList.size() < limit) {
+                    logEntryList.add(logEntry);
+                }
+                resultCount[0]++;
+            }
+            // Without count, the walk stops at the end of the page
+            return list.isCountRequested() || logEntryList.size() < limit;
+        });
+
+        list.setResultCount(list.isCountRequested() ? resultCount[0] : -1);
+        list.setResultList(logEntryList);
+    }
+
+    /**
+     * Walk the log entries from the newest to the oldest.
+     * The entries overwritten during the walk are skipped.
+     *
+     * @param visitor Called on each entry, returns false to stop the walk
+     */
+    private void forEachNewestFirst(LogEntryVisitor visitor) {
+        AtomicReferenceArray<Slot> buffer = this.buffer;
+        int size = buffer.length();
+        long last = sequence.get() - 1;
+        for (long seq = last; seq >= 0 && seq > last - size; seq--) {
+            Slot slot = buffer.get((int) (seq % size));
+            if (slot == null || slot.sequence < seq) {
+                // Not written yet
+                continue;
+            }
+            if (slot.sequence > seq) {
+                // Overwritten since the start of the walk, and the older entries too
+                return;
+            }
+            if (!visitor.visit(slot.logEntry)) {
+                return;
             }
         }
-        
-        int fromIndex = logEntryList.size() - list.getOffset() - list.getLimit();
-        if (fromIndex < 0) {
-            fromIndex = 0;
-        }
-        int toIndex = logEntryList.size() - list.getOffset();
-        if (toIndex > logEntryList.size()) {
-            toIndex = logEntryList.size();
+    }
+
+    /**
+     * Visitor of the log entries.
+     */
+    private interface LogEntryVisitor {
+        /**
+         * Visit a log entry.
+         *
+         * @param logEntry Log entry
+         * @return False to stop the walk
+         */
+        boolean visit(LogEntry logEntry);
+    }
+
+    /**
+     * Slot of the ring buffer.
+     */
+    private static class Slot {
+        /**
+         * Sequence of the log entry.
+         */
+        private final long sequence;
+
+        /**
+         * Log entry.
+         */
+        private final LogEntry logEntry;
+
+        private Slot(long sequence, LogEntry logEntry) {
+            this.sequence = sequence;
+            this.logEntry = logEntry;
         }
-        List<LogEntry> logEntrySubList = Lists.reverse(logEntryList.subList(fromIndex, toIndex));
-        list.setResultCount(resultCount);
-        list.setResultList(logEntrySubList);
     }
-}
\ No newline at end of file
+}
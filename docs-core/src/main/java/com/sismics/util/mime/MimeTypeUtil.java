@@ -3,7 +3,9 @@ package com.sismics.util.mime;
 import java.io.IOException;
 import java.net.URLConnection;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Utility to check MIME types.
@@ -33,6 +35,94 @@ public class MimeTypeUtil {
         return mimeType;
     }
     
+    /**
+     * Number of bytes needed to guess a MIME type from the content.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * Try to guess the MIME type of a file being received, from its name and first bytes.
+     *
+     * @param header First bytes of the file, up to {@link #HEADER_SIZE}
+     * @param name File name, can be null
+     * @return MIME type
+     * @throws IOException e
+     */
+    public static String guessMimeType(byte[] header, String name) throws IOException {
+        String mimeType = null;
+        if (name != null) {
+            try {
+                mimeType = Files.probeContentType(Paths.get(name));
+            } catch (InvalidPathException e) {
+                // Not a valid file name on this system
+            }
+            if (mimeType == null) {
+                mimeType = URLConnection.getFileNameMap().getContentTypeFor(name);
+            }
+        }
+
+        if (mimeType == null) {
+            mimeType = guessMimeType(header);
+        }
+
+        if (mimeType == null) {
+            return MimeType.DEFAULT;
+        }
+
+        return mimeType;
+    }
+
+    /**
+     * Guess the MIME type from the magic number of the handled formats.
+     *
+     * @param header First bytes of the file
+     * @return MIME type or null
+     */
+    private static String guessMimeType(byte[] header) {
+        if (startsWith(header, 0, '%', 'P', 'D', 'F', '-')) {
+            return MimeType.APPLICATION_PDF;
+        }
+        if (startsWith(header, 0, 0x89, 'P', 'N', 'G')) {
+            return MimeType.IMAGE_PNG;
+        }
+        if (startsWith(header, 0, 0xFF, 0xD8, 0xFF)) {
+            return MimeType.IMAGE_JPEG;
+        }
+        if (startsWith(header, 0, 'G', 'I', 'F', '8')) {
+            return MimeType.IMAGE_GIF;
+        }
+        if (startsWith(header, 0, 'P', 'K', 3, 4)) {
+            return MimeType.APPLICATION_ZIP;
+        }
+        if (startsWith(header, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+            return MimeType.VIDEO_WEBM;
+        }
+        if (startsWith(header, 4, 'f', 't', 'y', 'p')) {
+            return MimeType.VIDEO_MP4;
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the header contains these bytes at this offset.
+     *
+     * @param header Header
+     * @param offset Offset
+     * @param bytes Expected bytes
+     * @return True if found
+     */
+    private static boolean startsWith(byte[] header, int offset, int... bytes) {
+        if (header.length < offset + bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if ((header[offset + i] & 0xFF) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Get a file extension linked to a MIME type.
      * 
@@ -0,0 +1,10 @@
+-- DBUPDATE-033-0.SQL
+
+-- Move the extracted text content out of T_FILE
+create cached table T_FILE_CONTENT ( FCO_IDFILE_C varchar(36) not null, FCO_CONTENT_B bytea not null, FCO_COMPRESSED_B bit not null default 0, primary key (FCO_IDFILE_C) );
+!H2!insert into T_FILE_CONTENT (FCO_IDFILE_C, FCO_CONTENT_B) select FIL_ID_C, STRINGTOUTF8(FIL_CONTENT_C) from T_FILE where FIL_CONTENT_C is not null;
+!PGSQL!insert into T_FILE_CONTENT (FCO_IDFILE_C, FCO_CONTENT_B) select FIL_ID_C, convert_to(FIL_CONTENT_C, 'UTF8') from T_FILE where FIL_CONTENT_C is not null;
+alter table T_FILE drop column FIL_CONTENT_C;
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '33' where CFG_ID_C = 'DB_VERSION';
@@ -0,0 +1,11 @@
+-- DBUPDATE-034-0.SQL
+
+-- SHA-256 hash of the files content, files of the same user with the same hash share the stored content
+alter table T_FILE add column FIL_HASH_C varchar(64);
+create index IDX_FIL_IDUSER_C_HASH_C on T_FILE (FIL_IDUSER_C, FIL_HASH_C);
+
+-- Number of files referencing each stored content, the quota is charged once per content
+create cached table T_FILE_BLOB ( FBL_IDUSER_C varchar(36) not null, FBL_HASH_C varchar(64) not null, FBL_COUNT_N int not null, primary key (FBL_IDUSER_C, FBL_HASH_C) );
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '34' where CFG_ID_C = 'DB_VERSION';
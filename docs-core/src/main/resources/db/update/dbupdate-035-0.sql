@@ -0,0 +1,8 @@
+-- DBUPDATE-035-0.SQL
+
+-- Inbox synchronization checkpoint, no checkpoint while the UIDVALIDITY is 0
+insert into T_CONFIG (CFG_ID_C, CFG_VALUE_C) values ('INBOX_UID_VALIDITY', '0');
+insert into T_CONFIG (CFG_ID_C, CFG_VALUE_C) values ('INBOX_LAST_UID', '0');
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '35' where CFG_ID_C = 'DB_VERSION';
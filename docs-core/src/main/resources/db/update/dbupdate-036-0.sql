@@ -0,0 +1,7 @@
+-- DBUPDATE-036-0.SQL
+
+-- Remove the text content of the deleted files
+delete from T_FILE_CONTENT where FCO_IDFILE_C in (select FIL_ID_C from T_FILE where FIL_DELETEDATE_D is not null);
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '36' where CFG_ID_C = 'DB_VERSION';
@@ -0,0 +1,9 @@
+-- DBUPDATE-037-0.SQL
+
+-- The audit logs are paginated by creation date, which must be set
+update T_AUDIT_LOG set LOG_CREATEDATE_D = timestamp '1970-01-01 00:00:00' where LOG_CREATEDATE_D is null;
+!H2!alter table T_AUDIT_LOG alter column LOG_CREATEDATE_D datetime not null;
+!PGSQL!alter table T_AUDIT_LOG alter column LOG_CREATEDATE_D set not null;
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '37' where CFG_ID_C = 'DB_VERSION';
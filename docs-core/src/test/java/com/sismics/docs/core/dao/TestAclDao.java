@@ -0,0 +1,89 @@
+package com.sismics.docs.core.dao;
+
+import com.google.common.collect.Lists;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AclTargetType;
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.dto.AclDto;
+import com.sismics.docs.core.model.jpa.Acl;
+import com.sismics.docs.core.model.jpa.Share;
+import com.sismics.docs.core.model.jpa.User;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Test of the ACL DAO.
+ */
+public class TestAclDao extends BaseTransactionalTest {
+    @Test
+    public void testGetBySourceIds() throws Exception {
+        User user = createUser("acl_source_ids");
+        Share share = new Share();
+        share.setName("Public link");
+        share.setCreateDate(new Date());
+        new ShareDao().create(share);
+
+        // Two sources with their ACLs, one of them created by the routing module
+        String sourceId1 = UUID.randomUUID().toString();
+        String sourceId2 = UUID.randomUUID().toString();
+        createAcl(sourceId1, PermType.READ, user.getId(), AclType.USER, user);
+        createAcl(sourceId1, PermType.WRITE, user.getId(), AclType.USER, user);
+        createAcl(sourceId1, PermType.READ, share.getId(), AclType.USER, user);
+        createAcl(sourceId2, PermType.READ, user.getId(), AclType.ROUTING, user);
+
+        // The ACLs are grouped by source with their target names
+        AclDao aclDao = new AclDao();
+        Map<String, List<AclDto>> aclDtoMap = aclDao.getBySourceIds(Lists.newArrayList(sourceId1, sourceId2, "unknown"), null);
+        Assert.assertEquals(2, aclDtoMap.size());
+        Assert.assertEquals(3, aclDtoMap.get(sourceId1).size());
+        Assert.assertEquals(1, aclDtoMap.get(sourceId2).size());
+        for (AclDto aclDto : aclDtoMap.get(sourceId1)) {
+            if (aclDto.getTargetId().equals(share.getId())) {
+                Assert.assertEquals("Public link", aclDto.getTargetName());
+                Assert.assertEquals(AclTargetType.SHARE.name(), aclDto.getTargetType());
+            } else {
+                Assert.assertEquals("acl_source_ids", aclDto.getTargetName());
+                Assert.assertEquals(AclTargetType.USER.name(), aclDto.getTargetType());
+            }
+        }
+
+        // The ACLs are filtered by type
+        aclDtoMap = aclDao.getBySourceIds(Lists.newArrayList(sourceId1, sourceId2), AclType.ROUTING);
+        Assert.assertEquals(1, aclDtoMap.size());
+        Assert.assertEquals(PermType.READ, aclDtoMap.get(sourceId2).get(0).getPerm());
+
+        // The single source lookup gives the same ACLs
+        Assert.assertEquals(3, aclDao.getBySourceId(sourceId1, AclType.USER).size());
+        Assert.assertTrue(aclDao.getBySourceId(sourceId2, AclType.USER).isEmpty());
+        Assert.assertTrue(aclDao.getBySourceIds(Collections.emptyList(), null).isEmpty());
+
+        // Deleted ACLs are not returned
+        aclDao.delete(sourceId1, PermType.WRITE, user.getId(), user.getId(), AclType.USER);
+        Assert.assertEquals(2, aclDao.getBySourceIds(Collections.singletonList(sourceId1), null).get(sourceId1).size());
+    }
+
+    /**
+     * Create an ACL.
+     *
+     * @param sourceId Source ID
+     * @param perm Permission
+     * @param targetId Target ID
+     * @param type ACL type
+     * @param user User creating the ACL
+     */
+    private void createAcl(String sourceId, PermType perm, String targetId, AclType type, User user) {
+        Acl acl = new Acl();
+        acl.setPerm(perm);
+        acl.setType(type);
+        acl.setSourceId(sourceId);
+        acl.setTargetId(targetId);
+        new AclDao().create(acl, user.getId());
+    }
+}
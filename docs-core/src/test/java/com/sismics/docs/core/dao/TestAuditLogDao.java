@@ -0,0 +1,88 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AuditLogType;
+import com.sismics.docs.core.dao.criteria.AuditLogCriteria;
+import com.sismics.docs.core.dao.dto.AuditLogDto;
+import com.sismics.docs.core.model.jpa.AuditLog;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.jpa.PageCursor;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Test of the audit log DAO.
+ */
+public class TestAuditLogDao extends BaseTransactionalTest {
+    @Test
+    public void testCursor() throws Exception {
+        // Audit logs created at the same time
+        User user = createUser("auditlog_dao_cursor");
+        AuditLogDao auditLogDao = new AuditLogDao();
+        Date createDate = new Date();
+        List<String> auditLogIdList = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            AuditLog auditLog = new AuditLog();
+            auditLog.setUserId(user.getId());
+            auditLog.setEntityId(user.getId());
+            auditLog.setEntityClass("User");
+            auditLog.setType(AuditLogType.UPDATE);
+            auditLog.setMessage(i % 2 == 0 ? null : "Message");
+            auditLogIdList.add(auditLogDao.create(auditLog));
+            auditLog.setCreateDate(createDate);
+        }
+        TransactionUtil.commit();
+
+        // Equal sort keys are paginated by ID, without duplicates or missing logs
+        List<String> resultIdList = listAll(user, new SortCriteria(1, false), true);
+        Assert.assertEquals(new HashSet<>(auditLogIdList), new HashSet<>(resultIdList));
+        Assert.assertEquals(5, resultIdList.size());
+        resultIdList = listAll(user, new SortCriteria(5, true), true);
+        Assert.assertEquals(new HashSet<>(auditLogIdList), new HashSet<>(resultIdList));
+        Assert.assertEquals(5, resultIdList.size());
+
+        // The message may be null, the pages are paginated by offset
+        resultIdList = listAll(user, new SortCriteria(6, true), false);
+        Assert.assertEquals(new HashSet<>(auditLogIdList), new HashSet<>(resultIdList));
+        Assert.assertEquals(5, resultIdList.size());
+    }
+
+    /**
+     * List all the audit logs of a user 2 by 2, following the cursors.
+     *
+     * @param user User
+     * @param sortCriteria Sort criteria
+     * @param keyset True if the pages are expected to continue after a sort key, false for an offset
+     * @return Audit log IDs
+     */
+    private List<String> listAll(User user, SortCriteria sortCriteria, boolean keyset) {
+        AuditLogCriteria criteria = new AuditLogCriteria();
+        criteria.setUserId(user.getId());
+        List<String> auditLogIdList = new ArrayList<>();
+        String cursor = null;
+        int pageCount = 0;
+        do {
+            PaginatedList<AuditLogDto> paginatedList = PaginatedLists.create(2, 0, cursor, false);
+            new AuditLogDao().findByCriteria(paginatedList, criteria, sortCriteria);
+            for (AuditLogDto auditLogDto : paginatedList.getResultList()) {
+                auditLogIdList.add(auditLogDto.getId());
+            }
+            cursor = paginatedList.getNextCursor();
+            if (cursor != null) {
+                Assert.assertEquals(keyset, PageCursor.decode(cursor).getSortKey() != null);
+            }
+            pageCount++;
+        } while (cursor != null);
+        Assert.assertEquals(3, pageCount);
+        return auditLogIdList;
+    }
+}
@@ -1,6 +1,7 @@
 package com.sismics.docs.core.listener.async;
 
 import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.dao.FileContentDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.FileDeletedAsyncEvent;
 import com.sismics.docs.core.model.jpa.File;
@@ -49,4 +50,20 @@ public class FileDeletedAsyncListenerTest extends BaseTransactionalTest {
         Assert.assertEquals(userDao.getById(user.getId()).getStorageCurrent(), Long.valueOf(10_000 - FILE_JPG_SIZE));
     }
 
+    @Test
+    public void deleteContent() throws Exception {
+        User user = createUser("deleteContent");
+        File file = createFile(user, FILE_JPG_SIZE);
+        FileContentDao fileContentDao = new FileContentDao();
+        fileContentDao.update(file.getId(), "Apollo portrait");
+
+        FileDeletedAsyncListener fileDeletedAsyncListener = new FileDeletedAsyncListener();
+        TransactionUtil.commit();
+        FileDeletedAsyncEvent event = new FileDeletedAsyncEvent();
+        event.setFileSize(FILE_JPG_SIZE);
+        event.setFileId(file.getId());
+        event.setUserId(user.getId());
+        fileDeletedAsyncListener.on(event);
+        Assert.assertNull(fileContentDao.getByFileId(file.getId()));
+    }
 }
@@ -0,0 +1,68 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.collect.Sets;
+import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Test of the document update coalescing service.
+ */
+public class TestDocumentUpdateCoalescingService {
+    @Test
+    public void testCoalescing() throws Exception {
+        List<DocumentUpdatedAsyncEvent> postedEventList = new CopyOnWriteArrayList<>();
+        DocumentUpdateCoalescingService service = new DocumentUpdateCoalescingService(200, false) {
+            @Override
+            void post(DocumentUpdatedAsyncEvent event) {
+                postedEventList.add(event);
+            }
+        };
+        service.startAsync().awaitRunning();
+        try {
+            // 50 updates of a document and one of another document
+            for (int i = 0; i < 50; i++) {
+                service.submit(createEvent("document1", i % 2 == 0 ? "user1" : "user2"));
+            }
+            service.submit(createEvent("document2", "user1"));
+            Assert.assertEquals(2, service.getPendingCount());
+            Assert.assertTrue(postedEventList.isEmpty());
+
+            // One event per document after the window, with all the users
+            for (int i = 0; i < 50 && service.getPendingCount() > 0; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(0, service.getPendingCount());
+            Assert.assertEquals(2, postedEventList.size());
+            DocumentUpdatedAsyncEvent event1 = postedEventList.get(0).getDocumentId().equals("document1") ?
+                    postedEventList.get(0) : postedEventList.get(1);
+            Assert.assertEquals(Sets.newHashSet("user1", "user2"), event1.getUserIdSet());
+
+            // A new update after the window is posted again
+            service.submit(createEvent("document1", "user3"));
+        } finally {
+            service.stopAsync().awaitTerminated();
+        }
+
+        // The waiting events are posted on shutdown
+        Assert.assertEquals(3, postedEventList.size());
+        Assert.assertEquals(Sets.newHashSet("user3"), postedEventList.get(2).getUserIdSet());
+    }
+
+    /**
+     * Create a document updated event.
+     *
+     * @param documentId Document ID
+     * @param userId User ID
+     * @return Event
+     */
+    private DocumentUpdatedAsyncEvent createEvent(String documentId, String userId) {
+        DocumentUpdatedAsyncEvent event = new DocumentUpdatedAsyncEvent();
+        event.setDocumentId(documentId);
+        event.setUserId(userId);
+        return event;
+    }
+}
@@ -0,0 +1,138 @@
+package com.sismics.docs.core.service;
+
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Test of the file processing service.
+ */
+public class TestFileProcessingService {
+    @Test
+    public void testBackpressure() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<String> processedList = new CopyOnWriteArrayList<>();
+        FileProcessingService.Stage stage = new FileProcessingService.Stage("test", 1, 1, 10, 1000, job -> {
+            blocked.await();
+            processedList.add(job.getEvent().getFileId());
+            return false;
+        }, null, false);
+        ExecutorService submitter = Executors.newSingleThreadExecutor();
+        try {
+            // The only thread is busy with the first file, the second one fills the queue
+            stage.submit(createJob("file1", 1), false);
+            for (int i = 0; i < 50 && (stage.getActiveCount() == 0 || stage.getQueuedCount(FileProcessingPriority.INTERACTIVE) > 0); i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(1, stage.getActiveCount());
+            stage.submit(createJob("file2", 2), false);
+            Assert.assertEquals(1, stage.getQueuedCount(FileProcessingPriority.INTERACTIVE));
+
+            // The third one goes to the overflow queue without blocking the caller
+            stage.submit(createJob("file3", 3), false);
+            Assert.assertEquals(2, stage.getQueuedCount(FileProcessingPriority.INTERACTIVE));
+            Assert.assertEquals(2, stage.getQueuedCount());
+
+            // A waiting submission blocks until some room is available
+            Future<?> waitingSubmit = submitter.submit(() -> stage.submit(createJob("file4", 4), true));
+            try {
+                waitingSubmit.get(500, TimeUnit.MILLISECONDS);
+                Assert.fail();
+            } catch (TimeoutException e) {
+                // OK
+            }
+
+            // Everything is processed in order once the first file is done
+            blocked.countDown();
+            waitingSubmit.get(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 50 && processedList.size() < 4; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(4, processedList.size());
+            Assert.assertEquals("file1", processedList.get(0));
+            Assert.assertEquals("file2", processedList.get(1));
+            Assert.assertTrue(processedList.contains("file3"));
+            Assert.assertTrue(processedList.contains("file4"));
+            Assert.assertEquals(0, stage.getQueuedCount());
+        } finally {
+            blocked.countDown();
+            submitter.shutdownNow();
+            stage.shutDown();
+        }
+    }
+
+    @Test
+    public void testOverflowLimit() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<String> processedList = new CopyOnWriteArrayList<>();
+        FileProcessingService.Stage stage = new FileProcessingService.Stage("test", 1, 1, 2, 200, job -> {
+            blocked.await();
+            processedList.add(job.getEvent().getFileId());
+            return false;
+        }, null, false);
+        try {
+            // The only thread is busy with the first file, the second one fills the queue
+            stage.submit(createJob("file1", 1), false);
+            for (int i = 0; i < 50 && (stage.getActiveCount() == 0 || stage.getQueuedCount(FileProcessingPriority.INTERACTIVE) > 0); i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(1, stage.getActiveCount());
+            stage.submit(createJob("file2", 2), false);
+
+            // The next ones fill the overflow queue
+            stage.submit(createJob("file3", 3), false);
+            stage.submit(createJob("file4", 4), false);
+            Assert.assertEquals(3, stage.getQueuedCount(FileProcessingPriority.INTERACTIVE));
+            Assert.assertEquals(0, stage.getDroppedCount());
+
+            // The overflow queue is full, the caller waits a little then the file is dropped
+            long startTime = System.currentTimeMillis();
+            stage.submit(createJob("file5", 5), false);
+            Assert.assertTrue(System.currentTimeMillis() - startTime >= 150);
+            Assert.assertEquals(1, stage.getDroppedCount());
+            Assert.assertEquals(3, stage.getQueuedCount(FileProcessingPriority.INTERACTIVE));
+
+            // The other priorities have their own overflow queue
+            FileProcessingService.Job reprocessJob = createJob("file6", 6);
+            reprocessJob.getEvent().setPriority(FileProcessingPriority.REPROCESS);
+            stage.submit(reprocessJob, false);
+            Assert.assertEquals(1, stage.getQueuedCount(FileProcessingPriority.REPROCESS));
+            Assert.assertEquals(1, stage.getDroppedCount());
+
+            // The files kept are processed, the dropped one is not
+            blocked.countDown();
+            for (int i = 0; i < 50 && processedList.size() < 5; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(5, processedList.size());
+            Assert.assertFalse(processedList.contains("file5"));
+            Assert.assertEquals(0, stage.getQueuedCount());
+        } finally {
+            blocked.countDown();
+            stage.shutDown();
+        }
+    }
+
+    /**
+     * Create a job processing a file again.
+     *
+     * @param fileId File ID
+     * @param sequence Submission sequence
+     * @return Job
+     */
+    private FileProcessingService.Job createJob(String fileId, long sequence) {
+        FileUpdatedAsyncEvent event = new FileUpdatedAsyncEvent();
+        event.setFileId(fileId);
+        return new FileProcessingService.Job(event, false, sequence);
+    }
+}
@@ -0,0 +1,76 @@
+package com.sismics.docs.core.service;
+
+import com.sismics.docs.core.constant.WebhookEvent;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test of the webhook service.
+ */
+public class TestWebhookService {
+    @Test
+    public void testDelivery() throws Exception {
+        // Local endpoint failing on the first calls
+        AtomicInteger callCount = new AtomicInteger();
+        AtomicInteger failureCount = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            callCount.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(failureCount.getAndDecrement() > 0 ? 503 : 200, -1);
+            exchange.close();
+        });
+        server.start();
+
+        WebhookService webhookService = new WebhookService(2, 1, 10, 200, 3, 10, false);
+        webhookService.startAsync().awaitRunning();
+        try {
+            String url = "http://localhost:" + server.getAddress().getPort() + "/webhook";
+
+            // The same event is delivered once
+            for (int i = 0; i < 5; i++) {
+                webhookService.submit(url, WebhookEvent.DOCUMENT_UPDATED, "document1");
+            }
+            webhookService.submit(url, WebhookEvent.DOCUMENT_UPDATED, "document2");
+            waitForDeliveries(webhookService);
+            Assert.assertEquals(2, callCount.get());
+            Assert.assertEquals(2, webhookService.getDeliveredCount());
+            Assert.assertEquals(4, webhookService.getCoalescedCount());
+            Assert.assertTrue(webhookService.getMaxLatency() >= 200);
+
+            // A failed delivery is retried
+            failureCount.set(2);
+            webhookService.submit(url, WebhookEvent.DOCUMENT_UPDATED, "document1");
+            waitForDeliveries(webhookService);
+            Assert.assertEquals(5, callCount.get());
+            Assert.assertEquals(3, webhookService.getDeliveredCount());
+            Assert.assertEquals(2, webhookService.getRetriedCount());
+
+            // A delivery fails after all attempts
+            failureCount.set(3);
+            webhookService.submit(url, WebhookEvent.DOCUMENT_DELETED, "document1");
+            waitForDeliveries(webhookService);
+            Assert.assertEquals(8, callCount.get());
+            Assert.assertEquals(1, webhookService.getFailedCount());
+        } finally {
+            webhookService.stopAsync().awaitTerminated();
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Wait for the pending deliveries.
+     *
+     * @param webhookService Webhook service
+     */
+    private void waitForDeliveries(WebhookService webhookService) throws InterruptedException {
+        for (int i = 0; i < 100 && webhookService.getPendingCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(0, webhookService.getPendingCount());
+    }
+}
@@ -8,6 +8,7 @@ import org.junit.Test;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
 /**
@@ -48,4 +49,21 @@ public class TestEncryptUtil extends BaseTest {
         
         Assert.assertEquals(encryptedData.length, assertData.length);
     }
+
+    @Test
+    public void cachedSecretKeyTest() throws Exception {
+        // Encrypt with a freshly derived key, decrypt with the cached one
+        EncryptionUtil.invalidateSecretKey("OnceUponATime");
+        byte[] data = ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF));
+        byte[] encryptedData = ByteStreams.toByteArray(new CipherInputStream(getSystemResourceAsStream(FILE_PDF),
+                EncryptionUtil.getEncryptionCipher("OnceUponATime")));
+        byte[] decryptedData = ByteStreams.toByteArray(EncryptionUtil.decryptInputStream(
+                new ByteArrayInputStream(encryptedData), "OnceUponATime"));
+        Assert.assertArrayEquals(data, decryptedData);
+
+        // The cached key produces the same stream as before
+        Assert.assertArrayEquals(ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF_ENCRYPTED)),
+                ByteStreams.toByteArray(new CipherInputStream(getSystemResourceAsStream(FILE_PDF),
+                        EncryptionUtil.getEncryptionCipher("OnceUponATime"))));
+    }
 }
@@ -0,0 +1,47 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.model.jpa.User;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Test of the files created from an upload.
+ */
+public class TestFileUpload extends BaseTransactionalTest {
+    @Test
+    public void testReadError() throws Exception {
+        User user = createUser("testReadError");
+
+        // The client stops sending the file after some bytes
+        InputStream inputStream = new InputStream() {
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                if (count++ >= 1024) {
+                    throw new IOException("Connection reset");
+                }
+                return 0;
+            }
+        };
+        try {
+            FileUtil.createFile(null, null, inputStream, null, user.getId(), null);
+            Assert.fail();
+        } catch (IOException e) {
+            // A client error
+            Assert.assertEquals("StreamError", e.getMessage());
+        }
+
+        // Nothing is left in the storage directory
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DirectoryUtil.getStorageDirectory(), "upload*.tmp")) {
+            Assert.assertFalse(stream.iterator().hasNext());
+        }
+    }
+}
@@ -140,4 +140,19 @@ public class TestFileUtil extends BaseTest {
             Assert.assertTrue(outputStream.toByteArray().length > 0);
         }
     }
+
+    @Test
+    public void deleteUploadFilesTest() throws Exception {
+        // An upload interrupted by a crash, and a stored file
+        Path uploadFile = Files.createTempFile(DirectoryUtil.getStorageDirectory(), "upload", ".tmp");
+        Path storedFile = DirectoryUtil.getStorageDirectory().resolve("upload_stored");
+        Files.write(storedFile, new byte[] { 1 });
+        try {
+            FileUtil.deleteUploadFiles();
+            Assert.assertFalse(Files.exists(uploadFile));
+            Assert.assertTrue(Files.exists(storedFile));
+        } finally {
+            Files.deleteIfExists(storedFile);
+        }
+    }
 }
@@ -0,0 +1,99 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.BaseTest;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.model.jpa.File;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test of the PDF cache.
+ */
+public class TestPdfCacheUtil extends BaseTest {
+    @Test
+    public void testCache() throws Exception {
+        File file1 = createFile();
+        File file2 = createFile();
+        File file3 = createFile();
+        AtomicInteger conversionCount = new AtomicInteger();
+        try {
+            // The conversion is cached
+            Assert.assertEquals(1, get(file1, conversionCount));
+            Assert.assertEquals(1, conversionCount.get());
+            Assert.assertEquals(1, get(file1, conversionCount));
+            Assert.assertEquals(1, conversionCount.get());
+
+            // Each set of export options is cached separately
+            try (PDDocument doc = PdfCacheUtil.get(file1, true, 10, MemoryUsageSetting.setupMainMemoryOnly(), (convertedDoc, closer) -> {
+                conversionCount.incrementAndGet();
+                convertedDoc.addPage(new PDPage());
+            })) {
+                Assert.assertEquals(1, doc.getNumberOfPages());
+            }
+            Assert.assertEquals(2, conversionCount.get());
+
+            // Room for 3 entries, the least recently used one is evicted
+            Path entry = DirectoryUtil.getPdfCacheDirectory().resolve(file1.getId() + "_nofit_0.pdf");
+            PdfCacheUtil.setMaxSize(Files.size(entry) * 3 + Files.size(entry) / 2);
+            get(file2, conversionCount);
+            get(file1, conversionCount);
+            get(file3, conversionCount);
+            Assert.assertEquals(4, conversionCount.get());
+            Assert.assertTrue(Files.exists(entry));
+            Assert.assertFalse(Files.exists(DirectoryUtil.getPdfCacheDirectory().resolve(file1.getId() + "_fit_10.pdf")));
+            get(file1, conversionCount);
+            get(file2, conversionCount);
+            get(file3, conversionCount);
+            Assert.assertEquals(4, conversionCount.get());
+
+            // The invalidated file is converted again
+            PdfCacheUtil.invalidate(file1.getId());
+            Assert.assertFalse(Files.exists(entry));
+            get(file1, conversionCount);
+            Assert.assertEquals(5, conversionCount.get());
+            get(file2, conversionCount);
+            Assert.assertEquals(5, conversionCount.get());
+        } finally {
+            PdfCacheUtil.setMaxSize(Constants.DEFAULT_PDF_CACHE_SIZE * 1024L * 1024L);
+            PdfCacheUtil.invalidate(file1.getId());
+            PdfCacheUtil.invalidate(file2.getId());
+            PdfCacheUtil.invalidate(file3.getId());
+        }
+    }
+
+    /**
+     * Create an unencrypted file.
+     *
+     * @return File
+     */
+    private File createFile() {
+        File file = new File();
+        file.setId(UUID.randomUUID().toString());
+        return file;
+    }
+
+    /**
+     * Returns a file converted to a single page PDF, with the default export options.
+     *
+     * @param file File
+     * @param conversionCount Number of conversions (updated by side effects)
+     * @return Number of pages
+     * @throws Exception e
+     */
+    private int get(File file, AtomicInteger conversionCount) throws Exception {
+        try (PDDocument doc = PdfCacheUtil.get(file, false, 0, MemoryUsageSetting.setupMainMemoryOnly(), (convertedDoc, closer) -> {
+            conversionCount.incrementAndGet();
+            convertedDoc.addPage(new PDPage());
+        })) {
+            return doc.getNumberOfPages();
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.collect.Lists;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.model.jpa.Acl;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+import com.sismics.util.mime.MimeType;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Test of the Lucene indexing handler.
+ */
+public class TestLuceneIndexingHandler extends BaseTransactionalTest {
+    @Before
+    public void cleanIndex() throws Exception {
+        deleteLuceneDirectory();
+    }
+
+    @After
+    public void deleteIndex() throws Exception {
+        deleteLuceneDirectory();
+    }
+
+    @Test
+    public void testRebuildResume() throws Exception {
+        User user = createUser("testRebuildResume");
+        DocumentDao documentDao = new DocumentDao();
+        Document document = new Document();
+        document.setUserId(user.getId());
+        document.setTitle("Apollo mission");
+        document.setLanguage("eng");
+        document.setCreateDate(new Date());
+        documentDao.create(document, user.getId());
+
+        LuceneIndexingHandler handler = new LuceneIndexingHandler();
+        handler.startUp();
+        handler.createDocument(document);
+
+        // Rebuild the index up to a checkpoint
+        IndexRebuildProgress progress = handler.startRebuild();
+        Assert.assertNotNull(progress);
+        handler.rebuildDocuments(Collections.singletonList(document));
+        progress.advance(document.getId(), 1);
+        handler.checkpointRebuild(progress);
+
+        // The document changes after the checkpoint, then the server stops
+        document.setTitle("Gemini mission");
+        documentDao.update(document, user.getId());
+        handler.updateDocument(document);
+        handler.stopRebuild();
+        handler.shutDown();
+
+        // The rebuild resumes from its checkpoint with the change made before the restart
+        handler = new LuceneIndexingHandler();
+        handler.startUp();
+        try {
+            progress = handler.startRebuild();
+            Assert.assertNotNull(progress);
+            Assert.assertEquals(document.getId(), progress.getLastId());
+            Assert.assertEquals(1, progress.getIndexedCount());
+            progress.startPhase(IndexRebuildProgress.Phase.FILES);
+            handler.checkpointRebuild(progress);
+            handler.finishRebuild();
+
+            // Searches use the swapped index
+            Assert.assertNull(handler.getRebuildProgress());
+            Assert.assertEquals(1, search(handler, "gemini").size());
+            Assert.assertEquals(0, search(handler, "apollo").size());
+
+            // The index keeps being updated after the swap
+            document.setTitle("Mercury mission");
+            documentDao.update(document, user.getId());
+            handler.updateDocument(document);
+            Assert.assertEquals(1, search(handler, "mercury").size());
+            Assert.assertEquals(0, search(handler, "gemini").size());
+        } finally {
+            handler.shutDown();
+        }
+    }
+
+    @Test
+    public void testCriteriaIndex() throws Exception {
+        // Two handlers on the same data, searching with the database or with the indexed criteria
+        new ConfigDao().update(ConfigType.LUCENE_DIRECTORY_STORAGE, "RAM");
+        LuceneIndexingHandler databaseHandler = new LuceneIndexingHandler(false);
+        LuceneIndexingHandler criteriaHandler = new LuceneIndexingHandler(true);
+        databaseHandler.startUp();
+        criteriaHandler.startUp();
+        try {
+            User user1 = createUser("testCriteriaIndex1");
+            User user2 = createUser("testCriteriaIndex2");
+            Document document1 = createDocument(user1, "Apollo mission", "eng");
+            Document document2 = createDocument(user1, "Apollo landing", "fra");
+            Document document3 = createDocument(user2, "Gemini mission", "eng");
+            File pdfFile = createFile(user1, document1, MimeType.APPLICATION_PDF);
+            createFile(user1, document2, MimeType.IMAGE_JPEG);
+            for (Document document : Lists.newArrayList(document1, document2, document3)) {
+                databaseHandler.createDocument(document);
+                criteriaHandler.createDocument(document);
+            }
+
+            // user1 reads its documents, and the document of user2 once it is shared
+            List<String> targetIdList = Lists.newArrayList(user1.getId());
+            assertSameResults(databaseHandler, criteriaHandler, targetIdList, criteria -> { }, 2);
+            createReadAcl(document3, user1, user2);
+            databaseHandler.createAcl(document3.getId(), PermType.READ, user1.getId());
+            criteriaHandler.createAcl(document3.getId(), PermType.READ, user1.getId());
+            assertSameResults(databaseHandler, criteriaHandler, targetIdList, criteria -> { }, 3);
+
+            // Each criterion gives the same results
+            assertSameResults(databaseHandler, criteriaHandler, targetIdList, criteria -> criteria.setFullSearch("apollo"), 2);
+            assertSameResults(databaseHandler, criteriaHandler, targetIdList, criteria -> criteria.setLanguage("fra"), 1);
+            assertSameResults(databaseHandler, criteriaHandler, targetIdList, criteria -> criteria.setCreatorId(user2.getId()), 1);
+            assertSameResults(databaseHandler, criteriaHandler, targetIdList, criteria -> criteria.setMimeType(MimeType.APPLICATION_PDF), 1);
+            assertSameResults(databaseHandler, criteriaHandler, targetIdList, criteria -> {
+                criteria.setFullSearch("mission");
+                criteria.setLanguage("eng");
+            }, 2);
+
+            // The MIME types of a document are updated when its file is deleted
+            new FileDao().delete(pdfFile.getId(), user1.getId());
+            databaseHandler.deleteFile(pdfFile.getId());
+            criteriaHandler.deleteFile(pdfFile.getId());
+            assertSameResults(databaseHandler, criteriaHandler, targetIdList, criteria -> criteria.setMimeType(MimeType.APPLICATION_PDF), 0);
+            assertSameResults(databaseHandler, criteriaHandler, targetIdList, criteria -> criteria.setMimeType(MimeType.IMAGE_JPEG), 1);
+        } finally {
+            databaseHandler.shutDown();
+            criteriaHandler.shutDown();
+        }
+    }
+
+    @Test
+    public void testFullTextTotal() throws Exception {
+        new ConfigDao().update(ConfigType.LUCENE_DIRECTORY_STORAGE, "RAM");
+        LuceneIndexingHandler handler = new LuceneIndexingHandler(false);
+        handler.startUp();
+        try {
+            // More matching documents than checked at once in the database, half of them readable
+            User user1 = createUser("testFullTextTotal1");
+            User user2 = createUser("testFullTextTotal2");
+            for (int i = 0; i < 250; i++) {
+                Document document = createDocument(i % 2 == 0 ? user1 : user2, "Apollo " + i, "eng");
+                handler.createDocument(document);
+            }
+            DocumentCriteria criteria = new DocumentCriteria();
+            criteria.setTargetIdList(Lists.newArrayList(user1.getId()));
+            criteria.setFullSearch("apollo");
+
+            // The total is exact, not an upper bound
+            PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(10, 0);
+            handler.findByCriteria(paginatedList, new ArrayList<>(), criteria, new SortCriteria(SortCriteria.RELEVANCE, false));
+            Assert.assertEquals(125, paginatedList.getResultCount());
+            Assert.assertEquals(10, paginatedList.getResultList().size());
+            Assert.assertNotNull(paginatedList.getNextCursor());
+
+            // Last page
+            paginatedList = PaginatedLists.create(10, 120);
+            handler.findByCriteria(paginatedList, new ArrayList<>(), criteria, new SortCriteria(3, true));
+            Assert.assertEquals(125, paginatedList.getResultCount());
+            Assert.assertEquals(5, paginatedList.getResultList().size());
+            Assert.assertNull(paginatedList.getNextCursor());
+
+            // Without count, the remaining documents are not checked
+            paginatedList = PaginatedLists.create(10, 0, null, false);
+            handler.findByCriteria(paginatedList, new ArrayList<>(), criteria, new SortCriteria(3, true));
+            Assert.assertEquals(-1, paginatedList.getResultCount());
+            Assert.assertEquals(10, paginatedList.getResultList().size());
+            Assert.assertNotNull(paginatedList.getNextCursor());
+        } finally {
+            handler.shutDown();
+        }
+    }
+
+    @Test
+    public void testCommitPolicy() throws Exception {
+        User user = createUser("testCommitPolicy");
+        Document document1 = createDocument(user, "Apollo mission", "eng");
+        Document document2 = createDocument(user, "Gemini mission", "eng");
+        Document document3 = createDocument(user, "Mercury mission", "eng");
+
+        // Commit every 2 changes, the commit interval is never reached
+        LuceneIndexingHandler handler = new LuceneIndexingHandler(false, false, 3600, 2);
+        handler.startUp();
+        try {
+            // The first change is searchable before being committed
+            handler.createDocument(document1);
+            Assert.assertEquals(1, search(handler, "apollo").size());
+            Assert.assertEquals(0, getCommittedCount());
+
+            // The second change triggers a commit
+            handler.createDocument(document2);
+            Assert.assertEquals(2, getCommittedCount());
+        } finally {
+            handler.shutDown();
+        }
+
+        // Commit every second
+        handler = new LuceneIndexingHandler(false, false, 1, 1000);
+        handler.startUp();
+        try {
+            handler.createDocument(document3);
+            Assert.assertEquals(1, search(handler, "mercury").size());
+            for (int i = 0; i < 50 && getCommittedCount() < 3; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(3, getCommittedCount());
+        } finally {
+            handler.shutDown();
+        }
+
+        // Durable writes commit every change
+        handler = new LuceneIndexingHandler(false, true, 3600, 1000);
+        handler.startUp();
+        try {
+            handler.deleteDocument(document3.getId());
+            Assert.assertEquals(0, search(handler, "mercury").size());
+            Assert.assertEquals(2, getCommittedCount());
+        } finally {
+            handler.shutDown();
+        }
+    }
+
+    @Test
+    public void testSuggester() throws Exception {
+        User user = createUser("testSuggester");
+        LuceneIndexingHandler handler = new LuceneIndexingHandler(false);
+        handler.startUp();
+        try {
+            // Nothing to suggest from an empty index
+            Assert.assertTrue(suggest(handler, "apol").isEmpty());
+
+            // The suggester is rebuilt with the indexed titles
+            handler.createDocument(createDocument(user, "Apollo mission", "eng"));
+            Assert.assertTrue(suggest(handler, "apol").contains("apollo"));
+            Assert.assertTrue(suggest(handler, "satur").isEmpty());
+            handler.createDocument(createDocument(user, "Saturn rocket", "eng"));
+            Assert.assertTrue(suggest(handler, "apollo satur").contains("saturn"));
+            Assert.assertTrue(suggest(handler, "apol").contains("apollo"));
+        } finally {
+            handler.shutDown();
+        }
+
+        // The suggester is built in the background from the existing index on startup
+        handler = new LuceneIndexingHandler(false);
+        handler.startUp();
+        try {
+            List<String> suggestionList = suggest(handler, "satur");
+            for (int i = 0; i < 50 && suggestionList.isEmpty(); i++) {
+                Thread.sleep(100);
+                suggestionList = suggest(handler, "satur");
+            }
+            Assert.assertTrue(suggestionList.contains("saturn"));
+        } finally {
+            handler.shutDown();
+        }
+    }
+
+    /**
+     * Check that searches with the database and with the indexed criteria find the same documents.
+     *
+     * @param databaseHandler Handler searching with the database
+     * @param criteriaHandler Handler searching with the indexed criteria
+     * @param targetIdList Targets of the searching user
+     * @param criteriaSetter Sets the search criteria
+     * @param expectedCount Expected number of documents
+     * @throws Exception e
+     */
+    private void assertSameResults(LuceneIndexingHandler databaseHandler, LuceneIndexingHandler criteriaHandler,
+                                   List<String> targetIdList, Consumer<DocumentCriteria> criteriaSetter, int expectedCount) throws Exception {
+        List<String> documentIdList = new ArrayList<>();
+        for (LuceneIndexingHandler handler : Lists.newArrayList(databaseHandler, criteriaHandler)) {
+            PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(10, 0);
+            DocumentCriteria criteria = new DocumentCriteria();
+            criteria.setTargetIdList(targetIdList);
+            criteriaSetter.accept(criteria);
+            handler.findByCriteria(paginatedList, new ArrayList<>(), criteria, new SortCriteria(1, true));
+            Assert.assertEquals(expectedCount, paginatedList.getResultCount());
+            List<String> resultIdList = paginatedList.getResultList().stream()
+                    .map(DocumentDto::getId)
+                    .collect(Collectors.toList());
+            if (handler == databaseHandler) {
+                documentIdList = resultIdList;
+            } else {
+                Assert.assertEquals(documentIdList, resultIdList);
+            }
+        }
+    }
+
+    /**
+     * Create a document readable by its creator.
+     *
+     * @param user Creator
+     * @param title Title
+     * @param language Language
+     * @return Document
+     */
+    private Document createDocument(User user, String title, String language) {
+        Document document = new Document();
+        document.setUserId(user.getId());
+        document.setTitle(title);
+        document.setLanguage(language);
+        document.setCreateDate(new Date());
+        new DocumentDao().create(document, user.getId());
+        createReadAcl(document, user, user);
+        return document;
+    }
+
+    /**
+     * Allow a user to read a document.
+     *
+     * @param document Document
+     * @param target User allowed to read
+     * @param user User creating the ACL
+     */
+    private void createReadAcl(Document document, User target, User user) {
+        Acl acl = new Acl();
+        acl.setPerm(PermType.READ);
+        acl.setType(AclType.USER);
+        acl.setSourceId(document.getId());
+        acl.setTargetId(target.getId());
+        new AclDao().create(acl, user.getId());
+    }
+
+    /**
+     * Create a file in a document, without content.
+     *
+     * @param user Creator
+     * @param document Document
+     * @param mimeType MIME type
+     * @return File
+     */
+    private File createFile(User user, Document document, String mimeType) {
+        File file = new File();
+        file.setUserId(user.getId());
+        file.setDocumentId(document.getId());
+        file.setVersion(0);
+        file.setLatestVersion(true);
+        file.setMimeType(mimeType);
+        file.setSize(File.UNKNOWN_SIZE);
+        new FileDao().create(file, user.getId());
+        return file;
+    }
+
+    /**
+     * Search the documents as an administrator.
+     *
+     * @param handler Indexing handler
+     * @param fullSearch Full text search
+     * @return Documents found
+     * @throws Exception e
+     */
+    private List<DocumentDto> search(LuceneIndexingHandler handler, String fullSearch) throws Exception {
+        PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(10, 0);
+        DocumentCriteria criteria = new DocumentCriteria();
+        criteria.setTargetIdList(Lists.newArrayList("admin"));
+        criteria.setFullSearch(fullSearch);
+        handler.findByCriteria(paginatedList, new ArrayList<>(), criteria, new SortCriteria(3, false));
+        return paginatedList.getResultList();
+    }
+
+    /**
+     * Returns the search terms suggested for a fulltext search.
+     *
+     * @param handler Indexing handler
+     * @param fullSearch Fulltext search
+     * @return Suggested search terms
+     * @throws Exception e
+     */
+    private List<String> suggest(LuceneIndexingHandler handler, String fullSearch) throws Exception {
+        List<String> suggestionList = new ArrayList<>();
+        DocumentCriteria criteria = new DocumentCriteria();
+        criteria.setTargetIdList(Lists.newArrayList("admin"));
+        criteria.setFullSearch(fullSearch);
+        handler.findByCriteria(PaginatedLists.create(10, 0), suggestionList, criteria, new SortCriteria(3, false));
+        return suggestionList;
+    }
+
+    /**
+     * Returns the number of documents committed to the Lucene directory.
+     *
+     * @return Number of committed documents
+     * @throws IOException e
+     */
+    private int getCommittedCount() throws IOException {
+        try (Directory directory = FSDirectory.open(DirectoryUtil.getLuceneDirectory())) {
+            if (!DirectoryReader.indexExists(directory)) {
+                return 0;
+            }
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                return reader.numDocs();
+            }
+        }
+    }
+
+    /**
+     * Delete the indexes in the Lucene directory.
+     *
+     * @throws IOException e
+     */
+    private void deleteLuceneDirectory() throws IOException {
+        Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+        if (Files.exists(luceneDirectory)) {
+            try (Stream<Path> stream = Files.walk(luceneDirectory)) {
+                stream.sorted(Comparator.reverseOrder())
+                        .filter(path -> !path.equals(luceneDirectory))
+                        .map(Path::toFile)
+                        .forEach(java.io.File::delete);
+            }
+        }
+    }
+}
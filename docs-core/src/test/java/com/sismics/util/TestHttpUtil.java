@@ -0,0 +1,32 @@
+package com.sismics.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Test of the HTTP utils.
+ */
+public class TestHttpUtil {
+    @Test
+    public void parseRangeHeaderTest() {
+        // No or invalid header, serve the whole resource
+        Assert.assertNull(HttpUtil.parseRangeHeader(null, 1000));
+        Assert.assertNull(HttpUtil.parseRangeHeader("items=0-10", 1000));
+        Assert.assertNull(HttpUtil.parseRangeHeader("bytes=abc", 1000));
+        Assert.assertNull(HttpUtil.parseRangeHeader("bytes=20-10", 1000));
+
+        // Single, open and suffix ranges
+        List<long[]> rangeList = HttpUtil.parseRangeHeader("bytes=0-99, 900-, -50, 950-2000", 1000);
+        Assert.assertEquals(4, rangeList.size());
+        Assert.assertArrayEquals(new long[] { 0, 99 }, rangeList.get(0));
+        Assert.assertArrayEquals(new long[] { 900, 999 }, rangeList.get(1));
+        Assert.assertArrayEquals(new long[] { 950, 999 }, rangeList.get(2));
+        Assert.assertArrayEquals(new long[] { 950, 999 }, rangeList.get(3));
+
+        // Unsatisfiable ranges
+        Assert.assertTrue(HttpUtil.parseRangeHeader("bytes=1000-", 1000).isEmpty());
+        Assert.assertTrue(HttpUtil.parseRangeHeader("bytes=-0", 1000).isEmpty());
+    }
+}
@@ -3,6 +3,9 @@ package com.sismics.util;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+
 /**
  * Test of the image utilities.
  * 
@@ -14,4 +17,24 @@ public class TestImageUtil {
     public void computeGravatarTest() {
         Assert.assertEquals("0bc83cb571cd1c50ba6f3e8a78ef1346", ImageUtil.computeGravatar("MyEmailAddress@example.com "));
     }
+
+    @Test
+    public void getBlackPixelsTest() throws Exception {
+        BufferedImage image = ImageIO.read(ClassLoader.getSystemResource("file/apollo_portrait.jpg"));
+        for (int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+                BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_3BYTE_BGR }) {
+            BufferedImage convertedImage = new BufferedImage(image.getWidth(), image.getHeight(), type);
+            convertedImage.getGraphics().drawImage(image, 0, 0, null);
+
+            // The bulk read gives the same result as the pixel by pixel read
+            int y = image.getHeight() / 4;
+            int height = image.getHeight() / 2;
+            boolean[] blackPixels = ImageUtil.getBlackPixels(convertedImage, y, height);
+            for (int row = 0; row < height; row++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    Assert.assertEquals(ImageUtil.isBlack(convertedImage, x, y + row), blackPixels[row * image.getWidth() + x]);
+                }
+            }
+        }
+    }
 }
@@ -6,6 +6,7 @@ import com.sismics.util.mime.MimeTypeUtil;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -69,4 +70,27 @@ public class TestMimeTypeUtil extends BaseTest {
         path = Paths.get(getResource(FILE_MP4).toURI());
         Assert.assertEquals(MimeType.VIDEO_MP4, MimeTypeUtil.guessMimeType(path, FILE_MP4));
     }
+
+    @Test
+    public void testHeader() throws Exception {
+        // Detect from the name first
+        Assert.assertEquals(MimeType.OFFICE_DOCUMENT, MimeTypeUtil.guessMimeType(readHeader(FILE_DOCX), FILE_DOCX));
+        Assert.assertEquals(MimeType.TEXT_CSV, MimeTypeUtil.guessMimeType(new byte[0], FILE_CSV));
+
+        // Detect from the content without a name
+        Assert.assertEquals(MimeType.APPLICATION_PDF, MimeTypeUtil.guessMimeType(readHeader(FILE_PDF), null));
+        Assert.assertEquals(MimeType.IMAGE_JPEG, MimeTypeUtil.guessMimeType(readHeader(FILE_JPG), null));
+        Assert.assertEquals(MimeType.IMAGE_GIF, MimeTypeUtil.guessMimeType(readHeader(FILE_GIF), null));
+        Assert.assertEquals(MimeType.IMAGE_PNG, MimeTypeUtil.guessMimeType(readHeader(FILE_PNG), null));
+        Assert.assertEquals(MimeType.APPLICATION_ZIP, MimeTypeUtil.guessMimeType(readHeader(FILE_ZIP), null));
+        Assert.assertEquals(MimeType.VIDEO_WEBM, MimeTypeUtil.guessMimeType(readHeader(FILE_WEBM), null));
+        Assert.assertEquals(MimeType.VIDEO_MP4, MimeTypeUtil.guessMimeType(readHeader(FILE_MP4), null));
+        Assert.assertEquals(MimeType.DEFAULT, MimeTypeUtil.guessMimeType(readHeader(FILE_TXT), null));
+    }
+
+    private byte[] readHeader(String resource) throws Exception {
+        try (InputStream inputStream = getSystemResourceAsStream(resource)) {
+            return inputStream.readNBytes(MimeTypeUtil.HEADER_SIZE);
+        }
+    }
 }
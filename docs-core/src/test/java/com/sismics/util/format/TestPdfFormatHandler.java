@@ -1,11 +1,20 @@
 package com.sismics.util.format;
 
+import com.google.common.hash.Hashing;
 import com.sismics.BaseTest;
+import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.format.PdfFormatHandler;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test of {@link PdfFormatHandler}
@@ -25,4 +34,81 @@ public class TestPdfFormatHandler extends BaseTest {
         Assert.assertTrue(content.contains("Grundumsatzmessungen"));
         Assert.assertTrue(content.contains("ermitteln"));
     }
+
+    @Test
+    public void testOcrResume() throws Exception {
+        // An image-only PDF whose pages were all OCR-ized before an interruption
+        Path file = Files.createTempFile("scanned", ".pdf");
+        try (PDDocument pdfDocument = new PDDocument()) {
+            for (int i = 0; i < 5; i++) {
+                pdfDocument.addPage(new PDPage());
+            }
+            pdfDocument.save(file.toFile());
+        }
+        Path progressDirectory = getProgressDirectory(file, "eng");
+        Files.createDirectories(progressDirectory);
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(progressDirectory.resolve(i + ".txt"), "Page" + i, StandardCharsets.UTF_8);
+        }
+
+        // The saved pages are reassembled in order, and the progress is removed
+        try {
+            String content = new PdfFormatHandler().extractContent("eng", file);
+            Assert.assertEquals(" Page0 Page1 Page2 Page3 Page4", content);
+            Assert.assertFalse(Files.exists(progressDirectory));
+        } finally {
+            Files.delete(file);
+        }
+
+        // Only the stale progress is cleaned up
+        Path staleDirectory = Files.createDirectories(DirectoryUtil.getOcrDirectory().resolve("stale_eng"));
+        Files.setLastModifiedTime(staleDirectory, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(8)));
+        Path recentDirectory = Files.createDirectories(DirectoryUtil.getOcrDirectory().resolve("recent_eng"));
+        PdfFormatHandler.deleteStaleOcrProgress();
+        Assert.assertFalse(Files.exists(staleDirectory));
+        Assert.assertTrue(Files.exists(recentDirectory));
+        Files.delete(recentDirectory);
+    }
+
+    @Test
+    public void testOcrParallel() throws Exception {
+        // The scanned page 3 times, the second one OCR-ized before an interruption
+        Path file = Files.createTempFile("scanned", ".pdf");
+        try (PDDocument scannedDocument = PDDocument.load(getSystemResourceAsStream(FILE_PDF_SCANNED));
+             PDDocument pdfDocument = new PDDocument()) {
+            for (int i = 0; i < 3; i++) {
+                pdfDocument.importPage(scannedDocument.getPage(0));
+            }
+            pdfDocument.save(file.toFile());
+        }
+        Path progressDirectory = getProgressDirectory(file, "eng");
+        Files.createDirectories(progressDirectory);
+        Files.writeString(progressDirectory.resolve("1.txt"), "Second page", StandardCharsets.UTF_8);
+
+        // The other pages are OCR-ized in parallel and reassembled in order
+        try {
+            String content = new PdfFormatHandler().extractContent("eng", file);
+            String sentence = "All human beings are born free and equal in dignity and rights.";
+            int secondPageIndex = content.indexOf("Second page");
+            Assert.assertTrue(content.indexOf(sentence) >= 0);
+            Assert.assertTrue(content.indexOf(sentence) < secondPageIndex);
+            Assert.assertTrue(content.lastIndexOf(sentence) > secondPageIndex);
+            Assert.assertFalse(Files.exists(progressDirectory));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Returns the directory holding the OCR progress of a PDF file.
+     *
+     * @param file PDF file
+     * @param language OCR language
+     * @return OCR progress directory
+     * @throws Exception e
+     */
+    private Path getProgressDirectory(Path file, String language) throws Exception {
+        return DirectoryUtil.getOcrDirectory().resolve(
+                com.google.common.io.Files.asByteSource(file.toFile()).hash(Hashing.sha256()) + "_" + language);
+    }
 }
@@ -0,0 +1,81 @@
+package com.sismics.util.log4j;
+
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test of the memory appender.
+ */
+public class TestMemoryAppender {
+    @Test
+    public void testFind() {
+        MemoryAppender appender = new MemoryAppender();
+        appender.setSize(5);
+        Logger logger = Logger.getLogger("com.sismics.Test");
+        for (int i = 0; i < 8; i++) {
+            appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, i % 2 == 0 ? Level.INFO : Level.WARN, "Message " + i, null));
+        }
+
+        // Only the last entries are kept
+        List<LogEntry> logEntryList = appender.getLogList();
+        Assert.assertEquals(5, logEntryList.size());
+        Assert.assertEquals("Message 3", logEntryList.get(0).getMessage());
+        Assert.assertEquals("Message 7", logEntryList.get(4).getMessage());
+
+        // Page from the newest entry
+        PaginatedList<LogEntry> list = PaginatedLists.create(2, 1);
+        appender.find(new LogCriteria(), list);
+        Assert.assertEquals(5, list.getResultCount());
+        Assert.assertEquals(2, list.getResultList().size());
+        Assert.assertEquals("Message 6", list.getResultList().get(0).getMessage());
+        Assert.assertEquals("Message 5", list.getResultList().get(1).getMessage());
+
+        // Filter on level, tag and message
+        list = PaginatedLists.create(10, 0);
+        appender.find(new LogCriteria().setMinLevel(Level.WARN).setTag("TEST"), list);
+        Assert.assertEquals(3, list.getResultCount());
+        Assert.assertEquals("Message 7", list.getResultList().get(0).getMessage());
+        list = PaginatedLists.create(10, 0);
+        appender.find(new LogCriteria().setMessage("MESSAGE 4"), list);
+        Assert.assertEquals(1, list.getResultCount());
+        list = PaginatedLists.create(10, 0);
+        appender.find(new LogCriteria().setTag("Other"), list);
+        Assert.assertEquals(0, list.getResultCount());
+
+        // Without count
+        list = PaginatedLists.create(2, 0, null, false);
+        appender.find(new LogCriteria(), list);
+        Assert.assertEquals(-1, list.getResultCount());
+        Assert.assertEquals(2, list.getResultList().size());
+    }
+
+    @Test
+    public void testConcurrentAppend() throws Exception {
+        MemoryAppender appender = new MemoryAppender();
+        appender.setSize(100);
+        Logger logger = Logger.getLogger("com.sismics.Test");
+        List<Thread> threadList = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "Message " + j, null));
+                }
+            });
+            thread.start();
+            threadList.add(thread);
+        }
+        for (Thread thread : threadList) {
+            thread.join();
+        }
+
+        Assert.assertEquals(100, appender.getLogList().size());
+    }
+}
@@ -0,0 +1,326 @@
+package com.sismics.util.filter;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.JWTVerifier;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.cert.CertificateFactory;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the JSON web keys of the JWT issuers, with a verifier per key.
+ * The keys of an issuer are fetched again in the background shortly before they expire,
+ * or by a single thread when a token is signed by an unknown key.
+ * A key still unknown after a fetch is not fetched again for a while,
+ * and the last keys fetched are used while the issuer cannot be reached.
+ */
+public class JwksCache {
+    private static final Logger log = LoggerFactory.getLogger(JwksCache.class);
+
+    /**
+     * Path of the keys from the issuer URL.
+     */
+    private static final String CERTS_PATH = "/protocol/openid-connect/certs";
+
+    /**
+     * Maximum number of cached issuers.
+     */
+    private static final long MAX_ISSUERS = 100;
+
+    /**
+     * Maximum number of unknown key IDs remembered per issuer.
+     */
+    private static final long MAX_UNKNOWN_KIDS = 1000;
+
+    /**
+     * HTTP client.
+     */
+    private final OkHttpClient client;
+
+    /**
+     * Expiration time of the keys in nanoseconds.
+     */
+    private final long ttlNanos;
+
+    /**
+     * Time before the expiration of the keys to fetch them in the background in nanoseconds.
+     */
+    private final long refreshAheadNanos;
+
+    /**
+     * Time before fetching again after an unknown key or an error in nanoseconds.
+     */
+    private final long negativeTtlNanos;
+
+    /**
+     * Time source.
+     */
+    private final Ticker ticker;
+
+    /**
+     * Executor of the background fetches.
+     */
+    private final Executor refreshExecutor;
+
+    /**
+     * Keys by issuer.
+     */
+    private final Cache<String, IssuerKeys> issuerCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ISSUERS)
+            .build();
+
+    /**
+     * Constructor.
+     *
+     * @param client HTTP client
+     * @param ttl Expiration time of the keys in seconds
+     * @param negativeTtl Time before fetching again after an unknown key or an error in seconds
+     */
+    public JwksCache(OkHttpClient client, int ttl, int negativeTtl) {
+        this(client, ttl, negativeTtl, Ticker.systemTicker(), Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("jwks-refresh-%d").setDaemon(true).build()));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param client HTTP client
+     * @param ttl Expiration time of the keys in seconds
+     * @param negativeTtl Time before fetching again after an unknown key or an error in seconds
+     * @param ticker Time source
+     * @param refreshExecutor Executor of the background fetches
+     */
+    JwksCache(OkHttpClient client, int ttl, int negativeTtl, Ticker ticker, Executor refreshExecutor) {
+        this.client = client;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttl);
+        this.refreshAheadNanos = ttlNanos / 5;
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtl);
+        this.ticker = ticker;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Returns the verifier of the tokens signed by a key.
+     *
+     * @param issuer Issuer URL
+     * @param kid Key ID
+     * @return Verifier, null if the key is unknown
+     */
+    public JWTVerifier getVerifier(String issuer, String kid) {
+        if (issuer == null || kid == null) {
+            return null;
+        }
+        IssuerKeys issuerKeys = issuerCache.asMap().computeIfAbsent(issuer, IssuerKeys::new);
+        long now = ticker.read();
+        KeySet keySet = issuerKeys.keySet;
+        if (keySet != null && now - keySet.fetchTime < ttlNanos) {
+            if (now - keySet.fetchTime >= ttlNanos - refreshAheadNanos) {
+                refreshAhead(issuerKeys, now);
+            }
+            JWTVerifier verifier = keySet.verifierMap.get(kid);
+            if (verifier != null) {
+                return verifier;
+            }
+        }
+
+        if (issuerKeys.unknownKidCache.getIfPresent(kid) != null) {
+            // Unknown after the last fetch, or the issuer cannot be reached
+            return keySet == null ? null : keySet.verifierMap.get(kid);
+        }
+
+        synchronized (issuerKeys) {
+            KeySet currentKeySet = issuerKeys.keySet;
+            if (currentKeySet == keySet && issuerKeys.unknownKidCache.getIfPresent(kid) != null) {
+                // The fetch of another thread failed in the meantime
+                return keySet == null ? null : keySet.verifierMap.get(kid);
+            }
+            if (currentKeySet == keySet) {
+                // Not fetched by another thread in the meantime
+                currentKeySet = fetch(issuerKeys.url);
+                if (currentKeySet == null) {
+                    issuerKeys.unknownKidCache.put(kid, Boolean.TRUE);
+                    return keySet == null ? null : keySet.verifierMap.get(kid);
+                }
+                issuerKeys.keySet = currentKeySet;
+            }
+            JWTVerifier verifier = currentKeySet.verifierMap.get(kid);
+            if (verifier == null) {
+                issuerKeys.unknownKidCache.put(kid, Boolean.TRUE);
+            } else {
+                issuerKeys.unknownKidCache.invalidate(kid);
+            }
+            return verifier;
+        }
+    }
+
+    /**
+     * Fetch the keys of an issuer in the background, once per negative cache time at most.
+     *
+     * @param issuerKeys Issuer keys
+     * @param now Current time
+     */
+    private void refreshAhead(IssuerKeys issuerKeys, long now) {
+        long nextRefreshTime = issuerKeys.nextRefreshTime.get();
+        if (now - nextRefreshTime < 0 || !issuerKeys.nextRefreshTime.compareAndSet(nextRefreshTime, now + negativeTtlNanos)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                synchronized (issuerKeys) {
+                    KeySet keySet = fetch(issuerKeys.url);
+                    if (keySet != null) {
+                        issuerKeys.keySet = keySet;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Cannot refresh the keys of " + issuerKeys.url, e);
+        }
+    }
+
+    /**
+     * Fetch the signature keys of an issuer.
+     *
+     * @param url Keys URL
+     * @return Keys, null if they cannot be fetched
+     */
+    private KeySet fetch(String url) {
+        Request request = new Request.Builder()
+                .url(url)
+                .get()
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            log.info("Successfully called the jwt issuer at: " + url + " - " + response.code());
+            if (!response.isSuccessful() || response.body() == null) {
+                return null;
+            }
+            Map<String, JWTVerifier> verifierMap = new HashMap<>();
+            try (JsonReader jsonReader = Json.createReader(response.body().charStream())) {
+                JsonArray keys = jsonReader.readObject().getJsonArray("keys");
+                if (keys == null) {
+                    log.error("No keys returned by the jwt issuer at: " + url);
+                    return null;
+                }
+                for (JsonValue value : keys) {
+                    JsonObject key = value.asJsonObject();
+                    String kid = key.getString("kid", null);
+                    if (kid == null || !"RSA".equals(key.getString("kty", null))
+                            || "enc".equals(key.getString("use", null))) {
+                        continue;
+                    }
+                    try {
+                        verifierMap.put(kid, JWT.require(Algorithm.RSA256(getPublicKey(key), null)).build());
+                    } catch (GeneralSecurityException | RuntimeException e) {
+                        log.error("Error in getting the key " + kid + " from: " + url, e);
+                    }
+                }
+            }
+            return new KeySet(verifierMap, ticker.read());
+        } catch (IOException | JsonException | ClassCastException e) {
+            log.error("Error calling the jwt issuer at: " + url, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the public key of a JSON web key, from its certificate if any.
+     *
+     * @param key JSON web key
+     * @return Public key
+     * @throws GeneralSecurityException e
+     */
+    private static RSAPublicKey getPublicKey(JsonObject key) throws GeneralSecurityException {
+        JsonArray x5c = key.getJsonArray("x5c");
+        if (x5c != null && !x5c.isEmpty()) {
+            byte[] certificate = Base64.getDecoder().decode(x5c.getString(0));
+            return (RSAPublicKey) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(new ByteArrayInputStream(certificate))
+                    .getPublicKey();
+        }
+        BigInteger modulus = new BigInteger(1, Base64.getUrlDecoder().decode(key.getString("n")));
+        BigInteger exponent = new BigInteger(1, Base64.getUrlDecoder().decode(key.getString("e")));
+        return (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, exponent));
+    }
+
+    /**
+     * Keys of an issuer.
+     */
+    private class IssuerKeys {
+        /**
+         * Keys URL.
+         */
+        private final String url;
+
+        /**
+         * Last keys fetched, null before the first successful fetch.
+         */
+        private volatile KeySet keySet;
+
+        /**
+         * Key IDs not to fetch again, unknown or not fetched because of an error.
+         */
+        private final Cache<String, Boolean> unknownKidCache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_UNKNOWN_KIDS)
+                .expireAfterWrite(negativeTtlNanos, TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .build();
+
+        /**
+         * Time of the next background fetch allowed.
+         */
+        private final AtomicLong nextRefreshTime = new AtomicLong(ticker.read());
+
+        private IssuerKeys(String issuer) {
+            this.url = issuer + CERTS_PATH;
+        }
+    }
+
+    /**
+     * Keys fetched at once.
+     */
+    private static class KeySet {
+        /**
+         * Verifiers by key ID.
+         */
+        private final Map<String, JWTVerifier> verifierMap;
+
+        /**
+         * Time of the fetch.
+         */
+        private final long fetchTime;
+
+        private KeySet(Map<String, JWTVerifier> verifierMap, long fetchTime) {
+            this.verifierMap = verifierMap;
+            this.fetchTime = fetchTime;
+        }
+    }
+}
@@ -1,34 +1,19 @@
 package com.sismics.util.filter;
 
-import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.auth0.jwt.interfaces.JWTVerifier;
 
-import java.io.IOException;
-import java.io.Reader;
-import java.util.Base64;
-
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.model.jpa.User;
-import jakarta.json.Json;
-import jakarta.json.JsonArray;
-import jakarta.json.JsonObject;
-import jakarta.json.JsonReader;
+import com.sismics.util.EnvironmentUtil;
 import jakarta.servlet.FilterConfig;
 import jakarta.servlet.http.HttpServletRequest;
-import okhttp3.Request;
-import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.security.interfaces.RSAPublicKey;
-import java.util.Objects;
 import java.util.UUID;
 
 import static java.util.Optional.ofNullable;
@@ -44,6 +29,12 @@ import static java.util.Optional.ofNullable;
 public class JwtBasedSecurityFilter extends SecurityFilter {
     private static final Logger log = LoggerFactory.getLogger(JwtBasedSecurityFilter.class);
     private static final okhttp3.OkHttpClient client = new okhttp3.OkHttpClient();
+    /**
+     * Keys of the JWT issuers.
+     */
+    private static final JwksCache jwksCache = new JwksCache(client,
+            EnvironmentUtil.getIntEnv(Constants.JWKS_CACHE_TTL_ENV, Constants.DEFAULT_JWKS_CACHE_TTL),
+            EnvironmentUtil.getIntEnv(Constants.JWKS_NEGATIVE_CACHE_TTL_ENV, Constants.DEFAULT_JWKS_NEGATIVE_CACHE_TTL));
     /**
      * Name of the header used to store the authentication token.
      */
@@ -99,10 +90,6 @@ public class JwtBasedSecurityFilter extends SecurityFilter {
             // if token is valid no exception will be thrown
             log.info("Valid TOKEN");
             return Boolean.TRUE;
-        } catch (CertificateException e) {
-            //if CertificateException comes from buildJWTVerifier()
-            log.info("InValid TOKEN: " + e.getMessage());
-            return Boolean.FALSE;
         } catch (JWTVerificationException e) {
             // if JWT Token in invalid
             log.info("InValid TOKEN: " + e.getMessage() );
@@ -118,44 +105,11 @@ public class JwtBasedSecurityFilter extends SecurityFilter {
         return ofNullable(request.getHeader("Authorization")).orElse("");
     }
 
-    private RSAPublicKey getPublicKey(DecodedJWT jwt) {
-        String jwtIssuerCerts = jwt.getIssuer() + "/protocol/openid-connect/certs";
-        String publicKey = "";
-        RSAPublicKey rsaPublicKey = null;
-        Request request = new Request.Builder()
-                .url(jwtIssuerCerts)
-                .get()
-                .build();
-        try (Response response = client.newCall(request).execute()) {
-            log.info("Successfully called the jwt issuer at: " + jwtIssuerCerts + " - " + response.code());
-            assert response.body() != null;
-            if (response.isSuccessful()) {
-                try (Reader reader = response.body().charStream()) {
-                    try (JsonReader jsonReader = Json.createReader(reader)) {
-                        JsonObject jwks = jsonReader.readObject();
-                        JsonArray keys = jwks.getJsonArray("keys");
-                        publicKey = keys.stream().filter(key -> Objects.equals(key.asJsonObject().getString("kid"),
-                                        jwt.getKeyId()))
-                                .findFirst()
-                                .map(k -> k.asJsonObject().getJsonArray("x5c").getString(0))
-                                .orElse("");
-                        var decode = Base64.getDecoder().decode(publicKey);
-                        var certificate = CertificateFactory.getInstance("X.509")
-                                .generateCertificate(new ByteArrayInputStream(decode));
-                        rsaPublicKey = (RSAPublicKey) certificate.getPublicKey();
-                    }
-                }
-            }
-        } catch (IOException e) {
-            log.error("Error calling the jwt issuer at: " + jwtIssuerCerts, e);
-        } catch (CertificateException e) {
-            log.error("Error in getting the certificate: ", e);
+    private JWTVerifier buildJWTVerifier(DecodedJWT jwt) {
+        JWTVerifier verifier = jwksCache.getVerifier(jwt.getIssuer(), jwt.getKeyId());
+        if (verifier == null) {
+            throw new JWTVerificationException("Unknown key " + jwt.getKeyId() + " for the issuer " + jwt.getIssuer());
         }
-        return rsaPublicKey;
-    }
-
-    private JWTVerifier buildJWTVerifier(DecodedJWT jwt) throws CertificateException {
-        var algo = Algorithm.RSA256(getPublicKey(jwt), null);
-        return JWT.require(algo).build();
+        return verifier;
     }
 }
@@ -1,5 +1,7 @@
 package com.sismics.util.filter;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.GroupDao;
@@ -7,6 +9,7 @@ import com.sismics.docs.core.dao.RoleBaseFunctionDao;
 import com.sismics.docs.core.dao.criteria.GroupCriteria;
 import com.sismics.docs.core.dao.dto.GroupDto;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.security.AnonymousPrincipal;
 import com.sismics.security.UserPrincipal;
 import org.joda.time.DateTimeZone;
@@ -19,6 +22,7 @@ import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An abstract security filter for user authentication, that injects corresponding users into the request.
@@ -39,6 +43,14 @@ public abstract class SecurityFilter implements Filter {
      */
     static final Logger LOG = LoggerFactory.getLogger(SecurityFilter.class);
 
+    /**
+     * Authenticated principals, by cache key (e.g. authentication token).
+     */
+    private static final Cache<String, CachedPrincipal> principalCache = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(30, TimeUnit.SECONDS)
+            .build();
+
     /**
      * Returns true if the supplied request has an UserPrincipal.
      *
@@ -127,8 +139,21 @@ public abstract class SecurityFilter implements Filter {
         HttpServletRequest request = (HttpServletRequest) req;
 
         if (!hasIdentifiedUser(request)) {
-            User user = authenticate(request);
-            injectUser(request, user);
+            // Reuse the principal resolved by a recent request, if its user didn't change since
+            String cacheKey = getPrincipalCacheKey(request);
+            long principalSequence = SecurityUtil.getPrincipalSequence();
+            CachedPrincipal cachedPrincipal = cacheKey == null ? null : principalCache.getIfPresent(cacheKey);
+            if (cachedPrincipal != null
+                    && SecurityUtil.getPrincipalVersion(cachedPrincipal.principal.getId()) <= cachedPrincipal.sequence) {
+                request.setAttribute(PRINCIPAL_ATTRIBUTE, copy(cachedPrincipal.principal));
+            } else {
+                User user = authenticate(request);
+                injectUser(request, user);
+                if (cacheKey != null && hasIdentifiedUser(request)) {
+                    principalCache.put(cacheKey, new CachedPrincipal(
+                            copy((UserPrincipal) request.getAttribute(PRINCIPAL_ATTRIBUTE)), principalSequence));
+                }
+            }
         }
 
         filterChain.doFilter(request, response);
@@ -142,4 +167,43 @@ public abstract class SecurityFilter implements Filter {
      */
     protected abstract User authenticate(HttpServletRequest request);
 
+    /**
+     * Returns the key under which the principal authenticated from this request can be cached.
+     * The authenticated principal is not cached by default.
+     *
+     * @param request HTTP request
+     * @return nullable Cache key
+     */
+    protected String getPrincipalCacheKey(HttpServletRequest request) {
+        return null;
+    }
+
+    /**
+     * Copy a principal, the cached ones are not shared between requests.
+     *
+     * @param userPrincipal Principal
+     * @return Copy of the principal
+     */
+    private static UserPrincipal copy(UserPrincipal userPrincipal) {
+        UserPrincipal copy = new UserPrincipal(userPrincipal.getId(), userPrincipal.getName());
+        copy.setDateTimeZone(userPrincipal.getDateTimeZone());
+        copy.setEmail(userPrincipal.getEmail());
+        copy.setGroupIdSet(new HashSet<>(userPrincipal.getGroupIdSet()));
+        copy.setBaseFunctionSet(new HashSet<>(userPrincipal.getBaseFunctionSet()));
+        return copy;
+    }
+
+    /**
+     * Authenticated principal, with the principal sequence read before building it.
+     */
+    private static class CachedPrincipal {
+        private final UserPrincipal principal;
+        private final long sequence;
+
+        private CachedPrincipal(UserPrincipal principal, long sequence) {
+            this.principal = principal;
+            this.sequence = sequence;
+        }
+    }
+
 }
\ No newline at end of file
@@ -106,4 +106,10 @@ public class TokenBasedSecurityFilter extends SecurityFilter {
 
         return new UserDao().getById(authToken.getUserId());
     }
+
+    @Override
+    protected String getPrincipalCacheKey(HttpServletRequest request) {
+        String authTokenId = extractAuthToken(request.getCookies());
+        return authTokenId == null ? null : COOKIE_NAME + ":" + authTokenId;
+    }
 }
@@ -47,6 +47,7 @@ public abstract class BaseJerseyTest extends JerseyTest {
     protected static final long FILE_PIA_00452_JPG_SIZE = 163510L;
     protected static final String FILE_VIDEO_WEBM = "file/video.webm";
     protected static final String FILE_WIKIPEDIA_PDF = "file/wikipedia.pdf";
+    protected static final long FILE_WIKIPEDIA_PDF_SIZE = 568236L;
     protected static final String FILE_WIKIPEDIA_ZIP = "file/wikipedia.zip";
 
     /**
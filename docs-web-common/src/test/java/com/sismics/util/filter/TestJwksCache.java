@@ -0,0 +1,132 @@
+package com.sismics.util.filter;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import com.auth0.jwt.interfaces.JWTVerifier;
+import com.google.common.base.Ticker;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test of the JWT issuer keys cache.
+ */
+public class TestJwksCache {
+    @Test
+    public void testJwksCache() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair1 = keyPairGenerator.generateKeyPair();
+        KeyPair keyPair2 = keyPairGenerator.generateKeyPair();
+
+        // Local issuer serving the keys
+        AtomicReference<String> keys = new AtomicReference<>("{\"keys\":[" + toJwk("k1", keyPair1) + "]}");
+        AtomicInteger status = new AtomicInteger(200);
+        AtomicInteger fetchCount = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            fetchCount.incrementAndGet();
+            byte[] body = keys.get().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status.get(), body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+
+        try {
+            String issuer = "http://localhost:" + server.getAddress().getPort() + "/realms/teedy";
+            AtomicLong time = new AtomicLong();
+            Ticker ticker = new Ticker() {
+                @Override
+                public long read() {
+                    return time.get();
+                }
+            };
+            JwksCache jwksCache = new JwksCache(new OkHttpClient(), 60, 10, ticker, Runnable::run);
+            String token1 = JWT.create().withIssuer(issuer).withKeyId("k1")
+                    .sign(Algorithm.RSA256((RSAPublicKey) keyPair1.getPublic(), (RSAPrivateKey) keyPair1.getPrivate()));
+            String token2 = JWT.create().withIssuer(issuer).withKeyId("k2")
+                    .sign(Algorithm.RSA256((RSAPublicKey) keyPair2.getPublic(), (RSAPrivateKey) keyPair2.getPrivate()));
+            String forgedToken = JWT.create().withIssuer(issuer).withKeyId("k1")
+                    .sign(Algorithm.RSA256((RSAPublicKey) keyPair2.getPublic(), (RSAPrivateKey) keyPair2.getPrivate()));
+
+            // The keys are fetched once, then the verifier is cached
+            JWTVerifier verifier = jwksCache.getVerifier(issuer, "k1");
+            verifier.verify(token1);
+            Assert.assertSame(verifier, jwksCache.getVerifier(issuer, "k1"));
+            Assert.assertEquals(1, fetchCount.get());
+            try {
+                verifier.verify(forgedToken);
+                Assert.fail();
+            } catch (SignatureVerificationException e) {
+                // NOP
+            }
+
+            // An unknown key is fetched once, then not fetched again for a while
+            Assert.assertNull(jwksCache.getVerifier(issuer, "k2"));
+            Assert.assertEquals(2, fetchCount.get());
+            keys.set("{\"keys\":[" + toJwk("k1", keyPair1) + "," + toJwk("k2", keyPair2) + "]}");
+            Assert.assertNull(jwksCache.getVerifier(issuer, "k2"));
+            Assert.assertEquals(2, fetchCount.get());
+
+            // The new key is found after the negative cache time
+            time.addAndGet(TimeUnit.SECONDS.toNanos(11));
+            jwksCache.getVerifier(issuer, "k2").verify(token2);
+            Assert.assertEquals(3, fetchCount.get());
+
+            // The keys are fetched in the background shortly before they expire
+            time.addAndGet(TimeUnit.SECONDS.toNanos(50));
+            Assert.assertNotNull(jwksCache.getVerifier(issuer, "k1"));
+            Assert.assertEquals(4, fetchCount.get());
+            Assert.assertNotNull(jwksCache.getVerifier(issuer, "k1"));
+            Assert.assertEquals(4, fetchCount.get());
+
+            // The last keys are used while the issuer cannot be reached
+            status.set(500);
+            time.addAndGet(TimeUnit.SECONDS.toNanos(70));
+            jwksCache.getVerifier(issuer, "k1").verify(token1);
+            Assert.assertEquals(5, fetchCount.get());
+            jwksCache.getVerifier(issuer, "k1").verify(token1);
+            Assert.assertEquals(5, fetchCount.get());
+
+            // The keys are fetched again when the issuer is back
+            status.set(200);
+            time.addAndGet(TimeUnit.SECONDS.toNanos(11));
+            jwksCache.getVerifier(issuer, "k1").verify(token1);
+            Assert.assertEquals(6, fetchCount.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Returns a key pair as a JSON web key.
+     *
+     * @param kid Key ID
+     * @param keyPair Key pair
+     * @return JSON web key
+     */
+    private static String toJwk(String kid, KeyPair keyPair) {
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return "{\"kid\":\"" + kid + "\",\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\""
+                + ",\"n\":\"" + encoder.encodeToString(publicKey.getModulus().toByteArray())
+                + "\",\"e\":\"" + encoder.encodeToString(publicKey.getPublicExponent().toByteArray()) + "\"}";
+    }
+}
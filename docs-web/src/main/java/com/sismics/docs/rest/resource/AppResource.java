@@ -1,8 +1,10 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheStats;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingPriority;
 import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
@@ -11,11 +13,16 @@ import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.service.InboxService;
+import com.sismics.docs.core.service.WebhookService;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.cache.CacheRegion;
+import com.sismics.docs.core.util.cache.ReferenceCache;
+import com.sismics.docs.core.util.cache.ReferenceCacheUtil;
+import com.sismics.docs.core.util.indexing.IndexRebuildProgress;
 import com.sismics.docs.core.util.jpa.PaginatedList;
-import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
@@ -68,6 +75,31 @@ public class AppResource extends BaseResource {
      * @apiSuccess {Boolean} guest_login True if guest login is enabled
      * @apiSuccess {String} default_language Default platform language
      * @apiSuccess {Number} queued_tasks Number of queued tasks waiting to be processed
+     * @apiSuccess {Object[]} file_processing File processing pipeline stages
+     * @apiSuccess {String} file_processing.name Stage name
+     * @apiSuccess {Number} file_processing.threads Number of threads
+     * @apiSuccess {Number} file_processing.active Number of files being processed
+     * @apiSuccess {Number} file_processing.completed Number of files processed since startup
+     * @apiSuccess {Number} file_processing.dropped Number of files dropped since startup because the stage was full
+     * @apiSuccess {Object} file_processing.queued Number of files waiting, by priority (interactive, bulk, reprocess)
+     * @apiSuccess {Object} [index_rebuild] Progress of the running index rebuild
+     * @apiSuccess {String="documents","files"} index_rebuild.phase Entities being indexed
+     * @apiSuccess {Number} index_rebuild.indexed Number of entities indexed in this phase
+     * @apiSuccess {Number} index_rebuild.total Number of entities to index in this phase
+     * @apiSuccess {Object[]} reference_cache Reference data cache regions
+     * @apiSuccess {String} reference_cache.name Region name
+     * @apiSuccess {Number} reference_cache.size Number of cached values
+     * @apiSuccess {Number} reference_cache.hits Number of values read from the cache since startup
+     * @apiSuccess {Number} reference_cache.misses Number of values read from the database since startup
+     * @apiSuccess {Object} webhooks Webhook deliveries since startup
+     * @apiSuccess {Number} webhooks.pending Number of deliveries waiting or being sent
+     * @apiSuccess {Number} webhooks.delivered Number of successful deliveries
+     * @apiSuccess {Number} webhooks.failed Number of deliveries failed after all attempts
+     * @apiSuccess {Number} webhooks.retried Number of retries
+     * @apiSuccess {Number} webhooks.coalesced Number of events merged into a waiting delivery
+     * @apiSuccess {Number} webhooks.dropped Number of deliveries dropped because of a full queue
+     * @apiSuccess {Number} webhooks.average_latency Average time from the event to the delivery (in milliseconds)
+     * @apiSuccess {Number} webhooks.max_latency Maximum time from the event to the delivery (in milliseconds)
      * @apiSuccess {String} total_memory Allocated JVM memory (in bytes)
      * @apiSuccess {String} free_memory Free JVM memory (in bytes)
      * @apiSuccess {String} document_count Number of documents
@@ -95,6 +127,44 @@ public class AppResource extends BaseResource {
             globalQuota = Long.valueOf(globalQuotaStr);
         }
 
+        JsonArrayBuilder fileProcessing = Json.createArrayBuilder();
+        FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
+        for (FileProcessingService.Stage stage : fileProcessingService.getStageList()) {
+            JsonObjectBuilder queued = Json.createObjectBuilder();
+            for (FileProcessingPriority priority : FileProcessingPriority.values()) {
+                queued.add(priority.name().toLowerCase(), stage.getQueuedCount(priority));
+            }
+            fileProcessing.add(Json.createObjectBuilder()
+                    .add("name", stage.getName())
+                    .add("threads", stage.getThreadCount())
+                    .add("active", stage.getActiveCount())
+                    .add("completed", stage.getCompletedCount())
+                    .add("dropped", stage.getDroppedCount())
+                    .add("queued", queued));
+        }
+
+        JsonArrayBuilder referenceCache = Json.createArrayBuilder();
+        ReferenceCache cache = ReferenceCacheUtil.getCache();
+        for (CacheRegion region : CacheRegion.values()) {
+            CacheStats stats = cache.getStats(region);
+            referenceCache.add(Json.createObjectBuilder()
+                    .add("name", region.name().toLowerCase())
+                    .add("size", cache.getSize(region))
+                    .add("hits", stats.hitCount())
+                    .add("misses", stats.missCount()));
+        }
+
+        WebhookService webhookService = AppContext.getInstance().getWebhookService();
+        JsonObjectBuilder webhooks = Json.createObjectBuilder()
+                .add("pending", webhookService.getPendingCount())
+                .add("delivered", webhookService.getDeliveredCount())
+                .add("failed", webhookService.getFailedCount())
+                .add("retried", webhookService.getRetriedCount())
+                .add("coalesced", webhookService.getCoalescedCount())
+                .add("dropped", webhookService.getDroppedCount())
+                .add("average_latency", webhookService.getAverageLatency())
+                .add("max_latency", webhookService.getMaxLatency());
+
         JsonObjectBuilder response = Json.createObjectBuilder()
                 .add("current_version", currentVersion.replace("-SNAPSHOT", ""))
                 .add("min_version", minVersion)
@@ -102,6 +172,9 @@ public class AppResource extends BaseResource {
                 .add("ocr_enabled", ocrEnabled)
                 .add("default_language", defaultLanguage)
                 .add("queued_tasks", AppContext.getInstance().getQueuedTaskCount())
+                .add("file_processing", fileProcessing)
+                .add("reference_cache", referenceCache)
+                .add("webhooks", webhooks)
                 .add("total_memory", Runtime.getRuntime().totalMemory())
                 .add("free_memory", Runtime.getRuntime().freeMemory())
                 .add("document_count", documentDao.getDocumentCount())
@@ -110,6 +183,13 @@ public class AppResource extends BaseResource {
         if (globalQuota > 0) {
             response.add("global_storage_quota", globalQuota);
         }
+        IndexRebuildProgress rebuildProgress = AppContext.getInstance().getIndexingHandler().getRebuildProgress();
+        if (rebuildProgress != null) {
+            response.add("index_rebuild", Json.createObjectBuilder()
+                    .add("phase", rebuildProgress.getPhase().name().toLowerCase())
+                    .add("indexed", rebuildProgress.getIndexedCount())
+                    .add("total", rebuildProgress.getTotalCount()));
+        }
 
         return Response.ok().entity(response.build()).build();
     }
@@ -473,8 +553,17 @@ public class AppResource extends BaseResource {
         }
         ValidationUtil.validateRequired(starttls, "starttls");
 
-        // Just update the changed configuration
+        // Another mailbox starts from its unread messages, without the checkpoint of the previous one
         ConfigDao configDao = new ConfigDao();
+        if (isInboxConfigChanged(ConfigType.INBOX_HOSTNAME, hostname)
+                || isInboxConfigChanged(ConfigType.INBOX_PORT, portStr)
+                || isInboxConfigChanged(ConfigType.INBOX_USERNAME, username)
+                || isInboxConfigChanged(ConfigType.INBOX_FOLDER, folder)) {
+            configDao.update(ConfigType.INBOX_UID_VALIDITY, "0");
+            configDao.update(ConfigType.INBOX_LAST_UID, "0");
+        }
+
+        // Just update the changed configuration
         configDao.update(ConfigType.INBOX_ENABLED, enabled.toString());
         configDao.update(ConfigType.INBOX_AUTOMATIC_TAGS, autoTagsEnabled.toString());
         configDao.update(ConfigType.INBOX_DELETE_IMPORTED, deleteImported.toString());
@@ -501,6 +590,21 @@ public class AppResource extends BaseResource {
         return Response.ok().build();
     }
 
+    /**
+     * Returns true if an inbox configuration parameter is changed.
+     *
+     * @param configType Configuration parameter
+     * @param value New value, unchanged if empty
+     * @return True if changed
+     */
+    private boolean isInboxConfigChanged(ConfigType configType, String value) {
+        if (Strings.isNullOrEmpty(value)) {
+            return false;
+        }
+        Config config = new ConfigDao().getById(configType);
+        return config == null || !value.equals(config.getValue());
+    }
+
     /**
      * Test the inbox.
      *
@@ -538,7 +642,8 @@ public class AppResource extends BaseResource {
      * @apiParam {String} message Filter on this message
      * @apiParam {Number} limit Total number of logs to return
      * @apiParam {Number} offset Start at this index
-     * @apiSuccess {String} total Total number of logs
+     * @apiParam {Boolean} [count] If false, the total number of logs is not counted
+     * @apiSuccess {String} [total] Total number of logs, unless not counted
      * @apiSuccess {Object[]} logs List of logs
      * @apiSuccess {String} logs.date Date
      * @apiSuccess {String} logs.level Level
@@ -554,6 +659,7 @@ public class AppResource extends BaseResource {
      * @param message Filter on message
      * @param limit Page limit
      * @param offset Page offset
+     * @param count Count the logs
      * @return Response
      */
     @GET
@@ -563,7 +669,8 @@ public class AppResource extends BaseResource {
             @QueryParam("tag") String tag,
             @QueryParam("message") String message,
             @QueryParam("limit") Integer limit,
-            @QueryParam("offset") Integer offset) {
+            @QueryParam("offset") Integer offset,
+            @QueryParam("count") Boolean count) {
         if (!authenticate()) {
             throw new ForbiddenClientException();
         }
@@ -583,7 +690,7 @@ public class AppResource extends BaseResource {
                 .setTag(StringUtils.stripToNull(tag))
                 .setMessage(StringUtils.stripToNull(message));
 
-        PaginatedList<LogEntry> paginatedList = PaginatedLists.create(limit, offset);
+        PaginatedList<LogEntry> paginatedList = createPaginatedList(limit, offset, null, count);
         memoryAppender.find(logCriteria, paginatedList);
         JsonArrayBuilder logs = Json.createArrayBuilder();
         for (LogEntry logEntry : paginatedList.getResultList()) {
@@ -595,8 +702,8 @@ public class AppResource extends BaseResource {
         }
 
         JsonObjectBuilder response = Json.createObjectBuilder()
-                .add("total", paginatedList.getResultCount())
                 .add("logs", logs);
+        addPagination(response, paginatedList);
 
         return Response.ok().entity(response.build()).build();
     }
@@ -8,7 +8,6 @@ import com.sismics.docs.core.dao.criteria.AuditLogCriteria;
 import com.sismics.docs.core.dao.dto.AuditLogDto;
 import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
-import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.util.JsonUtil;
@@ -37,7 +36,10 @@ public class AuditLogResource extends BaseResource {
      * @apiName GetAuditlog
      * @apiGroup Auditlog
      * @apiParam {String} [document] Document ID
-     * @apiSuccess {String} total Total number of logs
+     * @apiParam {String} [cursor] Continue after the previous page, with the next_cursor it returned
+     * @apiParam {Boolean} [count] If false, the total number of logs is not counted
+     * @apiSuccess {String} [total] Total number of logs, unless not counted
+     * @apiSuccess {String} [next_cursor] Cursor of the next page, absent on the last page
      * @apiSuccess {Object[]} logs List of logs
      * @apiSuccess {String} logs.id ID
      * @apiSuccess {String} logs.username Username
@@ -51,16 +53,21 @@ public class AuditLogResource extends BaseResource {
      * @apiPermission user
      * @apiVersion 1.5.0
      *
+     * @param documentId Document ID
+     * @param cursor Cursor of the page
+     * @param count Count the logs
      * @return Response
      */
     @GET
-    public Response list(@QueryParam("document") String documentId) {
+    public Response list(@QueryParam("document") String documentId,
+                         @QueryParam("cursor") String cursor,
+                         @QueryParam("count") Boolean count) {
         if (!authenticate()) {
             throw new ForbiddenClientException();
         }
         
         // On a document or a user?
-        PaginatedList<AuditLogDto> paginatedList = PaginatedLists.create(20, 0);
+        PaginatedList<AuditLogDto> paginatedList = createPaginatedList(20, 0, cursor, count);
         SortCriteria sortCriteria = new SortCriteria(1, false);
         AuditLogCriteria criteria = new AuditLogCriteria();
         if (Strings.isNullOrEmpty(documentId)) {
@@ -95,8 +102,8 @@ public class AuditLogResource extends BaseResource {
 
         // Send the response
         JsonObjectBuilder response = Json.createObjectBuilder()
-                .add("logs", logs)
-                .add("total", paginatedList.getResultCount());
+                .add("logs", logs);
+        addPagination(response, paginatedList);
         return Response.ok().entity(response.build()).build();
     }
 }
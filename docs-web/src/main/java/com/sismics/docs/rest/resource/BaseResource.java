@@ -1,12 +1,16 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.collect.Lists;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.rest.constant.BaseFunction;
+import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.security.IPrincipal;
 import com.sismics.security.UserPrincipal;
 import com.sismics.util.filter.SecurityFilter;
 
+import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.Produces;
@@ -122,4 +126,37 @@ public abstract class BaseResource {
         }
         return targetIdList;
     }
+
+    /**
+     * Constructs a paginated list from the request parameters.
+     *
+     * @param limit Page limit
+     * @param offset Page offset, ignored if a cursor is given
+     * @param cursor Cursor of the page, returned with the previous page
+     * @param count If false, the total number of results is not counted
+     * @param <E> Type of the results
+     * @return Paginated list
+     */
+    <E> PaginatedList<E> createPaginatedList(Integer limit, Integer offset, String cursor, Boolean count) {
+        try {
+            return PaginatedLists.create(limit, offset, cursor, count);
+        } catch (IllegalArgumentException e) {
+            throw new ClientException("ValidationError", "Invalid cursor");
+        }
+    }
+
+    /**
+     * Adds the total number of results, if counted, and the cursor of the next page to a response.
+     *
+     * @param response Response
+     * @param paginatedList Paginated list
+     */
+    void addPagination(JsonObjectBuilder response, PaginatedList<?> paginatedList) {
+        if (paginatedList.getResultCount() >= 0) {
+            response.add("total", paginatedList.getResultCount());
+        }
+        if (paginatedList.getNextCursor() != null) {
+            response.add("next_cursor", paginatedList.getNextCursor());
+        }
+    }
 }
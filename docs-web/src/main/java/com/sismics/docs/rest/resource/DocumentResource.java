@@ -35,7 +35,6 @@ import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.MetadataUtil;
 import com.sismics.docs.core.util.PdfUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
-import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.rest.util.DocumentSearchCriteriaUtil;
 import com.sismics.rest.exception.ClientException;
@@ -219,9 +218,11 @@ public class DocumentResource extends BaseResource {
         // Add computed ACL
         if (tagDtoList != null) {
             JsonArrayBuilder aclList = Json.createArrayBuilder();
+            AclDao aclDao = new AclDao();
+            Map<String, List<AclDto>> aclDtoMap = aclDao.getBySourceIds(
+                    CollectionUtils.collect(tagDtoList, TagDto::getId), AclType.USER);
             for (TagDto tagDto : tagDtoList) {
-                AclDao aclDao = new AclDao();
-                List<AclDto> aclDtoList = aclDao.getBySourceId(tagDto.getId(), AclType.USER);
+                List<AclDto> aclDtoList = aclDtoMap.getOrDefault(tagDto.getId(), Collections.emptyList());
                 for (AclDto aclDto : aclDtoList) {
                     aclList.add(Json.createObjectBuilder()
                             .add("perm", aclDto.getPerm().name())
@@ -365,10 +366,12 @@ public class DocumentResource extends BaseResource {
      *
      * @apiParam {String} [limit] Total number of documents to return (default is <code>10</code>)
      * @apiParam {String} [offset] Start at this index (default is <code>0</code>)
-     * @apiParam {Number} [sort_column] Column index to sort on
+     * @apiParam {Number} [sort_column] Column index to sort on, <code>-1</code> sorts a fulltext search by relevance
      * @apiParam {Boolean} [asc] If <code>true</code> sorts in ascending order
      * @apiParam {String} [search] Search query (see "Document search syntax" on the top of the page for explanations) when the input is entered by a human.
      * @apiParam {Boolean} [files] If <code>true</code> includes files information
+     * @apiParam {String} [cursor] Continue after the previous page, with the <code>next_cursor</code> it returned (replaces <code>offset</code>)
+     * @apiParam {Boolean} [count] If <code>false</code> the total number of documents is not counted
      *
      * @apiParam {String} [search[after]] The document must have been created after or at the value moment, accepted format is <code>yyyy-MM-dd</code>
      * @apiParam {String} [search[before]] The document must have been created before or at the value moment, accepted format is <code>yyyy-MM-dd</code>
@@ -385,7 +388,8 @@ public class DocumentResource extends BaseResource {
      * @apiParam {String} [search[ubefore]] The document must have been updated before or at the value moment, accepted format is <code>yyyy-MM-dd</code>
      * @apiParam {String} [search[workflow]] If the value is <code>me</code> the document must have an active route, for other values the criteria is ignored
      *
-     * @apiSuccess {Number} total Total number of documents
+     * @apiSuccess {Number} [total] Total number of documents, unless not counted
+     * @apiSuccess {String} [next_cursor] Cursor of the next page, absent on the last page
      * @apiSuccess {Object[]} documents List of documents
      * @apiSuccess {String} documents.id ID
      * @apiSuccess {String} documents.highlight Search highlight (for fulltext search)
@@ -422,6 +426,8 @@ public class DocumentResource extends BaseResource {
      * @param asc Sorting
      * @param search Search query
      * @param files Files list
+     * @param cursor Cursor of the page
+     * @param count Count the documents
      * @return Response
      */
     @GET
@@ -433,6 +439,8 @@ public class DocumentResource extends BaseResource {
             @QueryParam("asc") Boolean asc,
             @QueryParam("search") String search,
             @QueryParam("files") Boolean files,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("count") Boolean count,
 
             @QueryParam("search[after]") String searchCreatedAfter,
             @QueryParam("search[before]") String searchCreatedBefore,
@@ -457,7 +465,7 @@ public class DocumentResource extends BaseResource {
         JsonArrayBuilder documents = Json.createArrayBuilder();
 
         TagDao tagDao = new TagDao();
-        PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(limit, offset);
+        PaginatedList<DocumentDto> paginatedList = createPaginatedList(limit, offset, cursor, count);
         List<String> suggestionList = Lists.newArrayList();
         SortCriteria sortCriteria = new SortCriteria(sortColumn, asc);
 
@@ -490,7 +498,7 @@ public class DocumentResource extends BaseResource {
         }
 
         // Find the files of the documents
-        Iterable<String> documentsIds = CollectionUtils.collect(paginatedList.getResultList(), DocumentDto::getId);
+        Collection<String> documentsIds = CollectionUtils.collect(paginatedList.getResultList(), DocumentDto::getId);
         FileDao fileDao = new FileDao();
         List<File> filesList = null;
         Map<String, Long> filesCountByDocument = null;
@@ -500,11 +508,11 @@ public class DocumentResource extends BaseResource {
             filesCountByDocument = fileDao.countByDocumentsIds(documentsIds);
         }
 
+        // Find the tags accessible by the current user on the documents
+        Map<String, List<TagDto>> tagDtoMap = tagDao.findByDocumentsIds(documentsIds, getTargetIdList(null));
+
         for (DocumentDto documentDto : paginatedList.getResultList()) {
-            // Get tags accessible by the current user on this document
-            List<TagDto> tagDtoList = tagDao.findByCriteria(new TagCriteria()
-                    .setTargetIdList(getTargetIdList(null))
-                    .setDocumentId(documentDto.getId()), new SortCriteria(1, true));
+            List<TagDto> tagDtoList = tagDtoMap.getOrDefault(documentDto.getId(), Collections.emptyList());
 
             Long filesCount;
             Collection<File> filesOfDocument = null;
@@ -538,8 +546,8 @@ public class DocumentResource extends BaseResource {
             suggestions.add(suggestion);
         }
 
-        response.add("total", paginatedList.getResultCount())
-                .add("documents", documents)
+        addPagination(response, paginatedList);
+        response.add("documents", documents)
                 .add("suggestions", suggestions);
 
         return Response.ok().entity(response.build()).build();
@@ -560,6 +568,8 @@ public class DocumentResource extends BaseResource {
      * @param asc        Sorting
      * @param search     Search query
      * @param files      Files list
+     * @param cursor     Cursor of the page
+     * @param count      Count the documents
      * @return Response
      */
     @POST
@@ -571,6 +581,8 @@ public class DocumentResource extends BaseResource {
             @FormParam("asc") Boolean asc,
             @FormParam("search") String search,
             @FormParam("files") Boolean files,
+            @FormParam("cursor") String cursor,
+            @FormParam("count") Boolean count,
             @FormParam("search[after]") String searchCreatedAfter,
             @FormParam("search[before]") String searchCreatedBefore,
             @FormParam("search[by]") String searchBy,
@@ -593,6 +605,8 @@ public class DocumentResource extends BaseResource {
                 asc,
                 search,
                 files,
+                cursor,
+                count,
                 searchCreatedAfter,
                 searchCreatedBefore,
                 searchBy,
@@ -1013,6 +1027,8 @@ public class DocumentResource extends BaseResource {
             fileDeletedAsyncEvent.setUserId(principal.getId());
             fileDeletedAsyncEvent.setFileId(file.getId());
             fileDeletedAsyncEvent.setFileSize(file.getSize());
+            fileDeletedAsyncEvent.setFileUserId(file.getUserId());
+            fileDeletedAsyncEvent.setFileHash(file.getHash());
             ThreadLocalContext.get().addAsyncEvent(fileDeletedAsyncEvent);
         }
 
@@ -3,21 +3,23 @@ package com.sismics.docs.rest.resource;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.constant.FileProcessingPriority;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
 import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileContentDao;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
 import com.sismics.docs.core.event.FileDeletedAsyncEvent;
 import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
-import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.ZipExportUtil;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
@@ -41,16 +43,17 @@ import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
+import java.util.HashMap;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * File REST resources.
@@ -76,10 +79,10 @@ public class FileResource extends BaseResource {
      * @apiError (client) ForbiddenError Access denied
      * @apiError (client) ValidationError Validation error
      * @apiError (client) NotFound Document not found
-     * @apiError (server) StreamError Error reading the input file
+     * @apiError (client) StreamError Error reading the input file
      * @apiError (server) ErrorGuessMime Error guessing mime type
      * @apiError (client) QuotaReached Quota limit reached
-     * @apiError (server) FileError Error adding a file
+     * @apiError (server) FileError Error adding a file, or writing it to the storage
      * @apiPermission user
      * @apiVersion 1.5.0
      *
@@ -112,22 +115,13 @@ public class FileResource extends BaseResource {
             }
         }
         
-        // Keep unencrypted data temporary on disk
+        // Encrypt the data to the storage while receiving it
         String name = fileBodyPart.getContentDisposition() != null ?
                 URLDecoder.decode(fileBodyPart.getContentDisposition().getFileName(), StandardCharsets.UTF_8) : null;
-        java.nio.file.Path unencryptedFile;
-        long fileSize;
         try {
-            unencryptedFile = AppContext.getInstance().getFileService().createTemporaryFile(name);
-            Files.copy(fileBodyPart.getValueAs(InputStream.class), unencryptedFile, StandardCopyOption.REPLACE_EXISTING);
-            fileSize = Files.size(unencryptedFile);
-        } catch (IOException e) {
-            throw new ServerException("StreamError", "Error reading the input file", e);
-        }
-
-        try {
-            String fileId = FileUtil.createFile(name, previousFileId, unencryptedFile, fileSize, documentDto == null ?
+            String fileId = FileUtil.createFile(name, previousFileId, fileBodyPart.getValueAs(InputStream.class), documentDto == null ?
                     null : documentDto.getLanguage(), principal.getId(), documentId);
+            long fileSize = new FileDao().getActiveById(fileId).getSize();
 
             // Always return OK
             JsonObjectBuilder response = Json.createObjectBuilder()
@@ -274,7 +268,6 @@ public class FileResource extends BaseResource {
      * @apiSuccess {String} status Status OK
      * @apiError (client) ForbiddenError Access denied
      * @apiError (client) ValidationError Validation error
-     * @apiError (server) ProcessingError Processing error
      * @apiPermission user
      * @apiVersion 1.6.0
      *
@@ -300,24 +293,14 @@ public class FileResource extends BaseResource {
             throw new NotFoundException();
         }
 
-        // Get the creating user
-        UserDao userDao = new UserDao();
-        User user = userDao.getById(file.getUserId());
-
-        // Start the processing asynchronously
-        try {
-            java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
-            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
-            FileUtil.startProcessingFile(id);
-            FileUpdatedAsyncEvent event = new FileUpdatedAsyncEvent();
-            event.setUserId(principal.getId());
-            event.setLanguage(documentDto.getLanguage());
-            event.setFileId(file.getId());
-            event.setUnencryptedFile(unencryptedFile);
-            ThreadLocalContext.get().addAsyncEvent(event);
-        } catch (Exception e) {
-            throw new ServerException("ProcessingError", "Error processing this file", e);
-        }
+        // Start the processing asynchronously, the file is decrypted by the processing pipeline
+        FileUtil.startProcessingFile(id);
+        FileUpdatedAsyncEvent event = new FileUpdatedAsyncEvent();
+        event.setUserId(principal.getId());
+        event.setLanguage(documentDto.getLanguage());
+        event.setFileId(file.getId());
+        event.setPriority(FileProcessingPriority.REPROCESS);
+        ThreadLocalContext.get().addAsyncEvent(event);
 
         // Always return OK
         JsonObjectBuilder response = Json.createObjectBuilder()
@@ -526,6 +509,8 @@ public class FileResource extends BaseResource {
         fileDeletedAsyncEvent.setUserId(principal.getId());
         fileDeletedAsyncEvent.setFileId(file.getId());
         fileDeletedAsyncEvent.setFileSize(file.getSize());
+        fileDeletedAsyncEvent.setFileUserId(file.getUserId());
+        fileDeletedAsyncEvent.setFileHash(file.getHash());
         ThreadLocalContext.get().addAsyncEvent(fileDeletedAsyncEvent);
         
         if (file.getDocumentId() != null) {
@@ -551,8 +536,11 @@ public class FileResource extends BaseResource {
      * @apiParam {String} id File ID
      * @apiParam {String} share Share ID
      * @apiParam {String="web","thumb","content"} [size] Size variation
+     * @apiHeader {String} [Range] Byte ranges of the original file (single or multiple)
+     * @apiHeader {String} [If-Range] Serve the ranges only if the file ETag or Last-Modified date matches
      * @apiSuccess {Object} file The file data is the whole response
      * @apiError (client) SizeError Size must be web or thumb
+     * @apiError (client) RequestedRangeNotSatisfiable None of the requested ranges is in the file
      * @apiError (client) ForbiddenError Access denied or document not visible
      * @apiError (client) NotFound File not found
      * @apiError (server) ServiceUnavailable Error reading the file
@@ -560,6 +548,10 @@ public class FileResource extends BaseResource {
      * @apiVersion 1.5.0
      *
      * @param fileId File ID
+     * @param shareId Share ID
+     * @param size Size variation
+     * @param range Range header
+     * @param ifRange If-Range header
      * @return Response
      */
     @GET
@@ -568,7 +560,9 @@ public class FileResource extends BaseResource {
     public Response data(
             @PathParam("id") final String fileId,
             @QueryParam("share") String shareId,
-            @QueryParam("size") String size) {
+            @QueryParam("size") String size,
+            @HeaderParam("Range") String range,
+            @HeaderParam("If-Range") String ifRange) {
         authenticate();
         
         if (size != null && !Lists.newArrayList("web", "thumb", "content").contains(size)) {
@@ -585,7 +579,8 @@ public class FileResource extends BaseResource {
         boolean decrypt;
         if (size != null) {
             if (size.equals("content")) {
-                return Response.ok(Strings.nullToEmpty(file.getContent()))
+                FileContentDao fileContentDao = new FileContentDao();
+                return Response.ok(Strings.nullToEmpty(fileContentDao.getByFileId(file.getId())))
                         .header(HttpHeaders.CONTENT_TYPE, "text/plain; charset=utf-8")
                         .build();
             }
@@ -613,7 +608,25 @@ public class FileResource extends BaseResource {
         
         // A file is always encrypted by the creator of it
         User user = userDao.getById(file.getUserId());
-        
+
+        // Serve the requested byte ranges of the original file, the storage cipher is seekable
+        String etag = "\"" + fileId + "\"";
+        String lastModified = HttpUtil.formatHttpDate(file.getCreateDate());
+        long length = 0;
+        if (size == null) {
+            try {
+                length = Files.size(storedFile);
+            } catch (IOException e) {
+                return Response.status(Status.SERVICE_UNAVAILABLE).build();
+            }
+            if (ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified)) {
+                List<long[]> rangeList = HttpUtil.parseRangeHeader(range, length);
+                if (rangeList != null) {
+                    return buildRangeResponse(file, storedFile, user.getPrivateKey(), mimeType, length, rangeList);
+                }
+            }
+        }
+
         // Write the decrypted file to the output
         try {
             InputStream fileInputStream = Files.newInputStream(storedFile);
@@ -648,9 +661,85 @@ public class FileResource extends BaseResource {
             builder.header(HttpHeaders.CACHE_CONTROL, "no-store, must-revalidate")
                     .header(HttpHeaders.EXPIRES, "0");
         }
+        if (size == null) {
+            builder.header("Accept-Ranges", "bytes")
+                    .header(HttpHeaders.CONTENT_LENGTH, length)
+                    .header(HttpHeaders.ETAG, etag)
+                    .header(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
         return builder.build();
     }
 
+    /**
+     * Build a partial response with some byte ranges of an original file.
+     *
+     * @param file File
+     * @param storedFile Stored encrypted file
+     * @param privateKey Private key of the file creator
+     * @param mimeType MIME type
+     * @param length File length
+     * @param rangeList Ranges to serve
+     * @return Response
+     */
+    private Response buildRangeResponse(File file, java.nio.file.Path storedFile, String privateKey, String mimeType,
+                                        long length, List<long[]> rangeList) {
+        if (rangeList.isEmpty()) {
+            return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", "bytes */" + length)
+                    .build();
+        }
+
+        Response.ResponseBuilder builder = Response.status(Status.PARTIAL_CONTENT)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFullName("data") + "\"")
+                .header("Accept-Ranges", "bytes")
+                .header(HttpHeaders.CACHE_CONTROL, "private")
+                .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L));
+        if (rangeList.size() == 1) {
+            long[] range = rangeList.get(0);
+            StreamingOutput stream = outputStream -> writeRange(storedFile, privateKey, range, outputStream);
+            return builder.entity(stream)
+                    .header(HttpHeaders.CONTENT_TYPE, mimeType)
+                    .header(HttpHeaders.CONTENT_LENGTH, range[1] - range[0] + 1)
+                    .header("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length)
+                    .build();
+        }
+
+        // Multiple ranges are sent as a multipart response
+        String boundary = UUID.randomUUID().toString();
+        StreamingOutput stream = outputStream -> {
+            for (long[] range : rangeList) {
+                outputStream.write(("\r\n--" + boundary + "\r\n"
+                        + HttpHeaders.CONTENT_TYPE + ": " + mimeType + "\r\n"
+                        + "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                writeRange(storedFile, privateKey, range, outputStream);
+            }
+            outputStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        };
+        return builder.entity(stream)
+                .header(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary)
+                .build();
+    }
+
+    /**
+     * Decrypt a byte range of a stored file to an output stream.
+     *
+     * @param storedFile Stored encrypted file
+     * @param privateKey Private key of the file creator
+     * @param range Inclusive [first, last] byte positions
+     * @param outputStream Output stream
+     * @throws IOException e
+     */
+    private void writeRange(java.nio.file.Path storedFile, String privateKey, long[] range, OutputStream outputStream) throws IOException {
+        try (InputStream inputStream = EncryptionUtil.decryptInputStream(storedFile, privateKey, range[0])) {
+            ByteStreams.copy(ByteStreams.limit(inputStream, range[1] - range[0] + 1), outputStream);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
     /**
      * Returns all files from a document, zipped.
      *
@@ -659,6 +748,7 @@ public class FileResource extends BaseResource {
      * @apiGroup File
      * @apiParam {String} id Document ID
      * @apiParam {String} share Share ID
+     * @apiParam {String} [export] Export ID chosen by the client to follow the progress, ignored for anonymous users
      * @apiSuccess {Object} file The ZIP file is the whole response
      * @apiError (client) NotFoundException Document not found
      * @apiError (server) InternalServerError Error creating the ZIP file
@@ -667,6 +757,7 @@ public class FileResource extends BaseResource {
      *
      * @param documentId Document ID
      * @param shareId Share ID
+     * @param exportId Export ID
      * @return Response
      */
     @GET
@@ -674,7 +765,8 @@ public class FileResource extends BaseResource {
     @Produces({MediaType.APPLICATION_OCTET_STREAM, MediaType.TEXT_PLAIN})
     public Response zip(
             @QueryParam("id") String documentId,
-            @QueryParam("share") String shareId) {
+            @QueryParam("share") String shareId,
+            @QueryParam("export") String exportId) {
         authenticate();
         
         // Get the document
@@ -688,7 +780,7 @@ public class FileResource extends BaseResource {
         FileDao fileDao = new FileDao();
         final List<File> fileList = fileDao.getByDocumentId(principal.getId(), documentId);
         String zipFileName = documentDto.getTitle().replaceAll("\\W+", "_");
-        return sendZippedFiles(zipFileName, fileList);
+        return sendZippedFiles(zipFileName, fileList, exportId);
     }
 
     /**
@@ -698,6 +790,7 @@ public class FileResource extends BaseResource {
      * @apiName GetFilesZip
      * @apiGroup File
      * @apiParam {String[]} files IDs
+     * @apiParam {String} [export] Export ID chosen by the client to follow the progress, ignored for anonymous users
      * @apiSuccess {Object} file The ZIP file is the whole response
      * @apiError (client) NotFoundException Files not found
      * @apiError (server) InternalServerError Error creating the ZIP file
@@ -705,47 +798,91 @@ public class FileResource extends BaseResource {
      * @apiVersion 1.11.0
      *
      * @param filesIdsList Files IDs
+     * @param exportId Export ID
      * @return Response
      */
     @POST
     @Path("zip")
     @Produces({MediaType.APPLICATION_OCTET_STREAM, MediaType.TEXT_PLAIN})
     public Response zip(
-            @FormParam("files") List<String> filesIdsList) {
+            @FormParam("files") List<String> filesIdsList,
+            @FormParam("export") String exportId) {
         authenticate();
         List<File> fileList = findFiles(filesIdsList);
-        return sendZippedFiles("files", fileList);
+        return sendZippedFiles("files", fileList, exportId);
+    }
+
+    /**
+     * Returns the progress of a ZIP export.
+     *
+     * @api {get} /file/zip/progress Returns the progress of a ZIP export
+     * @apiName GetFileZipProgress
+     * @apiGroup File
+     * @apiParam {String} export Export ID
+     * @apiSuccess {Number} file_count Number of files to export
+     * @apiSuccess {Number} written_file_count Number of files written
+     * @apiSuccess {Number} total_size Uncompressed size of the files to export (in bytes)
+     * @apiSuccess {Number} written_size Uncompressed size of the files written (in bytes)
+     * @apiSuccess {Boolean} done True if the archive is complete
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
+     * @apiError (client) NotFound Export not found
+     * @apiPermission user
+     * @apiVersion 1.11.0
+     *
+     * @param exportId Export ID
+     * @return Response
+     */
+    @GET
+    @Path("zip/progress")
+    public Response zipProgress(@QueryParam("export") String exportId) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        ValidationUtil.validateRequired(exportId, "export");
+
+        // Only the exports started by the current user are visible
+        ZipExportUtil.Progress progress = ZipExportUtil.getProgress(principal.getId(), exportId);
+        if (progress == null) {
+            throw new NotFoundException();
+        }
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("file_count", progress.getEntryCount())
+                .add("written_file_count", progress.getWrittenEntryCount())
+                .add("total_size", progress.getTotalSize())
+                .add("written_size", progress.getWrittenSize())
+                .add("done", progress.isDone());
+        return Response.ok().entity(response.build()).build();
     }
 
     /**
      * Sent the content of a list of files.
+     *
+     * @param zipFileName ZIP file name, without extension
+     * @param fileList Files
+     * @param exportId Export ID to follow the progress, may be null
+     * @return Response
      */
-    private Response sendZippedFiles(String zipFileName, List<File> fileList) {
-        final UserDao userDao = new UserDao();
+    private Response sendZippedFiles(String zipFileName, List<File> fileList, String exportId) {
+        // Files are encrypted by the creator of them
+        UserDao userDao = new UserDao();
+        Map<String, String> privateKeyMap = new HashMap<>();
+        for (File file : fileList) {
+            privateKeyMap.computeIfAbsent(file.getUserId(), userId -> userDao.getById(userId).getPrivateKey());
+        }
+        ZipExportUtil.Progress progress = null;
+        if (exportId != null && !principal.isAnonymous()) {
+            // Anonymous exports through a share cannot be followed
+            ValidationUtil.validateLength(exportId, "export", 1, 36);
+            ValidationUtil.validateRegex(exportId, "export", "[a-zA-Z0-9\\-]+");
+            progress = ZipExportUtil.createProgress(principal.getId(), exportId, fileList);
+        }
 
-        // Create the ZIP stream
+        // Create the ZIP stream, the next files are decrypted while the current one is sent
+        ZipExportUtil.Progress finalProgress = progress;
         StreamingOutput stream = outputStream -> {
-            try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
-                // Add each file to the ZIP stream
-                int index = 0;
-                for (File file : fileList) {
-                    java.nio.file.Path storedfile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-                    InputStream fileInputStream = Files.newInputStream(storedfile);
-
-                    // Add the decrypted file to the ZIP stream
-                    // Files are encrypted by the creator of them
-                    User user = userDao.getById(file.getUserId());
-                    try (InputStream decryptedStream = EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey())) {
-                        ZipEntry zipEntry = new ZipEntry(index + "-" + file.getFullName(Integer.toString(index)));
-                        zipOutputStream.putNextEntry(zipEntry);
-                        ByteStreams.copy(decryptedStream, zipOutputStream);
-                        zipOutputStream.closeEntry();
-                    } catch (Exception e) {
-                        throw new WebApplicationException(e);
-                    }
-                    index++;
-                }
-            }
+            ZipExportUtil.writeZip(fileList, privateKeyMap, outputStream, finalProgress);
             outputStream.close();
         };
         
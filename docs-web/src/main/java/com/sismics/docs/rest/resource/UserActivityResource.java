@@ -5,7 +5,6 @@ import com.sismics.docs.core.dao.criteria.UserActivityCriteria;
 import com.sismics.docs.core.dao.dto.UserActivityDto;
 import com.sismics.docs.core.model.jpa.UserActivity;
 import com.sismics.docs.core.util.jpa.PaginatedList;
-import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.rest.exception.ClientException;
@@ -41,6 +40,8 @@ public class UserActivityResource extends BaseResource {
      * @apiParam {Number} [offset] First activity to return
      * @apiParam {String} [sort_column] Column to sort by
      * @apiParam {Boolean} [asc] If true, sort in ascending order
+     * @apiParam {String} [cursor] Continue after the previous page, with the next_cursor it returned (replaces offset)
+     * @apiParam {Boolean} [count] If false, the total number of activities is not counted
      * @apiSuccess {Object[]} activities List of activities
      * @apiSuccess {String} activities.id Activity ID
      * @apiSuccess {String} activities.user_id User ID
@@ -52,7 +53,8 @@ public class UserActivityResource extends BaseResource {
      * @apiSuccess {Number} activities.planned_date_timestamp Planned date timestamp (optional)
      * @apiSuccess {Number} activities.completed_date_timestamp Completed date timestamp (optional)
      * @apiSuccess {Number} activities.create_timestamp Creation date timestamp
-     * @apiSuccess {Number} total Total number of activities
+     * @apiSuccess {Number} total Total number of activities (optional)
+     * @apiSuccess {String} next_cursor Cursor of the next page (optional)
      * @apiPermission admin
      * @apiVersion 1.0.0
      * 
@@ -60,6 +62,8 @@ public class UserActivityResource extends BaseResource {
      * @param offset First activity to return
      * @param sortColumn Column to sort by
      * @param asc If true, sort in ascending order
+     * @param cursor Cursor of the page
+     * @param count Count the activities
      * @param activityType Activity type filter
      * @param userId User ID filter
      * @return Response
@@ -71,6 +75,8 @@ public class UserActivityResource extends BaseResource {
             @QueryParam("offset") Integer offset,
             @QueryParam("sort_column") Integer sortColumn,
             @QueryParam("asc") Boolean asc,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("count") Boolean count,
             @QueryParam("activity_type") String activityType,
             @QueryParam("user_id") String userId) {
         if (!authenticate()) {
@@ -91,7 +97,7 @@ public class UserActivityResource extends BaseResource {
         }
         
         // Get the activities
-        PaginatedList<UserActivityDto> paginatedList = PaginatedLists.create(limit, offset);
+        PaginatedList<UserActivityDto> paginatedList = createPaginatedList(limit, offset, cursor, count);
         UserActivityDao userActivityDao = new UserActivityDao();
         userActivityDao.findByCriteria(paginatedList, criteria, sortCriteria);
 
@@ -130,8 +136,8 @@ public class UserActivityResource extends BaseResource {
             activities.add(activity);
         }
         
-        response.add("activities", activities)
-                .add("total", paginatedList.getResultCount());
+        response.add("activities", activities);
+        addPagination(response, paginatedList);
         
         return Response.ok().entity(response.build()).build();
     }
@@ -148,6 +154,8 @@ public class UserActivityResource extends BaseResource {
      * @apiParam {Number} [offset] First activity to return
      * @apiParam {String} [sort_column] Column to sort by
      * @apiParam {Boolean} [asc] If true, sort in ascending order
+     * @apiParam {String} [cursor] Continue after the previous page, with the next_cursor it returned (replaces offset)
+     * @apiParam {Boolean} [count] If false, the total number of activities is not counted
      * @apiSuccess {Object[]} activities List of activities
      * @apiSuccess {String} activities.id Activity ID
      * @apiSuccess {String} activities.user_id User ID
@@ -159,7 +167,8 @@ public class UserActivityResource extends BaseResource {
      * @apiSuccess {Number} activities.planned_date_timestamp Planned date timestamp (optional)
      * @apiSuccess {Number} activities.completed_date_timestamp Completed date timestamp (optional)
      * @apiSuccess {Number} activities.create_timestamp Creation date timestamp
-     * @apiSuccess {Number} total Total number of activities
+     * @apiSuccess {Number} total Total number of activities (optional)
+     * @apiSuccess {String} next_cursor Cursor of the next page (optional)
      * @apiPermission user
      * @apiVersion 1.0.0
      * 
@@ -167,6 +176,8 @@ public class UserActivityResource extends BaseResource {
      * @param offset First activity to return
      * @param sortColumn Column to sort by
      * @param asc If true, sort in ascending order
+     * @param cursor Cursor of the page
+     * @param count Count the activities
      * @param activityType Activity type filter
      * @param entityId Entity ID filter
      * @return Response
@@ -179,6 +190,8 @@ public class UserActivityResource extends BaseResource {
             @QueryParam("offset") Integer offset,
             @QueryParam("sort_column") Integer sortColumn,
             @QueryParam("asc") Boolean asc,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("count") Boolean count,
             @QueryParam("activity_type") String activityType,
             @QueryParam("entity_id") String entityId) {
         if (!authenticate()) {
@@ -200,7 +213,7 @@ public class UserActivityResource extends BaseResource {
         }
         
         // Get the activities
-        PaginatedList<UserActivityDto> paginatedList = PaginatedLists.create(limit, offset);
+        PaginatedList<UserActivityDto> paginatedList = createPaginatedList(limit, offset, cursor, count);
         UserActivityDao userActivityDao = new UserActivityDao();
         userActivityDao.findByCriteria(paginatedList, criteria, sortCriteria);
 
@@ -239,8 +252,8 @@ public class UserActivityResource extends BaseResource {
             activities.add(activity);
         }
         
-        response.add("activities", activities)
-                .add("total", paginatedList.getResultCount());
+        response.add("activities", activities);
+        addPagination(response, paginatedList);
         
         return Response.ok().entity(response.build()).build();
     }
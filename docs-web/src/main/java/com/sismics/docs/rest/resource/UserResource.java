@@ -1273,6 +1273,8 @@ public class UserResource extends BaseResource {
             fileDeletedAsyncEvent.setUserId(principal.getId());
             fileDeletedAsyncEvent.setFileId(file.getId());
             fileDeletedAsyncEvent.setFileSize(file.getSize());
+            fileDeletedAsyncEvent.setFileUserId(file.getUserId());
+            fileDeletedAsyncEvent.setFileHash(file.getHash());
             ThreadLocalContext.get().addAsyncEvent(fileDeletedAsyncEvent);
         }
     }
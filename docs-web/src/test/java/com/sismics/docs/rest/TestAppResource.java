@@ -1,12 +1,18 @@
 package com.sismics.docs.rest;
 
 import java.io.File;
+import java.util.Properties;
+
+import javax.mail.Session;
+import javax.mail.Store;
 
 import com.google.common.io.Resources;
 import com.icegreen.greenmail.util.GreenMail;
 import com.icegreen.greenmail.util.GreenMailUtil;
 import com.icegreen.greenmail.util.ServerSetup;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.service.InboxService;
+import com.sun.mail.imap.IMAPStore;
 import com.sismics.util.filter.TokenBasedSecurityFilter;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
@@ -24,6 +30,7 @@ import org.apache.directory.server.ldap.LdapServer;
 import org.apache.directory.server.protocol.shared.store.LdifFileLoader;
 import org.apache.directory.server.protocol.shared.transport.TcpTransport;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 
@@ -57,6 +64,17 @@ public class TestAppResource extends BaseJerseyTest {
         Long totalMemory = json.getJsonNumber("total_memory").longValue();
         Assert.assertTrue(totalMemory > 0 && totalMemory > freeMemory);
         Assert.assertEquals(0, json.getJsonNumber("queued_tasks").intValue());
+        JsonArray fileProcessing = json.getJsonArray("file_processing");
+        Assert.assertEquals(4, fileProcessing.size());
+        Assert.assertEquals("decrypt", fileProcessing.getJsonObject(0).getString("name"));
+        Assert.assertEquals(0, fileProcessing.getJsonObject(0).getJsonObject("queued").getInt("interactive"));
+        Assert.assertEquals(0, fileProcessing.getJsonObject(0).getInt("dropped"));
+        JsonArray referenceCache = json.getJsonArray("reference_cache");
+        Assert.assertEquals(6, referenceCache.size());
+        JsonObject configCache = referenceCache.getJsonObject(0);
+        Assert.assertEquals("config", configCache.getString("name"));
+        Assert.assertTrue(configCache.getJsonNumber("hits").longValue() + configCache.getJsonNumber("misses").longValue() > 0);
+        Assert.assertEquals(0, json.getJsonObject("webhooks").getInt("pending"));
         Assert.assertFalse(json.getBoolean("guest_login"));
         Assert.assertFalse(json.getBoolean("ocr_enabled"));
         Assert.assertEquals("eng", json.getString("default_language"));
@@ -394,9 +412,125 @@ public class TestAppResource extends BaseJerseyTest {
         Assert.assertTrue(lastSync.isNull("error"));
         Assert.assertEquals(0, lastSync.getJsonNumber("count").intValue());
 
+        // Send two new emails, only those are imported from the checkpoint
+        GreenMailUtil.sendTextEmail("test@sismics.com", "test@sismicsdocs.com", "Test email 2", "Test content 2", serverSetupSmtp);
+        GreenMailUtil.sendTextEmail("test@sismics.com", "test@sismicsdocs.com", "Test email 3", "Test content 3", serverSetupSmtp);
+        AppContext.getInstance().getInboxService().syncInbox();
+        json = target().path("/document/list")
+                .queryParam("search", "tag:Inbox full:content")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(3, json.getJsonArray("documents").size());
+        json = target().path("/app/config_inbox").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        lastSync = json.getJsonObject("last_sync");
+        Assert.assertTrue(lastSync.isNull("error"));
+        Assert.assertEquals(2, lastSync.getJsonNumber("count").intValue());
+
+        // An email failing to import is not marked as read, and imported again on the next sync
+        json = target().path("/user/admin").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        long adminQuota = json.getJsonNumber("storage_quota").longValue();
+        target().path("/user/admin").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .post(Entity.form(new Form()
+                        .param("storage_quota", "1")), JsonObject.class);
+        GreenMailUtil.sendAttachmentEmail("test@sismics.com", "test@sismicsdocs.com", "Test email 4", "Test content 4",
+                "Attachment content".getBytes(), "text/plain", "attachment.txt", "Attachment", serverSetupSmtp);
+        AppContext.getInstance().getInboxService().syncInbox();
+        json = target().path("/app/config_inbox").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        lastSync = json.getJsonObject("last_sync");
+        Assert.assertEquals("QuotaReached", lastSync.getString("error"));
+        Assert.assertEquals(0, lastSync.getJsonNumber("count").intValue());
+        target().path("/user/admin").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .post(Entity.form(new Form()
+                        .param("storage_quota", Long.toString(adminQuota))), JsonObject.class);
+        AppContext.getInstance().getInboxService().syncInbox();
+        json = target().path("/document/list")
+                .queryParam("search", "tag:Inbox full:content")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(4, json.getJsonArray("documents").size());
+        json = target().path("/app/config_inbox").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        lastSync = json.getJsonObject("last_sync");
+        Assert.assertTrue(lastSync.isNull("error"));
+        Assert.assertEquals(1, lastSync.getJsonNumber("count").intValue());
+
         greenMail.stop();
     }
 
+    /**
+     * Test the inbox synchronization pushed by IMAP IDLE.
+     */
+    @Test
+    public void testInboxIdle() throws Exception {
+        // Login admin
+        String adminToken = adminToken();
+
+        // Configure another inbox
+        target().path("/app/config_inbox").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .post(Entity.form(new Form()
+                        .param("enabled", "true")
+                        .param("starttls", "false")
+                        .param("autoTagsEnabled", "false")
+                        .param("deleteImported", "false")
+                        .param("hostname", "localhost")
+                        .param("port", "9757")
+                        .param("username", "idle@sismics.com")
+                        .param("password", "12345678")
+                        .param("folder", "INBOX")
+                ), JsonObject.class);
+        configInboxChanged = true;
+
+        ServerSetup serverSetupSmtp = new ServerSetup(9756, null, ServerSetup.PROTOCOL_SMTP);
+        ServerSetup serverSetupImap = new ServerSetup(9757, null, ServerSetup.PROTOCOL_IMAP);
+        GreenMail greenMail = new GreenMail(new ServerSetup[] { serverSetupSmtp, serverSetupImap });
+        greenMail.setUser("idle@sismics.com", "12345678");
+        greenMail.start();
+        InboxService inboxService = new InboxService(1, true);
+        try {
+            Store store = Session.getInstance(new Properties()).getStore("imap");
+            store.connect("localhost", 9757, "idle@sismics.com", "12345678");
+            boolean idleSupported = ((IMAPStore) store).hasCapability("IDLE");
+            store.close();
+            Assume.assumeTrue(idleSupported);
+
+            // Wait for the IDLE connection, the polling is only every minute
+            inboxService.startAsync().awaitRunning();
+            for (int i = 0; i < 100 && !inboxService.isIdleConnected(); i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertTrue(inboxService.isIdleConnected());
+
+            // The new email is imported without triggering a sync
+            GreenMailUtil.sendTextEmail("idle@sismics.com", "test@sismicsdocs.com", "Pushed email", "Pushed content", serverSetupSmtp);
+            int documentCount = 0;
+            for (int i = 0; i < 100 && documentCount == 0; i++) {
+                Thread.sleep(100);
+                JsonObject json = target().path("/document/list")
+                        .queryParam("search", "full:pushed")
+                        .request()
+                        .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                        .get(JsonObject.class);
+                documentCount = json.getJsonArray("documents").size();
+            }
+            Assert.assertEquals(1, documentCount);
+        } finally {
+            inboxService.stopAsync().awaitTerminated();
+            greenMail.stop();
+        }
+    }
+
     /**
      * Test the LDAP authentication.
      */
@@ -1,5 +1,6 @@
 package com.sismics.docs.rest;
 
+import com.sismics.docs.core.util.jpa.PageCursor;
 import com.sismics.util.filter.TokenBasedSecurityFilter;
 import org.junit.Assert;
 import org.junit.Test;
@@ -9,6 +10,8 @@ import jakarta.json.JsonObject;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Form;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Test the audit log resource.
@@ -126,6 +129,59 @@ public class TestAuditLogResource extends BaseJerseyTest {
                 .delete();
     }
     
+    /**
+     * Test the audit log pages.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testAuditLogCursor() throws Exception {
+        // Login auditlog_cursor
+        clientUtil.createUser("auditlog_cursor");
+        String auditlogCursorToken = clientUtil.login("auditlog_cursor");
+
+        // Create more tags than logs in a page
+        for (int i = 0; i < 25; i++) {
+            target().path("/tag").request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, auditlogCursorToken)
+                    .put(Entity.form(new Form()
+                            .param("name", "CursorTag" + i)
+                            .param("color", "#ffff00")), JsonObject.class);
+        }
+
+        // The first page continues after its last log
+        JsonObject json = target().path("/auditlog")
+                .queryParam("count", false)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, auditlogCursorToken)
+                .get(JsonObject.class);
+        JsonArray logs = json.getJsonArray("logs");
+        Assert.assertEquals(20, logs.size());
+        Assert.assertFalse(json.containsKey("total"));
+        PageCursor cursor = PageCursor.decode(json.getString("next_cursor"));
+        Assert.assertEquals(logs.getJsonObject(19).getString("id"), cursor.getId());
+        Assert.assertNotNull(cursor.getSortKey());
+        Set<String> logIdSet = new HashSet<>();
+        for (int i = 0; i < logs.size(); i++) {
+            logIdSet.add(logs.getJsonObject(i).getString("id"));
+        }
+
+        // The last page has the remaining logs, without duplicates
+        json = target().path("/auditlog")
+                .queryParam("cursor", json.getString("next_cursor"))
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, auditlogCursorToken)
+                .get(JsonObject.class);
+        logs = json.getJsonArray("logs");
+        Assert.assertEquals(5, logs.size());
+        Assert.assertEquals(25, json.getJsonNumber("total").intValue());
+        Assert.assertFalse(json.containsKey("next_cursor"));
+        for (int i = 0; i < logs.size(); i++) {
+            logIdSet.add(logs.getJsonObject(i).getString("id"));
+        }
+        Assert.assertEquals(25, logIdSet.size());
+    }
+
     /**
      * Count logs by class.
      * 
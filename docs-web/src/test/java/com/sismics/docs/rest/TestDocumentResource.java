@@ -126,6 +126,42 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertEquals("#ffff00", tags.getJsonObject(1).getString("color"));
         Assert.assertFalse(documents.getJsonObject(0).getBoolean("active_route"));
 
+        // List all documents one page at a time, without counting them
+        json = target().path("/document/list")
+                .queryParam("sort_column", 3)
+                .queryParam("asc", true)
+                .queryParam("limit", 1)
+                .queryParam("count", false)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get(JsonObject.class);
+        documents = json.getJsonArray("documents");
+        Assert.assertEquals(1, documents.size());
+        Assert.assertEquals(document1Id, documents.getJsonObject(0).getString("id"));
+        Assert.assertFalse(json.containsKey("total"));
+        String nextCursor = json.getString("next_cursor");
+        json = target().path("/document/list")
+                .queryParam("sort_column", 3)
+                .queryParam("asc", true)
+                .queryParam("limit", 1)
+                .queryParam("cursor", nextCursor)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get(JsonObject.class);
+        documents = json.getJsonArray("documents");
+        Assert.assertEquals(1, documents.size());
+        Assert.assertEquals(document2Id, documents.getJsonObject(0).getString("id"));
+        Assert.assertEquals(2, json.getJsonNumber("total").intValue());
+        Assert.assertFalse(json.containsKey("next_cursor"));
+
+        // List documents with an invalid cursor
+        Response response = target().path("/document/list")
+                .queryParam("cursor", "invalid")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get();
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+
         // List all documents from document3
         json = target().path("/document/list")
                 .queryParam("sort_column", 3)
@@ -322,7 +358,7 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertEquals(document2Id, json.getString("id"));
 
         // Export a document in PDF format
-        Response response = target().path("/document/" + document1Id + "/pdf")
+        response = target().path("/document/" + document1Id + "/pdf")
                 .queryParam("margin", "10")
                 .queryParam("metadata", "true")
                 .queryParam("comments", "true")
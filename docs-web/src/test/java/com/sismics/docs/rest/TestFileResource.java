@@ -22,7 +22,9 @@ import jakarta.ws.rs.core.Response.Status;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -58,6 +60,32 @@ public class TestFileResource extends BaseJerseyTest {
         InputStream is = (InputStream) response.getEntity();
         byte[] fileBytes = ByteStreams.toByteArray(is);
         Assert.assertTrue(fileBytes.length > 0);
+        Assert.assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+
+        // Get a byte range of the file data
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=100-199")
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("bytes 100-199/" + fileBytes.length, response.getHeaderString("Content-Range"));
+        Assert.assertArrayEquals(Arrays.copyOfRange(fileBytes, 100, 200), ByteStreams.toByteArray((InputStream) response.getEntity()));
+
+        // Get a byte range outside of the file data
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=" + fileBytes.length + "-")
+                .get();
+        Assert.assertEquals(Status.REQUESTED_RANGE_NOT_SATISFIABLE, Status.fromStatusCode(response.getStatus()));
+
+        // Get a byte range with an outdated If-Range, the whole file is returned
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=0-9")
+                .header("If-Range", "\"outdated\"")
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals(fileBytes.length, ByteStreams.toByteArray((InputStream) response.getEntity()).length);
         
         // Get the thumbnail data
         response = target().path("/file/" + file1Id + "/data")
@@ -275,7 +303,10 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
         InputStream is = (InputStream) response.getEntity();
         ZipInputStream zipInputStream = new ZipInputStream(is);
-        Assert.assertEquals(zipInputStream.getNextEntry().getName(), "0-PIA00452.jpg");
+        ZipEntry zipEntry = zipInputStream.getNextEntry();
+        Assert.assertEquals(zipEntry.getName(), "0-PIA00452.jpg");
+        Assert.assertEquals(ZipEntry.STORED, zipEntry.getMethod()); // JPEG are not compressed again
+        Assert.assertEquals(163510, ByteStreams.toByteArray(zipInputStream).length);
         Assert.assertNull(zipInputStream.getNextEntry());
 
         // Fail if we don't have access to the document
@@ -297,14 +328,42 @@ public class TestFileResource extends BaseJerseyTest {
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
                 .post(Entity.form(new Form()
                         .param("files", file1Id)
-                        .param("files", file2Id)));
+                        .param("files", file2Id)
+                        .param("export", "export-1")));
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
         is = (InputStream) response.getEntity();
         zipInputStream = new ZipInputStream(is);
         Assert.assertNotNull(zipInputStream.getNextEntry().getName());
         Assert.assertNotNull(zipInputStream.getNextEntry().getName());
         Assert.assertNull(zipInputStream.getNextEntry());
-        
+
+        // Check the export progress
+        JsonObject json = target().path("/file/zip/progress")
+                .queryParam("export", "export-1")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(2, json.getInt("file_count"));
+        Assert.assertEquals(2, json.getInt("written_file_count"));
+        Assert.assertTrue(json.getBoolean("done"));
+
+        // The export progress is not visible to anonymous users
+        response = target().path("/file/zip/progress")
+                .queryParam("export", "export-1")
+                .request()
+                .get();
+        Assert.assertEquals(Status.FORBIDDEN, Status.fromStatusCode(response.getStatus()));
+
+        // Nor to other users
+        clientUtil.createUser("file_zip_progress");
+        String fileZipProgressToken = clientUtil.login("file_zip_progress");
+        response = target().path("/file/zip/progress")
+                .queryParam("export", "export-1")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileZipProgressToken)
+                .get();
+        Assert.assertEquals(Status.NOT_FOUND, Status.fromStatusCode(response.getStatus()));
+
         // Fail if we don't have access to the files
         response = target().path("/file/zip")
                 .request()
@@ -417,21 +476,21 @@ public class TestFileResource extends BaseJerseyTest {
         // Check current quota
         Assert.assertEquals(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG_SIZE, getUserQuota(fileQuotaToken));
         
-        // Add a file (292641 bytes large)
-        clientUtil.addFileToDocument(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG, fileQuotaToken, null);
+        // Add the same file again, its content is stored once
+        String file2Id = clientUtil.addFileToDocument(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG, fileQuotaToken, null);
         
         // Check current quota
-        Assert.assertEquals(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG_SIZE * 2, getUserQuota(fileQuotaToken));
+        Assert.assertEquals(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG_SIZE, getUserQuota(fileQuotaToken));
         
-        // Add a file (292641 bytes large)
-        clientUtil.addFileToDocument(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG, fileQuotaToken, null);
+        // Add a file (568236 bytes large)
+        clientUtil.addFileToDocument(FILE_WIKIPEDIA_PDF, fileQuotaToken, null);
         
         // Check current quota
-        Assert.assertEquals(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG_SIZE * 3, getUserQuota(fileQuotaToken));
+        Assert.assertEquals(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG_SIZE + FILE_WIKIPEDIA_PDF_SIZE, getUserQuota(fileQuotaToken));
         
-        // Add a file (292641 bytes large)
+        // Add a file (163510 bytes large)
         try {
-            clientUtil.addFileToDocument(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG, fileQuotaToken, null);
+            clientUtil.addFileToDocument(FILE_PIA_00452_JPG, fileQuotaToken, null);
             Assert.fail();
         } catch (jakarta.ws.rs.BadRequestException ignored) {
         }
@@ -442,8 +501,23 @@ public class TestFileResource extends BaseJerseyTest {
                 .delete(JsonObject.class);
         Assert.assertEquals("ok", json.getString("status"));
         
+        // Check current quota, the content is still used by the other file
+        Assert.assertEquals(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG_SIZE + FILE_WIKIPEDIA_PDF_SIZE, getUserQuota(fileQuotaToken));
+
+        // The other file is still readable
+        Response response = target().path("/file/" + file2Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileQuotaToken)
+                .get();
+        Assert.assertEquals(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG_SIZE, ByteStreams.toByteArray((InputStream) response.getEntity()).length);
+
+        // Deletes the other file
+        json = target().path("/file/" + file2Id).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileQuotaToken)
+                .delete(JsonObject.class);
+        Assert.assertEquals("ok", json.getString("status"));
+
         // Check current quota
-        Assert.assertEquals(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG_SIZE * 2, getUserQuota(fileQuotaToken));
+        Assert.assertEquals(FILE_WIKIPEDIA_PDF_SIZE, getUserQuota(fileQuotaToken));
 
         // Create a document
         long create1Date = new Date().getTime();
@@ -460,7 +534,7 @@ public class TestFileResource extends BaseJerseyTest {
         clientUtil.addFileToDocument(FILE_PIA_00452_JPG, fileQuotaToken, document1Id);
 
         // Check current quota
-        Assert.assertEquals(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG_SIZE * 2 + FILE_PIA_00452_JPG_SIZE, getUserQuota(fileQuotaToken));
+        Assert.assertEquals(FILE_WIKIPEDIA_PDF_SIZE + FILE_PIA_00452_JPG_SIZE, getUserQuota(fileQuotaToken));
 
         // Deletes the document
         json = target().path("/document/" + document1Id).request()
@@ -469,7 +543,7 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals("ok", json.getString("status"));
 
         // Check current quota
-        Assert.assertEquals(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG_SIZE * 2, getUserQuota(fileQuotaToken));
+        Assert.assertEquals(FILE_WIKIPEDIA_PDF_SIZE, getUserQuota(fileQuotaToken));
     }
 
     private long getUserQuota(String userToken) {
@@ -81,6 +81,46 @@ public class TestSecurity extends BaseJerseyTest {
                 .delete();
     }
 
+    /**
+     * Test that the cached principals are revoked when the session or the user is deleted.
+     */
+    @Test
+    public void testPrincipalRevocation() {
+        // Create a user
+        clientUtil.createUser("testrevocation");
+
+        // User testrevocation logs in and is authenticated, the principal is cached
+        String testRevocationToken = clientUtil.login("testrevocation");
+        Assert.assertEquals(Status.OK.getStatusCode(), target().path("/user/session").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, testRevocationToken)
+                .get()
+                .getStatus());
+
+        // User testrevocation logs out, the token is not accepted anymore
+        clientUtil.logout(testRevocationToken);
+        Assert.assertEquals(Status.FORBIDDEN.getStatusCode(), target().path("/user/session").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, testRevocationToken)
+                .get()
+                .getStatus());
+
+        // User testrevocation logs in again
+        testRevocationToken = clientUtil.login("testrevocation");
+        Assert.assertEquals(Status.OK.getStatusCode(), target().path("/user/session").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, testRevocationToken)
+                .get()
+                .getStatus());
+
+        // Delete the user, its session is not accepted anymore
+        String adminToken = adminToken();
+        target().path("/user/testrevocation").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .delete();
+        Assert.assertEquals(Status.FORBIDDEN.getStatusCode(), target().path("/user/session").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, testRevocationToken)
+                .get()
+                .getStatus());
+    }
+
     @Test
     public void testHeaderBasedAuthentication() {
         clientUtil.createUser("header_auth_test");
@@ -0,0 +1,120 @@
+package com.sismics.docs.rest;
+
+import com.sismics.docs.core.util.jpa.PageCursor;
+import com.sismics.util.filter.TokenBasedSecurityFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.Form;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Test the user activity resource.
+ */
+public class TestUserActivityResource extends BaseJerseyTest {
+    /**
+     * Test the user activity pages.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testUserActivityCursor() throws Exception {
+        // Login activity_cursor
+        clientUtil.createUser("activity_cursor");
+        String activityCursorToken = clientUtil.login("activity_cursor");
+        String adminToken = adminToken();
+
+        // Create activities with the same type and progress
+        List<String> activityIdList = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            JsonObject json = target().path("/useractivity").request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, activityCursorToken)
+                    .put(Entity.form(new Form()
+                            .param("activity_type", "REVIEW")
+                            .param("progress", "50")), JsonObject.class);
+            activityIdList.add(json.getString("id"));
+        }
+
+        // Equal sort keys are paginated by ID, without duplicates or missing activities
+        List<String> resultIdList = listAll(target().path("/useractivity/user"), activityCursorToken, 3, true);
+        Assert.assertEquals(new HashSet<>(activityIdList), new HashSet<>(resultIdList));
+        Assert.assertEquals(5, resultIdList.size());
+        resultIdList = listAll(target().path("/useractivity/user"), activityCursorToken, 6, true);
+        Assert.assertEquals(new HashSet<>(activityIdList), new HashSet<>(resultIdList));
+        Assert.assertEquals(5, resultIdList.size());
+
+        // Same for all the activities of the user, listed by an administrator
+        String userId = getUserId(activityCursorToken);
+        resultIdList = listAll(target().path("/useractivity").queryParam("user_id", userId), adminToken, 3, true);
+        Assert.assertEquals(new HashSet<>(activityIdList), new HashSet<>(resultIdList));
+        Assert.assertEquals(5, resultIdList.size());
+
+        // The planned date may be null, the pages are paginated by offset
+        resultIdList = listAll(target().path("/useractivity/user"), activityCursorToken, 7, false);
+        Assert.assertEquals(new HashSet<>(activityIdList), new HashSet<>(resultIdList));
+        Assert.assertEquals(5, resultIdList.size());
+        resultIdList = listAll(target().path("/useractivity").queryParam("user_id", userId), adminToken, 5, false);
+        Assert.assertEquals(new HashSet<>(activityIdList), new HashSet<>(resultIdList));
+        Assert.assertEquals(5, resultIdList.size());
+    }
+
+    /**
+     * List all the activities 2 by 2, following the cursors.
+     *
+     * @param target Activity list target
+     * @param token Authentication token
+     * @param sortColumn Sort column
+     * @param keyset True if the pages are expected to continue after a sort key, false for an offset
+     * @return Activity IDs
+     */
+    private List<String> listAll(WebTarget target, String token, int sortColumn, boolean keyset) {
+        List<String> activityIdList = new ArrayList<>();
+        String cursor = null;
+        int pageCount = 0;
+        do {
+            WebTarget pageTarget = target
+                    .queryParam("sort_column", sortColumn)
+                    .queryParam("asc", true)
+                    .queryParam("limit", 2)
+                    .queryParam("count", false);
+            if (cursor != null) {
+                pageTarget = pageTarget.queryParam("cursor", cursor);
+            }
+            JsonObject json = pageTarget.request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, token)
+                    .get(JsonObject.class);
+            JsonArray activities = json.getJsonArray("activities");
+            for (int i = 0; i < activities.size(); i++) {
+                activityIdList.add(activities.getJsonObject(i).getString("id"));
+            }
+            cursor = json.containsKey("next_cursor") ? json.getString("next_cursor") : null;
+            if (cursor != null) {
+                PageCursor pageCursor = PageCursor.decode(cursor);
+                Assert.assertEquals(keyset, pageCursor.getSortKey() != null);
+                Assert.assertEquals(activityIdList.size(), pageCursor.getOffset());
+            }
+            pageCount++;
+        } while (cursor != null);
+        Assert.assertEquals(3, pageCount);
+        return activityIdList;
+    }
+
+    /**
+     * Returns the ID of the authenticated user, from its activities.
+     *
+     * @param token Authentication token
+     * @return User ID
+     */
+    private String getUserId(String token) {
+        JsonObject json = target().path("/useractivity/user").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, token)
+                .get(JsonObject.class);
+        return json.getJsonArray("activities").getJsonObject(0).getString("user_id");
+    }
+}